@@ -78,7 +78,7 @@ int mfem_laghos_mesh_close(int mesh_handle) {
 int mfem_mesh_iterator_init(mfem_mesh_iterator *iter) {
     iter->cur_idx = 0;
     iter->nvv = DEFAULT_NVV;
-    iter->visited_verts = new uint8_t[iter->nvv];
+    iter->visited_verts = new uint8_t[iter->nvv]();
     return 0;
 }
 
@@ -89,8 +89,8 @@ int mfem_mesh_iterator_grow(mfem_mesh_iterator *iter, size_t new_size) {
         new_nvv *= 2;
     }
 
-    /* Create the new visited verts array*/
-    uint8_t *new_verts = new uint8_t[new_nvv];
+    /* Create the new visited verts array, vertices past the old end are unvisited */
+    uint8_t *new_verts = new uint8_t[new_nvv]();
     memcpy(new_verts, iter->visited_verts, iter->nvv);
     delete [] iter->visited_verts;
 
@@ -159,6 +159,122 @@ int mfem_laghos_mesh_read_points(int mlm_handle, mfem_mesh_iterator_t* begin, la
     return ptCount;
 }
 
+int mfem_laghos_mesh_read_columns(int mlm_handle, mfem_mesh_iterator_t *cur,
+                                  const laghos_mesh_columns_t *cols, size_t npoints) {
+    // Retrieve the mesh from the global mesh array
+    mfem_laghos_mesh_t mlm = mlmv[mlm_handle];
+    size_t eleCount = 0;
+    size_t ptCount = 0;
+
+    // Read whole elements while every column has room for their vertexes
+    const Element* const* elements = mlm.mesh->GetElementsArray();
+    size_t nEles = mlm.mesh->GetNE();
+    size_t dims = mlm.mesh->Dimension();
+    Array<double> energies, densities, v_xs, v_ys, v_zs;
+    for (size_t i = cur->cur_idx; i < nEles; i++) {
+        const Element* ele = elements[i];
+        size_t nv = ele->GetNVertices();
+        if ((npoints - ptCount) < nv) {
+            break;
+        }
+        mlm.e_gf->GetNodalValues(i, energies, 1);
+        mlm.rho_gf->GetNodalValues(i, densities, 1);
+        mlm.v_gf->GetNodalValues(i, v_xs, 1);
+        mlm.v_gf->GetNodalValues(i, v_ys, 2);
+        mlm.v_gf->GetNodalValues(i, v_zs, 3);
+
+        const int* vertArray = ele->GetVertices();
+        for (size_t j = 0; j < nv; j++) {
+            double* pos = mlm.mesh->GetVertex(vertArray[j]);
+            cols->x[ptCount] = (1 <= dims) ? pos[0] : 0.0;
+            cols->y[ptCount] = (2 <= dims) ? pos[1] : 0.0;
+            cols->z[ptCount] = (3 <= dims) ? pos[2] : 0.0;
+            cols->e[ptCount] = energies[j];
+            cols->rho[ptCount] = densities[j];
+            cols->v_x[ptCount] = v_xs[j];
+            cols->v_y[ptCount] = v_ys[j];
+            cols->v_z[ptCount] = v_zs[j];
+            if (cols->vertex_id) {
+                cols->vertex_id[ptCount] = vertArray[j];
+            }
+            cols->element_id[ptCount] = i;
+            ptCount++;
+        }
+        eleCount++;
+    }
+    cur->cur_idx += eleCount;
+    return ptCount;
+}
+
+int mfem_laghos_mesh_read_ve(int mlm_handle, mfem_mesh_iterator_t *cur,
+                             laghos_mesh_vertex_t *verts, size_t *nverts,
+                             laghos_mesh_element_attr_t *eattrs,
+                             laghos_mesh_element_geom_t *egeoms,
+                             size_t *neles) {
+    // Retrieve the mesh from the global mesh array
+    mfem_laghos_mesh_t mlm = mlmv[mlm_handle];
+    size_t maxVerts = *nverts;
+    size_t maxEles = *neles;
+    size_t vertCount = 0;
+    size_t eleCount = 0;
+    int ptCount = 0;
+
+    // Read whole elements while the element arrays and the vertex array
+    // have room for every vertex of the next element
+    const Element* const* elements = mlm.mesh->GetElementsArray();
+    size_t nEles = mlm.mesh->GetNE();
+    size_t dims = mlm.mesh->Dimension();
+    Array<double> energies, densities, v_xs, v_ys, v_zs;
+    for (size_t i = cur->cur_idx; i < nEles && eleCount < maxEles; i++) {
+        const Element* ele = elements[i];
+        size_t nv = ele->GetNVertices();
+        if ((maxVerts - vertCount) < nv) {
+            break;
+        }
+        mlm.e_gf->GetNodalValues(i, energies, 1);
+        mlm.rho_gf->GetNodalValues(i, densities, 1);
+        mlm.v_gf->GetNodalValues(i, v_xs, 1);
+        mlm.v_gf->GetNodalValues(i, v_ys, 2);
+        mlm.v_gf->GetNodalValues(i, v_zs, 3);
+
+        const int* vertArray = ele->GetVertices();
+        egeoms[eleCount].element_id = i;
+        for (size_t j = 0; j < nv; j++) {
+            size_t vid = vertArray[j];
+            egeoms[eleCount].vertexes[j] = vid;
+
+            // Only emit each vertex's coordinates the first time it is seen
+            if (vid >= cur->nvv) {
+                mfem_mesh_iterator_grow(cur, vid + 1);
+            }
+            if (!cur->visited_verts[vid]) {
+                double* pos = mlm.mesh->GetVertex(vid);
+                verts[vertCount].vertex_id = vid;
+                verts[vertCount].x = (1 <= dims) ? pos[0] : 0.0;
+                verts[vertCount].y = (2 <= dims) ? pos[1] : 0.0;
+                verts[vertCount].z = (3 <= dims) ? pos[2] : 0.0;
+                cur->visited_verts[vid] = 1;
+                vertCount++;
+            }
+
+            // Attributes belong to the vertex-element pair
+            eattrs[ptCount].e = energies[j];
+            eattrs[ptCount].rho = densities[j];
+            eattrs[ptCount].v_x = v_xs[j];
+            eattrs[ptCount].v_y = v_ys[j];
+            eattrs[ptCount].v_z = v_zs[j];
+            eattrs[ptCount].vertex_id = vid;
+            eattrs[ptCount].element_id = i;
+            ptCount++;
+        }
+        eleCount++;
+    }
+    cur->cur_idx += eleCount;
+    *nverts = vertCount;
+    *neles = eleCount;
+    return ptCount;
+}
+
 int mfem_laghos_mesh_at_end(int mlm_handle, const mfem_mesh_iterator_t* iter) {
     mfem_laghos_mesh_t mlm = mlmv[mlm_handle];
     const long unsigned int nEles = mlm.mesh->GetNE();
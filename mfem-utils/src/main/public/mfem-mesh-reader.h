@@ -45,6 +45,19 @@ typedef struct laghos_mesh_element_geom {
     size_t element_id;
 } laghos_mesh_element_geom_t;
 
+/**
+ * Caller-provided per-field columns of mesh points, each with room for
+ * the same number of points
+ *
+ * Note: vertex_id may be NULL when the caller does not need vertex ids
+ */
+typedef struct laghos_mesh_columns {
+    double *x, *y, *z;
+    double *e, *rho, *v_x, *v_y, *v_z;
+    size_t *vertex_id;
+    size_t *element_id;
+} laghos_mesh_columns_t;
+
 /**
  * Iterator for an MFEM mesh 
  */
@@ -93,20 +106,38 @@ int mfem_laghos_mesh_close(int lmhandle);
  */
 int mfem_laghos_mesh_read_points(int mhandle, mfem_mesh_iterator_t* cur, laghos_mesh_point_t* points, size_t npoints);
 
+/**
+ * Read a portion of the globally distributed MFEM mesh into per-field columns
+ *
+ * @param[in] mhandle the mesh handle
+ * @param[in,out] cur the mesh iterator pointing at the current element
+ * @param[in] cols the columns to store mesh data into
+ * @param[in] npoints the number of points each column has room for
+ * @return the number of points stored in each column
+ * Note: Point i of the read is element i of every column, in the same
+ *       order mfem_laghos_mesh_read_points stores them. This function
+ *       will only read entire elements.
+ */
+int mfem_laghos_mesh_read_columns(int mhandle, mfem_mesh_iterator_t* cur,
+                                  const laghos_mesh_columns_t* cols, size_t npoints);
+
 /**
  * Read a portion of the globally distributed MFEM mesh as vertexes, element attrs, and element geometry
  *
  * @param[in] mhandle the mesh handle
  * @param[in,out] cur the mesh iterator pointing at the current element
- * @param[in,out] pointer to the vertex array to store mesh data into
- * @param[in,out] pointer to the element attr array to store mesh data into
- * @param[in,out] pointer to the element geometry array to store mesh data into
- * @param[in,out] pointer to the element array to store mesh data into
- * @param[in,out] neles the number of elements
- * @return the number of points stored in the in/out array
+ * @param[in,out] verts the vertex array to store mesh data into
+ * @param[in,out] nverts the capacity of verts, set to the number of vertices stored
+ * @param[in,out] eattrs the element attr array to store mesh data into, with
+ *                room for every vertex of neles elements
+ * @param[in,out] egeoms the element geometry array to store mesh data into
+ * @param[in,out] neles the capacity of egeoms, set to the number of elements stored
+ * @return the number of element attrs stored
  * Note: An MFEM mesh element contains multiple vertices. Those
  *       vertices are laghos_mesh_points. This function will only read
- *       entire elements. 
+ *       entire elements. A vertex is only stored in verts the first time
+ *       the iterator visits it, so cur must come from
+ *       mfem_mesh_iterator_init.
  */
 int mfem_laghos_mesh_read_ve(int mhandle, mfem_mesh_iterator_t *cur, 
                              laghos_mesh_vertex_t *verts, size_t *nverts,
@@ -86,6 +86,99 @@ void test_mfem_laghos_mesh_read() {
     cerr << __func__ << " Complete" << endl;
 }
 
+void test_mfem_laghos_mesh_read_columns() {
+    string meshDir = string(PROJECT_ROOT_DIR) + "/data/1m_points";
+    string meshFile = string(meshDir) + string("/1m_points_mesh"); 
+    string eGFFile = string(meshDir) + string("/1m_points_e"); 
+    string rhoGFFile = string(meshDir) + string("/1m_points_rho"); 
+    string vGFFile = string(meshDir) + string("/1m_points_v"); 
+    int mh = mfem_laghos_mesh_open(meshFile.c_str(), 
+                                   eGFFile.c_str(), 
+                                   rhoGFFile.c_str(), 
+                                   vGFFile.c_str());
+    assert(mh >= 0);
+
+    // The columns hold the same points as the flat read, field by field
+    static laghos_mesh_point_t points[2048];
+    static double x[2048], y[2048], z[2048], e[2048], rho[2048], v_x[2048], v_y[2048], v_z[2048];
+    static size_t vertex_id[2048], element_id[2048];
+    laghos_mesh_columns_t cols = {x, y, z, e, rho, v_x, v_y, v_z, vertex_id, element_id};
+    mfem_mesh_iterator_t piter = {0};
+    mfem_mesh_iterator_t citer = {0};
+    int count = mfem_laghos_mesh_read_points(mh, &piter, points, 2048);
+    assert(count == mfem_laghos_mesh_read_columns(mh, &citer, &cols, 2048));
+    assert(piter.cur_idx == citer.cur_idx);
+    for (int i = 0; i < count; i++) {
+        assert(points[i].x == x[i]);
+        assert(points[i].y == y[i]);
+        assert(points[i].z == z[i]);
+        assert(points[i].e == e[i]);
+        assert(points[i].rho == rho[i]);
+        assert(points[i].v_x == v_x[i]);
+        assert(points[i].v_y == v_y[i]);
+        assert(points[i].v_z == v_z[i]);
+        assert(points[i].vertex_id == vertex_id[i]);
+        assert(points[i].element_id == element_id[i]);
+    }
+
+    // Vertex ids are optional
+    cols.vertex_id = NULL;
+    while (!mfem_laghos_mesh_at_end(mh, &citer)) {
+        count = mfem_laghos_mesh_read_columns(mh, &citer, &cols, 2048);
+    }
+    assert(65536 == citer.cur_idx);
+
+    int rc = mfem_laghos_mesh_close(mh);
+    assert(rc == 0);
+    cerr << __func__ << " Complete" << endl;
+}
+
+void test_mfem_laghos_mesh_read_ve() {
+    string meshDir = string(PROJECT_ROOT_DIR) + "/data/1m_points";
+    string meshFile = string(meshDir) + string("/1m_points_mesh"); 
+    string eGFFile = string(meshDir) + string("/1m_points_e"); 
+    string rhoGFFile = string(meshDir) + string("/1m_points_rho"); 
+    string vGFFile = string(meshDir) + string("/1m_points_v"); 
+    int mh = mfem_laghos_mesh_open(meshFile.c_str(), 
+                                   eGFFile.c_str(), 
+                                   rhoGFFile.c_str(), 
+                                   vGFFile.c_str());
+    assert(mh >= 0);
+
+    // Read the whole mesh 256 elements at a time
+    static laghos_mesh_vertex_t verts[2048];
+    static laghos_mesh_element_attr_t eattrs[2048];
+    static laghos_mesh_element_geom_t egeoms[256];
+    mfem_mesh_iterator_t iter;
+    mfem_mesh_iterator_init(&iter);
+    size_t total_verts = 0, total_attrs = 0, total_eles = 0;
+    while (!mfem_laghos_mesh_at_end(mh, &iter)) {
+        size_t nverts = 2048, neles = 256;
+        int count = mfem_laghos_mesh_read_ve(mh, &iter, verts, &nverts, eattrs, egeoms, &neles);
+        assert(count == (int)(8 * neles));
+        for (size_t k = 0; k < neles; k++) {
+            assert(total_eles + k == egeoms[k].element_id);
+            for (size_t j = 0; j < 8; j++) {
+                assert(egeoms[k].vertexes[j] == eattrs[8 * k + j].vertex_id);
+                assert(iter.visited_verts[egeoms[k].vertexes[j]]);
+            }
+        }
+        total_verts += nverts;
+        total_attrs += count;
+        total_eles += neles;
+    }
+    assert(65536 == total_eles);
+    assert(524288 == total_attrs);
+
+    // Shared vertices are only returned once
+    assert(total_verts < total_attrs / 4);
+    mfem_mesh_iterator_destroy(&iter);
+
+    int rc = mfem_laghos_mesh_close(mh);
+    assert(rc == 0);
+    cerr << __func__ << " Complete" << endl;
+}
+
 void test_mfem_laghos_mesh_at_end() {
     string meshDir = string(PROJECT_ROOT_DIR) + "/data/1m_points";
     string meshFile = string(meshDir) + string("/1m_points_mesh"); 
@@ -178,6 +271,8 @@ int main() {
     test_mfem_laghos_mesh_open();
     test_mfem_laghos_mesh_close();
     test_mfem_laghos_mesh_read();
+    test_mfem_laghos_mesh_read_columns();
+    test_mfem_laghos_mesh_read_ve();
     test_mfem_laghos_mesh_at_end();
     test_mfem_laghos_mesh_get_num_elements();
     test_mfem_laghos_mesh_get_num_points();
@@ -0,0 +1,113 @@
+package sci.lucene;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.bkd.BKDConfig;
+import org.apache.lucene.util.bkd.BKDWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import sci.mfem.LaghosPointBatch;
+
+/**
+ * Measures BKD index construction over the 9 dimension Laghos points with
+ * either the first field or all 8 fields as index dimensions.
+ *
+ * add only fills the writer, addAndFinish also sorts the points and writes
+ * the .tpm/.tpd/.tpi files. Each invocation builds a complete index, so
+ * these run as single shot measurements.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class BKDBuildBenchmark {
+
+    /** Number of index dimensions, the remaining dimensions are data only */
+    @Param({"1", "8"})
+    public int indexDims;
+
+    /** Heap the writer may use before sorting offline */
+    @Param({"16", "256"})
+    public double maxMBSortInHeap;
+
+    @Setup(Level.Trial)
+    public void createDirectory() throws IOException {
+        this.tmpPath = Files.createTempDirectory("bkd-bench");
+        this.tmpDir = FSDirectory.open(this.tmpPath);
+    }
+
+    @Setup(Level.Invocation)
+    public void createWriter(MeshState mesh) {
+        BKDConfig config = new BKDConfig(IndexedMesh.LAGHOS_POINT_NDIMS, this.indexDims,
+                                         BKDPointCodec.BYTES_PER_DIM, IndexedMesh.BKD_LEAF_POINTS);
+        this.writer = new BKDWriter(mesh.numPoints, this.tmpDir, "bench", config,
+                                    this.maxMBSortInHeap, mesh.numPoints);
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeWriter() throws IOException {
+        this.writer.close();
+        for (String file : this.tmpDir.listAll()) {
+            this.tmpDir.deleteFile(file);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteDirectory() throws IOException {
+        this.tmpDir.close();
+        IOUtils.rm(this.tmpPath);
+    }
+
+    @Benchmark
+    public BKDWriter add(MeshState mesh) throws IOException {
+        addPoints(mesh.batch);
+        return this.writer;
+    }
+
+    @Benchmark
+    public long addAndFinish(MeshState mesh) throws IOException {
+        addPoints(mesh.batch);
+        try (IndexOutput metaOut = this.tmpDir.createOutput("bench.tpm", IOContext.DEFAULT);
+             IndexOutput idxOut = this.tmpDir.createOutput("bench.tpi", IOContext.DEFAULT);
+             IndexOutput dataOut = this.tmpDir.createOutput("bench.tpd", IOContext.DEFAULT)) {
+            Runnable writeIndex = this.writer.finish(metaOut, idxOut, dataOut);
+            writeIndex.run();
+            return dataOut.getFilePointer();
+        }
+    }
+
+    void addPoints(LaghosPointBatch batch) throws IOException {
+        byte[] packed = new byte[LaghosPointBatch.POINT_SIZE];
+        for (int i = 0; i < batch.size(); i++) {
+            BKDPointCodec.encode(batch, i, packed);
+            this.writer.add(packed, i);
+        }
+    }
+
+    // Directory for offline sorting and the finished index
+    Path tmpPath;
+    Directory tmpDir;
+
+    // Writer for the current invocation
+    BKDWriter writer;
+}
@@ -0,0 +1,100 @@
+package sci.lucene;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.lucene.util.IOUtils;
+import org.fusesource.leveldbjni.JniDBFactory;
+import org.iq80.leveldb.DB;
+import org.iq80.leveldb.Options;
+import org.iq80.leveldb.WriteBatch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import sci.mfem.LaghosPointBatch;
+
+/**
+ * Measures loading every field of the mesh into LevelDB and RocksDB with
+ * MeshKeyCodec keys, for single puts and WriteBatches.
+ *
+ * A batchSize of 1 issues one put per key. Each invocation loads a fresh
+ * store, so these run as single shot measurements.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+@State(Scope.Thread)
+public class KVPutBenchmark {
+
+    /** Points per WriteBatch, 1 for individual puts */
+    @Param({"1", "4096"})
+    public int batchSize;
+
+    @Setup(Level.Invocation)
+    public void createDirectory() throws IOException {
+        this.dbPath = Files.createTempDirectory("kv-bench");
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteDirectory() throws IOException {
+        IOUtils.rm(this.dbPath);
+    }
+
+    @Benchmark
+    public long levelDB(MeshState mesh) throws IOException {
+        Options options = new Options();
+        options.createIfMissing(true);
+        options.writeBufferSize(4*1024*1024);
+        byte[] key = new byte[MeshKeyCodec.KEY_SIZE];
+        LaghosPointBatch batch = mesh.batch;
+        try (DB db = JniDBFactory.factory.open(this.dbPath.toFile(), options)) {
+            WriteBatch wb = db.createWriteBatch();
+            int pending = 0;
+            for (int i = 0; i < batch.size(); i++) {
+                for (int d = 0; d < LaghosPointBatch.NUM_FIELDS; d++) {
+                    MeshKeyCodec.encodeKey(batch, i, d, key);
+                    if (1 == this.batchSize) {
+                        db.put(key, MeshKeyCodec.EMPTY_VALUE);
+                    } else {
+                        wb.put(key, MeshKeyCodec.EMPTY_VALUE);
+                    }
+                }
+                if (1 < this.batchSize && ++pending == this.batchSize) {
+                    db.write(wb);
+                    wb.close();
+                    wb = db.createWriteBatch();
+                    pending = 0;
+                }
+            }
+            db.write(wb);
+            wb.close();
+        }
+        return batch.size();
+    }
+
+    @Benchmark
+    public long rocksDB(MeshState mesh) throws IOException {
+        File dbFile = new File(this.dbPath.toFile(), "rocks");
+        try (RocksDBMeshStore store = new RocksDBMeshStore(dbFile, 1, false)) {
+            return store.ingest(List.of(mesh.newSource()), this.batchSize);
+        }
+    }
+
+    // Directory holding the store for the current invocation
+    Path dbPath;
+}
@@ -0,0 +1,141 @@
+package sci.lucene;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.bkd.BKDConfig;
+import org.apache.lucene.util.bkd.BKDWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import sci.mfem.LaghosField;
+import sci.mfem.LaghosPointBatch;
+
+/**
+ * Compares range queries over an 8 index dimension BKD tree with the same
+ * queries over a binned bitmap index and a Lucene DoublePoint index.
+ *
+ * The indexes are built once per trial. box constrains only the position,
+ * fields constrains four fields with moderate ranges each, the
+ * many-attribute, low selectivity shape scientists usually ask for. The
+ * aggregate benchmarks compute the same statistics with and without the
+ * BKD node summaries. lucene runs the query as a DoublePoint range query
+ * over an index written through IndexWriter.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MeshQueryBenchmark {
+
+    /** Query workload */
+    @Param({"box", "fields"})
+    public String query;
+
+    /** Bins per field of the bitmap index */
+    @Param({"128"})
+    public int bins;
+
+    @Setup(Level.Trial)
+    public void buildIndexes(MeshState mesh) throws IOException {
+        this.tmpPath = Files.createTempDirectory("query-bench");
+        try (Directory tmpDir = FSDirectory.open(this.tmpPath)) {
+            BKDConfig config = new BKDConfig(IndexedMesh.LAGHOS_POINT_NDIMS, LaghosPointBatch.NUM_FIELDS,
+                                             BKDPointCodec.BYTES_PER_DIM, IndexedMesh.BKD_LEAF_POINTS);
+            BKDWriter writer = new BKDWriter(mesh.numPoints, tmpDir, "bench", config, 256, mesh.numPoints);
+            byte[] packed = new byte[LaghosPointBatch.POINT_SIZE];
+            for (int i = 0; i < mesh.batch.size(); i++) {
+                BKDPointCodec.encode(mesh.batch, i, packed);
+                writer.add(packed, i);
+            }
+            String name = this.tmpPath.resolve("bench").toString();
+            IndexedMesh.writeIndex(writer, name);
+            writer.close();
+            IndexedMesh.writeSummaries(name);
+            this.bkd = new BKDIndexReader(name);
+        }
+        this.bitmaps = BitmapMeshIndex.build(mesh.newSource(), this.tmpPath.resolve("bitmaps"), this.bins,
+                                             Runtime.getRuntime().availableProcessors());
+        this.lucene = LuceneMeshIndex.build(mesh.newSource(), this.tmpPath.resolve("lucene"),
+                                            Runtime.getRuntime().availableProcessors());
+
+        if ("box".equals(this.query)) {
+            this.q = new MeshQuery().box(0.2, 0.4, 0.2, 0.4, 0.2, 0.4);
+        } else {
+            this.q = new MeshQuery().range(LaghosField.E, 1.0, 2.0)
+                                    .greaterThan(LaghosField.RHO, 1.5)
+                                    .range(LaghosField.V_X, 0.0, 0.5)
+                                    .range(LaghosField.Z, 0.3, 0.7);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteIndexes() throws IOException {
+        this.bkd.close();
+        this.bitmaps.close();
+        this.lucene.close();
+        IOUtils.rm(this.tmpPath);
+    }
+
+    @Benchmark
+    public MeshQueryResult bkd() throws IOException {
+        return this.bkd.query(this.q);
+    }
+
+    @Benchmark
+    public MeshAggregate bkdAggregate() throws IOException {
+        return this.bkd.aggregate(this.q);
+    }
+
+    @Benchmark
+    public MeshAggregate bkdScanAggregate() throws IOException {
+        return this.bkd.scanAggregate(this.q);
+    }
+
+    @Benchmark
+    public MeshQueryResult bitmap() {
+        return this.bitmaps.query(this.q);
+    }
+
+    @Benchmark
+    public long bitmapCount() {
+        return this.bitmaps.count(this.q);
+    }
+
+    @Benchmark
+    public MeshQueryResult lucene() throws IOException {
+        return this.lucene.query(this.q);
+    }
+
+    @Benchmark
+    public long luceneCount() throws IOException {
+        return this.lucene.count(this.q);
+    }
+
+    // Directory holding the indexes
+    Path tmpPath;
+
+    // The indexes being compared
+    BKDIndexReader bkd;
+    BitmapMeshIndex bitmaps;
+    LuceneMeshIndex lucene;
+
+    // Query for the trial
+    MeshQuery q;
+}
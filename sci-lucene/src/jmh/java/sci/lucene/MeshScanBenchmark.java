@@ -0,0 +1,114 @@
+package sci.lucene;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import sci.mfem.LaghosColumnBatch;
+import sci.mfem.LaghosField;
+import sci.mfem.LaghosPointBatch;
+import sci.mfem.LaghosPointSource;
+
+/**
+ * Measures a full pass over a mesh source for several fetch buffer sizes.
+ *
+ * scanBatches reads every field through the batch flyweight, scanCopies
+ * copies every point out as the LevelDB and BKD trials used to.
+ * vectorCount counts the points matching a range query with a
+ * VectorScanEngine over the source, vectorCountCopy over an off-heap column
+ * copy of it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class MeshScanBenchmark {
+
+    /** Approximate number of synthetic points */
+    @Param({"1000000"})
+    public long meshPoints;
+
+    /** Laghos dump to read instead of the synthetic mesh, empty for synthetic */
+    @Param({""})
+    public String meshPrefix;
+
+    /** Points fetched from the source per batch */
+    @Param({"4096", "65536", "1048576"})
+    public int fetchCount;
+
+    @Setup(Level.Trial)
+    public void open() {
+        this.source = MeshState.openSource(this.meshPrefix, this.meshPoints, this.fetchCount);
+        this.engine = new VectorScanEngine(this.source, Runtime.getRuntime().availableProcessors());
+        this.copy = VectorScanEngine.copyColumns(this.source);
+        this.query = new MeshQuery().range(LaghosField.E, 1.0, 2.0).greaterThan(LaghosField.RHO, 0.1);
+    }
+
+    @TearDown(Level.Trial)
+    public void close() {
+        this.engine.close();
+        this.source.close();
+    }
+
+    @Benchmark
+    public void scanBatches(Blackhole bh) {
+        this.source.resetIterator();
+        for (LaghosPointBatch batch = this.source.getNextLaghosPointBatch(); batch != null;
+             batch = this.source.getNextLaghosPointBatch()) {
+            for (int i = 0; i < batch.size(); i++) {
+                for (int d = 0; d < LaghosPointBatch.NUM_FIELDS; d++) {
+                    bh.consume(batch.getDouble(i, d));
+                }
+                bh.consume(batch.getElementId(i));
+            }
+        }
+    }
+
+    @Benchmark
+    public void scanCopies(Blackhole bh) {
+        byte[] point = new byte[LaghosPointBatch.POINT_SIZE];
+        this.source.resetIterator();
+        for (LaghosPointBatch batch = this.source.getNextLaghosPointBatch(); batch != null;
+             batch = this.source.getNextLaghosPointBatch()) {
+            for (int i = 0; i < batch.size(); i++) {
+                batch.copyPoint(i, point);
+                bh.consume(point);
+            }
+        }
+    }
+
+    @Benchmark
+    public long vectorCount() {
+        return this.engine.count(this.query);
+    }
+
+    @Benchmark
+    public long vectorCountCopy() {
+        return this.engine.scan(this.copy, this.query, false).getCount();
+    }
+
+    // Source being scanned
+    LaghosPointSource source;
+
+    // Vectorized scan of source
+    VectorScanEngine engine;
+
+    // Off-heap column copy of source
+    LaghosColumnBatch copy;
+
+    // Query counted by the vector benchmarks
+    MeshQuery query;
+}
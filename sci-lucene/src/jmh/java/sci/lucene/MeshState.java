@@ -0,0 +1,129 @@
+package sci.lucene;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import sci.mfem.LaghosMeshReader;
+import sci.mfem.LaghosPointBatch;
+import sci.mfem.LaghosPointSource;
+import sci.mfem.SyntheticLaghosMesh;
+
+/**
+ * The mesh shared by the indexing benchmarks.
+ *
+ * The points are materialized once into a heap buffer, so the indexing
+ * benchmarks measure the index and not the mesh source. By default the mesh
+ * is generated by SyntheticLaghosMesh; set meshPrefix to the path of a Laghos
+ * dump (without the _mesh/_e/_rho/_v suffixes) to index a real mesh through
+ * the native reader instead.
+ */
+@State(Scope.Benchmark)
+public class MeshState {
+
+    /** Approximate number of synthetic points */
+    @Param({"1000000"})
+    public long meshPoints;
+
+    /** Laghos dump to read instead of the synthetic mesh, empty for synthetic */
+    @Param({""})
+    public String meshPrefix;
+
+    /** Open a new source over the configured mesh */
+    static LaghosPointSource openSource(String meshPrefix, long meshPoints, int fetchCount) {
+        if (meshPrefix.isEmpty()) {
+            return SyntheticLaghosMesh.withPoints(meshPoints, fetchCount);
+        }
+        LaghosMeshReader lmr = new LaghosMeshReader(meshPrefix + "_mesh", meshPrefix + "_e",
+                                                    meshPrefix + "_rho", meshPrefix + "_v");
+        lmr.setFetchCount(fetchCount);
+        return lmr;
+    }
+
+    @Setup(Level.Trial)
+    public void load() {
+        LaghosPointSource source = openSource(this.meshPrefix, this.meshPoints, SyntheticLaghosMesh.DEFAULT_FETCH_COUNT);
+        this.numPoints = source.getNumPoints();
+        this.numElements = source.getNumElements();
+        this.points = ByteBuffer.allocate(this.numPoints * LaghosPointBatch.POINT_SIZE).order(ByteOrder.nativeOrder());
+        byte[] scratch = new byte[LaghosPointBatch.POINT_SIZE];
+        for (LaghosPointBatch batch = source.getNextLaghosPointBatch(); batch != null;
+             batch = source.getNextLaghosPointBatch()) {
+            for (int i = 0; i < batch.size(); i++) {
+                batch.copyPoint(i, scratch);
+                this.points.put(scratch);
+            }
+        }
+        source.close();
+        this.batch = new LaghosPointBatch();
+        this.batch.reset(this.points, 0, this.numPoints, 0);
+    }
+
+    /** @return a source serving the materialized points as a single batch */
+    LaghosPointSource newSource() {
+        return new LaghosPointSource() {
+            @Override
+            public long getNumElements() {
+                return numElements;
+            }
+
+            @Override
+            public int getNumPoints() {
+                return numPoints;
+            }
+
+            @Override
+            public long getFirstPointIndex() {
+                return 0;
+            }
+
+            @Override
+            public LaghosPointBatch getNextLaghosPointBatch() {
+                if (this.served) {
+                    return null;
+                }
+                this.served = true;
+                return batch;
+            }
+
+            @Override
+            public void resetIterator() {
+                this.served = false;
+            }
+
+            @Override
+            public List<LaghosPointSource> split(int n) {
+                return List.of(this);
+            }
+
+            @Override
+            public void close() {
+            }
+
+            // True once the batch has been returned
+            boolean served;
+        };
+    }
+
+    @TearDown(Level.Trial)
+    public void release() {
+        this.points = null;
+    }
+
+    // Number of points in the mesh
+    int numPoints;
+
+    // Number of elements in the mesh
+    long numElements;
+
+    // Every point of the mesh
+    ByteBuffer points;
+
+    // Batch covering every point
+    LaghosPointBatch batch;
+}
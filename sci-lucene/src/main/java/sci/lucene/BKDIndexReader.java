@@ -0,0 +1,366 @@
+package sci.lucene;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.index.PointValues;
+import org.apache.lucene.index.PointValues.IntersectVisitor;
+import org.apache.lucene.index.PointValues.PointTree;
+import org.apache.lucene.index.PointValues.Relation;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.bkd.BKDReader;
+import sci.mfem.LaghosPointBatch;
+
+/**
+ * Opens the .tpm/.tpd/.tpi files written by IndexedMesh and answers range
+ * queries over them.
+ *
+ * Both a single tree written by IndexedMesh.writeIndex and the concatenated
+ * trees written by ShardedBKDWriter are supported. The files are memory
+ * mapped, so opening an index only reads the tree metadata. When the
+ * index has a .tpa file of node summaries, aggregate queries use it to skip
+ * decoding the points of cells that lie inside the query.
+ *
+ * With a leaf cache, queries walk the trees themselves and keep each leaf
+ * they reach decoded, so repeated and overlapping queries filter decoded
+ * doubles instead of re-reading and decoding the mapped leaf blocks.
+ */
+public class BKDIndexReader implements MeshIndex {
+
+    /** The bits of a leaf cache key below the tree number, which hold the node id */
+    static final int LEAF_TREE_SHIFT = 48;
+
+    /**
+     * Open an index
+     *
+     * @param filename the index base name, without the .tpm/.tpd/.tpi suffix
+     */
+    public BKDIndexReader(String filename) throws IOException {
+        Path base = Path.of(filename).toAbsolutePath();
+        String name = base.getFileName().toString();
+        this.dir = new MMapDirectory(base.getParent());
+        this.metaIn = this.dir.openInput(name + ".tpm", IOContext.READ);
+        this.idxIn = this.dir.openInput(name + ".tpi", IOContext.READ);
+        this.dataIn = this.dir.openInput(name + ".tpd", IOContext.READ);
+        this.trees = new ArrayList<>();
+
+        // Determine whether this is a single tree or a table of shards
+        CodecUtil.readBEInt(this.metaIn);
+        String codec = this.metaIn.readString();
+        this.metaIn.seek(0);
+        if (codec.equals(ShardedBKDWriter.SHARDS_CODEC)) {
+            CodecUtil.checkHeader(this.metaIn, ShardedBKDWriter.SHARDS_CODEC,
+                                  ShardedBKDWriter.VERSION_CURRENT, ShardedBKDWriter.VERSION_CURRENT);
+            int numShards = this.metaIn.readVInt();
+            long[] table = new long[4 * numShards];
+            for (int i = 0; i < table.length; i++) {
+                table[i] = this.metaIn.readLong();
+            }
+            // Each shard's metadata follows the table in shard order
+            for (int k = 0; k < numShards; k++) {
+                IndexInput shardIdx = this.idxIn.slice("shard" + k + " index", table[4*k], table[4*k + 1]);
+                IndexInput shardData = this.dataIn.slice("shard" + k + " data", table[4*k + 2], table[4*k + 3]);
+                this.trees.add(new BKDReader(this.metaIn, shardIdx, shardData));
+            }
+        } else {
+            this.trees.add(new BKDReader(this.metaIn, this.idxIn, this.dataIn));
+        }
+
+        String summaryName = name + BKDNodeSummaries.SUFFIX;
+        if (Files.exists(base.resolveSibling(summaryName))) {
+            this.summaries = BKDNodeSummaries.read(this.dir, summaryName, this.trees.size());
+        } else {
+            this.summaries = null;
+        }
+    }
+
+    @Override
+    public long getNumPoints() {
+        long total = 0;
+        for (PointValues tree : this.trees) {
+            total += tree.size();
+        }
+        return total;
+    }
+
+    /** @return the number of trees (shards) in the index */
+    public int getNumTrees() {
+        return this.trees.size();
+    }
+
+    /** Pass every tree of the index to visitor */
+    public void intersect(IntersectVisitor visitor) throws IOException {
+        for (PointValues tree : this.trees) {
+            tree.intersect(visitor);
+        }
+    }
+
+    /**
+     * Keep the leaves queries reach decoded in cache, or stop caching them
+     * if it is null. Set the cache before the reader is shared between threads.
+     */
+    public void setLeafCache(MeshCache<Long, MeshPoints> cache) {
+        this.leafCache = cache;
+    }
+
+    /** @return the leaf cache, or null if leaves are decoded on every query */
+    public MeshCache<Long, MeshPoints> getLeafCache() {
+        return this.leafCache;
+    }
+
+    @Override
+    public MeshQueryResult query(MeshQuery q) throws IOException {
+        return query(q, null);
+    }
+
+    /**
+     * Evaluate a query, adding the matching points to points unless it is null
+     */
+    @Override
+    public MeshQueryResult query(MeshQuery q, MeshPoints points) throws IOException {
+        long begin = System.nanoTime();
+        MeshQueryResult result = new MeshQueryResult(getNumPoints());
+        for (int t = 0; t < this.trees.size(); t++) {
+            PointValues tree = this.trees.get(t);
+            RangeVisitor visitor = new RangeVisitor(q, tree.getNumIndexDimensions(), result, points);
+            if (null == this.leafCache) {
+                tree.intersect(visitor);
+            } else {
+                intersectCached(t, tree.getPointTree(), 1L, q, visitor);
+            }
+        }
+        result.finish(System.nanoTime() - begin);
+        return result;
+    }
+
+    /**
+     * Intersect the subtree rooted at node with q, filtering the decoded
+     * leaves from the leaf cache. Nodes are numbered as in a heap, the root
+     * is 1 and the children of n are 2n and 2n+1.
+     */
+    void intersectCached(int t, PointTree node, long nodeId, MeshQuery q, RangeVisitor visitor) throws IOException {
+        if (Relation.CELL_OUTSIDE_QUERY == visitor.compare(node.getMinPackedValue(), node.getMaxPackedValue())) {
+            return;
+        }
+        if (node.moveToChild()) {
+            long child = 2 * nodeId;
+            do {
+                intersectCached(t, node, child++, q, visitor);
+            } while (node.moveToSibling());
+            node.moveToParent();
+        } else {
+            decodedLeaf(t, nodeId, node).select(q, visitor.result, visitor.points);
+        }
+    }
+
+    /** @return the points of leaf nodeId of tree t, from the leaf cache or decoded into it */
+    MeshPoints decodedLeaf(int t, long nodeId, PointTree node) throws IOException {
+        Long key = ((long)t << LEAF_TREE_SHIFT) | nodeId;
+        MeshPoints leaf = this.leafCache.get(key);
+        if (null == leaf) {
+            MeshPoints decoded = new MeshPoints((int)node.size());
+            node.visitDocValues(new IntersectVisitor() {
+                @Override
+                public void visit(int docID) {
+                    throw new IllegalStateException("Leaves are always visited with their values");
+                }
+
+                @Override
+                public void visit(int docID, byte[] packedValue) {
+                    decoded.addPacked(packedValue);
+                }
+
+                @Override
+                public Relation compare(byte[] minPackedValue, byte[] maxPackedValue) {
+                    return Relation.CELL_CROSSES_QUERY;
+                }
+            });
+            leaf = decoded.trim();
+            this.leafCache.put(key, leaf);
+        }
+        return leaf;
+    }
+
+    /** @return true if the index has node summaries for aggregate queries */
+    public boolean hasSummaries() {
+        return null != this.summaries;
+    }
+
+    /**
+     * Count the points matching q and compute the min, max and sum of each
+     * field over them, from the node summaries when the index has them
+     */
+    public MeshAggregate aggregate(MeshQuery q) throws IOException {
+        if (null == this.summaries) {
+            return scanAggregate(q);
+        }
+        long begin = System.nanoTime();
+        MeshAggregate result = new MeshAggregate(getNumPoints());
+        this.summaries.aggregate(this.trees, q, result);
+        result.finish(System.nanoTime() - begin);
+        return result;
+    }
+
+    /** Compute the same aggregate as aggregate(q) by decoding every matching point */
+    public MeshAggregate scanAggregate(MeshQuery q) throws IOException {
+        long begin = System.nanoTime();
+        MeshAggregate result = new MeshAggregate(getNumPoints());
+        for (PointValues tree : this.trees) {
+            tree.intersect(new AggregateVisitor(q, tree.getNumIndexDimensions(), result));
+        }
+        result.finish(System.nanoTime() - begin);
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.metaIn.close();
+        this.idxIn.close();
+        this.dataIn.close();
+        this.dir.close();
+    }
+
+    /**
+     * Collects the points inside a MeshQuery.
+     *
+     * Cells fully inside the query are reported as crossing, because the
+     * element id is a data dimension that is only passed to visit(docID,
+     * packedValue).
+     */
+    static class RangeVisitor implements IntersectVisitor {
+        RangeVisitor(MeshQuery q, int numIndexDims, MeshQueryResult result, MeshPoints points) {
+            this.numIndexDims = numIndexDims;
+            this.result = result;
+            this.points = points;
+            this.min = new long[LaghosPointBatch.NUM_FIELDS];
+            this.max = new long[LaghosPointBatch.NUM_FIELDS];
+            for (int d = 0; d < LaghosPointBatch.NUM_FIELDS; d++) {
+                this.min[d] = BKDPointCodec.sortableLong(q.getMin(d));
+                this.max[d] = BKDPointCodec.sortableLong(q.getMax(d));
+            }
+        }
+
+        @Override
+        public void visit(int docID) {
+            throw new IllegalStateException("Cells are never reported inside the query");
+        }
+
+        @Override
+        public void visit(int docID, byte[] packedValue) {
+            for (int d = 0; d < LaghosPointBatch.NUM_FIELDS; d++) {
+                long v = BKDPointCodec.sortableLong(packedValue, d);
+                if (v < this.min[d] || v > this.max[d]) {
+                    return;
+                }
+            }
+            this.result.addPoint(BKDPointCodec.decodeElementId(packedValue));
+            if (null != this.points) {
+                this.points.addPacked(packedValue);
+            }
+        }
+
+        @Override
+        public Relation compare(byte[] minPackedValue, byte[] maxPackedValue) {
+            for (int d = 0; d < this.numIndexDims; d++) {
+                long cellMin = BKDPointCodec.sortableLong(minPackedValue, d);
+                long cellMax = BKDPointCodec.sortableLong(maxPackedValue, d);
+                if (cellMax < this.min[d] || cellMin > this.max[d]) {
+                    return Relation.CELL_OUTSIDE_QUERY;
+                }
+            }
+            return Relation.CELL_CROSSES_QUERY;
+        }
+
+        // Number of dimensions the cell bounds cover
+        final int numIndexDims;
+
+        // Sortable lower bound of each field
+        final long[] min;
+
+        // Sortable upper bound of each field
+        final long[] max;
+
+        // Result the matching points are added to
+        final MeshQueryResult result;
+
+        // Decoded matching points, or null if they are not kept
+        final MeshPoints points;
+    }
+
+    /**
+     * Adds the points inside a MeshQuery to a MeshAggregate.
+     *
+     * Like RangeVisitor, cells are never reported inside the query because
+     * the field values are needed for the min, max and sum.
+     */
+    static class AggregateVisitor implements IntersectVisitor {
+        AggregateVisitor(MeshQuery q, int numIndexDims, MeshAggregate result) {
+            this.q = q;
+            this.numIndexDims = numIndexDims;
+            this.result = result;
+            this.values = new double[LaghosPointBatch.NUM_FIELDS];
+        }
+
+        @Override
+        public void visit(int docID) {
+            throw new IllegalStateException("Cells are never reported inside the query");
+        }
+
+        @Override
+        public void visit(int docID, byte[] packedValue) {
+            for (int d = 0; d < LaghosPointBatch.NUM_FIELDS; d++) {
+                double v = BKDPointCodec.decodeDouble(packedValue, d);
+                if (v < this.q.getMin(d) || v > this.q.getMax(d)) {
+                    return;
+                }
+                this.values[d] = v;
+            }
+            this.result.addPoint(this.values);
+        }
+
+        @Override
+        public Relation compare(byte[] minPackedValue, byte[] maxPackedValue) {
+            for (int d = 0; d < this.numIndexDims; d++) {
+                double cellMin = BKDPointCodec.decodeDouble(minPackedValue, d);
+                double cellMax = BKDPointCodec.decodeDouble(maxPackedValue, d);
+                if (cellMax < this.q.getMin(d) || cellMin > this.q.getMax(d)) {
+                    return Relation.CELL_OUTSIDE_QUERY;
+                }
+            }
+            return Relation.CELL_CROSSES_QUERY;
+        }
+
+        // Query the points must satisfy
+        final MeshQuery q;
+
+        // Number of dimensions the cell bounds cover
+        final int numIndexDims;
+
+        // Decoded fields of the current point
+        final double[] values;
+
+        // Aggregate the matching points are added to
+        final MeshAggregate result;
+    }
+
+    // Directory holding the mapped index files
+    final Directory dir;
+
+    // Mapped index files
+    final IndexInput metaIn, idxIn, dataIn;
+
+    // One tree per shard
+    final List<PointValues> trees;
+
+    // Per-node summaries, or null if the index has none
+    final BKDNodeSummaries summaries;
+
+    // Decoded leaves by tree and node id, or null
+    MeshCache<Long, MeshPoints> leafCache;
+}
@@ -0,0 +1,285 @@
+package sci.lucene;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.index.CorruptIndexException;
+import org.apache.lucene.index.PointValues;
+import org.apache.lucene.index.PointValues.IntersectVisitor;
+import org.apache.lucene.index.PointValues.PointTree;
+import org.apache.lucene.index.PointValues.Relation;
+import org.apache.lucene.store.ChecksumIndexInput;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.OutputStreamIndexOutput;
+import org.apache.lucene.util.ArrayUtil;
+import sci.mfem.LaghosPointBatch;
+
+/**
+ * Per-node summaries of the trees in a .tpm/.tpd/.tpi index, stored in a
+ * .tpa file next to them.
+ *
+ * Every inner and leaf node records the number of points below it and the
+ * exact min, max and sum of each Laghos field over those points. Nodes are
+ * kept in depth first pre-order along with the size of their subtree, so a
+ * traversal can skip the summaries of a subtree it prunes. Aggregate queries
+ * add the summary of any node whose points all lie inside the query and only
+ * decode the leaves on the query boundary.
+ *
+ * The min and max are usually tighter than the cell bounds BKDReader
+ * reports, which follow the split values, so they also prune more nodes.
+ */
+public class BKDNodeSummaries {
+
+    /** The codec name in the summary file header */
+    public static final String SUMMARIES_CODEC = "TaprootBKDSummaries";
+
+    /** The current summary file version */
+    public static final int VERSION_CURRENT = 0;
+
+    /** The suffix of the summary file */
+    public static final String SUFFIX = ".tpa";
+
+    /**
+     * Summarize every node of trees
+     *
+     * @throws IllegalArgumentException if a tree does not hold packed Laghos points
+     */
+    static BKDNodeSummaries build(List<PointValues> trees) throws IOException {
+        BKDNodeSummaries summaries = new BKDNodeSummaries(trees.size(), 1024);
+        for (int t = 0; t < trees.size(); t++) {
+            PointValues tree = trees.get(t);
+            if (tree.getNumDimensions() != BKDPointCodec.NUM_DIMS
+                || tree.getBytesPerDimension() != BKDPointCodec.BYTES_PER_DIM) {
+                throw new IllegalArgumentException("Tree " + t + " does not hold packed Laghos points");
+            }
+            summaries.treeStart[t] = summaries.numNodes;
+            summaries.summarize(tree.getPointTree());
+        }
+        summaries.treeStart[trees.size()] = summaries.numNodes;
+        return summaries;
+    }
+
+    /**
+     * Summarize the trees of index and write the summaries to filename.tpa
+     *
+     * @return the size of the summary file, or -1 if index does not hold packed Laghos points
+     */
+    public static long write(BKDIndexReader index, String filename) throws IOException {
+        BKDNodeSummaries summaries;
+        try {
+            summaries = build(index.trees);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+        final File file = new File(filename + SUFFIX);
+        try (OutputStreamIndexOutput out = new OutputStreamIndexOutput("summaries", file.getName(),
+                                                                      new FileOutputStream(file),
+                                                                      4*1024*1024)) {
+            CodecUtil.writeHeader(out, SUMMARIES_CODEC, VERSION_CURRENT);
+            int numTrees = summaries.treeStart.length - 1;
+            out.writeVInt(numTrees);
+            for (int t = 0; t <= numTrees; t++) {
+                out.writeVInt(summaries.treeStart[t]);
+            }
+            for (int n = 0; n < summaries.numNodes; n++) {
+                out.writeVInt(summaries.subtreeNodes[n]);
+                out.writeVLong(summaries.counts[n]);
+                for (int d = n * LaghosPointBatch.NUM_FIELDS; d < (n + 1) * LaghosPointBatch.NUM_FIELDS; d++) {
+                    out.writeLong(Double.doubleToRawLongBits(summaries.min[d]));
+                    out.writeLong(Double.doubleToRawLongBits(summaries.max[d]));
+                    out.writeLong(Double.doubleToRawLongBits(summaries.sum[d]));
+                }
+            }
+            CodecUtil.writeFooter(out);
+        }
+        return file.length();
+    }
+
+    /**
+     * Read the summaries of an index
+     *
+     * @param name the summary file name within dir
+     * @param numTrees the number of trees in the index
+     */
+    static BKDNodeSummaries read(Directory dir, String name, int numTrees) throws IOException {
+        try (ChecksumIndexInput in = dir.openChecksumInput(name, IOContext.READONCE)) {
+            CodecUtil.checkHeader(in, SUMMARIES_CODEC, VERSION_CURRENT, VERSION_CURRENT);
+            if (in.readVInt() != numTrees) {
+                throw new CorruptIndexException("Summaries do not match the " + numTrees + " index trees", in);
+            }
+            int[] treeStart = new int[numTrees + 1];
+            for (int t = 0; t <= numTrees; t++) {
+                treeStart[t] = in.readVInt();
+            }
+            BKDNodeSummaries summaries = new BKDNodeSummaries(numTrees, treeStart[numTrees]);
+            System.arraycopy(treeStart, 0, summaries.treeStart, 0, treeStart.length);
+            for (int n = 0; n < treeStart[numTrees]; n++) {
+                summaries.subtreeNodes[n] = in.readVInt();
+                summaries.counts[n] = in.readVLong();
+                for (int d = n * LaghosPointBatch.NUM_FIELDS; d < (n + 1) * LaghosPointBatch.NUM_FIELDS; d++) {
+                    summaries.min[d] = Double.longBitsToDouble(in.readLong());
+                    summaries.max[d] = Double.longBitsToDouble(in.readLong());
+                    summaries.sum[d] = Double.longBitsToDouble(in.readLong());
+                }
+            }
+            summaries.numNodes = treeStart[numTrees];
+            CodecUtil.checkFooter(in);
+            return summaries;
+        }
+    }
+
+    BKDNodeSummaries(int numTrees, int capacity) {
+        this.treeStart = new int[numTrees + 1];
+        this.subtreeNodes = new int[capacity];
+        this.counts = new long[capacity];
+        this.min = new double[capacity * LaghosPointBatch.NUM_FIELDS];
+        this.max = new double[capacity * LaghosPointBatch.NUM_FIELDS];
+        this.sum = new double[capacity * LaghosPointBatch.NUM_FIELDS];
+        this.numNodes = 0;
+    }
+
+    /** @return the number of summarized nodes over every tree */
+    public int getNumNodes() {
+        return this.numNodes;
+    }
+
+    /**
+     * Add the points of trees matching q to result, using the summary of
+     * every node that lies inside q
+     */
+    void aggregate(List<PointValues> trees, MeshQuery q, MeshAggregate result) throws IOException {
+        for (int t = 0; t < trees.size(); t++) {
+            PointValues tree = trees.get(t);
+            aggregate(tree.getPointTree(), this.treeStart[t], q,
+                      new BKDIndexReader.AggregateVisitor(q, tree.getNumIndexDimensions(), result), result);
+        }
+    }
+
+    /** Aggregate the subtree rooted at node, whose summary is at position n */
+    void aggregate(PointTree node, int n, MeshQuery q, IntersectVisitor leafVisitor, MeshAggregate result)
+        throws IOException {
+        Relation r = relate(n, q);
+        if (Relation.CELL_OUTSIDE_QUERY == r) {
+            return;
+        }
+        if (Relation.CELL_INSIDE_QUERY == r) {
+            result.addSummary(this.counts[n], this.min, this.max, this.sum, n * LaghosPointBatch.NUM_FIELDS);
+            return;
+        }
+        if (node.moveToChild()) {
+            int child = n + 1;
+            do {
+                aggregate(node, child, q, leafVisitor, result);
+                child += this.subtreeNodes[child];
+            } while (node.moveToSibling());
+            node.moveToParent();
+        } else {
+            node.visitDocValues(leafVisitor);
+        }
+    }
+
+    /** @return how the points summarized at position n relate to q */
+    Relation relate(int n, MeshQuery q) {
+        if (0 == this.counts[n]) {
+            return Relation.CELL_OUTSIDE_QUERY;
+        }
+        Relation r = Relation.CELL_INSIDE_QUERY;
+        for (int d = 0; d < LaghosPointBatch.NUM_FIELDS; d++) {
+            int i = n * LaghosPointBatch.NUM_FIELDS + d;
+            if (this.max[i] < q.getMin(d) || this.min[i] > q.getMax(d)) {
+                return Relation.CELL_OUTSIDE_QUERY;
+            }
+            if (this.min[i] < q.getMin(d) || this.max[i] > q.getMax(d)) {
+                r = Relation.CELL_CROSSES_QUERY;
+            }
+        }
+        return r;
+    }
+
+    /** Append the summaries of the subtree rooted at node in pre-order */
+    int summarize(PointTree node) throws IOException {
+        final int n = addNode();
+        if (node.moveToChild()) {
+            do {
+                int child = summarize(node);
+                merge(n, child);
+            } while (node.moveToSibling());
+            node.moveToParent();
+        } else {
+            node.visitDocValues(new IntersectVisitor() {
+                @Override
+                public void visit(int docID) {
+                    throw new IllegalStateException("Leaves are always visited with their values");
+                }
+
+                @Override
+                public void visit(int docID, byte[] packedValue) {
+                    for (int d = 0; d < LaghosPointBatch.NUM_FIELDS; d++) {
+                        int i = n * LaghosPointBatch.NUM_FIELDS + d;
+                        double v = BKDPointCodec.decodeDouble(packedValue, d);
+                        min[i] = Math.min(min[i], v);
+                        max[i] = Math.max(max[i], v);
+                        sum[i] += v;
+                    }
+                    counts[n]++;
+                }
+
+                @Override
+                public Relation compare(byte[] minPackedValue, byte[] maxPackedValue) {
+                    return Relation.CELL_CROSSES_QUERY;
+                }
+            });
+        }
+        this.subtreeNodes[n] = this.numNodes - n;
+        return n;
+    }
+
+    /** Fold the summary at position child into the one at parent */
+    void merge(int parent, int child) {
+        for (int d = 0; d < LaghosPointBatch.NUM_FIELDS; d++) {
+            int p = parent * LaghosPointBatch.NUM_FIELDS + d;
+            int c = child * LaghosPointBatch.NUM_FIELDS + d;
+            this.min[p] = Math.min(this.min[p], this.min[c]);
+            this.max[p] = Math.max(this.max[p], this.max[c]);
+            this.sum[p] += this.sum[c];
+        }
+        this.counts[parent] += this.counts[child];
+    }
+
+    /** @return the position of a new empty summary */
+    int addNode() {
+        int n = this.numNodes++;
+        if (n == this.counts.length) {
+            int capacity = ArrayUtil.oversize(n + 1, Long.BYTES);
+            this.subtreeNodes = ArrayUtil.growExact(this.subtreeNodes, capacity);
+            this.counts = ArrayUtil.growExact(this.counts, capacity);
+            this.min = ArrayUtil.growExact(this.min, capacity * LaghosPointBatch.NUM_FIELDS);
+            this.max = ArrayUtil.growExact(this.max, capacity * LaghosPointBatch.NUM_FIELDS);
+            this.sum = ArrayUtil.growExact(this.sum, capacity * LaghosPointBatch.NUM_FIELDS);
+        }
+        Arrays.fill(this.min, n * LaghosPointBatch.NUM_FIELDS, (n + 1) * LaghosPointBatch.NUM_FIELDS,
+                    Double.POSITIVE_INFINITY);
+        Arrays.fill(this.max, n * LaghosPointBatch.NUM_FIELDS, (n + 1) * LaghosPointBatch.NUM_FIELDS,
+                    Double.NEGATIVE_INFINITY);
+        return n;
+    }
+
+    // Position of each tree's root, plus the total number of nodes
+    final int[] treeStart;
+
+    // Number of nodes in the subtree rooted at each node, itself included
+    int[] subtreeNodes;
+
+    // Number of points below each node
+    long[] counts;
+
+    // Smallest, largest and total value of each field below each node, NUM_FIELDS per node
+    double[] min, max, sum;
+
+    // Number of summarized nodes
+    int numNodes;
+}
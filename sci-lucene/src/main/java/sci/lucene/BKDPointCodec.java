@@ -0,0 +1,58 @@
+package sci.lucene;
+
+import org.apache.lucene.util.NumericUtils;
+import sci.mfem.LaghosPointBatch;
+
+/**
+ * Encodes Laghos points into the packed values stored in the BKD index.
+ *
+ * BKD trees compare dimensions as unsigned bytes, so the raw little-endian
+ * doubles the mesh reader produces cannot be range searched. Each double is
+ * stored as a big-endian sortable long instead, and the element id is stored
+ * as the last (data only) dimension so queries can recover it.
+ */
+public class BKDPointCodec {
+
+    /** The number of bytes per BKD dimension */
+    public static final int BYTES_PER_DIM = Long.BYTES;
+
+    /** The number of dimensions in a packed BKD point */
+    public static final int NUM_DIMS = LaghosPointBatch.NUM_FIELDS + 1;
+
+    /** The dimension holding the element id */
+    public static final int ELEMENT_ID_DIM = LaghosPointBatch.NUM_FIELDS;
+
+    /** Encode point i of batch into packed */
+    public static void encode(LaghosPointBatch batch, int i, byte[] packed) {
+        for (int d = 0; d < LaghosPointBatch.NUM_FIELDS; d++) {
+            encodeDouble(batch.getDouble(i, d), packed, d);
+        }
+        NumericUtils.longToSortableBytes(batch.getElementId(i), packed, ELEMENT_ID_DIM * BYTES_PER_DIM);
+    }
+
+    /** Encode v as the sortable value of dimension dim */
+    public static void encodeDouble(double v, byte[] packed, int dim) {
+        NumericUtils.longToSortableBytes(sortableLong(v), packed, dim * BYTES_PER_DIM);
+    }
+
+    /** @return the sortable long of v, for values and query bounds alike */
+    public static long sortableLong(double v) {
+        // -0.0 sorts below 0.0 but compares equal to it
+        return NumericUtils.doubleToSortableLong(v + 0.0);
+    }
+
+    /** @return the sortable long stored in dimension dim */
+    public static long sortableLong(byte[] packed, int dim) {
+        return NumericUtils.sortableBytesToLong(packed, dim * BYTES_PER_DIM);
+    }
+
+    /** @return the double stored in dimension dim */
+    public static double decodeDouble(byte[] packed, int dim) {
+        return NumericUtils.sortableLongToDouble(sortableLong(packed, dim));
+    }
+
+    /** @return the element id stored in packed */
+    public static long decodeElementId(byte[] packed) {
+        return sortableLong(packed, ELEMENT_ID_DIM);
+    }
+}
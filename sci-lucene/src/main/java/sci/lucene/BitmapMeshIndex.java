@@ -0,0 +1,364 @@
+package sci.lucene;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.roaringbitmap.RoaringBitmapWriter;
+import sci.mfem.LaghosColumnCache;
+import sci.mfem.LaghosColumnReader;
+import sci.mfem.LaghosPointBatch;
+import sci.mfem.LaghosPointSource;
+
+/**
+ * A binned bitmap index over a Laghos mesh, in the style of FastBit.
+ *
+ * The values of each field are cut into equi-depth bins, and each bin keeps
+ * a Roaring bitmap of the points whose value falls in it along with the
+ * smallest and largest value actually binned. A range over a field is the OR
+ * of the bins it covers, split into inner bins that lie wholly in the range
+ * and at most two edge bins that straddle it. A query ANDs the fields
+ * together, so points from inner bins match outright and only the points
+ * reached through an edge bin are checked against the raw values.
+ *
+ * The raw values and element ids come from a LaghosColumnCache in the same
+ * directory, which build writes first if it is missing. Point numbers in the
+ * bitmaps are indexes into the cache.
+ */
+public class BitmapMeshIndex implements MeshIndex {
+
+    /** Name of the bitmap file within a cache directory */
+    public static final String INDEX_FILE = "laghos.bitmaps";
+
+    /** The default number of bins per field */
+    public static final int DEFAULT_BINS = 128;
+
+    /** Magic number at the start of the bitmap file */
+    static final int MAGIC = 0x4c424d50;
+
+    /** Current bitmap file version */
+    static final int VERSION_CURRENT = 0;
+
+    /** Values sampled per field to place the bin boundaries */
+    static final int SAMPLE_POINTS = 64*1024;
+
+    /** Open the bitmaps and column cache in dir */
+    public BitmapMeshIndex(Path dir) throws IOException {
+        this.columns = new LaghosColumnReader(dir);
+        this.bins = new RoaringBitmap[LaghosPointBatch.NUM_FIELDS][];
+        this.binMin = new double[LaghosPointBatch.NUM_FIELDS][];
+        this.binMax = new double[LaghosPointBatch.NUM_FIELDS][];
+        Path file = dir.resolve(INDEX_FILE);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (MAGIC != in.readInt()) {
+                throw new IOException(file + " is not a Laghos bitmap index");
+            }
+            int version = in.readInt();
+            if (VERSION_CURRENT != version) {
+                throw new IOException("Unsupported bitmap index version " + version);
+            }
+            this.numPoints = in.readInt();
+            if (this.numPoints != this.columns.getHeader().numPoints) {
+                throw new IOException(file + " indexes " + this.numPoints + " points, the cache holds "
+                                      + this.columns.getHeader().numPoints);
+            }
+            for (int d = 0; d < LaghosPointBatch.NUM_FIELDS; d++) {
+                int numBins = in.readInt();
+                this.bins[d] = new RoaringBitmap[numBins];
+                this.binMin[d] = new double[numBins];
+                this.binMax[d] = new double[numBins];
+                for (int b = 0; b < numBins; b++) {
+                    this.binMin[d][b] = in.readDouble();
+                    this.binMax[d][b] = in.readDouble();
+                    this.bins[d][b] = new RoaringBitmap();
+                    this.bins[d][b].deserialize(in);
+                }
+            }
+        }
+    }
+
+    /**
+     * Build a bitmap index of source in dir
+     *
+     * @param numBins the most bins per field, fewer when a field has few distinct values
+     * @param nThreads the number of splits binned concurrently
+     * @return the open index
+     */
+    public static BitmapMeshIndex build(LaghosPointSource source, Path dir, int numBins, int nThreads) throws IOException {
+        if (!LaghosColumnCache.exists(dir)) {
+            LaghosColumnCache.write(source, dir, nThreads);
+        }
+        LaghosColumnReader columns = new LaghosColumnReader(dir);
+        long numPoints = columns.getHeader().numPoints;
+        if (numPoints > Integer.MAX_VALUE) {
+            throw new IOException("Bitmaps hold at most " + Integer.MAX_VALUE + " points, the mesh has " + numPoints);
+        }
+        double[][] cuts = new double[LaghosPointBatch.NUM_FIELDS][];
+        for (int d = 0; d < LaghosPointBatch.NUM_FIELDS; d++) {
+            cuts[d] = sampleCuts(columns, d, numBins);
+        }
+
+        // Each split bins its own range of points, so the split bitmaps of a bin are disjoint
+        List<LaghosColumnReader> splits = columns.split(nThreads);
+        ExecutorService pool = Executors.newFixedThreadPool(splits.size());
+        List<BinnedSplit> binned = new ArrayList<>();
+        try {
+            List<Future<BinnedSplit>> results = new ArrayList<>();
+            for (LaghosColumnReader split : splits) {
+                results.add(pool.submit(() -> new BinnedSplit(split, cuts)));
+            }
+            for (Future<BinnedSplit> result : results) {
+                binned.add(result.get());
+            }
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted while building the bitmaps", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Building the bitmaps failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+
+        Path file = dir.resolve(INDEX_FILE);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION_CURRENT);
+            out.writeInt((int)numPoints);
+            for (int d = 0; d < LaghosPointBatch.NUM_FIELDS; d++) {
+                int fieldBins = cuts[d].length + 1;
+                out.writeInt(fieldBins);
+                for (int b = 0; b < fieldBins; b++) {
+                    double min = Double.POSITIVE_INFINITY;
+                    double max = Double.NEGATIVE_INFINITY;
+                    RoaringBitmap[] parts = new RoaringBitmap[binned.size()];
+                    for (int s = 0; s < parts.length; s++) {
+                        BinnedSplit split = binned.get(s);
+                        min = Math.min(min, split.binMin[d][b]);
+                        max = Math.max(max, split.binMax[d][b]);
+                        parts[s] = split.bins[d][b];
+                    }
+                    RoaringBitmap bin = FastAggregation.or(parts);
+                    bin.runOptimize();
+                    out.writeDouble(min);
+                    out.writeDouble(max);
+                    bin.serialize(out);
+                }
+            }
+        }
+        return new BitmapMeshIndex(dir);
+    }
+
+    /**
+     * Place the boundaries of up to numBins equi-depth bins from a strided
+     * sample of field dim
+     *
+     * @return the sorted distinct lower bounds of every bin but the first
+     */
+    static double[] sampleCuts(LaghosColumnReader columns, int dim, int numBins) {
+        long numPoints = columns.getHeader().numPoints;
+        int n = (int)Math.min(numPoints, SAMPLE_POINTS);
+        double[] sample = new double[n];
+        for (int i = 0; i < n; i++) {
+            sample[i] = columns.getDouble(i * numPoints / n, dim);
+        }
+        Arrays.sort(sample);
+        double[] cuts = new double[Math.max(numBins - 1, 0)];
+        int numCuts = 0;
+        for (int b = 1; b < numBins && n > 0; b++) {
+            double cut = sample[(int)((long)b * n / numBins)];
+            // Equal cuts would leave empty bins, and the smallest value needs no cut
+            if (cut > sample[0] && (0 == numCuts || cut > cuts[numCuts - 1])) {
+                cuts[numCuts++] = cut;
+            }
+        }
+        return Arrays.copyOf(cuts, numCuts);
+    }
+
+    /** @return the bin of value v, the number of cuts at or below it */
+    static int bin(double[] cuts, double v) {
+        int lo = 0, hi = cuts.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (cuts[mid] <= v) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    @Override
+    public long getNumPoints() {
+        return this.numPoints;
+    }
+
+    /** @return the number of bins of field dim */
+    public int getNumBins(int dim) {
+        return this.bins[dim].length;
+    }
+
+    @Override
+    public MeshQueryResult query(MeshQuery q) {
+        long begin = System.nanoTime();
+        RoaringBitmap hits = select(q);
+        MeshQueryResult result = new MeshQueryResult(this.numPoints);
+        // Points arrive in cache order, so the points of an element arrive together
+        IntIterator it = hits.getIntIterator();
+        while (it.hasNext()) {
+            result.addPoint(this.columns.getElementId(it.next()));
+        }
+        result.finish(System.nanoTime() - begin);
+        return result;
+    }
+
+    /** @return the number of points matching q, without touching the element ids */
+    public long count(MeshQuery q) {
+        return select(q).getLongCardinality();
+    }
+
+    /** @return the points matching q */
+    RoaringBitmap select(MeshQuery q) {
+        RoaringBitmap hits = null;
+        RoaringBitmap candidates = null;
+        boolean[] check = new boolean[LaghosPointBatch.NUM_FIELDS];
+        for (int d = 0; d < LaghosPointBatch.NUM_FIELDS; d++) {
+            double lo = q.getMin(d);
+            double hi = q.getMax(d);
+            if (Double.NEGATIVE_INFINITY == lo && Double.POSITIVE_INFINITY == hi) {
+                continue;
+            }
+            List<RoaringBitmap> inner = new ArrayList<>();
+            List<RoaringBitmap> edge = new ArrayList<>();
+            for (int b = 0; b < this.bins[d].length; b++) {
+                if (this.binMax[d][b] < lo || this.binMin[d][b] > hi) {
+                    continue;
+                }
+                if (this.binMin[d][b] >= lo && this.binMax[d][b] <= hi) {
+                    inner.add(this.bins[d][b]);
+                } else {
+                    edge.add(this.bins[d][b]);
+                }
+            }
+            RoaringBitmap fieldHits = FastAggregation.or(inner.iterator());
+            RoaringBitmap fieldCandidates = fieldHits;
+            if (!edge.isEmpty()) {
+                check[d] = true;
+                edge.add(fieldHits);
+                fieldCandidates = FastAggregation.or(edge.iterator());
+            }
+            hits = (null == hits) ? fieldHits : RoaringBitmap.and(hits, fieldHits);
+            candidates = (null == candidates) ? fieldCandidates : RoaringBitmap.and(candidates, fieldCandidates);
+        }
+        if (null == hits) {
+            return RoaringBitmap.bitmapOfRange(0, this.numPoints);
+        }
+
+        // Only points reached through an edge bin of some field need their values checked
+        candidates = RoaringBitmap.andNot(candidates, hits);
+        RoaringBitmapWriter<RoaringBitmap> confirmed = RoaringBitmapWriter.writer().get();
+        IntIterator it = candidates.getIntIterator();
+        while (it.hasNext()) {
+            int p = it.next();
+            if (matches(q, check, p)) {
+                confirmed.add(p);
+            }
+        }
+        return RoaringBitmap.or(hits, confirmed.get());
+    }
+
+    /** @return true if point p is within q on every checked field */
+    boolean matches(MeshQuery q, boolean[] check, int p) {
+        for (int d = 0; d < check.length; d++) {
+            if (check[d]) {
+                double v = this.columns.getDouble(p, d);
+                if (v < q.getMin(d) || v > q.getMax(d)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        this.columns.close();
+    }
+
+    /**
+     * The bitmaps and bin ranges of one split, appended in point order
+     */
+    static class BinnedSplit {
+        BinnedSplit(LaghosColumnReader split, double[][] cuts) {
+            this.bins = new RoaringBitmap[LaghosPointBatch.NUM_FIELDS][];
+            this.binMin = new double[LaghosPointBatch.NUM_FIELDS][];
+            this.binMax = new double[LaghosPointBatch.NUM_FIELDS][];
+            List<List<RoaringBitmapWriter<RoaringBitmap>>> writers = new ArrayList<>();
+            for (int d = 0; d < LaghosPointBatch.NUM_FIELDS; d++) {
+                int numBins = cuts[d].length + 1;
+                List<RoaringBitmapWriter<RoaringBitmap>> fieldWriters = new ArrayList<>();
+                for (int b = 0; b < numBins; b++) {
+                    fieldWriters.add(RoaringBitmapWriter.writer().get());
+                }
+                writers.add(fieldWriters);
+                this.binMin[d] = new double[numBins];
+                this.binMax[d] = new double[numBins];
+                Arrays.fill(this.binMin[d], Double.POSITIVE_INFINITY);
+                Arrays.fill(this.binMax[d], Double.NEGATIVE_INFINITY);
+            }
+
+            for (LaghosPointBatch batch = split.getNextLaghosPointBatch(); batch != null;
+                 batch = split.getNextLaghosPointBatch()) {
+                int first = (int)batch.getFirstPointIndex();
+                for (int d = 0; d < LaghosPointBatch.NUM_FIELDS; d++) {
+                    List<RoaringBitmapWriter<RoaringBitmap>> fieldWriters = writers.get(d);
+                    double[] min = this.binMin[d];
+                    double[] max = this.binMax[d];
+                    for (int i = 0; i < batch.size(); i++) {
+                        double v = batch.getDouble(i, d);
+                        int b = bin(cuts[d], v);
+                        fieldWriters.get(b).add(first + i);
+                        min[b] = Math.min(min[b], v);
+                        max[b] = Math.max(max[b], v);
+                    }
+                }
+            }
+            for (int d = 0; d < LaghosPointBatch.NUM_FIELDS; d++) {
+                this.bins[d] = new RoaringBitmap[writers.get(d).size()];
+                for (int b = 0; b < this.bins[d].length; b++) {
+                    this.bins[d][b] = writers.get(d).get(b).get();
+                }
+            }
+        }
+
+        // Points of each bin of each field
+        final RoaringBitmap[][] bins;
+
+        // Smallest and largest value in each bin of each field
+        final double[][] binMin, binMax;
+    }
+
+    // Raw values and element ids
+    final LaghosColumnReader columns;
+
+    // Number of points indexed
+    final int numPoints;
+
+    // Points of each bin of each field
+    final RoaringBitmap[][] bins;
+
+    // Smallest and largest value in each bin of each field
+    final double[][] binMin, binMax;
+}
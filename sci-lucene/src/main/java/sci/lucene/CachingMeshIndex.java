@@ -0,0 +1,160 @@
+package sci.lucene;
+
+import java.io.IOException;
+import sci.metrics.MeshMetrics;
+
+/**
+ * A MeshIndex that remembers the results of the queries it answers.
+ *
+ * Interactive analysis re-issues overlapping predicates, such as a sliding
+ * energy threshold or a nudged box. Results are cached by their normalized
+ * query, so a repeated query is answered from memory, and when the wrapped
+ * index can return the points it matches (a BKD index can) the points are
+ * cached too, so a query inside a cached one is answered by filtering the
+ * smallest cached superset rather than going back to the index. Indexes
+ * that only match elements, such as the LSM stores, get exact repeats, as
+ * do queries whose points alone would outweigh the whole cache.
+ *
+ * This is the second tier over a BKDIndexReader leaf cache, which serves
+ * the misses from decoded leaves. Both tiers share the MeshCache statistics,
+ * and answers filtered from a superset are counted as refinements.
+ */
+public class CachingMeshIndex implements MeshIndex {
+
+    /** The default bytes of results cached */
+    public static final long DEFAULT_CACHE_BYTES = 256L * 1024 * 1024;
+
+    /** Approximate bytes of a cached result besides its element ids and points */
+    static final long ENTRY_BYTES = 256;
+
+    // Refinement metric, beside the hit, miss and eviction counters of the cache
+    static final MeshMetrics.Counter REFINEMENTS = MeshMetrics.counter("cache.results.refinements");
+
+    /** Cache the results of index within the default budget */
+    public CachingMeshIndex(MeshIndex index) throws IOException {
+        this(index, DEFAULT_CACHE_BYTES);
+    }
+
+    /**
+     * Cache the results of index
+     *
+     * @param maxBytes the most bytes of results and their points cached
+     */
+    public CachingMeshIndex(MeshIndex index, long maxBytes) throws IOException {
+        this.index = index;
+        this.totalPoints = index.getNumPoints();
+        this.results = new MeshCache<>("results", maxBytes, Entry::ramBytesUsed);
+    }
+
+    /** @return the wrapped index */
+    public MeshIndex getIndex() {
+        return this.index;
+    }
+
+    /** @return the cache of query results */
+    public MeshCache<MeshQuery, Entry> getResultCache() {
+        return this.results;
+    }
+
+    /** @return the number of queries answered by filtering a cached superset */
+    public synchronized long getRefinements() {
+        return this.refinements;
+    }
+
+    @Override
+    public long getNumPoints() {
+        return this.totalPoints;
+    }
+
+    @Override
+    public MeshQueryResult query(MeshQuery q) throws IOException {
+        long begin = System.nanoTime();
+        Entry cached = this.results.find((key, entry) -> entry.answers(q));
+        if (null != cached && cached.query.equals(q)) {
+            return new MeshQueryResult(cached.result, System.nanoTime() - begin);
+        }
+
+        MeshQuery key = new MeshQuery(q);
+        MeshQueryResult result;
+        MeshPoints points;
+        if (null != cached) {
+            result = new MeshQueryResult(this.totalPoints);
+            points = new MeshPoints(0, this.results.getMaxBytes());
+            cached.points.select(q, result, points);
+            result.finish(System.nanoTime() - begin);
+            synchronized (this) {
+                this.refinements++;
+            }
+            REFINEMENTS.add(1);
+        } else {
+            // Stop collecting points once they could not be cached anyway
+            points = new MeshPoints(0, this.results.getMaxBytes());
+            result = this.index.query(q, points);
+            if (null == result) {
+                points = null;
+                result = this.index.query(q);
+            }
+        }
+        if (null != points && points.isTruncated()) {
+            points = null;
+        }
+        this.results.put(key, new Entry(key, new MeshQueryResult(result, 0), (null == points) ? null : points.trim()));
+        return result;
+    }
+
+    /** Print the statistics of the result cache */
+    public void report(String desc) {
+        this.results.report(desc);
+        System.out.println(desc + ": refinements: " + getRefinements());
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.results.clear();
+        this.index.close();
+    }
+
+    /**
+     * A cached query, its result and, when the index returned them, its
+     * matching points
+     */
+    public static class Entry {
+        Entry(MeshQuery query, MeshQueryResult result, MeshPoints points) {
+            this.query = query;
+            this.result = result;
+            this.points = points;
+        }
+
+        /** @return true if q can be answered from this entry */
+        boolean answers(MeshQuery q) {
+            return this.query.equals(q) || (null != this.points && this.query.contains(q));
+        }
+
+        /** @return the heap bytes held by the entry */
+        long ramBytesUsed() {
+            return ENTRY_BYTES + (long)this.result.getNumElements() * Long.BYTES
+                + ((null == this.points) ? 0 : this.points.ramBytesUsed());
+        }
+
+        // Normalized query, a copy no caller can change
+        final MeshQuery query;
+
+        // Result of the query
+        final MeshQueryResult result;
+
+        // Matching points, or null if the index only returns elements
+        final MeshPoints points;
+    }
+
+    // Index the misses go to
+    final MeshIndex index;
+
+    // Points in the index
+    final long totalPoints;
+
+    // Results by query
+    final MeshCache<MeshQuery, Entry> results;
+
+    // Queries filtered from a cached superset
+    long refinements;
+}
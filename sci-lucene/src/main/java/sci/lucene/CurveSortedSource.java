@@ -0,0 +1,189 @@
+package sci.lucene;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.lucene.util.IntroSorter;
+import sci.mfem.LaghosColumnCache;
+import sci.mfem.LaghosColumnReader;
+import sci.mfem.LaghosPointBatch;
+import sci.mfem.LaghosPointSource;
+
+/**
+ * Serves the points of a column cache in space filling curve order.
+ *
+ * Elements are sorted by the curve key of their centroid and served whole,
+ * so batches still never tear an element. Writing a BKD tree or a Parquet
+ * dataset from this source puts spatially close elements in the same
+ * leaves and row groups. Sorting needs 12 bytes per element of heap; the
+ * points themselves are gathered from the cache mappings as each batch is
+ * served. Point indexes are positions in curve order, element ids are kept.
+ */
+public class CurveSortedSource implements LaghosPointSource {
+
+    /** The default number of points per batch, the same as LaghosMeshReader */
+    public static final int DEFAULT_FETCH_COUNT = 64*1024;
+
+    /** Sort the elements of a column cache along curve */
+    public CurveSortedSource(LaghosColumnReader columns, SpaceFillingCurve curve) throws IOException {
+        LaghosColumnCache.Header header = columns.getHeader();
+        if (header.numElements > Integer.MAX_VALUE) {
+            throw new IOException("Unable to sort " + header.numElements + " elements");
+        }
+        this.columns = columns;
+        this.pointsPerElement = Math.max(header.pointsPerElement, 1);
+        this.order = sortElements(columns, curve, (int)header.numElements, this.pointsPerElement);
+        this.elementBegin = 0;
+        this.elementEnd = this.order.length;
+        this.batch = new LaghosPointBatch();
+        setFetchCount(DEFAULT_FETCH_COUNT);
+    }
+
+    CurveSortedSource(CurveSortedSource parent, int elementBegin, int elementEnd) {
+        this.columns = parent.columns;
+        this.pointsPerElement = parent.pointsPerElement;
+        this.order = parent.order;
+        this.elementBegin = elementBegin;
+        this.elementEnd = elementEnd;
+        this.batch = new LaghosPointBatch();
+        setFetchCount(parent.fetchCount);
+    }
+
+    /** @return the cache element numbers in ascending curve order of their centroids */
+    static int[] sortElements(LaghosColumnReader columns, SpaceFillingCurve curve, int numElements, int ppe) {
+        long[] keys = new long[numElements];
+        int[] order = new int[numElements];
+        double[] centroid = new double[curve.getNumDims()];
+        for (int e = 0; e < numElements; e++) {
+            for (int d = 0; d < centroid.length; d++) {
+                double sum = 0;
+                for (int j = 0; j < ppe; j++) {
+                    sum += columns.getDouble((long)e * ppe + j, curve.getDim(d));
+                }
+                centroid[d] = sum / ppe;
+            }
+            keys[e] = curve.encode(centroid);
+            order[e] = e;
+        }
+        new IntroSorter() {
+            @Override
+            protected void swap(int i, int j) {
+                long k = keys[i];
+                keys[i] = keys[j];
+                keys[j] = k;
+                int o = order[i];
+                order[i] = order[j];
+                order[j] = o;
+            }
+
+            @Override
+            protected int compare(int i, int j) {
+                return Long.compareUnsigned(keys[i], keys[j]);
+            }
+
+            @Override
+            protected void setPivot(int i) {
+                this.pivot = keys[i];
+            }
+
+            @Override
+            protected int comparePivot(int j) {
+                return Long.compareUnsigned(this.pivot, keys[j]);
+            }
+
+            long pivot;
+        }.sort(0, numElements);
+        return order;
+    }
+
+    /** Set the maximum number of points per batch and restart the iterator */
+    public void setFetchCount(int fetchCount) {
+        this.fetchCount = Math.max(fetchCount / this.pointsPerElement, 1) * this.pointsPerElement;
+        this.buffer = ByteBuffer.allocate(this.fetchCount * LaghosPointBatch.POINT_SIZE).order(ByteOrder.nativeOrder());
+        resetIterator();
+    }
+
+    @Override
+    public long getNumElements() {
+        return this.elementEnd - this.elementBegin;
+    }
+
+    @Override
+    public int getNumPoints() {
+        return (int)(getNumElements() * this.pointsPerElement);
+    }
+
+    @Override
+    public long getFirstPointIndex() {
+        return (long)this.elementBegin * this.pointsPerElement;
+    }
+
+    @Override
+    public void resetIterator() {
+        this.elementCurrent = this.elementBegin;
+    }
+
+    @Override
+    public LaghosPointBatch getNextLaghosPointBatch() {
+        if (this.elementCurrent >= this.elementEnd) {
+            return null;
+        }
+        int elements = Math.min(this.fetchCount / this.pointsPerElement, this.elementEnd - this.elementCurrent);
+        this.buffer.clear();
+        for (int k = 0; k < elements; k++) {
+            long first = (long)this.order[this.elementCurrent + k] * this.pointsPerElement;
+            for (int j = 0; j < this.pointsPerElement; j++) {
+                for (int d = 0; d < LaghosPointBatch.NUM_FIELDS; d++) {
+                    this.buffer.putDouble(this.columns.getDouble(first + j, d));
+                }
+                this.buffer.putLong(this.columns.getElementId(first + j));
+            }
+        }
+        this.batch.reset(this.buffer, 0, elements * this.pointsPerElement,
+                         (long)this.elementCurrent * this.pointsPerElement);
+        this.elementCurrent += elements;
+        return this.batch;
+    }
+
+    /**
+     * Split into n sources over disjoint runs of the curve order
+     */
+    @Override
+    public List<CurveSortedSource> split(int n) {
+        List<CurveSortedSource> splits = new ArrayList<>();
+        for (long[] range : LaghosPointSource.splitRanges(this.elementBegin, this.elementEnd, n)) {
+            splits.add(new CurveSortedSource(this, (int)range[0], (int)range[1]));
+        }
+        return splits;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    // Cache the points are gathered from
+    final LaghosColumnReader columns;
+
+    // Points produced by each element
+    final int pointsPerElement;
+
+    // Cache element numbers in curve order, shared by splits
+    final int[] order;
+
+    // Range of the curve order covered by this source
+    final int elementBegin, elementEnd;
+
+    // Flyweight handed out by getNextLaghosPointBatch
+    final LaghosPointBatch batch;
+
+    // Rows of the current batch
+    ByteBuffer buffer;
+
+    // Maximum points per batch
+    int fetchCount;
+
+    // Position in the curve order of the next element
+    int elementCurrent;
+}
@@ -3,15 +3,38 @@ package sci.lucene;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import com.sun.jna.NativeLibrary;
+import sci.mfem.ForeignLaghosMeshReader;
+import sci.mfem.JavaLaghosMeshReader;
+import sci.mfem.LaghosColumnBatch;
+import sci.mfem.LaghosColumnCache;
+import sci.mfem.LaghosColumnReader;
+import sci.mfem.LaghosParquetReader;
+import sci.mfem.LaghosField;
 import sci.mfem.LaghosMeshReader;
+import sci.mfem.LaghosPointSource;
+import sci.mfem.PipelinedPointSource;
+import sci.mfem.LaghosPointBatch;
+import sci.mfem.LaghosMeshBlock;
+import sci.mfem.LaghosVertexSource;
+import sci.metrics.MeshEvents;
+import sci.metrics.MeshMetrics;
+import org.apache.lucene.index.MergePolicy;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.store.OutputStreamDataOutput;
 import org.apache.lucene.store.OutputStreamIndexOutput;
+import org.apache.lucene.util.NumericUtils;
 import org.apache.lucene.util.bkd.BKDConfig;
 import org.apache.lucene.util.bkd.BKDWriter;
 import org.iq80.leveldb.*;
@@ -25,6 +48,12 @@ public class IndexedMesh {
     final static int LAGHOS_POINT_NDIMS = 9;
     final static int BKD_LEAF_POINTS = 128;
 
+    // Hand-built BKD add and finish metrics
+    static final MeshMetrics.Histogram BKD_ADD_NANOS = MeshMetrics.histogram("bkd.add.nanos");
+    static final MeshMetrics.Counter BKD_ADD_POINTS = MeshMetrics.counter("bkd.add.points");
+    static final MeshMetrics.Histogram BKD_SORT_NANOS = MeshMetrics.histogram("bkd.finish.sort.nanos");
+    static final MeshMetrics.Histogram BKD_INDEX_NANOS = MeshMetrics.histogram("bkd.finish.index.nanos");
+
 
     static void reportTime(String desc, long[] times) {
         double elapsedNanos = (double)times[1] - (double)times[0];
@@ -41,32 +70,48 @@ public class IndexedMesh {
             dataFile.createNewFile();
             idxFile.createNewFile();
             
-            OutputStreamIndexOutput metaOut = new OutputStreamIndexOutput("metadata", 
-                                                                         metaFile.getName(), 
-                                                                         new FileOutputStream(metaFile),
-                                                                         4*1024*1024);
-            OutputStreamIndexOutput dataOut = new OutputStreamIndexOutput("data",
-                                                                         dataFile.getName(),
-                                                                         new FileOutputStream(dataFile),
-                                                                         4*1024*1024);
-            OutputStreamIndexOutput idxOut = new OutputStreamIndexOutput("resource", 
-                                                                         filename, 
-                                                                         new FileOutputStream(idxFile), 
-                                                                         4*1024*1024);
-            Runnable progress = w.finish(metaOut, idxOut, dataOut);
-            Thread t = new Thread(progress);
-            long begin, end;
-            try {
-                begin = System.nanoTime();
-                t.start();
-                t.join();
-                end = System.nanoTime();
-                double outputSecs = (double)(end - begin)/(1000*1000*1000);
-                System.out.println("Index output time: " + outputSecs + " size: " + dataFile.length()/(1024*1024) + "MiB");
-        
+            try (OutputStreamIndexOutput metaOut = new OutputStreamIndexOutput("metadata", 
+                                                                              metaFile.getName(), 
+                                                                              new FileOutputStream(metaFile),
+                                                                              4*1024*1024);
+                 OutputStreamIndexOutput dataOut = new OutputStreamIndexOutput("data",
+                                                                              dataFile.getName(),
+                                                                              new FileOutputStream(dataFile),
+                                                                              4*1024*1024);
+                 OutputStreamIndexOutput idxOut = new OutputStreamIndexOutput("resource", 
+                                                                             filename, 
+                                                                             new FileOutputStream(idxFile), 
+                                                                             4*1024*1024)) {
+                MeshEvents.FinishPhase sort = new MeshEvents.FinishPhase();
+                sort.begin();
+                long sortBegin = MeshMetrics.start();
+                Runnable progress = w.finish(metaOut, idxOut, dataOut);
+                BKD_SORT_NANOS.recordSince(sortBegin);
+                sort.index = filename;
+                sort.phase = "sort";
+                sort.commit();
+                Thread t = new Thread(progress);
+                long begin, end;
+                try {
+                    MeshEvents.FinishPhase write = new MeshEvents.FinishPhase();
+                    write.begin();
+                    begin = System.nanoTime();
+                    t.start();
+                    t.join();
+                    end = System.nanoTime();
+                    BKD_INDEX_NANOS.record(end - begin);
+                    write.index = filename;
+                    write.phase = "index";
+                    write.commit();
+                    double outputSecs = (double)(end - begin)/(1000*1000*1000);
+                    System.out.println("Index output time: " + outputSecs + " size: " + dataFile.length()/(1024*1024) + "MiB");
+                }
+                catch (InterruptedException e) {
+                    System.err.println("Output thread interrupted");
+                }
             }
-            catch (InterruptedException e) {
-                System.err.println("Output thread interrupted");
+            for (File f : new File[]{metaFile, idxFile, dataFile}) {
+                MeshMetrics.recordFileBytes(filename, f.toPath());
             }
         }
         catch (IOException e) {
@@ -76,7 +121,72 @@ public class IndexedMesh {
         return dataFile.length();
     }
 
-    static long[] runLuceneMultiTrial(LaghosMeshReader lmr) {
+    /**
+     * Write the per-node summaries used by aggregate queries next to the
+     * index filename. The trials only do so when writesSummaries, outside
+     * their timed build, and report the time it takes on its own.
+     *
+     * @return the size of the summary file, or -1 if the index does not hold packed Laghos points
+     */
+    static long writeSummaries(String filename) throws IOException {
+        long begin = System.nanoTime();
+        long numBytes;
+        try (BKDIndexReader reader = new BKDIndexReader(filename)) {
+            numBytes = BKDNodeSummaries.write(reader, filename);
+        }
+        if (numBytes >= 0) {
+            reportTime("Summary output time", new long[]{begin, System.nanoTime()});
+            System.out.println("Summary size: " + numBytes/1024 + "KiB");
+        }
+        return numBytes;
+    }
+
+    /**
+     * Write the statistics gathered during an ingest next to its index, for
+     * the query planner
+     */
+    static void writeStatistics(MeshStatistics stats, Path file) throws IOException {
+        stats.write(file);
+        System.out.println("Statistics written to " + file);
+    }
+
+    /** @return a collector for each of n splits, so their ingest threads gather statistics apart */
+    static MeshStatistics.Collector[] splitCollectors(int n) {
+        MeshStatistics.Collector[] collectors = new MeshStatistics.Collector[n];
+        for (int k = 0; k < n; k++) {
+            collectors[k] = new MeshStatistics.Collector();
+        }
+        return collectors;
+    }
+
+    /** @return the statistics of all the splits, merging their collectors into the first */
+    static MeshStatistics mergeStatistics(MeshStatistics.Collector[] collectors, long numElements) {
+        for (int k = 1; k < collectors.length; k++) {
+            collectors[0].merge(collectors[k]);
+        }
+        return collectors[0].finish(numElements);
+    }
+
+    /**
+     * Add the points of batch to a BKD writer as docs firstDocId onwards,
+     * recording the add in the bkd.add metrics and an IndexAdd event
+     */
+    static void addBatch(BKDWriter w, LaghosPointBatch batch, int firstDocId, byte[] pointBuffer) throws IOException {
+        MeshEvents.IndexAdd event = new MeshEvents.IndexAdd();
+        event.begin();
+        long begin = MeshMetrics.start();
+        for (int i = 0; i < batch.size(); i++) {
+            BKDPointCodec.encode(batch, i, pointBuffer);
+            w.add(pointBuffer, firstDocId + i);
+        }
+        BKD_ADD_NANOS.recordSince(begin);
+        BKD_ADD_POINTS.add(batch.size());
+        event.index = "bkd";
+        event.points = batch.size();
+        event.commit();
+    }
+
+    static long[] runLuceneMultiTrial(LaghosPointSource lmr) {
         long[] times = new long[2];
 
         try {
@@ -86,18 +196,25 @@ public class IndexedMesh {
             BKDWriter bWriter = new BKDWriter((int)totalPoints, tmp, "laghos", bCfg, 4, totalPoints);
 
             times[0] = System.nanoTime();
-            byte[] pointBuffer = lmr.getNextLaghosPointAsBytes();
+            MeshStatistics.Collector stats = new MeshStatistics.Collector();
+            byte[] pointBuffer = new byte[LaghosPointBatch.POINT_SIZE];
+            LaghosPointBatch batch = lmr.getNextLaghosPointBatch();
             int docId = 0;
-            while (pointBuffer != null) {
-                bWriter.add(pointBuffer, docId++);
-                pointBuffer = lmr.getNextLaghosPointAsBytes();
+            while (batch != null) {
+                addBatch(bWriter, batch, docId, pointBuffer);
+                stats.add(batch);
+                docId += batch.size();
+                batch = lmr.getNextLaghosPointBatch();
             }
             // Now write the BKD to disk and determine its size on disk
             long numBytes = writeIndex(bWriter, "multi-trial");
 
             bWriter.close();
             times[1] = System.nanoTime();
-
+            writeStatistics(stats.finish(lmr.getNumElements()), MeshStatistics.pathFor("multi-trial"));
+            if (writesSummaries()) {
+                writeSummaries("multi-trial");
+            }
 
         } catch(IOException e) {
             System.out.println("IOException while adding to BKD tree");
@@ -107,7 +224,149 @@ public class IndexedMesh {
         return times;
     }
 
-    static long[] runLuceneUniTrial(LaghosMeshReader lmr) {
+    static long[] runLuceneParallelTrial(LaghosPointSource lmr, int nThreads) {
+        long[] times = new long[2];
+
+        List<? extends LaghosPointSource> splits = lmr.split(nThreads);
+        try {
+            long[] shardPoints = new long[splits.size()];
+            for (int k = 0; k < splits.size(); k++) {
+                shardPoints[k] = splits.get(k).getNumPoints();
+            }
+            Directory tmp = FSDirectory.open(Paths.get("/tmp"));
+            BKDConfig bCfg = new BKDConfig(LAGHOS_POINT_NDIMS, 8, 8, BKD_LEAF_POINTS);
+            ShardedBKDWriter sWriter = new ShardedBKDWriter(tmp, "laghos", bCfg, lmr.getNumPoints(), shardPoints, 4);
+
+            times[0] = System.nanoTime();
+            MeshStatistics.Collector[] stats = splitCollectors(splits.size());
+            ingestSplits(splits, split -> {
+                int shard = splits.indexOf(split);
+                BKDWriter bWriter = sWriter.getShard(shard);
+                byte[] pointBuffer = new byte[LaghosPointBatch.POINT_SIZE];
+                long count = 0;
+                LaghosPointBatch batch = split.getNextLaghosPointBatch();
+                while (batch != null) {
+                    addBatch(bWriter, batch, (int)batch.getFirstPointIndex(), pointBuffer);
+                    stats[shard].add(batch);
+                    count += batch.size();
+                    batch = split.getNextLaghosPointBatch();
+                }
+                return count;
+            });
+            long added = System.nanoTime();
+            reportTime("Shard add time", new long[]{times[0], added});
+
+            // Sort the shards concurrently and write them as one index set
+            long numBytes = sWriter.finish("parallel-trial");
+            sWriter.reportPhases();
+            System.out.println("Index size: " + numBytes/(1024*1024) + "MiB");
+
+            sWriter.close();
+            times[1] = System.nanoTime();
+            writeStatistics(mergeStatistics(stats, lmr.getNumElements()), MeshStatistics.pathFor("parallel-trial"));
+            if (writesSummaries()) {
+                writeSummaries("parallel-trial");
+            }
+        } catch(IOException e) {
+            System.out.println("IOException while adding to sharded BKD tree");
+        } finally {
+            for (LaghosPointSource split : splits) {
+                split.close();
+            }
+        }
+        System.out.println("Completed indexing the mesh");
+        return times;
+    }
+
+    /**
+     * Build the same index as runLuceneMultiTrial, fetching the next batch
+     * on a separate thread while the current one is added to the tree
+     */
+    static long[] runLucenePipelinedTrial(LaghosPointSource lmr, int depth) {
+        long[] times = new long[2];
+
+        PipelinedPointSource pipeline = new PipelinedPointSource(lmr, depth);
+        try {
+            long totalPoints = lmr.getNumPoints();
+            Directory tmp = FSDirectory.open(Paths.get("/tmp"));
+            BKDConfig bCfg = new BKDConfig(LAGHOS_POINT_NDIMS, 8, 8, BKD_LEAF_POINTS);
+            BKDWriter bWriter = new BKDWriter((int)totalPoints, tmp, "laghos", bCfg, 4, totalPoints);
+
+            times[0] = System.nanoTime();
+            MeshStatistics.Collector stats = new MeshStatistics.Collector();
+            byte[] pointBuffer = new byte[LaghosPointBatch.POINT_SIZE];
+            LaghosPointBatch batch = pipeline.getNextLaghosPointBatch();
+            while (batch != null) {
+                addBatch(bWriter, batch, (int)batch.getFirstPointIndex(), pointBuffer);
+                stats.add(batch);
+                batch = pipeline.getNextLaghosPointBatch();
+            }
+            long added = System.nanoTime();
+            reportTime("Pipelined add time", new long[]{times[0], added});
+            pipeline.report("Pipeline depth=" + depth);
+
+            long numBytes = writeIndex(bWriter, "pipelined-trial");
+            System.out.println("Index size: " + numBytes/(1024*1024) + "MiB");
+
+            bWriter.close();
+            times[1] = System.nanoTime();
+            writeStatistics(stats.finish(lmr.getNumElements()), MeshStatistics.pathFor("pipelined-trial"));
+            if (writesSummaries()) {
+                writeSummaries("pipelined-trial");
+            }
+        } catch(IOException e) {
+            System.out.println("IOException while adding to BKD tree");
+        }
+        System.out.println("Completed indexing the mesh");
+        return times;
+    }
+
+    /**
+     * Build a spatial BKD over the unique vertices of the mesh read in
+     * normalized form, rather than over every vertex-element point. The
+     * vertex id is stored as a data dimension so hits can be joined back to
+     * the element attrs through the connectivity.
+     */
+    static long[] runLuceneVertexTrial(LaghosVertexSource lmr) {
+        long[] times = new long[2];
+
+        try {
+            // Every point is an upper bound on the unique vertices
+            long maxVertices = lmr.getNumPoints();
+            Directory tmp = FSDirectory.open(Paths.get("/tmp"));
+            BKDConfig bCfg = new BKDConfig(4, 3, 8, BKD_LEAF_POINTS);
+            BKDWriter bWriter = new BKDWriter((int)maxVertices, tmp, "laghos", bCfg, 4, maxVertices);
+
+            times[0] = System.nanoTime();
+            byte[] vertexBuffer = new byte[4 * BKDPointCodec.BYTES_PER_DIM];
+            long numVertices = 0;
+            LaghosMeshBlock block = lmr.getNextLaghosMeshBlock();
+            while (block != null) {
+                for (int v = 0; v < block.getNumVertices(); v++) {
+                    for (int c = 0; c < 3; c++) {
+                        BKDPointCodec.encodeDouble(block.getVertexCoordinate(v, c), vertexBuffer, c);
+                    }
+                    NumericUtils.longToSortableBytes(block.getVertexId(v), vertexBuffer, 3 * BKDPointCodec.BYTES_PER_DIM);
+                    bWriter.add(vertexBuffer, (int)block.getVertexId(v));
+                }
+                numVertices += block.getNumVertices();
+                block = lmr.getNextLaghosMeshBlock();
+            }
+            System.out.println("Unique vertices: " + numVertices + " of " + lmr.getNumPoints() + " points");
+
+            long numBytes = writeIndex(bWriter, "vertex-trial");
+            System.out.println("Index size: " + numBytes/(1024*1024) + "MiB");
+
+            bWriter.close();
+            times[1] = System.nanoTime();
+        } catch(IOException e) {
+            System.out.println("IOException while adding to BKD tree");
+        }
+        System.out.println("Completed indexing the mesh vertices");
+        return times;
+    }
+
+    static long[] runLuceneUniTrial(LaghosPointSource lmr) {
         long[] times = new long[2];
 
         try {
@@ -117,11 +376,15 @@ public class IndexedMesh {
             BKDWriter bWriter = new BKDWriter((int)totalPoints, tmp, "laghos", bCfg, 4, totalPoints);
 
             times[0] = System.nanoTime();
-            byte[] pointBuffer = lmr.getNextLaghosPointAsBytes();
+            byte[] pointBuffer = new byte[LaghosPointBatch.POINT_SIZE];
+            LaghosPointBatch batch = lmr.getNextLaghosPointBatch();
             int dId = 0;
-            while (pointBuffer != null) {
-                bWriter.add(pointBuffer, dId++);
-                pointBuffer = lmr.getNextLaghosPointAsBytes();
+            while (batch != null) {
+                for (int i = 0; i < batch.size(); i++) {
+                    BKDPointCodec.encode(batch, i, pointBuffer);
+                    bWriter.add(pointBuffer, dId++);
+                }
+                batch = lmr.getNextLaghosPointBatch();
             }
             // Now write the BKD to disk and determine its size on disk
             //long numBytes = writeOutput(bWriter, "uni-trial");
@@ -138,7 +401,7 @@ public class IndexedMesh {
         return times;
     }
 
-    static long[] runLevelDBUniTrial(LaghosMeshReader lmr) {
+    static long[] runLevelDBUniTrial(LaghosPointSource lmr) {
         long[] times = new long[2];
 
         Options options = new Options();
@@ -151,15 +414,18 @@ public class IndexedMesh {
             DB db = JniDBFactory.factory.open(dbFile, options);
             try {
                 long totalPoints = lmr.getNumPoints();
-                byte[] pointBuffer = lmr.getNextLaghosPointAsBytes();
+                byte[] keyBuf = new byte[MeshKeyCodec.KEY_SIZE];
+                LaghosPointBatch batch = lmr.getNextLaghosPointBatch();
                 times[0] = System.nanoTime();
-                while (pointBuffer != null) {
-                    ByteBuffer keyBuf = ByteBuffer.wrap(pointBuffer, 0, 8);
-                    ByteBuffer valBuf = ByteBuffer.wrap(pointBuffer, 64, 8);
-                    // Use energy as the key and element id as the value/pointer
-                    db.put(keyBuf.array(), valBuf.array());
-                    pointBuffer = lmr.getNextLaghosPointAsBytes();
+                while (batch != null) {
+                    for (int i = 0; i < batch.size(); i++) {
+                        // Key on the first dimension, the element id is part of the key
+                        MeshKeyCodec.encodeKey(batch, i, 0, keyBuf);
+                        db.put(keyBuf, MeshKeyCodec.EMPTY_VALUE);
+                    }
+                    batch = lmr.getNextLaghosPointBatch();
                 }
+                db.put(MeshKeyCodec.META_COUNTS_KEY, MeshKeyCodec.encodeCounts(lmr.getNumPoints(), lmr.getNumElements()));
             } finally {
                 db.close();
                 times[1] = System.nanoTime();
@@ -174,7 +440,7 @@ public class IndexedMesh {
         return times;
     }
 
-    static long[] runLevelDBMultiTrial(LaghosMeshReader lmr) {
+    static long[] runLevelDBMultiTrial(LaghosPointSource lmr) {
         long[] times = new long[2];
 
         Options options = new Options();
@@ -185,35 +451,29 @@ public class IndexedMesh {
         try {
             dbFile.delete();
             DB db = JniDBFactory.factory.open(dbFile, options);
+            MeshStatistics.Collector stats = new MeshStatistics.Collector();
             try {
                 long totalPoints = lmr.getNumPoints();
-                byte[] pointBuffer = lmr.getNextLaghosPointAsBytes();
+                byte[] keyBuf = new byte[MeshKeyCodec.KEY_SIZE];
+                LaghosPointBatch batch = lmr.getNextLaghosPointBatch();
                 times[0] = System.nanoTime();
-                while (pointBuffer != null) {
-                    ByteBuffer d1Buf = ByteBuffer.wrap(pointBuffer, 0, 8);
-                    ByteBuffer d2Buf = ByteBuffer.wrap(pointBuffer, 8, 8);
-                    ByteBuffer d3Buf = ByteBuffer.wrap(pointBuffer, 16, 8);
-                    ByteBuffer d4Buf = ByteBuffer.wrap(pointBuffer, 24, 8);
-                    ByteBuffer d5Buf = ByteBuffer.wrap(pointBuffer, 32, 8);
-                    ByteBuffer d6Buf = ByteBuffer.wrap(pointBuffer, 40, 8);
-                    ByteBuffer d7Buf = ByteBuffer.wrap(pointBuffer, 48, 8);
-                    ByteBuffer d8Buf = ByteBuffer.wrap(pointBuffer, 56, 8);
-                    ByteBuffer valBuf = ByteBuffer.wrap(pointBuffer, 64, 8);
-                    // Use energy as the key and element id as the value/pointer
-                    db.put(d1Buf.array(), valBuf.array());
-                    db.put(d2Buf.array(), valBuf.array());
-                    db.put(d3Buf.array(), valBuf.array());
-                    db.put(d4Buf.array(), valBuf.array());
-                    db.put(d5Buf.array(), valBuf.array());
-                    db.put(d6Buf.array(), valBuf.array());
-                    db.put(d7Buf.array(), valBuf.array());
-                    db.put(d8Buf.array(), valBuf.array());
-                    pointBuffer = lmr.getNextLaghosPointAsBytes();
+                while (batch != null) {
+                    for (int i = 0; i < batch.size(); i++) {
+                        // Key each dimension, the element id is part of the key
+                        for (int d = 0; d < LaghosPointBatch.NUM_FIELDS; d++) {
+                            MeshKeyCodec.encodeKey(batch, i, d, keyBuf);
+                            db.put(keyBuf, MeshKeyCodec.EMPTY_VALUE);
+                        }
+                    }
+                    stats.add(batch);
+                    batch = lmr.getNextLaghosPointBatch();
                 }
+                db.put(MeshKeyCodec.META_COUNTS_KEY, MeshKeyCodec.encodeCounts(lmr.getNumPoints(), lmr.getNumElements()));
             } finally {
                 db.close();
                 times[1] = System.nanoTime();
             }
+            writeStatistics(stats.finish(lmr.getNumElements()), new File(dbFile, MeshStatistics.FILE_NAME).toPath());
 
             System.out.println("Size of db: " + dbFile.length());
             //dbFile.delete();
@@ -224,18 +484,586 @@ public class IndexedMesh {
         return times;
     }
 
-    static LaghosMeshReader loadMesh() {
+    /**
+     * Ingest each split on its own thread and wait for all of them to finish
+     *
+     * @return the number of points ingested across all splits
+     */
+    static long ingestSplits(List<? extends LaghosPointSource> splits, SplitIngester ingester) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(splits.size());
+        List<Future<Long>> results = new ArrayList<>();
+        for (LaghosPointSource split : splits) {
+            results.add(pool.submit(() -> ingester.ingest(split)));
+        }
+
+        long totalPoints = 0;
+        try {
+            for (Future<Long> result : results) {
+                totalPoints += result.get();
+            }
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted while ingesting splits", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Split ingest failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return totalPoints;
+    }
+
+    /** Ingests the points of a single split, returning the number of points ingested */
+    interface SplitIngester {
+        long ingest(LaghosPointSource split) throws IOException;
+    }
+
+    static long[] runLevelDBParallelTrial(LaghosPointSource lmr, int nThreads) {
+        long[] times = new long[2];
+
+        Options options = new Options();
+        options.createIfMissing(true);
+        options.blockSize(4*1024*1024);
+        options.writeBufferSize(4*1024*1024);
+        File dbFile = new File("/tmp/leveldb.tpl");
+        try {
+            dbFile.delete();
+            List<? extends LaghosPointSource> splits = lmr.split(nThreads);
+            DB db = JniDBFactory.factory.open(dbFile, options);
+            MeshStatistics.Collector[] stats = splitCollectors(splits.size());
+            try {
+                times[0] = System.nanoTime();
+                ingestSplits(splits, split -> {
+                    MeshStatistics.Collector splitStats = stats[splits.indexOf(split)];
+                    byte[] keyBuf = new byte[MeshKeyCodec.KEY_SIZE];
+                    long count = 0;
+                    LaghosPointBatch batch = split.getNextLaghosPointBatch();
+                    while (batch != null) {
+                        for (int i = 0; i < batch.size(); i++) {
+                            // Key each dimension, the element id is part of the key
+                            for (int d = 0; d < LaghosPointBatch.NUM_FIELDS; d++) {
+                                MeshKeyCodec.encodeKey(batch, i, d, keyBuf);
+                                db.put(keyBuf, MeshKeyCodec.EMPTY_VALUE);
+                            }
+                        }
+                        splitStats.add(batch);
+                        count += batch.size();
+                        batch = split.getNextLaghosPointBatch();
+                    }
+                    return count;
+                });
+                db.put(MeshKeyCodec.META_COUNTS_KEY, MeshKeyCodec.encodeCounts(lmr.getNumPoints(), lmr.getNumElements()));
+            } finally {
+                db.close();
+                times[1] = System.nanoTime();
+                for (LaghosPointSource split : splits) {
+                    split.close();
+                }
+            }
+            writeStatistics(mergeStatistics(stats, lmr.getNumElements()),
+                            new File(dbFile, MeshStatistics.FILE_NAME).toPath());
+
+            System.out.println("Size of db: " + dbFile.length());
+        } catch (IOException e) {
+            System.err.println("IOException during leveldb parallel");
+        }
+
+        return times;
+    }
+
+    /**
+     * Write the LevelDB index from nThreads splits, grouping the keys of
+     * batchSize points into each WriteBatch rather than putting them one at a time
+     */
+    static long[] runLevelDBBatchedTrial(LaghosPointSource lmr, int nThreads, int batchSize) {
+        long[] times = new long[2];
+
+        Options options = new Options();
+        options.createIfMissing(true);
+        options.blockSize(4*1024*1024);
+        options.writeBufferSize(64*1024*1024);
+        File dbFile = new File("/tmp/leveldb.tpl");
+        try {
+            dbFile.delete();
+            List<? extends LaghosPointSource> splits = lmr.split(nThreads);
+            DB db = JniDBFactory.factory.open(dbFile, options);
+            WriteOptions writeOptions = new WriteOptions().sync(false);
+            try {
+                times[0] = System.nanoTime();
+                ingestSplits(splits, split -> {
+                    byte[] keyBuf = new byte[MeshKeyCodec.KEY_SIZE];
+                    long count = 0;
+                    int pending = 0;
+                    WriteBatch wb = db.createWriteBatch();
+                    LaghosPointBatch batch = split.getNextLaghosPointBatch();
+                    while (batch != null) {
+                        for (int i = 0; i < batch.size(); i++) {
+                            // Key each dimension, the element id is part of the key
+                            for (int d = 0; d < LaghosPointBatch.NUM_FIELDS; d++) {
+                                MeshKeyCodec.encodeKey(batch, i, d, keyBuf);
+                                wb.put(keyBuf, MeshKeyCodec.EMPTY_VALUE);
+                            }
+                            if (++pending == batchSize) {
+                                MeshEvents.LSMWriteStall write = MeshEvents.LSMWriteStall.start("leveldb", pending);
+                                db.write(wb, writeOptions);
+                                write.finish();
+                                wb.close();
+                                wb = db.createWriteBatch();
+                                pending = 0;
+                            }
+                        }
+                        count += batch.size();
+                        batch = split.getNextLaghosPointBatch();
+                    }
+                    if (0 < pending) {
+                        MeshEvents.LSMWriteStall write = MeshEvents.LSMWriteStall.start("leveldb", pending);
+                        db.write(wb, writeOptions);
+                        write.finish();
+                    }
+                    wb.close();
+                    return count;
+                });
+                db.put(MeshKeyCodec.META_COUNTS_KEY, MeshKeyCodec.encodeCounts(lmr.getNumPoints(), lmr.getNumElements()));
+            } finally {
+                db.close();
+                times[1] = System.nanoTime();
+                for (LaghosPointSource split : splits) {
+                    split.close();
+                }
+            }
+
+            System.out.println("Size of db: " + dbFile.length());
+        } catch (IOException e) {
+            System.err.println("IOException during leveldb batched");
+        }
+
+        return times;
+    }
+
+    /**
+     * Write the LevelDB index from nConsumers threads draining one pipelined
+     * fetcher, so a single native reader feeds several writers
+     */
+    static long[] runLevelDBPipelinedTrial(LaghosPointSource lmr, int nConsumers, int depth) {
+        long[] times = new long[2];
+
+        Options options = new Options();
+        options.createIfMissing(true);
+        options.blockSize(4*1024*1024);
+        options.writeBufferSize(64*1024*1024);
+        File dbFile = new File("/tmp/leveldb.tpl");
+        PipelinedPointSource pipeline = new PipelinedPointSource(lmr, depth);
+        try {
+            dbFile.delete();
+            DB db = JniDBFactory.factory.open(dbFile, options);
+            WriteOptions writeOptions = new WriteOptions().sync(false);
+            try {
+                times[0] = System.nanoTime();
+                pipeline.consume(nConsumers, batch -> {
+                    byte[] keyBuf = new byte[MeshKeyCodec.KEY_SIZE];
+                    try (WriteBatch wb = db.createWriteBatch()) {
+                        for (int i = 0; i < batch.size(); i++) {
+                            // Key each dimension, the element id is part of the key
+                            for (int d = 0; d < LaghosPointBatch.NUM_FIELDS; d++) {
+                                MeshKeyCodec.encodeKey(batch, i, d, keyBuf);
+                                wb.put(keyBuf, MeshKeyCodec.EMPTY_VALUE);
+                            }
+                        }
+                        MeshEvents.LSMWriteStall write = MeshEvents.LSMWriteStall.start("leveldb", batch.size());
+                        db.write(wb, writeOptions);
+                        write.finish();
+                    }
+                });
+                db.put(MeshKeyCodec.META_COUNTS_KEY, MeshKeyCodec.encodeCounts(lmr.getNumPoints(), lmr.getNumElements()));
+            } finally {
+                db.close();
+                times[1] = System.nanoTime();
+            }
+            pipeline.report("Pipeline depth=" + depth + " consumers=" + nConsumers);
+
+            System.out.println("Size of db: " + dbFile.length());
+        } catch (IOException e) {
+            System.err.println("IOException during leveldb pipelined");
+        }
+
+        return times;
+    }
+
+    /**
+     * @return true if the sci.mfem.summaries property is "true", asking the
+     *         BKD trials to write node summaries after the timed build
+     */
+    static boolean writesSummaries() {
+        return "true".equals(System.getProperty("sci.mfem.summaries"));
+    }
+
+    /** @return the pipeline depth named by the sci.mfem.pipeline property, or 0 for none */
+    static int pipelineDepth() {
+        String depth = System.getProperty("sci.mfem.pipeline");
+        return (null == depth) ? 0 : Integer.parseInt(depth);
+    }
+
+    /**
+     * Append each cycle's dump to the time series store in storeDir, which
+     * keeps the cycles of earlier runs, and query across the cycles
+     */
+    static long[] runTimeSeriesTrial(Path storeDir, int[] cycles, MeshQuery q, int fromCycle, int toCycle) {
+        long[] times = new long[2];
+
+        try (TimeSeriesMeshStore store = new TimeSeriesMeshStore(storeDir)) {
+            times[0] = System.nanoTime();
+            for (int cycle : cycles) {
+                LaghosPointSource lmr = loadMesh(cycle);
+                long begin = System.nanoTime();
+                store.append(cycle, lmr);
+                reportTime("Cycle " + cycle + " append", new long[]{begin, System.nanoTime()});
+                lmr.close();
+            }
+            store.waitForMerges();
+            times[1] = System.nanoTime();
+            System.out.println("Cycles: " + store.getCycles().length + " segments: " + store.getNumSegments()
+                               + " geometries: " + store.getNumGeometries());
+            store.query(q, fromCycle, toCycle).report("Cycles [" + fromCycle + "," + toCycle + "] " + q);
+        } catch (IOException e) {
+            System.err.println("IOException during time series trial");
+        }
+
+        return times;
+    }
+
+    /** @return the curve named by the sci.mfem.curve property, or null */
+    static SpaceFillingCurve.Order curveOrder() {
+        String name = System.getProperty("sci.mfem.curve");
+        return (null == name) ? null : SpaceFillingCurve.Order.valueOf(name.toUpperCase());
+    }
+
+    static long[] runRocksDBTrial(LaghosPointSource lmr, int nThreads, int batchSize) {
+        long[] times = new long[2];
+
+        File dbFile = new File("/tmp/rocksdb.tpl");
+        // Fetch each split on its own thread when a pipeline depth is named
+        List<? extends LaghosPointSource> splits = (0 < pipelineDepth())
+            ? new PipelinedPointSource(lmr, pipelineDepth()).split(nThreads)
+            : lmr.split(nThreads);
+        try (RocksDBMeshStore store = new RocksDBMeshStore(dbFile, nThreads, false)) {
+            // Also key the points by curve when one is named
+            if (null != curveOrder()) {
+                store.setCurve(SpaceFillingCurve.forSource(curveOrder(), SpaceFillingCurve.NO_VALUE_DIM, lmr));
+            }
+            times[0] = System.nanoTime();
+            store.ingest(splits, batchSize);
+            times[1] = System.nanoTime();
+            for (LaghosPointSource split : splits) {
+                if (split instanceof PipelinedPointSource) {
+                    ((PipelinedPointSource)split).report("Split pipeline");
+                }
+            }
+            System.out.println("Size of db: " + store.getSize());
+        } catch (IOException e) {
+            System.err.println("IOException during rocksdb batched");
+        } finally {
+            for (LaghosPointSource split : splits) {
+                split.close();
+            }
+        }
+
+        return times;
+    }
+
+    /**
+     * Bulk load the RocksDB store from nThreads splits
+     *
+     * @param runPoints the points sorted into each SST file, or 0 to size
+     *                  the runs to the heap
+     */
+    static long[] runRocksDBBulkLoadTrial(LaghosPointSource lmr, int nThreads, int runPoints) {
+        long[] times = new long[2];
+
+        File dbFile = new File("/tmp/rocksdb-bulk.tpl");
+        List<? extends LaghosPointSource> splits = lmr.split(nThreads);
+        try (RocksDBMeshStore store = new RocksDBMeshStore(dbFile, nThreads, true)) {
+            times[0] = System.nanoTime();
+            store.bulkLoad(splits, runPoints);
+            times[1] = System.nanoTime();
+            System.out.println("Size of db: " + store.getSize());
+        } catch (IOException e) {
+            System.err.println("IOException during rocksdb bulk load");
+        } finally {
+            for (LaghosPointSource split : splits) {
+                split.close();
+            }
+        }
+
+        return times;
+    }
+
+    /**
+     * Run a query against the LevelDB store written by the LevelDB trials
+     */
+    static MeshQueryResult runLevelDBQueryTrial(MeshQuery q) {
+        MeshQueryResult result = null;
+        try (LevelDBMeshIndex index = new LevelDBMeshIndex(new File("/tmp/leveldb.tpl"))) {
+            result = index.query(q);
+            result.report("LevelDB query " + q);
+        } catch (IOException e) {
+            System.err.println("IOException during LevelDB query");
+        }
+        return result;
+    }
+
+    /**
+     * Run a query against a written BKD index and report its latency and selectivity
+     */
+    static MeshQueryResult runBKDQueryTrial(String filename, MeshQuery q) {
+        MeshQueryResult result = null;
+        try (BKDIndexReader reader = new BKDIndexReader(filename)) {
+            result = reader.query(q);
+            result.report("BKD query " + q);
+        } catch (IOException e) {
+            System.err.println("IOException during BKD query");
+        }
+        return result;
+    }
+
+    /**
+     * Aggregate the points of a BKD index matching q, once from the node
+     * summaries and once by decoding every matching point
+     */
+    static MeshAggregate runBKDAggregateTrial(String filename, MeshQuery q) {
+        MeshAggregate result = null;
+        try (BKDIndexReader reader = new BKDIndexReader(filename)) {
+            if (!reader.hasSummaries()) {
+                writeSummaries(filename);
+            }
+            reader.scanAggregate(q).report("BKD scan aggregate " + q);
+        } catch (IOException e) {
+            System.err.println("IOException during BKD aggregate");
+        }
+        try (BKDIndexReader reader = new BKDIndexReader(filename)) {
+            result = reader.aggregate(q);
+            result.report("BKD summary aggregate " + q);
+        } catch (IOException e) {
+            System.err.println("IOException during BKD aggregate");
+        }
+        return result;
+    }
+
+    /**
+     * Query a BKD index through both cache tiers: q cold, q again, and then
+     * q narrowed step by step on field f, as sliding a threshold would. f
+     * must have a finite lower bound in q.
+     */
+    static long[] runCachedQueryTrial(String filename, MeshQuery q, LaghosField f, double step, int steps) {
+        long[] times = new long[2];
+        try {
+            BKDIndexReader reader = new BKDIndexReader(filename);
+            reader.setLeafCache(new MeshCache<>("leaves", CachingMeshIndex.DEFAULT_CACHE_BYTES,
+                                                MeshPoints::ramBytesUsed));
+            try (CachingMeshIndex index = new CachingMeshIndex(reader)) {
+                index.query(q).report("Cold query " + q);
+                times[0] = System.nanoTime();
+                index.query(q).report("Repeated query " + q);
+                for (int i = 1; i <= steps; i++) {
+                    MeshQuery narrowed = new MeshQuery(q).range(f, q.getMin(f) + i * step, q.getMax(f));
+                    index.query(narrowed).report("Refined query " + narrowed);
+                }
+                times[1] = System.nanoTime();
+                reader.getLeafCache().report("Leaf cache");
+                index.report("Result cache");
+            }
+        } catch (IOException e) {
+            System.err.println("IOException during cached BKD queries");
+        }
+        return times;
+    }
+
+    /**
+     * Plan and run queries over whichever of the BKD index filename, the
+     * LevelDB store in lsmDir and a vectorized scan of lmr exist, from the
+     * statistics next to the BKD index, gathering them first if the index
+     * was built without them
+     */
+    static long[] runPlannerTrial(LaghosPointSource lmr, String filename, File lsmDir, MeshQuery... queries) {
+        long[] times = new long[2];
+        List<MeshIndex> opened = new ArrayList<>();
+        try {
+            Path statsFile = MeshStatistics.pathFor(filename);
+            MeshStatistics stats = MeshStatistics.readIfExists(statsFile);
+            if (null == stats) {
+                stats = MeshStatistics.collect(lmr);
+                writeStatistics(stats, statsFile);
+            }
+            stats.report("Mesh statistics");
+            MeshQueryPlanner planner = new MeshQueryPlanner(stats);
+            if (new File(filename + ".tpm").exists()) {
+                opened.add(new BKDIndexReader(filename));
+                planner.addBackend(MeshQueryPlanner.Backend.BKD, opened.get(opened.size() - 1));
+            }
+            if (lsmDir.isDirectory()) {
+                opened.add(new LevelDBMeshIndex(lsmDir));
+                planner.addBackend(MeshQueryPlanner.Backend.LSM, opened.get(opened.size() - 1));
+            }
+            opened.add(new VectorScanEngine(lmr, Runtime.getRuntime().availableProcessors()));
+            planner.addBackend(MeshQueryPlanner.Backend.SCAN, opened.get(opened.size() - 1));
+
+            times[0] = System.nanoTime();
+            for (MeshQuery q : queries) {
+                planner.execute(q);
+            }
+            times[1] = System.nanoTime();
+            planner.setElementLevel(true);
+            for (MeshQuery q : queries) {
+                planner.execute(q);
+            }
+        } catch (IOException e) {
+            System.err.println("IOException during planned queries");
+        } finally {
+            for (MeshIndex index : opened) {
+                try {
+                    index.close();
+                } catch (IOException e) {
+                    System.err.println("IOException closing a planner backend");
+                }
+            }
+        }
+        return times;
+    }
+
+    /**
+     * Build a binned bitmap index of the mesh next to its column cache
+     */
+    static long[] runBitmapTrial(LaghosPointSource lmr, Path cacheDir, int nThreads) {
+        long[] times = new long[2];
+        times[0] = System.nanoTime();
+        try (BitmapMeshIndex index = BitmapMeshIndex.build(lmr, cacheDir, BitmapMeshIndex.DEFAULT_BINS, nThreads)) {
+            times[1] = System.nanoTime();
+            System.out.println("Size of bitmaps: " + cacheDir.resolve(BitmapMeshIndex.INDEX_FILE).toFile().length());
+        } catch (IOException e) {
+            System.err.println("IOException during bitmap build");
+        }
+        return times;
+    }
+
+    static MeshQueryResult runBitmapQueryTrial(Path cacheDir, MeshQuery q) {
+        MeshQueryResult result = null;
+        try (BitmapMeshIndex index = new BitmapMeshIndex(cacheDir)) {
+            result = index.query(q);
+            result.report("Bitmap query " + q);
+        } catch (IOException e) {
+            System.err.println("IOException during bitmap query");
+        }
+        return result;
+    }
+
+    /**
+     * Build a reduced precision BKD index of the mesh next to its column
+     * cache, then run q against it
+     */
+    static long[] runQuantizedTrial(LaghosPointSource lmr, Path cacheDir,
+                                    QuantizedPointCodec.Precision precision, int nThreads, MeshQuery q) {
+        long[] times = new long[2];
+        times[0] = System.nanoTime();
+        try (QuantizedMeshIndex index = QuantizedMeshIndex.build(lmr, cacheDir, precision, nThreads)) {
+            times[1] = System.nanoTime();
+            System.out.println("Index size: " + QuantizedMeshIndex.getIndexBytes(cacheDir)/(1024*1024) + "MiB");
+            index.query(q).report(precision + " query " + q);
+            System.out.println("Candidates: " + index.getLastCandidates()
+                               + " false positives: " + index.getLastFalsePositives());
+        } catch (IOException e) {
+            System.err.println("IOException during quantized index build");
+        }
+        return times;
+    }
+
+    /**
+     * Index the mesh through IndexWriter from nThreads threads, then run q
+     * as a DoublePoint range query
+     */
+    static long[] runLuceneIndexWriterTrial(LaghosPointSource lmr, Path indexDir, int nThreads,
+                                            double ramBufferMB, MergePolicy mergePolicy, MeshQuery q) {
+        long[] times = new long[2];
+        times[0] = System.nanoTime();
+        try (LuceneMeshIndex index = LuceneMeshIndex.build(lmr, indexDir, nThreads, ramBufferMB, mergePolicy)) {
+            times[1] = System.nanoTime();
+            System.out.println("Index size: " + LuceneMeshIndex.getIndexBytes(indexDir)/(1024*1024) + "MiB"
+                               + " segments: " + index.getNumSegments());
+            index.query(q).report("IndexWriter query " + q);
+        } catch (IOException e) {
+            System.err.println("IOException during IndexWriter indexing");
+        }
+        return times;
+    }
+
+    /**
+     * Scan the mesh for q with the vectorized scan engine, first as it is
+     * read and then over an off-heap column copy
+     */
+    static long[] runVectorScanTrial(LaghosPointSource lmr, int nThreads, MeshQuery q) {
+        long[] times = new long[2];
+        try (VectorScanEngine engine = new VectorScanEngine(lmr, nThreads)) {
+            engine.scan(q, true).report("Vector scan " + q);
+            LaghosColumnBatch copy = VectorScanEngine.copyColumns(lmr);
+            times[0] = System.nanoTime();
+            engine.scan(copy, q, true).report("Vector scan of column copy " + q);
+            times[1] = System.nanoTime();
+        }
+        return times;
+    }
+
+    /**
+     * Open the mesh from its column cache when one exists. Otherwise read
+     * it with the native reader, with the pure Java reader when the
+     * sci.mfem.reader system property is "java" or with the foreign function
+     * column reader when it is "foreign", and convert it to a cache
+     * first when the sci.mfem.cache property is "true". A cached mesh is
+     * served in space filling curve order when the sci.mfem.curve property
+     * is "morton" or "hilbert".
+     */
+    static LaghosPointSource loadMesh() {
+        return loadMesh(60);
+    }
+
+    /** Open the mesh dumped at the given cycle, as loadMesh does for cycle 60 */
+    static LaghosPointSource loadMesh(int cycle) {
         String meshDir = "/home/bsettlemyer/workspace/mesh";
         String meshName = "1m";
         meshName = "30m";
         //String meshName = "250m";
-        String meshFile = meshDir + "/" + meshName + "/" + meshName + "_60_mesh";
-        String eFile = meshDir + "/" + meshName + "/" + meshName + "_60_e";
-        String rhoFile = meshDir + "/" + meshName + "/" + meshName + "_60_rho";
-        String vFile = meshDir + "/" + meshName + "/" + meshName + "_60_v";
+        String prefix = meshDir + "/" + meshName + "/" + meshName + "_" + cycle;
+        String meshFile = prefix + "_mesh";
+        String eFile = prefix + "_e";
+        String rhoFile = prefix + "_rho";
+        String vFile = prefix + "_v";
+        Path cacheDir = Paths.get(prefix + "_cache");
         long times[] = new long[2];
         times[0] = System.nanoTime();
-        LaghosMeshReader lmr = new LaghosMeshReader(meshFile, eFile, rhoFile, vFile);
+        LaghosPointSource lmr;
+        try {
+            if (null != System.getProperty("sci.mfem.parquet")) {
+                lmr = new LaghosParquetReader(Paths.get(System.getProperty("sci.mfem.parquet")));
+            } else if (LaghosColumnCache.exists(cacheDir)) {
+                lmr = new LaghosColumnReader(cacheDir);
+            } else {
+                if ("java".equals(System.getProperty("sci.mfem.reader"))) {
+                    lmr = new JavaLaghosMeshReader(meshFile, eFile, rhoFile, vFile);
+                } else if ("foreign".equals(System.getProperty("sci.mfem.reader"))) {
+                    lmr = new ForeignLaghosMeshReader(meshFile, eFile, rhoFile, vFile);
+                } else {
+                    lmr = new LaghosMeshReader(meshFile, eFile, rhoFile, vFile);
+                }
+                if ("true".equals(System.getProperty("sci.mfem.cache"))) {
+                    LaghosColumnCache.write(lmr, cacheDir, Runtime.getRuntime().availableProcessors());
+                    lmr.close();
+                    lmr = new LaghosColumnReader(cacheDir);
+                }
+            }
+            SpaceFillingCurve.Order order = curveOrder();
+            if (null != order && lmr instanceof LaghosColumnReader) {
+                LaghosColumnReader columns = (LaghosColumnReader)lmr;
+                lmr = new CurveSortedSource(columns, SpaceFillingCurve.forHeader(order, SpaceFillingCurve.NO_VALUE_DIM,
+                                                                                 columns.getHeader()));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to load " + meshName, e);
+        }
         times[1] = System.nanoTime();
         reportTime(meshName + " mesh loaded: ", times);
         return lmr;
@@ -247,7 +1075,7 @@ public class IndexedMesh {
 
 
         System.out.println("Loading mesh ...");
-        LaghosMeshReader lmr = loadMesh();
+        LaghosPointSource lmr = loadMesh();
         System.out.println("Complete");
 
         //long[] timeSingle = runLuceneUniTrial(lmr);
@@ -257,6 +1085,34 @@ public class IndexedMesh {
         //long[] timeMulti = runLuceneMultiTrial(lmr);
         //reportTime("Lucene BKWriter Dims=9 IdxDims=8", timeMulti);
         //lmr.resetIterator();
+        //runBKDQueryTrial("multi-trial", new MeshQuery().range(LaghosField.E, 1.0, 2.0)
+        //                                               .greaterThan(LaghosField.RHO, 0.1)
+        //                                               .box(4.0, 5.0, 1.0, 2.0, 0.0, 1.0));
+        //runBKDAggregateTrial("multi-trial", new MeshQuery().box(2.0, 6.0, 0.0, 3.0, 0.0, 1.0));
+        //long[] timeCached = runCachedQueryTrial("multi-trial", new MeshQuery().range(LaghosField.E, 1.0, 2.0)
+        //                                                                      .box(2.0, 6.0, 0.0, 3.0, 0.0, 1.0),
+        //                                        LaghosField.E, 0.1, 5);
+        //reportTime("Cached BKD repeat and refine", timeCached);
+        //long[] timePlanned = runPlannerTrial(lmr, "multi-trial", new File("/tmp/leveldb.tpl"),
+        //                                     new MeshQuery().range(LaghosField.E, 1.0, 2.0),
+        //                                     new MeshQuery().greaterThan(LaghosField.RHO, 0.1)
+        //                                                    .box(4.0, 5.0, 1.0, 2.0, 0.0, 1.0),
+        //                                     new MeshQuery().lessThan(LaghosField.V_Z, 0.5));
+        //reportTime("Planned queries", timePlanned);
+
+        //long[] timePipelined = runLucenePipelinedTrial(lmr, PipelinedPointSource.DEFAULT_DEPTH);
+        //reportTime("Lucene BKWriter Dims=9 IdxDims=8 Pipelined", timePipelined);
+        //lmr.resetIterator();
+
+        //if (lmr instanceof LaghosVertexSource) {
+        //    long[] timeVertex = runLuceneVertexTrial((LaghosVertexSource)lmr);
+        //    reportTime("Lucene BKWriter unique vertices IdxDims=3", timeVertex);
+        //    lmr.resetIterator();
+        //}
+
+        //int nShards = Runtime.getRuntime().availableProcessors();
+        //long[] timeParallel = runLuceneParallelTrial(lmr, nShards);
+        //reportTime("Lucene BKWriter Dims=9 IdxDims=8 Shards=" + nShards, timeParallel);
 
         //long[] timeLevelUni = runLevelDBUniTrial(lmr);
         //reportTime("LevelDB Dims=1 IdxDims=1", timeLevelMulti);
@@ -265,5 +1121,70 @@ public class IndexedMesh {
         long[] timeLevelMulti = runLevelDBMultiTrial(lmr);
         reportTime("LevelDB Dims=1 IdxDims=8", timeLevelMulti);
         lmr.resetIterator();
+        //runLevelDBQueryTrial(new MeshQuery().range(LaghosField.E, 1.0, 2.0).greaterThan(LaghosField.RHO, 0.1));
+
+        //int nThreads = Runtime.getRuntime().availableProcessors();
+        //long[] timeLevelParallel = runLevelDBParallelTrial(lmr, nThreads);
+        //reportTime("LevelDB Dims=1 IdxDims=8 Threads=" + nThreads, timeLevelParallel);
+
+        //long[] timeLevelBatched = runLevelDBBatchedTrial(lmr, nThreads, 4096);
+        //reportTime("LevelDB WriteBatch=4096 IdxDims=8 Threads=" + nThreads, timeLevelBatched);
+
+        //long[] timeLevelPipelined = runLevelDBPipelinedTrial(lmr, nThreads, PipelinedPointSource.DEFAULT_DEPTH);
+        //reportTime("LevelDB Pipelined IdxDims=8 Consumers=" + nThreads, timeLevelPipelined);
+        //lmr.resetIterator();
+
+        //long[] timeRocks = runRocksDBTrial(lmr, nThreads, 4096);
+        //reportTime("RocksDB WriteBatch=4096 IdxDims=8 Threads=" + nThreads, timeRocks);
+
+        //long[] timeRocksBulk = runRocksDBBulkLoadTrial(lmr, nThreads, 0);
+        //reportTime("RocksDB SST bulk load IdxDims=8 Threads=" + nThreads, timeRocksBulk);
+
+        //long[] timeCycles = runTimeSeriesTrial(Paths.get("/tmp/laghos-cycles"), new int[]{20, 40, 60, 80},
+        //                                        new MeshQuery().greaterThan(LaghosField.E, 1.0), 40, 80);
+        //reportTime("Time series cycles=4", timeCycles);
+
+        //Path bitmapDir = Paths.get("/tmp/bitmaps.tpl");
+        //long[] timeBitmap = runBitmapTrial(lmr, bitmapDir, nThreads);
+        //reportTime("Bitmap bins=" + BitmapMeshIndex.DEFAULT_BINS + " Threads=" + nThreads, timeBitmap);
+        //runBitmapQueryTrial(bitmapDir, new MeshQuery().range(LaghosField.E, 1.0, 2.0)
+        //                                              .greaterThan(LaghosField.RHO, 0.1)
+        //                                              .box(4.0, 5.0, 1.0, 2.0, 0.0, 1.0));
+
+        //for (QuantizedPointCodec.Precision precision : QuantizedPointCodec.Precision.values()) {
+        //    long[] timeQuantized = runQuantizedTrial(lmr, bitmapDir, precision, nThreads,
+        //                                             new MeshQuery().range(LaghosField.E, 1.0, 2.0)
+        //                                                            .box(4.0, 5.0, 1.0, 2.0, 0.0, 1.0));
+        //    reportTime("Quantized BKD " + precision, timeQuantized);
+        //}
+
+        //long[] timeWriter = runLuceneIndexWriterTrial(lmr, Paths.get("/tmp/laghos-lucene"), nThreads,
+        //                                              LuceneMeshIndex.DEFAULT_RAM_BUFFER_MB, new TieredMergePolicy(),
+        //                                              new MeshQuery().range(LaghosField.E, 1.0, 2.0)
+        //                                                             .box(4.0, 5.0, 1.0, 2.0, 0.0, 1.0));
+        //reportTime("Lucene IndexWriter DoublePoint Threads=" + nThreads, timeWriter);
+
+        //long[] timeVector = runVectorScanTrial(lmr, nThreads, new MeshQuery().range(LaghosField.E, 1.0, 2.0)
+        //                                                                     .greaterThan(LaghosField.RHO, 0.1));
+        //reportTime("Vector scan Threads=" + nThreads, timeVector);
+
+        writeMetrics();
+    }
+
+    /**
+     * Write the metrics of the run as JSON to the file named by the
+     * sci.metrics.json property, if metrics are enabled and it is set
+     */
+    static void writeMetrics() {
+        String path = System.getProperty("sci.metrics.json");
+        if (!MeshMetrics.ENABLED || null == path) {
+            return;
+        }
+        try {
+            MeshMetrics.writeJson(Paths.get(path));
+            System.out.println("Metrics written to " + path);
+        } catch (IOException e) {
+            System.err.println("IOException writing metrics to " + path);
+        }
     }
 }
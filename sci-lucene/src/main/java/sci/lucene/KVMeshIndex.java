@@ -0,0 +1,171 @@
+package sci.lucene;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import sci.mfem.LaghosField;
+import sci.mfem.LaghosPointBatch;
+
+/**
+ * A MeshIndex over an LSM store holding MeshKeyCodec keys.
+ *
+ * Each per-field index only knows which elements have a vertex in a range,
+ * so a query scans the range of every constrained field and intersects the
+ * resulting element sets. The result counts matching elements out of the
+ * elements in the store, and an element matches when each constrained
+ * field has some vertex in range.
+ *
+ * When the store also holds a SpaceFillingCurve index, the fields of the
+ * curve are answered together from it instead: the query box becomes a few
+ * curve key ranges, and each key carries the exact values, so an element
+ * matches when one of its vertices lies inside the box.
+ *
+ * A query answered from a single element set, one field or the curve, finds
+ * exactly the elements a point level index does. One that intersects
+ * several may find more, and its result is marked element level, so callers
+ * can tell which they got whether or not the store has a curve.
+ */
+public abstract class KVMeshIndex implements MeshIndex {
+
+    /**
+     * Pass every key in [lower, upper] of dimension dim to consumer, in key
+     * order. dim is a field or MeshKeyCodec.CURVE_DIM. The key array may be
+     * reused between calls.
+     */
+    protected abstract void scan(int dim, byte[] lower, byte[] upper, Consumer<byte[]> consumer) throws IOException;
+
+    /** @return the value stored under key, or null */
+    protected abstract byte[] get(byte[] key) throws IOException;
+
+    @Override
+    public long getNumPoints() throws IOException {
+        byte[] counts = get(MeshKeyCodec.META_COUNTS_KEY);
+        return (null == counts) ? 0 : MeshKeyCodec.decodePointCount(counts);
+    }
+
+    /** @return the number of elements in the store */
+    public long getNumElements() throws IOException {
+        byte[] counts = get(MeshKeyCodec.META_COUNTS_KEY);
+        return (null == counts) ? 0 : MeshKeyCodec.decodeElementCount(counts);
+    }
+
+    /** @return the store's space filling curve, or null if it has no curve index */
+    public SpaceFillingCurve getCurve() throws IOException {
+        byte[] params = get(MeshKeyCodec.META_CURVE_KEY);
+        return (null == params) ? null : SpaceFillingCurve.fromBytes(params);
+    }
+
+    /**
+     * @return true if the answer to q intersects several element sets, so
+     *         it can hold elements none of whose vertices match all of q
+     */
+    public boolean isElementLevel(MeshQuery q) throws IOException {
+        return numElementSets(getCurve(), q) > 1;
+    }
+
+    @Override
+    public MeshQueryResult query(MeshQuery q) throws IOException {
+        long begin = System.nanoTime();
+        long[] elements = null;
+        SpaceFillingCurve curve = getCurve();
+        boolean[] answered = curveFields(curve, q);
+        if (null != curve && curve.constrains(q)) {
+            elements = scanCurve(curve, q);
+        }
+        for (LaghosField f : LaghosField.values()) {
+            if (q.isConstrained(f) && !answered[f.dim()]) {
+                long[] fieldElements = scanElements(f, q.getMin(f), q.getMax(f));
+                elements = (null == elements) ? fieldElements : intersect(elements, fieldElements);
+            }
+        }
+        // An unconstrained query matches every element, take them from the first field
+        if (null == elements) {
+            elements = scanElements(LaghosField.X, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+        }
+
+        MeshQueryResult result = new MeshQueryResult(getNumElements());
+        for (long elementId : elements) {
+            result.addPoint(elementId);
+        }
+        result.setElementLevel(numElementSets(curve, q) > 1);
+        result.finish(System.nanoTime() - begin);
+        return result;
+    }
+
+    /** @return the fields the curve answers for q, none without a curve or when q leaves it open */
+    static boolean[] curveFields(SpaceFillingCurve curve, MeshQuery q) {
+        boolean[] answered = new boolean[LaghosPointBatch.NUM_FIELDS];
+        if (null != curve && curve.constrains(q)) {
+            for (int d = 0; d < curve.getNumDims(); d++) {
+                answered[curve.getDim(d)] = true;
+            }
+        }
+        return answered;
+    }
+
+    /** @return the number of element sets intersected to answer q, the curve's and one per other field */
+    static int numElementSets(SpaceFillingCurve curve, MeshQuery q) {
+        boolean[] answered = curveFields(curve, q);
+        int sets = (null != curve && curve.constrains(q)) ? 1 : 0;
+        for (LaghosField f : LaghosField.values()) {
+            if (q.isConstrained(f) && !answered[f.dim()]) {
+                sets++;
+            }
+        }
+        return sets;
+    }
+
+    /** @return the sorted distinct elements with a value of field f in [min, max] */
+    long[] scanElements(LaghosField f, double min, double max) throws IOException {
+        byte[] lower = new byte[MeshKeyCodec.KEY_SIZE];
+        byte[] upper = new byte[MeshKeyCodec.KEY_SIZE];
+        MeshKeyCodec.lowerBound(f.dim(), min, lower);
+        MeshKeyCodec.upperBound(f.dim(), max, upper);
+        MeshQueryResult scanned = new MeshQueryResult(0);
+        scan(f.dim(), lower, upper, key -> scanned.addPoint(MeshKeyCodec.getElementId(key)));
+        scanned.finish(0);
+        return scanned.getElementIds();
+    }
+
+    /** @return the sorted distinct elements with a vertex inside q's box over the curve dimensions */
+    long[] scanCurve(SpaceFillingCurve curve, MeshQuery q) throws IOException {
+        double[][] box = curve.queryBounds(q);
+        byte[] lower = new byte[MeshKeyCodec.curveKeySize(curve)];
+        byte[] upper = new byte[MeshKeyCodec.curveKeySize(curve)];
+        MeshQueryResult scanned = new MeshQueryResult(0);
+        for (long[] range : curve.ranges(box[0], box[1], SpaceFillingCurve.DEFAULT_MAX_RANGES)) {
+            MeshKeyCodec.curveLowerBound(curve, range[0], lower);
+            MeshKeyCodec.curveUpperBound(curve, range[1], upper);
+            scan(MeshKeyCodec.CURVE_DIM, lower, upper, key -> {
+                // Ranges cover whole cells, so check the exact values
+                for (int d = 0; d < curve.getNumDims(); d++) {
+                    double v = MeshKeyCodec.getCurveValue(key, d);
+                    if (v < box[0][d] || v > box[1][d]) {
+                        return;
+                    }
+                }
+                scanned.addPoint(MeshKeyCodec.getElementId(key));
+            });
+        }
+        scanned.finish(0);
+        return scanned.getElementIds();
+    }
+
+    /** @return the intersection of two sorted arrays */
+    static long[] intersect(long[] a, long[] b) {
+        long[] out = new long[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                out[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+}
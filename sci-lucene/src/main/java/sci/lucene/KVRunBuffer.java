@@ -0,0 +1,133 @@
+package sci.lucene;
+
+import java.util.Arrays;
+import org.apache.lucene.util.IntroSorter;
+
+/**
+ * A fixed capacity buffer of fixed width key/value records that can be
+ * sorted in key order.
+ *
+ * Sorted string table writers require keys in strictly increasing order, so
+ * the bulk loaders fill a run buffer, sort it, and write the unique keys.
+ */
+public class KVRunBuffer {
+
+    /**
+     * Create a run buffer
+     *
+     * @param capacity the maximum number of records
+     * @param keyLength the length of every key in bytes
+     * @param valueLength the length of every value in bytes
+     */
+    public KVRunBuffer(int capacity, int keyLength, int valueLength) {
+        this.capacity = capacity;
+        this.keyLength = keyLength;
+        this.valueLength = valueLength;
+        this.recordLength = keyLength + valueLength;
+        this.records = new byte[capacity * this.recordLength];
+        this.scratch = new byte[this.recordLength];
+        this.count = 0;
+    }
+
+    /** @return true if no more records fit */
+    public boolean isFull() {
+        return this.count == this.capacity;
+    }
+
+    /** @return the number of records */
+    public int size() {
+        return this.count;
+    }
+
+    /** Remove every record */
+    public void clear() {
+        this.count = 0;
+    }
+
+    /** Append a record */
+    public void add(byte[] key, byte[] value) {
+        int off = this.count * this.recordLength;
+        System.arraycopy(key, 0, this.records, off, this.keyLength);
+        System.arraycopy(value, 0, this.records, off + this.keyLength, this.valueLength);
+        this.count++;
+    }
+
+    /**
+     * Sort the records by unsigned key bytes and drop records whose key
+     * repeats. The sort is not stable, so which record survives for a
+     * repeated key is unspecified.
+     */
+    public void sortUnique() {
+        new IntroSorter() {
+            @Override
+            protected void swap(int i, int j) {
+                int a = i * recordLength;
+                int b = j * recordLength;
+                System.arraycopy(records, a, scratch, 0, recordLength);
+                System.arraycopy(records, b, records, a, recordLength);
+                System.arraycopy(scratch, 0, records, b, recordLength);
+            }
+
+            @Override
+            protected int compare(int i, int j) {
+                return compareKeys(i, j);
+            }
+
+            @Override
+            protected void setPivot(int i) {
+                System.arraycopy(records, i * recordLength, pivot, 0, keyLength);
+            }
+
+            @Override
+            protected int comparePivot(int j) {
+                int b = j * recordLength;
+                return Arrays.compareUnsigned(pivot, 0, keyLength, records, b, b + keyLength);
+            }
+
+            final byte[] pivot = new byte[keyLength];
+        }.sort(0, this.count);
+
+        int unique = 0;
+        for (int i = 0; i < this.count; i++) {
+            if (0 == unique || 0 != compareKeys(unique - 1, i)) {
+                if (unique != i) {
+                    System.arraycopy(this.records, i * this.recordLength,
+                                     this.records, unique * this.recordLength, this.recordLength);
+                }
+                unique++;
+            }
+        }
+        this.count = unique;
+    }
+
+    /** Copy the key of record i into key */
+    public void getKey(int i, byte[] key) {
+        System.arraycopy(this.records, i * this.recordLength, key, 0, this.keyLength);
+    }
+
+    /** Copy the value of record i into value */
+    public void getValue(int i, byte[] value) {
+        System.arraycopy(this.records, i * this.recordLength + this.keyLength, value, 0, this.valueLength);
+    }
+
+    int compareKeys(int i, int j) {
+        int a = i * this.recordLength;
+        int b = j * this.recordLength;
+        return Arrays.compareUnsigned(this.records, a, a + this.keyLength, this.records, b, b + this.keyLength);
+    }
+
+    // Maximum number of records
+    final int capacity;
+
+    // Record layout
+    final int keyLength, valueLength, recordLength;
+
+    // Packed records
+    final byte[] records;
+
+    // Scratch record used while swapping
+    final byte[] scratch;
+
+    // Number of records
+    int count;
+}
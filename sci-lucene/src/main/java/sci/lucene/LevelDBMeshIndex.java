@@ -0,0 +1,65 @@
+package sci.lucene;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.function.Consumer;
+import org.fusesource.leveldbjni.JniDBFactory;
+import org.iq80.leveldb.DB;
+import org.iq80.leveldb.DBIterator;
+import org.iq80.leveldb.Options;
+
+/**
+ * Answers queries from a LevelDB store written with MeshKeyCodec keys
+ */
+public class LevelDBMeshIndex extends KVMeshIndex {
+
+    /** The default bytes of decompressed blocks LevelDB caches */
+    public static final long DEFAULT_BLOCK_CACHE_BYTES = 8L * 1024 * 1024;
+
+    /** Open an existing store */
+    public LevelDBMeshIndex(File dbFile) throws IOException {
+        this(dbFile, DEFAULT_BLOCK_CACHE_BYTES);
+    }
+
+    /**
+     * Open an existing store
+     *
+     * @param blockCacheBytes the bytes of decompressed table blocks the
+     *                        store caches, so repeated range scans skip
+     *                        reading and decompressing them
+     */
+    public LevelDBMeshIndex(File dbFile, long blockCacheBytes) throws IOException {
+        Options options = new Options();
+        options.createIfMissing(false);
+        options.cacheSize(blockCacheBytes);
+        this.db = JniDBFactory.factory.open(dbFile, options);
+    }
+
+    @Override
+    protected void scan(int dim, byte[] lower, byte[] upper, Consumer<byte[]> consumer) throws IOException {
+        try (DBIterator it = this.db.iterator()) {
+            it.seek(lower);
+            while (it.hasNext()) {
+                Map.Entry<byte[], byte[]> entry = it.next();
+                if (!MeshKeyCodec.atOrBefore(entry.getKey(), upper)) {
+                    break;
+                }
+                consumer.accept(entry.getKey());
+            }
+        }
+    }
+
+    @Override
+    protected byte[] get(byte[] key) {
+        return this.db.get(key);
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.db.close();
+    }
+
+    // The store
+    final DB db;
+}
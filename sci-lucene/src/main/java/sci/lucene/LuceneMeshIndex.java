@@ -0,0 +1,219 @@
+package sci.lucene;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.DoublePoint;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MergePolicy;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.TieredMergePolicy;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.SimpleCollector;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
+import sci.mfem.LaghosPointBatch;
+import sci.mfem.LaghosPointSource;
+
+/**
+ * A Lucene index of a Laghos mesh written through IndexWriter, for
+ * comparison with the BKD trees IndexedMesh builds by hand.
+ *
+ * Every point is a document holding the 8 fields as one DoublePoint, so
+ * each segment has the same 8 index dimension tree as the hand-built index,
+ * and the element id as a NumericDocValuesField. Element ids are docvalues
+ * rather than stored fields because queries read one per matching point,
+ * and a stored field would decompress a block of documents for each.
+ *
+ * Splits of the source are added from concurrent threads, so segment
+ * flushing and merging are left to IndexWriter, and queries run as
+ * DoublePoint.newRangeQuery through an IndexSearcher over an MMapDirectory.
+ */
+public class LuceneMeshIndex implements MeshIndex {
+
+    /** The DoublePoint field holding the 8 fields of a point */
+    public static final String POINT_FIELD = "point";
+
+    /** The docvalues field holding the element id of a point */
+    public static final String ELEMENT_ID_FIELD = "elementId";
+
+    /** The default IndexWriter RAM buffer */
+    public static final double DEFAULT_RAM_BUFFER_MB = 256.0;
+
+    /** Open the index in dir */
+    public LuceneMeshIndex(Path dir) throws IOException {
+        this.dir = new MMapDirectory(dir);
+        this.reader = DirectoryReader.open(this.dir);
+        this.searcher = new IndexSearcher(this.reader);
+    }
+
+    /**
+     * Index source in dir with a tiered merge policy and the default RAM buffer
+     *
+     * @return the open index
+     */
+    public static LuceneMeshIndex build(LaghosPointSource source, Path dir, int nThreads) throws IOException {
+        return build(source, dir, nThreads, DEFAULT_RAM_BUFFER_MB, new TieredMergePolicy());
+    }
+
+    /**
+     * Index source in dir, replacing any existing index
+     *
+     * @param nThreads the number of splits added concurrently
+     * @param ramBufferMB the RAM IndexWriter buffers before flushing a segment
+     * @param mergePolicy how IndexWriter merges the flushed segments
+     * @return the open index
+     */
+    public static LuceneMeshIndex build(LaghosPointSource source, Path dir, int nThreads,
+                                        double ramBufferMB, MergePolicy mergePolicy) throws IOException {
+        IndexWriterConfig config = new IndexWriterConfig()
+            .setOpenMode(IndexWriterConfig.OpenMode.CREATE)
+            .setRAMBufferSizeMB(ramBufferMB)
+            .setMergePolicy(mergePolicy);
+        List<? extends LaghosPointSource> splits = source.split(nThreads);
+        try (Directory out = new MMapDirectory(dir);
+             IndexWriter writer = new IndexWriter(out, config)) {
+            IndexedMesh.ingestSplits(splits, split -> addPoints(writer, split));
+            writer.commit();
+        } finally {
+            for (LaghosPointSource split : splits) {
+                split.close();
+            }
+        }
+        return new LuceneMeshIndex(dir);
+    }
+
+    /**
+     * Add every point of source as a document, reusing one document and its fields
+     *
+     * @return the number of points added
+     */
+    static long addPoints(IndexWriter writer, LaghosPointSource source) throws IOException {
+        double[] values = new double[LaghosPointBatch.NUM_FIELDS];
+        DoublePoint point = new DoublePoint(POINT_FIELD, values);
+        NumericDocValuesField elementId = new NumericDocValuesField(ELEMENT_ID_FIELD, 0L);
+        Document doc = new Document();
+        doc.add(point);
+        doc.add(elementId);
+
+        long count = 0;
+        for (LaghosPointBatch batch = source.getNextLaghosPointBatch(); batch != null;
+             batch = source.getNextLaghosPointBatch()) {
+            for (int i = 0; i < batch.size(); i++) {
+                for (int d = 0; d < LaghosPointBatch.NUM_FIELDS; d++) {
+                    // -0.0 sorts below 0.0 in a DoublePoint but compares equal to it
+                    values[d] = batch.getDouble(i, d) + 0.0;
+                }
+                point.setDoubleValues(values);
+                elementId.setLongValue(batch.getElementId(i));
+                writer.addDocument(doc);
+            }
+            count += batch.size();
+        }
+        return count;
+    }
+
+    /** @return the total size of the files in an index directory */
+    public static long getIndexBytes(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            long total = 0;
+            for (Path file : (Iterable<Path>)files::iterator) {
+                total += Files.size(file);
+            }
+            return total;
+        }
+    }
+
+    /** @return the range query equivalent to q */
+    public static Query toQuery(MeshQuery q) {
+        double[] lower = new double[LaghosPointBatch.NUM_FIELDS];
+        double[] upper = new double[LaghosPointBatch.NUM_FIELDS];
+        for (int d = 0; d < LaghosPointBatch.NUM_FIELDS; d++) {
+            lower[d] = q.getMin(d) + 0.0;
+            upper[d] = q.getMax(d) + 0.0;
+        }
+        return DoublePoint.newRangeQuery(POINT_FIELD, lower, upper);
+    }
+
+    @Override
+    public long getNumPoints() {
+        return this.reader.numDocs();
+    }
+
+    /** @return the number of segments in the index */
+    public int getNumSegments() {
+        return this.reader.leaves().size();
+    }
+
+    @Override
+    public MeshQueryResult query(MeshQuery q) throws IOException {
+        long begin = System.nanoTime();
+        MeshQueryResult result = new MeshQueryResult(getNumPoints());
+        this.searcher.search(toQuery(q), new ElementIdCollector(result));
+        result.finish(System.nanoTime() - begin);
+        return result;
+    }
+
+    /** @return the number of points matching q */
+    public long count(MeshQuery q) throws IOException {
+        return this.searcher.count(toQuery(q));
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.reader.close();
+        this.dir.close();
+    }
+
+    /**
+     * Adds the element id of every matching document to a result
+     */
+    static class ElementIdCollector extends SimpleCollector {
+        ElementIdCollector(MeshQueryResult result) {
+            this.result = result;
+        }
+
+        @Override
+        protected void doSetNextReader(LeafReaderContext context) throws IOException {
+            this.elementIds = DocValues.getNumeric(context.reader(), ELEMENT_ID_FIELD);
+        }
+
+        @Override
+        public void collect(int doc) throws IOException {
+            if (!this.elementIds.advanceExact(doc)) {
+                throw new IOException("Document " + doc + " has no " + ELEMENT_ID_FIELD);
+            }
+            this.result.addPoint(this.elementIds.longValue());
+        }
+
+        @Override
+        public ScoreMode scoreMode() {
+            return ScoreMode.COMPLETE_NO_SCORES;
+        }
+
+        // Result the matching points are added to
+        final MeshQueryResult result;
+
+        // Element ids of the current segment
+        NumericDocValues elementIds;
+    }
+
+    // Directory holding the mapped index
+    final Directory dir;
+
+    // Reader over every segment
+    final DirectoryReader reader;
+
+    // Searcher the range queries run on
+    final IndexSearcher searcher;
+}
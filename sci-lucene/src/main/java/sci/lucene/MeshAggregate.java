@@ -0,0 +1,132 @@
+package sci.lucene;
+
+import java.util.Arrays;
+import sci.mfem.LaghosField;
+import sci.mfem.LaghosPointBatch;
+
+/**
+ * The count, min, max and sum of every Laghos field over the points matched
+ * by a MeshQuery, plus how much of the index was decoded to find them
+ */
+public class MeshAggregate {
+
+    /**
+     * Create an empty aggregate
+     *
+     * @param totalPoints the number of points the query was evaluated over
+     */
+    public MeshAggregate(long totalPoints) {
+        this.totalPoints = totalPoints;
+        this.min = new double[LaghosPointBatch.NUM_FIELDS];
+        this.max = new double[LaghosPointBatch.NUM_FIELDS];
+        this.sum = new double[LaghosPointBatch.NUM_FIELDS];
+        Arrays.fill(this.min, Double.POSITIVE_INFINITY);
+        Arrays.fill(this.max, Double.NEGATIVE_INFINITY);
+    }
+
+    /** Record a matching point decoded from the index */
+    public void addPoint(double[] values) {
+        for (int d = 0; d < LaghosPointBatch.NUM_FIELDS; d++) {
+            this.min[d] = Math.min(this.min[d], values[d]);
+            this.max[d] = Math.max(this.max[d], values[d]);
+            this.sum[d] += values[d];
+        }
+        this.count++;
+        this.decodedPoints++;
+    }
+
+    /**
+     * Record a summary of count matching points without decoding them
+     *
+     * @param offset the position of the first field within min, max and sum
+     */
+    public void addSummary(long count, double[] min, double[] max, double[] sum, int offset) {
+        for (int d = 0; d < LaghosPointBatch.NUM_FIELDS; d++) {
+            this.min[d] = Math.min(this.min[d], min[offset + d]);
+            this.max[d] = Math.max(this.max[d], max[offset + d]);
+            this.sum[d] += sum[offset + d];
+        }
+        this.count += count;
+        this.summarizedNodes++;
+    }
+
+    /** Record the query latency */
+    public void finish(long latencyNanos) {
+        this.latencyNanos = latencyNanos;
+    }
+
+    /** @return the number of matching points */
+    public long getCount() {
+        return this.count;
+    }
+
+    /** @return the smallest value of f, or +inf if no point matched */
+    public double getMin(LaghosField f) {
+        return this.min[f.dim()];
+    }
+
+    /** @return the largest value of f, or -inf if no point matched */
+    public double getMax(LaghosField f) {
+        return this.max[f.dim()];
+    }
+
+    /** @return the sum of f over the matching points */
+    public double getSum(LaghosField f) {
+        return this.sum[f.dim()];
+    }
+
+    /** @return the mean of f, or NaN if no point matched */
+    public double getMean(LaghosField f) {
+        return (0 == this.count) ? Double.NaN : this.sum[f.dim()] / this.count;
+    }
+
+    /** @return the number of matching points decoded one at a time */
+    public long getDecodedPoints() {
+        return this.decodedPoints;
+    }
+
+    /** @return the number of tree nodes answered from their summaries */
+    public long getSummarizedNodes() {
+        return this.summarizedNodes;
+    }
+
+    /** @return the number of points the query was evaluated over */
+    public long getTotalPoints() {
+        return this.totalPoints;
+    }
+
+    /** @return the query latency in nanoseconds */
+    public long getLatencyNanos() {
+        return this.latencyNanos;
+    }
+
+    /** Print the latency, the count and how the points were found */
+    public void report(String desc) {
+        System.out.println(desc + ": " + this.latencyNanos * IndexedMesh.SECS_PER_NANOSECOND + " secs"
+                           + " points: " + this.count + "/" + this.totalPoints
+                           + " decoded: " + this.decodedPoints
+                           + " summarized nodes: " + this.summarizedNodes);
+        for (LaghosField f : LaghosField.values()) {
+            System.out.println("  " + f.fieldName() + ": min " + getMin(f) + " max " + getMax(f)
+                               + " mean " + getMean(f));
+        }
+    }
+
+    // Points the query was evaluated over
+    final long totalPoints;
+
+    // Smallest, largest and total value of each field
+    final double[] min, max, sum;
+
+    // Number of matching points
+    long count;
+
+    // Matching points decoded individually
+    long decodedPoints;
+
+    // Tree nodes added from their summaries
+    long summarizedNodes;
+
+    // Query latency
+    long latencyNanos;
+}
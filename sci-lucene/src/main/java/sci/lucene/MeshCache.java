@@ -0,0 +1,195 @@
+package sci.lucene;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiPredicate;
+import java.util.function.ToLongFunction;
+import sci.metrics.MeshMetrics;
+
+/**
+ * A least recently used cache bounded by the bytes its values hold.
+ *
+ * Each value is weighed once when it is put, and the least recently used
+ * entries are evicted until the total fits, so a few large results and
+ * many small leaves share one budget. A value heavier than the whole
+ * budget is not cached at all.
+ *
+ * Lookups count as hits or misses and evictions are counted too, both here
+ * and in the cache.&lt;name&gt; counters of MeshMetrics. Every method holds the
+ * cache lock, which is short since values are built outside it; two
+ * threads missing on the same key both build it and the last put wins.
+ */
+public class MeshCache<K, V> {
+
+    /**
+     * Create an empty cache
+     *
+     * @param name the name of the cache in its metrics
+     * @param maxBytes the most bytes the values may hold
+     * @param weigher the bytes held by a value
+     */
+    public MeshCache(String name, long maxBytes, ToLongFunction<? super V> weigher) {
+        this.name = name;
+        this.maxBytes = maxBytes;
+        this.weigher = weigher;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.hitCounter = MeshMetrics.counter("cache." + name + ".hits");
+        this.missCounter = MeshMetrics.counter("cache." + name + ".misses");
+        this.evictionCounter = MeshMetrics.counter("cache." + name + ".evictions");
+    }
+
+    /** @return the value cached under key, or null, counting a hit or a miss */
+    public synchronized V get(K key) {
+        Weighed<V> entry = this.entries.get(key);
+        count(null != entry);
+        return (null == entry) ? null : entry.value;
+    }
+
+    /**
+     * Find the lightest value whose entry satisfies match, such as the
+     * smallest cached superset of a query, counting a hit or a miss
+     *
+     * @return the value, or null if no entry matches
+     */
+    public synchronized V find(BiPredicate<? super K, ? super V> match) {
+        K best = null;
+        Weighed<V> bestEntry = null;
+        for (Map.Entry<K, Weighed<V>> e : this.entries.entrySet()) {
+            Weighed<V> entry = e.getValue();
+            if ((null == bestEntry || entry.bytes < bestEntry.bytes) && match.test(e.getKey(), entry.value)) {
+                best = e.getKey();
+                bestEntry = entry;
+            }
+        }
+        count(null != bestEntry);
+        if (null == bestEntry) {
+            return null;
+        }
+        // Touch the entry outside the iteration, which an access ordered map forbids
+        this.entries.get(best);
+        return bestEntry.value;
+    }
+
+    /** Cache value under key, replacing any previous value and evicting until the cache fits */
+    public synchronized void put(K key, V value) {
+        long bytes = this.weigher.applyAsLong(value);
+        Weighed<V> previous = this.entries.remove(key);
+        if (null != previous) {
+            this.bytes -= previous.bytes;
+        }
+        if (bytes > this.maxBytes) {
+            return;
+        }
+        this.entries.put(key, new Weighed<>(value, bytes));
+        this.bytes += bytes;
+        Iterator<Weighed<V>> lru = this.entries.values().iterator();
+        while (this.bytes > this.maxBytes) {
+            this.bytes -= lru.next().bytes;
+            lru.remove();
+            this.evictions++;
+            this.evictionCounter.add(1);
+        }
+    }
+
+    /** Drop every entry, keeping the statistics */
+    public synchronized void clear() {
+        this.entries.clear();
+        this.bytes = 0;
+    }
+
+    void count(boolean hit) {
+        if (hit) {
+            this.hits++;
+            this.hitCounter.add(1);
+        } else {
+            this.misses++;
+            this.missCounter.add(1);
+        }
+    }
+
+    /** @return the name of the cache */
+    public String getName() {
+        return this.name;
+    }
+
+    /** @return the number of cached values */
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    /** @return the bytes the cached values hold */
+    public synchronized long getBytes() {
+        return this.bytes;
+    }
+
+    /** @return the most bytes the cached values may hold */
+    public long getMaxBytes() {
+        return this.maxBytes;
+    }
+
+    /** @return the number of lookups that found a value */
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    /** @return the number of lookups that found nothing */
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    /** @return the number of values evicted to make room */
+    public synchronized long getEvictions() {
+        return this.evictions;
+    }
+
+    /** @return the fraction of lookups that hit */
+    public synchronized double getHitRate() {
+        long lookups = this.hits + this.misses;
+        return (0 == lookups) ? 0.0 : (double)this.hits / lookups;
+    }
+
+    /** Print the size and statistics of the cache */
+    public synchronized void report(String desc) {
+        System.out.println(desc + ": " + this.name + " entries: " + this.entries.size()
+                           + " bytes: " + this.bytes + "/" + this.maxBytes
+                           + " hits: " + this.hits + " misses: " + this.misses
+                           + " evictions: " + this.evictions
+                           + " hit rate: " + getHitRate());
+    }
+
+    /** A value and the bytes it was weighed at */
+    static class Weighed<V> {
+        Weighed(V value, long bytes) {
+            this.value = value;
+            this.bytes = bytes;
+        }
+
+        // Cached value
+        final V value;
+
+        // Bytes the value holds
+        final long bytes;
+    }
+
+    // Name of the cache in its metrics
+    final String name;
+
+    // Most bytes the values may hold
+    final long maxBytes;
+
+    // Bytes held by a value
+    final ToLongFunction<? super V> weigher;
+
+    // Entries from least to most recently used
+    final LinkedHashMap<K, Weighed<V>> entries;
+
+    // Bytes held by the cached values
+    long bytes;
+
+    // Lookups that hit and missed, and values evicted
+    long hits, misses, evictions;
+
+    // The same statistics in MeshMetrics
+    final MeshMetrics.Counter hitCounter, missCounter, evictionCounter;
+}
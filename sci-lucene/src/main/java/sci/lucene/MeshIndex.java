@@ -0,0 +1,30 @@
+package sci.lucene;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * An index over a Laghos mesh that can answer MeshQuery predicates
+ */
+public interface MeshIndex extends Closeable {
+
+    /** @return the number of points in the index */
+    long getNumPoints() throws IOException;
+
+    /**
+     * Evaluate a query against the index
+     *
+     * @return the matching elements along with the query latency
+     */
+    MeshQueryResult query(MeshQuery q) throws IOException;
+
+    /**
+     * Evaluate a query, also adding the matching points with their fields
+     * to points, so a cache can answer narrower queries from them
+     *
+     * @return the result, or null if the index cannot return the points it matches
+     */
+    default MeshQueryResult query(MeshQuery q, MeshPoints points) throws IOException {
+        return null;
+    }
+}
@@ -0,0 +1,158 @@
+package sci.lucene;
+
+import java.util.Arrays;
+import org.apache.lucene.util.NumericUtils;
+import sci.mfem.LaghosPointBatch;
+
+/**
+ * Encodes order-preserving composite keys for the KV secondary indexes.
+ *
+ * A key is the field's dimension id, the field value as a big-endian
+ * sign-flipped sortable long, and the element id:
+ *
+ *   [dim (1 byte)] [sortable value (8 bytes)] [element id (8 bytes)]
+ *
+ * LSM stores compare keys as unsigned bytes, so keys sort by dimension, then
+ * numerically by value, then by element. All eight per-field indexes can share
+ * one key space, points with equal values no longer overwrite each other, and
+ * a range predicate is answered by one seek followed by a forward scan.
+ *
+ * A store may also hold a spatial index under CURVE_DIM, keyed by the
+ * point's SpaceFillingCurve key and element id and followed by the exact
+ * values of the curve dimensions:
+ *
+ *   [CURVE_DIM (1 byte)] [curve key (8 bytes)] [element id (8 bytes)] [values (8 bytes each)]
+ *
+ * The curve key is stored big-endian without a sign flip, so keys sort in
+ * the curve's unsigned order and a box is answered by a few range scans.
+ */
+public class MeshKeyCodec {
+
+    /** The size of an encoded key in bytes */
+    public static final int KEY_SIZE = 1 + Long.BYTES + Long.BYTES;
+
+    /** Offsets of the key components */
+    public static final int DIM_OFFSET = 0;
+    public static final int VALUE_OFFSET = 1;
+    public static final int ELEMENT_ID_OFFSET = 1 + Long.BYTES;
+
+    /** The dimension id of the space filling curve index, after every field */
+    public static final int CURVE_DIM = LaghosPointBatch.NUM_FIELDS;
+
+    /** Offset of the exact values within a curve key */
+    public static final int CURVE_VALUES_OFFSET = 1 + Long.BYTES + Long.BYTES;
+
+    /** The dimension id reserved for store metadata, it sorts after every field */
+    public static final byte META_DIM = (byte)0xff;
+
+    /** Key holding the number of points and elements in the store */
+    public static final byte[] META_COUNTS_KEY = {META_DIM, 'c', 'o', 'u', 'n', 't', 's'};
+
+    /** Key holding the parameters of the store's space filling curve */
+    public static final byte[] META_CURVE_KEY = {META_DIM, 'c', 'u', 'r', 'v', 'e'};
+
+    /** Values are empty, the key carries everything */
+    public static final byte[] EMPTY_VALUE = new byte[0];
+
+    /** Encode the key for value v of dimension dim of element elementId */
+    public static void encodeKey(int dim, double v, long elementId, byte[] key) {
+        key[DIM_OFFSET] = (byte)dim;
+        NumericUtils.longToSortableBytes(BKDPointCodec.sortableLong(v), key, VALUE_OFFSET);
+        NumericUtils.longToSortableBytes(elementId, key, ELEMENT_ID_OFFSET);
+    }
+
+    /** Encode the key for dimension dim of point i of batch */
+    public static void encodeKey(LaghosPointBatch batch, int i, int dim, byte[] key) {
+        encodeKey(dim, batch.getDouble(i, dim), batch.getElementId(i), key);
+    }
+
+    /** Encode the smallest key of dimension dim with a value of at least min */
+    public static void lowerBound(int dim, double min, byte[] key) {
+        encodeKey(dim, min, Long.MIN_VALUE, key);
+    }
+
+    /** Encode the largest key of dimension dim with a value of at most max */
+    public static void upperBound(int dim, double max, byte[] key) {
+        encodeKey(dim, max, Long.MAX_VALUE, key);
+    }
+
+    /** @return true if key is not after upper */
+    public static boolean atOrBefore(byte[] key, byte[] upper) {
+        return Arrays.compareUnsigned(key, upper) <= 0;
+    }
+
+    /** @return the dimension id of key */
+    public static int getDim(byte[] key) {
+        return key[DIM_OFFSET] & 0xff;
+    }
+
+    /** @return the field value of key */
+    public static double getValue(byte[] key) {
+        return NumericUtils.sortableLongToDouble(NumericUtils.sortableBytesToLong(key, VALUE_OFFSET));
+    }
+
+    /** @return the element id of key */
+    public static long getElementId(byte[] key) {
+        return NumericUtils.sortableBytesToLong(key, ELEMENT_ID_OFFSET);
+    }
+
+    /** @return the size of a curve key for curve */
+    public static int curveKeySize(SpaceFillingCurve curve) {
+        return CURVE_VALUES_OFFSET + curve.getNumDims() * Double.BYTES;
+    }
+
+    /** Encode the curve key of point i of batch */
+    public static void encodeCurveKey(SpaceFillingCurve curve, LaghosPointBatch batch, int i, byte[] key) {
+        key[DIM_OFFSET] = (byte)CURVE_DIM;
+        // Undo the sign flip, the curve key sorts as an unsigned long
+        NumericUtils.longToSortableBytes(curve.encode(batch, i) ^ Long.MIN_VALUE, key, VALUE_OFFSET);
+        NumericUtils.longToSortableBytes(batch.getElementId(i), key, ELEMENT_ID_OFFSET);
+        for (int d = 0; d < curve.getNumDims(); d++) {
+            double v = batch.getDouble(i, curve.getDim(d));
+            NumericUtils.longToSortableBytes(BKDPointCodec.sortableLong(v), key,
+                                             CURVE_VALUES_OFFSET + d * Double.BYTES);
+        }
+    }
+
+    /** Encode the smallest curve key of a point with curve key first */
+    public static void curveLowerBound(SpaceFillingCurve curve, long first, byte[] key) {
+        Arrays.fill(key, 0, curveKeySize(curve), (byte)0);
+        key[DIM_OFFSET] = (byte)CURVE_DIM;
+        NumericUtils.longToSortableBytes(first ^ Long.MIN_VALUE, key, VALUE_OFFSET);
+    }
+
+    /** Encode the largest curve key of a point with curve key last */
+    public static void curveUpperBound(SpaceFillingCurve curve, long last, byte[] key) {
+        Arrays.fill(key, 0, curveKeySize(curve), (byte)0xff);
+        key[DIM_OFFSET] = (byte)CURVE_DIM;
+        NumericUtils.longToSortableBytes(last ^ Long.MIN_VALUE, key, VALUE_OFFSET);
+    }
+
+    /** @return the curve key within a curve key */
+    public static long getCurveKey(byte[] key) {
+        return NumericUtils.sortableBytesToLong(key, VALUE_OFFSET) ^ Long.MIN_VALUE;
+    }
+
+    /** @return the exact value of curve dimension d within a curve key */
+    public static double getCurveValue(byte[] key, int d) {
+        return NumericUtils.sortableLongToDouble(NumericUtils.sortableBytesToLong(key, CURVE_VALUES_OFFSET + d * Double.BYTES));
+    }
+
+    /** @return the value stored under META_COUNTS_KEY */
+    public static byte[] encodeCounts(long numPoints, long numElements) {
+        byte[] value = new byte[2 * Long.BYTES];
+        NumericUtils.longToSortableBytes(numPoints, value, 0);
+        NumericUtils.longToSortableBytes(numElements, value, Long.BYTES);
+        return value;
+    }
+
+    /** @return the number of points recorded by encodeCounts */
+    public static long decodePointCount(byte[] value) {
+        return NumericUtils.sortableBytesToLong(value, 0);
+    }
+
+    /** @return the number of elements recorded by encodeCounts */
+    public static long decodeElementCount(byte[] value) {
+        return NumericUtils.sortableBytesToLong(value, Long.BYTES);
+    }
+}
@@ -0,0 +1,158 @@
+package sci.lucene;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.apache.lucene.util.ArrayUtil;
+import sci.mfem.LaghosPointBatch;
+
+/**
+ * A growable set of decoded Laghos points on the heap, in the packed
+ * layout of LaghosPointBatch.
+ *
+ * The caches hold their points this way: a decoded BKD leaf, whose sortable
+ * bytes no longer need decoding on a hit, and the matching points of a
+ * cached query, which a narrower query can filter instead of going back to
+ * the index. Once cached a set is never added to, so any number of threads
+ * may read it.
+ *
+ * A set given a byte limit stops collecting once it would grow past it,
+ * dropping its points, so a broad query's points are never gathered only
+ * to be too heavy for the cache.
+ */
+public class MeshPoints {
+
+    /** Approximate bytes of the set, its buffer and array headers */
+    static final long OBJECT_BYTES = 128;
+
+    /** Create an empty set with room for capacity points */
+    public MeshPoints(int capacity) {
+        this(capacity, Long.MAX_VALUE);
+    }
+
+    /**
+     * Create an empty set with room for capacity points
+     *
+     * @param maxBytes the most bytes of points collected before the set
+     *        drops them and is truncated
+     */
+    public MeshPoints(int capacity, long maxBytes) {
+        this.bytes = new byte[Math.toIntExact(Math.max(capacity, 1) * (long)LaghosPointBatch.POINT_SIZE)];
+        this.buffer = ByteBuffer.wrap(this.bytes).order(ByteOrder.nativeOrder());
+        this.count = 0;
+        this.maxBytes = maxBytes;
+        this.truncated = false;
+    }
+
+    /** @return the number of points */
+    public int size() {
+        return this.count;
+    }
+
+    /** @return true if the set grew past its byte limit and holds no points */
+    public boolean isTruncated() {
+        return this.truncated;
+    }
+
+    /** Append point i of batch */
+    public void add(LaghosPointBatch batch, int i) {
+        int at = reserve();
+        if (at < 0) {
+            return;
+        }
+        batch.copyBytes(i, 0, this.bytes, at, LaghosPointBatch.POINT_SIZE);
+    }
+
+    /** Append the point packed by BKDPointCodec */
+    public void addPacked(byte[] packedValue) {
+        int at = reserve();
+        if (at < 0) {
+            return;
+        }
+        for (int d = 0; d < LaghosPointBatch.NUM_FIELDS; d++) {
+            this.buffer.putDouble(at + d * Double.BYTES, BKDPointCodec.decodeDouble(packedValue, d));
+        }
+        this.buffer.putLong(at + LaghosPointBatch.ELEMENT_ID_OFFSET, BKDPointCodec.decodeElementId(packedValue));
+    }
+
+    /**
+     * @return the byte offset of a new point at the end, growing the array if
+     *         needed, or -1 once the set is truncated
+     */
+    int reserve() {
+        if (this.truncated) {
+            return -1;
+        }
+        long needed = ((long)this.count + 1) * LaghosPointBatch.POINT_SIZE;
+        if (needed > this.bytes.length) {
+            if (needed + OBJECT_BYTES > this.maxBytes) {
+                this.truncated = true;
+                this.bytes = new byte[0];
+                this.buffer = ByteBuffer.wrap(this.bytes).order(ByteOrder.nativeOrder());
+                this.count = 0;
+                return -1;
+            }
+            if (needed > ArrayUtil.MAX_ARRAY_LENGTH) {
+                throw new IllegalStateException("Too many points for one set: " + (this.count + 1));
+            }
+            // Never allocate past the limit while growing towards it
+            long length = Math.min(ArrayUtil.oversize((int)needed, 1), this.maxBytes - OBJECT_BYTES);
+            this.bytes = ArrayUtil.growExact(this.bytes, (int)Math.max(length, needed));
+            this.buffer = ByteBuffer.wrap(this.bytes).order(ByteOrder.nativeOrder());
+        }
+        int at = this.count * LaghosPointBatch.POINT_SIZE;
+        this.count++;
+        return at;
+    }
+
+    /** @return a batch over the points, valid until the next add */
+    public LaghosPointBatch getBatch() {
+        LaghosPointBatch batch = new LaghosPointBatch();
+        batch.reset(this.buffer, 0, this.count, 0);
+        return batch;
+    }
+
+    /**
+     * Add the points matching q to result, and to matches unless it is null
+     */
+    public void select(MeshQuery q, MeshQueryResult result, MeshPoints matches) {
+        LaghosPointBatch batch = getBatch();
+        for (int i = 0; i < this.count; i++) {
+            if (q.matches(batch, i)) {
+                result.addPoint(batch.getElementId(i));
+                if (null != matches) {
+                    matches.add(batch, i);
+                }
+            }
+        }
+    }
+
+    /** Drop the unused capacity, before the set is cached */
+    public MeshPoints trim() {
+        int used = this.count * LaghosPointBatch.POINT_SIZE;
+        if (used < this.bytes.length) {
+            this.bytes = ArrayUtil.copyOfSubArray(this.bytes, 0, Math.max(used, 1));
+            this.buffer = ByteBuffer.wrap(this.bytes).order(ByteOrder.nativeOrder());
+        }
+        return this;
+    }
+
+    /** @return the heap bytes the points hold, to weigh them in a cache */
+    public long ramBytesUsed() {
+        return this.bytes.length + OBJECT_BYTES;
+    }
+
+    // Packed points
+    byte[] bytes;
+
+    // Native order view of bytes
+    ByteBuffer buffer;
+
+    // Number of points
+    int count;
+
+    // Bytes of points collected before the set is truncated
+    final long maxBytes;
+
+    // Whether the points were dropped for growing past maxBytes
+    boolean truncated;
+}
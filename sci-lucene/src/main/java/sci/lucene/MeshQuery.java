@@ -0,0 +1,143 @@
+package sci.lucene;
+
+import java.util.Arrays;
+import sci.mfem.LaghosField;
+import sci.mfem.LaghosPointBatch;
+
+/**
+ * A conjunction of closed ranges over the fields of a Laghos point.
+ *
+ * Fields without a range are unconstrained. Open bounds such as rho > c are
+ * stored as the closed range [nextUp(c), +inf].
+ */
+public class MeshQuery {
+
+    /** Create a query that matches every point */
+    public MeshQuery() {
+        this.min = new double[LaghosPointBatch.NUM_FIELDS];
+        this.max = new double[LaghosPointBatch.NUM_FIELDS];
+        Arrays.fill(this.min, Double.NEGATIVE_INFINITY);
+        Arrays.fill(this.max, Double.POSITIVE_INFINITY);
+    }
+
+    /** Create a copy of other, such as to keep as a cache key */
+    public MeshQuery(MeshQuery other) {
+        this.min = other.min.clone();
+        this.max = other.max.clone();
+    }
+
+    /** Restrict field f to [lo, hi], intersecting any existing range */
+    public MeshQuery range(LaghosField f, double lo, double hi) {
+        this.min[f.dim()] = Math.max(this.min[f.dim()], lo);
+        this.max[f.dim()] = Math.min(this.max[f.dim()], hi);
+        return this;
+    }
+
+    /** Restrict field f to values greater than v */
+    public MeshQuery greaterThan(LaghosField f, double v) {
+        return range(f, Math.nextUp(v), Double.POSITIVE_INFINITY);
+    }
+
+    /** Restrict field f to values less than v */
+    public MeshQuery lessThan(LaghosField f, double v) {
+        return range(f, Double.NEGATIVE_INFINITY, Math.nextDown(v));
+    }
+
+    /** Restrict the point position to an xyz box */
+    public MeshQuery box(double xMin, double xMax, double yMin, double yMax, double zMin, double zMax) {
+        range(LaghosField.X, xMin, xMax);
+        range(LaghosField.Y, yMin, yMax);
+        return range(LaghosField.Z, zMin, zMax);
+    }
+
+    /** @return the lower bound of field f */
+    public double getMin(LaghosField f) {
+        return this.min[f.dim()];
+    }
+
+    /** @return the upper bound of field f */
+    public double getMax(LaghosField f) {
+        return this.max[f.dim()];
+    }
+
+    /** @return the lower bound of dimension dim */
+    public double getMin(int dim) {
+        return this.min[dim];
+    }
+
+    /** @return the upper bound of dimension dim */
+    public double getMax(int dim) {
+        return this.max[dim];
+    }
+
+    /** @return true if field f has a range */
+    public boolean isConstrained(LaghosField f) {
+        return this.min[f.dim()] != Double.NEGATIVE_INFINITY || this.max[f.dim()] != Double.POSITIVE_INFINITY;
+    }
+
+    /** @return true if point i of batch satisfies every range */
+    public boolean matches(LaghosPointBatch batch, int i) {
+        for (int d = 0; d < LaghosPointBatch.NUM_FIELDS; d++) {
+            double v = batch.getDouble(i, d);
+            if (v < this.min[d] || v > this.max[d]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** @return true if every point matching other also matches this query */
+    public boolean contains(MeshQuery other) {
+        for (int d = 0; d < LaghosPointBatch.NUM_FIELDS; d++) {
+            if (other.min[d] < this.min[d] || other.max[d] > this.max[d]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Queries are equal when their ranges are, so the same predicate built
+     * in a different order, or with 0.0 for -0.0, is the same cache key
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof MeshQuery)) {
+            return false;
+        }
+        MeshQuery other = (MeshQuery)o;
+        for (int d = 0; d < LaghosPointBatch.NUM_FIELDS; d++) {
+            if (this.min[d] != other.min[d] || this.max[d] != other.max[d]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = 1;
+        for (int d = 0; d < LaghosPointBatch.NUM_FIELDS; d++) {
+            // Adding 0.0 folds -0.0 into 0.0, which equals treats as the same bound
+            h = 31 * h + Double.hashCode(this.min[d] + 0.0);
+            h = 31 * h + Double.hashCode(this.max[d] + 0.0);
+        }
+        return h;
+    }
+
+    public String toString() {
+        String s = "";
+        for (LaghosField f : LaghosField.values()) {
+            if (isConstrained(f)) {
+                s += (s.isEmpty() ? "" : " and ") + f.fieldName() + " in [" + getMin(f) + "," + getMax(f) + "]";
+            }
+        }
+        return s.isEmpty() ? "all points" : s;
+    }
+
+    // Lower bound of each field
+    final double[] min;
+
+    // Upper bound of each field
+    final double[] max;
+}
@@ -0,0 +1,197 @@
+package sci.lucene;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives a MeshQueryServer with concurrent clients and reports the latency
+ * distribution of its responses.
+ *
+ * Each client is a thread sending one request at a time and waiting for the
+ * response before the next (a closed loop), cycling through the request
+ * paths from its own offset so clients do not march in lockstep. Latency is
+ * measured per request on the client, so it includes the HTTP round trip,
+ * and percentiles are exact since every latency is kept.
+ */
+public class MeshQueryLoadGenerator {
+
+    /** How long a request may take before it counts as an error */
+    static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(60);
+
+    /**
+     * Create a generator
+     *
+     * @param base the server, such as http://localhost:8650/
+     * @param clients the number of concurrent clients
+     */
+    public MeshQueryLoadGenerator(URI base, int clients) {
+        if (clients < 1) {
+            throw new IllegalArgumentException("A load needs at least 1 client, not " + clients);
+        }
+        this.base = base;
+        this.clients = clients;
+        this.http = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(REQUEST_TIMEOUT)
+            .build();
+    }
+
+    /**
+     * Send requestsPerClient requests from every client
+     *
+     * @param paths request paths relative to the server, such as
+     *              query?index=bkd&amp;e=1,2
+     * @return the latencies of every request
+     */
+    public Report run(List<String> paths, int requestsPerClient) throws IOException {
+        List<URI> uris = new ArrayList<>();
+        for (String path : paths) {
+            uris.add(this.base.resolve(path));
+        }
+        AtomicLong errors = new AtomicLong();
+        ExecutorService pool = Executors.newFixedThreadPool(this.clients);
+        try {
+            long begin = System.nanoTime();
+            List<Future<long[]>> results = new ArrayList<>();
+            for (int c = 0; c < this.clients; c++) {
+                int offset = c;
+                results.add(pool.submit(() -> {
+                    long[] latencies = new long[requestsPerClient];
+                    for (int i = 0; i < requestsPerClient; i++) {
+                        HttpRequest request = HttpRequest.newBuilder(uris.get((offset + i) % uris.size()))
+                            .timeout(REQUEST_TIMEOUT)
+                            .GET()
+                            .build();
+                        long start = System.nanoTime();
+                        try {
+                            HttpResponse<String> response = this.http.send(request, HttpResponse.BodyHandlers.ofString());
+                            if (200 != response.statusCode()) {
+                                errors.incrementAndGet();
+                            }
+                        } catch (IOException e) {
+                            errors.incrementAndGet();
+                        }
+                        latencies[i] = System.nanoTime() - start;
+                    }
+                    return latencies;
+                }));
+            }
+            long[] all = new long[this.clients * requestsPerClient];
+            for (int c = 0; c < this.clients; c++) {
+                System.arraycopy(results.get(c).get(), 0, all, c * requestsPerClient, requestsPerClient);
+            }
+            return new Report(all, System.nanoTime() - begin, errors.get());
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted while generating load", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Load client failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * The latencies of one run
+     */
+    public static class Report {
+        Report(long[] latencies, long wallNanos, long errors) {
+            this.latencies = latencies;
+            Arrays.sort(this.latencies);
+            this.wallNanos = wallNanos;
+            this.errors = errors;
+        }
+
+        /** @return the number of requests sent */
+        public int getNumRequests() {
+            return this.latencies.length;
+        }
+
+        /** @return the number of requests that failed or did not return 200 */
+        public long getErrors() {
+            return this.errors;
+        }
+
+        /** @return the p'th percentile latency in nanoseconds, by nearest rank */
+        public long getPercentileNanos(double p) {
+            if (0 == this.latencies.length) {
+                return 0L;
+            }
+            int rank = (int)Math.ceil(this.latencies.length * p / 100.0);
+            return this.latencies[Math.min(Math.max(rank, 1), this.latencies.length) - 1];
+        }
+
+        /** @return the slowest latency in nanoseconds */
+        public long getMaxNanos() {
+            return getPercentileNanos(100.0);
+        }
+
+        /** @return requests completed per second of wall time */
+        public double getQueriesPerSec() {
+            return this.latencies.length / (this.wallNanos * 1e-9);
+        }
+
+        /** Print the request rate and latency percentiles */
+        public void report(String desc) {
+            System.out.println(desc + ": requests: " + getNumRequests()
+                               + " errors: " + getErrors()
+                               + " qps: " + getQueriesPerSec()
+                               + " p50: " + getPercentileNanos(50.0) * 1e-6 + " ms"
+                               + " p99: " + getPercentileNanos(99.0) * 1e-6 + " ms"
+                               + " max: " + getMaxNanos() * 1e-6 + " ms");
+        }
+
+        // Latency of every request in nanoseconds, sorted
+        final long[] latencies;
+
+        // Time from the first request to the last response
+        final long wallNanos;
+
+        // Requests that failed
+        final long errors;
+    }
+
+    /**
+     * Load a running server
+     *
+     * Usage: MeshQueryLoadGenerator url clients requests path ...
+     *
+     * where requests is the number each client sends, after a warmup pass
+     * of the same size, and each path is a request such as
+     * "query?index=bkd&amp;e=1,2".
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 4) {
+            System.err.println("Usage: MeshQueryLoadGenerator url clients requests path ...");
+            System.exit(1);
+        }
+        URI base = URI.create(args[0].endsWith("/") ? args[0] : args[0] + "/");
+        int clients = Integer.parseInt(args[1]);
+        int requests = Integer.parseInt(args[2]);
+        List<String> paths = Arrays.asList(args).subList(3, args.length);
+
+        MeshQueryLoadGenerator load = new MeshQueryLoadGenerator(base, clients);
+        load.run(paths, requests).report("Warmup " + clients + " clients");
+        load.run(paths, requests).report("Load " + clients + " clients");
+    }
+
+    // Server the requests are sent to
+    final URI base;
+
+    // Number of concurrent clients
+    final int clients;
+
+    // Client shared by every load thread
+    final HttpClient http;
+}
@@ -0,0 +1,342 @@
+package sci.lucene;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import sci.mfem.LaghosField;
+import sci.metrics.MeshMetrics;
+
+/**
+ * Chooses which index answers a query, from the statistics gathered when
+ * the mesh was ingested.
+ *
+ * Each registered backend is costed in units of one point of a vectorized
+ * scan:
+ *
+ *   SCAN  reads every point, N * SCAN_POINT_COST
+ *   BKD   decodes the matching points plus the leaves on the boundary of
+ *         the query, about 2 * leaf * (N / leaf)^(1 - 1/k) points for k
+ *         constrained fields, at BKD_POINT_COST each
+ *   LSM   reads the keys in range of every constrained field at
+ *         LSM_KEY_COST each
+ *
+ * so selective queries go to the BKD tree or the LSM store and broad ones
+ * to the scan. The constants are relative per point costs in the ratio
+ * the query benchmarks measure, and only their ratios matter.
+ *
+ * The LSM indexes match elements rather than points: an element matches
+ * when each constrained field, or the box of a curve index, has some vertex
+ * in range. When one field or the curve answers the whole query that finds
+ * exactly the elements a point level backend does, so the LSM plan is
+ * always considered. Otherwise it finds more, as KVMeshIndex.isElementLevel
+ * tells, and is only considered once element level answers are allowed,
+ * which also admits intersecting a BKD query over the xyz box with an LSM
+ * query over the other fields, the way an LSM store with a curve index
+ * answers it.
+ *
+ * Because the LSM store keys elements, an LSM or intersection plan counts
+ * its rows in elements, even when it is not element level: its estimate
+ * and the matching points of its result are both elements. The other plans
+ * count points. execute logs the chosen plan with its estimated and actual
+ * rows in the plan's unit, so the statistics can be checked against the
+ * data.
+ */
+public class MeshQueryPlanner {
+
+    /** The indexes a plan can use */
+    public enum Backend { BKD, LSM, SCAN }
+
+    /** The cost of one point of a vectorized scan */
+    static final double SCAN_POINT_COST = 1.0;
+
+    /** The cost of decoding and testing one point of a BKD leaf */
+    static final double BKD_POINT_COST = 8.0;
+
+    /** The cost of reading one key of an LSM range scan */
+    static final double LSM_KEY_COST = 4.0;
+
+    /** The cost of merging one element id when intersecting results */
+    static final double INTERSECT_ELEMENT_COST = 1.0;
+
+    /** The points per BKD leaf the boundary estimate assumes */
+    static final int LEAF_POINTS = IndexedMesh.BKD_LEAF_POINTS;
+
+    /** The fields a BKD part of an intersection answers */
+    static final LaghosField[] SPATIAL_FIELDS = {LaghosField.X, LaghosField.Y, LaghosField.Z};
+
+    /** Plan with stats, before any backend is registered */
+    public MeshQueryPlanner(MeshStatistics stats) {
+        this.stats = stats;
+        this.backends = new EnumMap<>(Backend.class);
+        this.elementLevel = false;
+    }
+
+    /** Let plans use index as backend, replacing any index registered for it */
+    public MeshQueryPlanner addBackend(Backend backend, MeshIndex index) {
+        this.backends.put(backend, index);
+        return this;
+    }
+
+    /**
+     * Allow answers at element level, where an element matches when each
+     * constrained field has some vertex in range, which admits LSM plans
+     * over several fields and intersections
+     */
+    public MeshQueryPlanner setElementLevel(boolean elementLevel) {
+        this.elementLevel = elementLevel;
+        return this;
+    }
+
+    /** @return the statistics plans are costed from */
+    public MeshStatistics getStatistics() {
+        return this.stats;
+    }
+
+    /**
+     * @return the cheapest plan for q among the registered backends
+     * @throws IllegalStateException if no backend can answer q
+     */
+    public Plan plan(MeshQuery q) throws IOException {
+        List<Plan> candidates = new ArrayList<>();
+        if (this.backends.containsKey(Backend.SCAN)) {
+            candidates.add(new Plan(false, this.stats.estimatePoints(q), scanCost(), Backend.SCAN, q));
+        }
+        if (this.backends.containsKey(Backend.BKD)) {
+            candidates.add(new Plan(false, this.stats.estimatePoints(q), bkdCost(q), Backend.BKD, q));
+        }
+        if (this.backends.containsKey(Backend.LSM)) {
+            boolean lsmElementLevel = lsmElementLevel(q);
+            if (!lsmElementLevel || this.elementLevel) {
+                candidates.add(new Plan(lsmElementLevel, this.stats.estimateElements(q), lsmCost(q), Backend.LSM, q));
+            }
+        }
+        if (this.elementLevel && this.backends.containsKey(Backend.BKD) && this.backends.containsKey(Backend.LSM)) {
+            MeshQuery spatial = new MeshQuery();
+            MeshQuery scalar = new MeshQuery();
+            for (LaghosField f : LaghosField.values()) {
+                if (q.isConstrained(f)) {
+                    MeshQuery part = isSpatial(f) ? spatial : scalar;
+                    part.range(f, q.getMin(f), q.getMax(f));
+                }
+            }
+            if (numConstrained(spatial, SPATIAL_FIELDS) > 0 && numConstrained(scalar, LaghosField.values()) > 0) {
+                double elements = this.stats.estimateElements(spatial) + this.stats.estimateElements(scalar);
+                double cost = bkdCost(spatial) + lsmCost(scalar) + elements * INTERSECT_ELEMENT_COST;
+                candidates.add(new Plan(true, this.stats.estimateElements(q), cost,
+                                        List.of(Backend.BKD, Backend.LSM), List.of(spatial, scalar)));
+            }
+        }
+        if (candidates.isEmpty()) {
+            throw new IllegalStateException("No registered backend can answer " + q);
+        }
+        Plan best = candidates.get(0);
+        for (Plan p : candidates) {
+            if (p.cost < best.cost) {
+                best = p;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Plan q, run the plan and log it with its estimated and actual rows.
+     * The result's matching points are elements when the plan counts
+     * elements.
+     */
+    public MeshQueryResult execute(MeshQuery q) throws IOException {
+        Plan plan = plan(q);
+        MeshQueryResult result = execute(plan);
+        long actual = plan.countsElements() ? result.getNumElements() : result.getMatchingPoints();
+        double qError = Math.max(plan.estimatedRows, 1.0) / Math.max(actual, 1.0);
+        String unit = plan.countsElements() ? " elements" : " points";
+        System.out.println("Plan " + plan + " for " + q
+                           + ": estimated rows: " + Math.round(plan.estimatedRows) + unit
+                           + " actual rows: " + actual + unit
+                           + " q-error: " + Math.max(qError, 1.0 / qError)
+                           + " latency: " + result.getLatencyNanos() * IndexedMesh.SECS_PER_NANOSECOND + " secs");
+        return result;
+    }
+
+    /** Run plan, intersecting the element ids of its parts when it has several */
+    public MeshQueryResult execute(Plan plan) throws IOException {
+        MeshMetrics.counter("planner.plans." + plan.getName()).add(1);
+        if (1 == plan.backends.size()) {
+            return backend(plan.backends.get(0)).query(plan.parts.get(0));
+        }
+        long begin = System.nanoTime();
+        long[] elements = null;
+        for (int i = 0; i < plan.backends.size(); i++) {
+            long[] partElements = backend(plan.backends.get(i)).query(plan.parts.get(i)).getElementIds();
+            elements = (null == elements) ? partElements : KVMeshIndex.intersect(elements, partElements);
+        }
+        MeshQueryResult result = new MeshQueryResult(this.stats.getNumElements());
+        for (long elementId : elements) {
+            result.addPoint(elementId);
+        }
+        result.setElementLevel(true);
+        result.finish(System.nanoTime() - begin);
+        return result;
+    }
+
+    MeshIndex backend(Backend backend) {
+        MeshIndex index = this.backends.get(backend);
+        if (null == index) {
+            throw new IllegalStateException("No index registered for " + backend);
+        }
+        return index;
+    }
+
+    /** @return true if the LSM backend answers q at element level */
+    boolean lsmElementLevel(MeshQuery q) throws IOException {
+        MeshIndex lsm = this.backends.get(Backend.LSM);
+        if (lsm instanceof KVMeshIndex) {
+            return ((KVMeshIndex)lsm).isElementLevel(q);
+        }
+        return numConstrained(q, LaghosField.values()) > 1;
+    }
+
+    double scanCost() {
+        return this.stats.getNumPoints() * SCAN_POINT_COST;
+    }
+
+    /** @return the cost of the matching points plus the leaves crossing the boundary of q */
+    double bkdCost(MeshQuery q) {
+        double n = this.stats.getNumPoints();
+        int k = numConstrained(q, LaghosField.values());
+        double visited = n;
+        if (k > 0 && n > LEAF_POINTS) {
+            double boundary = 2.0 * LEAF_POINTS * Math.pow(n / LEAF_POINTS, 1.0 - 1.0 / k);
+            visited = Math.min(n, this.stats.estimatePoints(q) + boundary);
+        }
+        return visited * BKD_POINT_COST;
+    }
+
+    /** @return the cost of scanning the keys in range of every constrained field */
+    double lsmCost(MeshQuery q) {
+        double n = this.stats.getNumPoints();
+        double keys = 0.0;
+        for (LaghosField f : LaghosField.values()) {
+            if (q.isConstrained(f)) {
+                keys += this.stats.estimateSelectivity(f, q.getMin(f), q.getMax(f)) * n;
+            }
+        }
+        // An unconstrained query reads every key of one field
+        return ((0 == numConstrained(q, LaghosField.values())) ? n : keys) * LSM_KEY_COST;
+    }
+
+    static int numConstrained(MeshQuery q, LaghosField[] fields) {
+        int k = 0;
+        for (LaghosField f : fields) {
+            k += q.isConstrained(f) ? 1 : 0;
+        }
+        return k;
+    }
+
+    static boolean isSpatial(LaghosField f) {
+        for (LaghosField s : SPATIAL_FIELDS) {
+            if (s == f) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A way to answer a query: one backend, or the intersection of the
+     * element ids several return for parts of the query
+     */
+    public static class Plan {
+        Plan(boolean elementLevel, double estimatedRows, double cost, Backend backend, MeshQuery q) {
+            this(elementLevel, estimatedRows, cost, List.of(backend), List.of(q));
+        }
+
+        Plan(boolean elementLevel, double estimatedRows, double cost, List<Backend> backends, List<MeshQuery> parts) {
+            this.elementLevel = elementLevel;
+            this.estimatedRows = estimatedRows;
+            this.cost = cost;
+            this.backends = backends;
+            this.parts = parts;
+        }
+
+        /** @return the backends the plan queries, in order */
+        public List<Backend> getBackends() {
+            return Collections.unmodifiableList(this.backends);
+        }
+
+        /** @return true if the plan intersects the results of several backends */
+        public boolean isIntersection() {
+            return this.backends.size() > 1;
+        }
+
+        /**
+         * @return true if the plan may match elements none of whose points
+         *         match the whole query
+         */
+        public boolean isElementLevel() {
+            return this.elementLevel;
+        }
+
+        /**
+         * @return true if the rows of the plan and of its result are
+         *         elements rather than points, as for any plan using the LSM
+         *         store
+         */
+        public boolean countsElements() {
+            return isIntersection() || this.backends.contains(Backend.LSM);
+        }
+
+        /** @return the estimated rows of the result, elements if the plan counts elements and points otherwise */
+        public double getEstimatedRows() {
+            return this.estimatedRows;
+        }
+
+        /** @return the estimated cost in scanned points */
+        public double getCost() {
+            return this.cost;
+        }
+
+        /** @return the name of the plan in metrics, such as bkd or intersect */
+        public String getName() {
+            return isIntersection() ? "intersect" : this.backends.get(0).name().toLowerCase();
+        }
+
+        @Override
+        public String toString() {
+            if (!isIntersection()) {
+                return this.backends.get(0) + " cost: " + Math.round(this.cost);
+            }
+            String s = "INTERSECT(";
+            for (int i = 0; i < this.backends.size(); i++) {
+                s += ((0 == i) ? "" : ", ") + this.backends.get(i) + "[" + this.parts.get(i) + "]";
+            }
+            return s + ") cost: " + Math.round(this.cost);
+        }
+
+        // Whether the plan may match elements without a point matching the whole query
+        final boolean elementLevel;
+
+        // Estimated rows of the result
+        final double estimatedRows;
+
+        // Estimated cost in scanned points
+        final double cost;
+
+        // Backends queried
+        final List<Backend> backends;
+
+        // Part of the query each backend answers
+        final List<MeshQuery> parts;
+    }
+
+    // Statistics the estimates come from
+    final MeshStatistics stats;
+
+    // Registered indexes
+    final Map<Backend, MeshIndex> backends;
+
+    // Whether element level plans are allowed
+    boolean elementLevel;
+}
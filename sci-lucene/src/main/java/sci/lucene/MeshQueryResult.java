@@ -0,0 +1,140 @@
+package sci.lucene;
+
+import java.util.Arrays;
+import org.apache.lucene.util.ArrayUtil;
+
+/**
+ * The points and elements matched by a MeshQuery, plus how long it took
+ */
+public class MeshQueryResult {
+
+    /**
+     * Create an empty result
+     *
+     * @param totalPoints the number of points the query was evaluated over
+     */
+    public MeshQueryResult(long totalPoints) {
+        this.totalPoints = totalPoints;
+        this.elementIds = new long[64];
+        this.numElementIds = 0;
+        this.matchingPoints = 0;
+    }
+
+    /** Create a copy of a finished result that took latencyNanos, such as one held by a cache */
+    MeshQueryResult(MeshQueryResult other, long latencyNanos) {
+        this.totalPoints = other.totalPoints;
+        this.elementIds = Arrays.copyOf(other.elementIds, other.numElementIds);
+        this.numElementIds = other.numElementIds;
+        this.matchingPoints = other.matchingPoints;
+        this.latencyNanos = latencyNanos;
+        this.elementLevel = other.elementLevel;
+    }
+
+    /** Record a matching point */
+    public void addPoint(long elementId) {
+        this.matchingPoints++;
+        // Points of the same element usually arrive together, skip the repeats
+        if (this.numElementIds > 0 && this.elementIds[this.numElementIds - 1] == elementId) {
+            return;
+        }
+        this.elementIds = ArrayUtil.grow(this.elementIds, this.numElementIds + 1);
+        this.elementIds[this.numElementIds++] = elementId;
+    }
+
+    /**
+     * Record matching points spread over some elements
+     *
+     * @param elementIds the ids of the elements the points belong to
+     */
+    void addPoints(long matchingPoints, int[] elementIds) {
+        this.matchingPoints += matchingPoints;
+        this.elementIds = ArrayUtil.grow(this.elementIds, this.numElementIds + elementIds.length);
+        for (int id : elementIds) {
+            this.elementIds[this.numElementIds++] = id;
+        }
+    }
+
+    /** Sort and deduplicate the element ids, and record the query latency */
+    public void finish(long latencyNanos) {
+        Arrays.sort(this.elementIds, 0, this.numElementIds);
+        int unique = 0;
+        for (int i = 0; i < this.numElementIds; i++) {
+            if (0 == unique || this.elementIds[unique - 1] != this.elementIds[i]) {
+                this.elementIds[unique++] = this.elementIds[i];
+            }
+        }
+        this.numElementIds = unique;
+        this.latencyNanos = latencyNanos;
+    }
+
+    /** @return the sorted distinct ids of the matching elements */
+    public long[] getElementIds() {
+        return Arrays.copyOf(this.elementIds, this.numElementIds);
+    }
+
+    /** @return the number of distinct matching elements */
+    public int getNumElements() {
+        return this.numElementIds;
+    }
+
+    /** @return the number of matching points */
+    public long getMatchingPoints() {
+        return this.matchingPoints;
+    }
+
+    /** @return the number of points the query was evaluated over */
+    public long getTotalPoints() {
+        return this.totalPoints;
+    }
+
+    /** @return the fraction of points that matched */
+    public double getSelectivity() {
+        return (0 == this.totalPoints) ? 0.0 : (double)this.matchingPoints / (double)this.totalPoints;
+    }
+
+    /**
+     * @return true if the elements were matched field by field, so an
+     *         element can match without any one vertex satisfying the whole
+     *         query, as an LSM store answers several fields
+     */
+    public boolean isElementLevel() {
+        return this.elementLevel;
+    }
+
+    /** Record whether the elements were matched field by field */
+    void setElementLevel(boolean elementLevel) {
+        this.elementLevel = elementLevel;
+    }
+
+    /** @return the query latency in nanoseconds */
+    public long getLatencyNanos() {
+        return this.latencyNanos;
+    }
+
+    /** Print the latency and selectivity of the query */
+    public void report(String desc) {
+        System.out.println(desc + ": " + this.latencyNanos * IndexedMesh.SECS_PER_NANOSECOND + " secs"
+                           + " points: " + this.matchingPoints + "/" + this.totalPoints
+                           + " elements: " + this.numElementIds
+                           + " selectivity: " + getSelectivity()
+                           + (this.elementLevel ? " (element level)" : ""));
+    }
+
+    // Points the query was evaluated over
+    final long totalPoints;
+
+    // Ids of matching elements, sorted and unique after finish
+    long[] elementIds;
+
+    // Number of valid entries in elementIds
+    int numElementIds;
+
+    // Number of matching points
+    long matchingPoints;
+
+    // Query latency
+    long latencyNanos;
+
+    // Whether the elements were matched field by field
+    boolean elementLevel;
+}
@@ -0,0 +1,419 @@
+package sci.lucene;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import sci.mfem.LaghosColumnReader;
+import sci.mfem.LaghosField;
+
+/**
+ * A resident HTTP service answering queries against indexes that stay open,
+ * so an analysis pays the cost of opening a mesh index once rather than on
+ * every run.
+ *
+ * Every index type here reads its files through mmap or its store's own
+ * cache, so after the first queries the pages of a hot index stay resident.
+ * Indexes are registered by name and queried with GET requests:
+ *
+ *   /indexes                        the registered indexes and their sizes
+ *   /query?index=bkd&amp;e=1,2&amp;rho=0.1,    the matching points and elements
+ *   /aggregate?index=bkd&amp;box=0,1,0,1,0,1  count, min, max and mean per field
+ *
+ * A field parameter is "lo,hi" with either side left empty for an open
+ * bound, box is "xMin,xMax,yMin,yMax,zMin,zMax", and ids=true adds the
+ * matching element ids to a query response. Aggregates need a BKD index.
+ *
+ * Each request runs on a virtual thread when the JVM provides them, which
+ * JDK 21 does through Executors.newVirtualThreadPerTaskExecutor, so a slow
+ * query never holds a platform thread hostage. On older JVMs, including
+ * the JDK 17 this project builds with, requests run on a cached pool.
+ */
+public class MeshQueryServer implements Closeable {
+
+    /** The default port */
+    public static final int DEFAULT_PORT = 8650;
+
+    /** Connections the listener queues before refusing new ones */
+    static final int BACKLOG = 1024;
+
+    /** Seconds close waits for requests in flight */
+    static final int STOP_DELAY_SECS = 1;
+
+    /**
+     * Create a server, which does not accept requests until started
+     *
+     * @param port the local port, or 0 for any free port
+     */
+    public MeshQueryServer(int port) throws IOException {
+        this.indexes = new ConcurrentHashMap<>();
+        this.serialized = ConcurrentHashMap.newKeySet();
+        this.resources = new ArrayList<>();
+        this.executor = newRequestExecutor();
+        this.server = HttpServer.create(new InetSocketAddress(port), BACKLOG);
+        this.server.setExecutor(this.executor);
+        this.server.createContext("/indexes", this::handleIndexes);
+        this.server.createContext("/query", this::handleQuery);
+        this.server.createContext("/aggregate", this::handleAggregate);
+    }
+
+    /**
+     * @return an executor starting a virtual thread per task when the JVM
+     *         has them, otherwise a cached pool of daemon threads
+     */
+    static ExecutorService newRequestExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService)factory.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            // Not present before JDK 21, or a preview that is not enabled
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "mesh-query");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    /**
+     * Serve queries from index, which may be queried from many threads at once
+     */
+    public void addIndex(String name, MeshIndex index) {
+        addIndex(name, index, true);
+    }
+
+    /**
+     * Serve queries from index
+     *
+     * @param concurrent whether index may be queried from many threads at
+     *                   once, otherwise its queries run one at a time
+     */
+    public synchronized void addIndex(String name, MeshIndex index, boolean concurrent) {
+        if (this.indexes.containsKey(name)) {
+            throw new IllegalArgumentException("An index is already registered as " + name);
+        }
+        if (!concurrent) {
+            this.serialized.add(name);
+        }
+        this.indexes.put(name, index);
+        this.resources.add(index);
+    }
+
+    /** Close resource along with the server, such as the source of a scan engine */
+    public synchronized void closeOnShutdown(Closeable resource) {
+        this.resources.add(resource);
+    }
+
+    /** @return the port the server listens on */
+    public int getPort() {
+        return this.server.getAddress().getPort();
+    }
+
+    /** Start accepting requests */
+    public void start() {
+        this.server.start();
+    }
+
+    /** Stop accepting requests, give those in flight a moment to finish and close every index */
+    @Override
+    public void close() throws IOException {
+        this.server.stop(STOP_DELAY_SECS);
+        this.executor.shutdown();
+        IOException failure = null;
+        for (Closeable resource : this.resources) {
+            try {
+                resource.close();
+            } catch (IOException e) {
+                failure = (null == failure) ? e : failure;
+            }
+        }
+        if (null != failure) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Parse the predicate parameters of a request
+     *
+     * @throws IllegalArgumentException if a parameter is malformed
+     */
+    static MeshQuery parseQuery(Map<String, String> params) {
+        MeshQuery q = new MeshQuery();
+        for (LaghosField f : LaghosField.values()) {
+            String range = params.get(f.fieldName());
+            if (null != range) {
+                double[] bounds = parseBounds(f.fieldName(), range, 2);
+                q.range(f, bounds[0], bounds[1]);
+            }
+        }
+        String box = params.get("box");
+        if (null != box) {
+            double[] b = parseBounds("box", box, 6);
+            q.range(LaghosField.X, b[0], b[1]).range(LaghosField.Y, b[2], b[3]).range(LaghosField.Z, b[4], b[5]);
+        }
+        return q;
+    }
+
+    /** @return n comma separated bounds, empty lower and upper bounds are infinite */
+    static double[] parseBounds(String name, String value, int n) {
+        String[] parts = value.split(",", -1);
+        if (parts.length != n) {
+            throw new IllegalArgumentException(name + " needs " + n + " comma separated bounds, not " + value);
+        }
+        double[] bounds = new double[n];
+        for (int i = 0; i < n; i++) {
+            String part = parts[i].trim();
+            if (part.isEmpty()) {
+                bounds[i] = (0 == i % 2) ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+            } else {
+                try {
+                    bounds[i] = Double.parseDouble(part);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException(name + " bound " + part + " is not a number");
+                }
+            }
+        }
+        return bounds;
+    }
+
+    /** @return the decoded parameters of a request's query string */
+    static Map<String, String> parseParams(URI uri) {
+        Map<String, String> params = new LinkedHashMap<>();
+        String query = uri.getRawQuery();
+        if (null == query || query.isEmpty()) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = (eq < 0) ? pair : pair.substring(0, eq);
+            String value = (eq < 0) ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    void handleIndexes(HttpExchange exchange) throws IOException {
+        StringBuilder json = new StringBuilder("{\"indexes\": [");
+        String sep = "";
+        for (Map.Entry<String, MeshIndex> e : new TreeMap<>(this.indexes).entrySet()) {
+            json.append(sep).append("{\"name\": \"").append(e.getKey()).append("\"")
+                .append(", \"type\": \"").append(e.getValue().getClass().getSimpleName()).append("\"")
+                .append(", \"points\": ").append(e.getValue().getNumPoints()).append("}");
+            sep = ", ";
+        }
+        json.append("]}");
+        respond(exchange, 200, json.toString());
+    }
+
+    void handleQuery(HttpExchange exchange) throws IOException {
+        Map<String, String> params = parseParams(exchange.getRequestURI());
+        MeshIndex index = lookup(exchange, params);
+        if (null == index) {
+            return;
+        }
+        MeshQuery q;
+        try {
+            q = parseQuery(params);
+        } catch (IllegalArgumentException e) {
+            respond(exchange, 400, error(e.getMessage()));
+            return;
+        }
+        MeshQueryResult result;
+        try {
+            if (this.serialized.contains(params.get("index"))) {
+                synchronized (index) {
+                    result = index.query(q);
+                }
+            } else {
+                result = index.query(q);
+            }
+        } catch (IOException | RuntimeException e) {
+            respond(exchange, 500, error("Query failed: " + e));
+            return;
+        }
+
+        StringBuilder json = new StringBuilder();
+        json.append("{\"index\": \"").append(params.get("index")).append("\"")
+            .append(", \"query\": \"").append(q).append("\"")
+            .append(", \"points\": ").append(result.getMatchingPoints())
+            .append(", \"totalPoints\": ").append(result.getTotalPoints())
+            .append(", \"elements\": ").append(result.getNumElements())
+            .append(", \"latencyNanos\": ").append(result.getLatencyNanos());
+        if ("true".equals(params.get("ids"))) {
+            json.append(", \"elementIds\": [");
+            long[] ids = result.getElementIds();
+            for (int i = 0; i < ids.length; i++) {
+                json.append((0 == i) ? "" : ",").append(ids[i]);
+            }
+            json.append("]");
+        }
+        json.append("}");
+        respond(exchange, 200, json.toString());
+    }
+
+    void handleAggregate(HttpExchange exchange) throws IOException {
+        Map<String, String> params = parseParams(exchange.getRequestURI());
+        MeshIndex index = lookup(exchange, params);
+        if (null == index) {
+            return;
+        }
+        if (!(index instanceof BKDIndexReader)) {
+            respond(exchange, 400, error("Index " + params.get("index") + " does not support aggregates"));
+            return;
+        }
+        MeshQuery q;
+        try {
+            q = parseQuery(params);
+        } catch (IllegalArgumentException e) {
+            respond(exchange, 400, error(e.getMessage()));
+            return;
+        }
+        MeshAggregate result;
+        try {
+            result = ((BKDIndexReader)index).aggregate(q);
+        } catch (IOException | RuntimeException e) {
+            respond(exchange, 500, error("Aggregate failed: " + e));
+            return;
+        }
+
+        StringBuilder json = new StringBuilder();
+        json.append("{\"index\": \"").append(params.get("index")).append("\"")
+            .append(", \"query\": \"").append(q).append("\"")
+            .append(", \"count\": ").append(result.getCount())
+            .append(", \"latencyNanos\": ").append(result.getLatencyNanos())
+            .append(", \"fields\": {");
+        String sep = "";
+        for (LaghosField f : LaghosField.values()) {
+            json.append(sep).append("\"").append(f.fieldName()).append("\": {")
+                .append("\"min\": ").append(jsonNumber(result.getMin(f)))
+                .append(", \"max\": ").append(jsonNumber(result.getMax(f)))
+                .append(", \"mean\": ").append(jsonNumber(result.getMean(f))).append("}");
+            sep = ", ";
+        }
+        json.append("}}");
+        respond(exchange, 200, json.toString());
+    }
+
+    /** @return the index named by the request, or null after responding with an error */
+    MeshIndex lookup(HttpExchange exchange, Map<String, String> params) throws IOException {
+        String name = params.get("index");
+        MeshIndex index = (null == name) ? null : this.indexes.get(name);
+        if (null == index) {
+            respond(exchange, 404, error((null == name) ? "No index parameter" : "No index named " + name));
+        }
+        return index;
+    }
+
+    /** @return v as a JSON number, or null when it is not finite, as for an empty aggregate */
+    static String jsonNumber(double v) {
+        return Double.isFinite(v) ? Double.toString(v) : "null";
+    }
+
+    static String error(String message) {
+        return "{\"error\": \"" + message.replace("\\", "\\\\").replace("\"", "\\\"") + "\"}";
+    }
+
+    static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Open indexes and serve them until the process is killed
+     *
+     * Usage: MeshQueryServer [port] type:name:path ...
+     *
+     * where type is bkd (an index base name written by writeIndex), leveldb,
+     * bitmap, quantized or lucene, or scan for a vectorized scan of a column
+     * cache directory.
+     */
+    public static void main(String[] args) throws IOException {
+        int first = 0;
+        int port = DEFAULT_PORT;
+        if (args.length > 0 && args[0].matches("\\d+")) {
+            port = Integer.parseInt(args[0]);
+            first = 1;
+        }
+        MeshQueryServer server = new MeshQueryServer(port);
+        for (int i = first; i < args.length; i++) {
+            String[] spec = args[i].split(":", 3);
+            if (spec.length != 3) {
+                throw new IllegalArgumentException("Expected type:name:path, not " + args[i]);
+            }
+            String name = spec[1];
+            String path = spec[2];
+            switch (spec[0]) {
+            case "bkd":
+                server.addIndex(name, new BKDIndexReader(path));
+                break;
+            case "leveldb":
+                server.addIndex(name, new LevelDBMeshIndex(new File(path)));
+                break;
+            case "bitmap":
+                server.addIndex(name, new BitmapMeshIndex(Paths.get(path)));
+                break;
+            case "quantized":
+                server.addIndex(name, new QuantizedMeshIndex(Paths.get(path)));
+                break;
+            case "lucene":
+                server.addIndex(name, new LuceneMeshIndex(Paths.get(path)));
+                break;
+            case "scan":
+                // A scan walks the shared iterator of its column reader
+                LaghosColumnReader columns = new LaghosColumnReader(Paths.get(path));
+                server.addIndex(name, new VectorScanEngine(columns, Runtime.getRuntime().availableProcessors()),
+                                false);
+                server.closeOnShutdown(columns::close);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown index type " + spec[0]);
+            }
+            System.out.println("Opened " + spec[0] + " index " + name + " from " + path);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+            } catch (IOException e) {
+                System.err.println("IOException closing the indexes");
+            }
+        }));
+        server.start();
+        System.out.println("Serving mesh queries on port " + server.getPort());
+    }
+
+    // Indexes by name
+    final Map<String, MeshIndex> indexes;
+
+    // Names of the indexes whose queries must run one at a time
+    final Set<String> serialized;
+
+    // Indexes and other resources closed with the server
+    final List<Closeable> resources;
+
+    // Runs each request
+    final ExecutorService executor;
+
+    // The HTTP listener
+    final HttpServer server;
+}
@@ -0,0 +1,381 @@
+package sci.lucene;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.store.ChecksumIndexInput;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.OutputStreamIndexOutput;
+import sci.mfem.LaghosField;
+import sci.mfem.LaghosPointBatch;
+import sci.mfem.LaghosPointSource;
+
+/**
+ * Per-field statistics of a mesh, gathered while it is ingested and stored
+ * in a .tps file next to the index, for MeshQueryPlanner to estimate how
+ * many points a query matches.
+ *
+ * Each field keeps its exact min, max and count and an equi-depth
+ * histogram: bucket boundaries chosen so every bucket holds the same share
+ * of the points. Skewed fields such as the energy of a shock front get
+ * narrow buckets where the points crowd, so a range estimate stays close
+ * where a uniform assumption would be far off. The boundaries come from a
+ * uniform sample of the points, taken with a reservoir, so collecting costs
+ * a fixed amount of memory whatever the mesh size.
+ *
+ * A query's selectivity is the product of its fields' selectivities, which
+ * assumes the fields are independent. Positions and velocities correlate
+ * in a real run, so estimates of multi-field queries are rougher than those
+ * of a single range.
+ */
+public class MeshStatistics {
+
+    /** The codec name in the statistics file header */
+    public static final String STATISTICS_CODEC = "TaprootMeshStatistics";
+
+    /** The current statistics file version */
+    public static final int VERSION_CURRENT = 0;
+
+    /** The suffix of the statistics file next to a BKD index */
+    public static final String SUFFIX = ".tps";
+
+    /** The name of the statistics file inside an index directory, such as a LevelDB store */
+    public static final String FILE_NAME = "mesh" + SUFFIX;
+
+    /** The default number of histogram buckets per field */
+    public static final int DEFAULT_BUCKETS = 64;
+
+    /** The default number of points sampled for the histograms */
+    public static final int DEFAULT_SAMPLE_POINTS = 64 * 1024;
+
+    MeshStatistics(long numPoints, long numElements, double[] min, double[] max, double[][] bounds) {
+        this.numPoints = numPoints;
+        this.numElements = numElements;
+        this.min = min;
+        this.max = max;
+        this.bounds = bounds;
+    }
+
+    /** Read every point of source to gather its statistics, for an index built without them */
+    public static MeshStatistics collect(LaghosPointSource source) {
+        Collector collector = new Collector(DEFAULT_BUCKETS, DEFAULT_SAMPLE_POINTS);
+        source.resetIterator();
+        for (LaghosPointBatch batch = source.getNextLaghosPointBatch(); batch != null;
+             batch = source.getNextLaghosPointBatch()) {
+            collector.add(batch);
+        }
+        source.resetIterator();
+        return collector.finish(source.getNumElements());
+    }
+
+    /** @return the statistics file of the BKD index with base name filename */
+    public static Path pathFor(String filename) {
+        return Path.of(filename + SUFFIX);
+    }
+
+    /** @return the number of points */
+    public long getNumPoints() {
+        return this.numPoints;
+    }
+
+    /** @return the number of elements */
+    public long getNumElements() {
+        return this.numElements;
+    }
+
+    /** @return the mean number of points per element */
+    public double getPointsPerElement() {
+        return (0 == this.numElements) ? 1.0 : (double)this.numPoints / this.numElements;
+    }
+
+    /** @return the smallest value of field f */
+    public double getMin(LaghosField f) {
+        return this.min[f.dim()];
+    }
+
+    /** @return the largest value of field f */
+    public double getMax(LaghosField f) {
+        return this.max[f.dim()];
+    }
+
+    /** @return the number of histogram buckets */
+    public int getNumBuckets() {
+        return this.bounds[0].length - 1;
+    }
+
+    /** @return the bucket boundaries of field f, from its min to its max */
+    public double[] getBounds(LaghosField f) {
+        return this.bounds[f.dim()].clone();
+    }
+
+    /**
+     * @return the estimated fraction of points with field f in [lo, hi],
+     *         interpolating linearly within a bucket
+     */
+    public double estimateSelectivity(LaghosField f, double lo, double hi) {
+        if (0 == this.numPoints || lo > hi || hi < this.min[f.dim()] || lo > this.max[f.dim()]) {
+            return 0.0;
+        }
+        double[] b = this.bounds[f.dim()];
+        int buckets = b.length - 1;
+        double covered = 0.0;
+        for (int i = 0; i < buckets; i++) {
+            double bLo = b[i];
+            double bHi = b[i + 1];
+            if (hi < bLo || lo > bHi) {
+                continue;
+            }
+            if (bHi == bLo || (lo <= bLo && hi >= bHi)) {
+                // A bucket of one repeated value is either in or out
+                covered += 1.0;
+            } else {
+                covered += (Math.min(hi, bHi) - Math.max(lo, bLo)) / (bHi - bLo);
+            }
+        }
+        return Math.min(covered / buckets, 1.0);
+    }
+
+    /** @return the estimated fraction of points matching q, assuming its fields are independent */
+    public double estimateSelectivity(MeshQuery q) {
+        double selectivity = 1.0;
+        for (LaghosField f : LaghosField.values()) {
+            if (q.isConstrained(f)) {
+                selectivity *= estimateSelectivity(f, q.getMin(f), q.getMax(f));
+            }
+        }
+        return selectivity;
+    }
+
+    /** @return the estimated number of points matching q */
+    public double estimatePoints(MeshQuery q) {
+        return estimateSelectivity(q) * this.numPoints;
+    }
+
+    /**
+     * @return the estimated number of elements that have, for each field q
+     *         constrains, some point in range, as the LSM indexes match
+     */
+    public double estimateElements(MeshQuery q) {
+        double fraction = 1.0;
+        double perElement = getPointsPerElement();
+        for (LaghosField f : LaghosField.values()) {
+            if (q.isConstrained(f)) {
+                double s = estimateSelectivity(f, q.getMin(f), q.getMax(f));
+                fraction *= 1.0 - Math.pow(1.0 - s, perElement);
+            }
+        }
+        return fraction * this.numElements;
+    }
+
+    /** Write the statistics to file, replacing it */
+    public void write(Path file) throws IOException {
+        try (OutputStreamIndexOutput out = new OutputStreamIndexOutput("statistics", file.getFileName().toString(),
+                                                                      new FileOutputStream(file.toFile()),
+                                                                      64*1024)) {
+            CodecUtil.writeHeader(out, STATISTICS_CODEC, VERSION_CURRENT);
+            out.writeVLong(this.numPoints);
+            out.writeVLong(this.numElements);
+            out.writeVInt(getNumBuckets());
+            for (int d = 0; d < LaghosPointBatch.NUM_FIELDS; d++) {
+                out.writeLong(Double.doubleToRawLongBits(this.min[d]));
+                out.writeLong(Double.doubleToRawLongBits(this.max[d]));
+                for (double bound : this.bounds[d]) {
+                    out.writeLong(Double.doubleToRawLongBits(bound));
+                }
+            }
+            CodecUtil.writeFooter(out);
+        }
+    }
+
+    /** @return the statistics in file */
+    public static MeshStatistics read(Path file) throws IOException {
+        Path abs = file.toAbsolutePath();
+        try (Directory dir = FSDirectory.open(abs.getParent());
+             ChecksumIndexInput in = dir.openChecksumInput(abs.getFileName().toString(), IOContext.READONCE)) {
+            CodecUtil.checkHeader(in, STATISTICS_CODEC, VERSION_CURRENT, VERSION_CURRENT);
+            long numPoints = in.readVLong();
+            long numElements = in.readVLong();
+            int buckets = in.readVInt();
+            double[] min = new double[LaghosPointBatch.NUM_FIELDS];
+            double[] max = new double[LaghosPointBatch.NUM_FIELDS];
+            double[][] bounds = new double[LaghosPointBatch.NUM_FIELDS][buckets + 1];
+            for (int d = 0; d < LaghosPointBatch.NUM_FIELDS; d++) {
+                min[d] = Double.longBitsToDouble(in.readLong());
+                max[d] = Double.longBitsToDouble(in.readLong());
+                for (int i = 0; i <= buckets; i++) {
+                    bounds[d][i] = Double.longBitsToDouble(in.readLong());
+                }
+            }
+            CodecUtil.checkFooter(in);
+            return new MeshStatistics(numPoints, numElements, min, max, bounds);
+        }
+    }
+
+    /** @return the statistics in file, or null if there is no such file */
+    public static MeshStatistics readIfExists(Path file) throws IOException {
+        return Files.exists(file) ? read(file) : null;
+    }
+
+    /** Print the range and histogram quartiles of every field */
+    public void report(String desc) {
+        System.out.println(desc + ": points: " + this.numPoints + " elements: " + this.numElements);
+        int buckets = getNumBuckets();
+        for (LaghosField f : LaghosField.values()) {
+            double[] b = this.bounds[f.dim()];
+            System.out.println("  " + f.fieldName() + ": [" + this.min[f.dim()] + ", " + this.max[f.dim()] + "]"
+                               + " quartiles: " + b[buckets / 4] + " " + b[buckets / 2] + " " + b[3 * buckets / 4]);
+        }
+    }
+
+    /**
+     * Gathers statistics from the batches of an ingest.
+     *
+     * A collector is not thread safe. A parallel ingest gives each split its
+     * own and merges them once the splits are done, so the ingest threads
+     * never wait on one another.
+     */
+    public static class Collector {
+        /** Create a collector with the default buckets and sample */
+        public Collector() {
+            this(DEFAULT_BUCKETS, DEFAULT_SAMPLE_POINTS);
+        }
+
+        /**
+         * Create a collector
+         *
+         * @param buckets the number of histogram buckets per field
+         * @param samplePoints the number of points sampled for the histograms
+         */
+        public Collector(int buckets, int samplePoints) {
+            this.buckets = buckets;
+            this.sample = new double[LaghosPointBatch.NUM_FIELDS][samplePoints];
+            this.min = new double[LaghosPointBatch.NUM_FIELDS];
+            this.max = new double[LaghosPointBatch.NUM_FIELDS];
+            Arrays.fill(this.min, Double.POSITIVE_INFINITY);
+            Arrays.fill(this.max, Double.NEGATIVE_INFINITY);
+            // A fixed seed keeps the histograms of the same mesh identical between runs
+            this.random = new SplittableRandom(0x5eed);
+        }
+
+        /** Add the points of batch */
+        public void add(LaghosPointBatch batch) {
+            int capacity = this.sample[0].length;
+            for (int i = 0; i < batch.size(); i++) {
+                // Reservoir sampling: point n replaces a sampled point with probability capacity/n
+                long n = this.count++;
+                int slot = (n < capacity) ? (int)n : (int)this.random.nextLong(n + 1);
+                for (int d = 0; d < LaghosPointBatch.NUM_FIELDS; d++) {
+                    double v = batch.getDouble(i, d);
+                    this.min[d] = Math.min(this.min[d], v);
+                    this.max[d] = Math.max(this.max[d], v);
+                    if (slot < capacity) {
+                        this.sample[d][slot] = v;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Fold the points added to other into this collector, as if they had
+         * been added here. other must sample as many points and is left
+         * unchanged.
+         */
+        public void merge(Collector other) {
+            int capacity = this.sample[0].length;
+            if (other.sample[0].length != capacity) {
+                throw new IllegalArgumentException("Cannot merge a sample of " + other.sample[0].length
+                                                   + " points into one of " + capacity);
+            }
+            for (int d = 0; d < LaghosPointBatch.NUM_FIELDS; d++) {
+                this.min[d] = Math.min(this.min[d], other.min[d]);
+                this.max[d] = Math.max(this.max[d], other.max[d]);
+            }
+            // Draw the merged sample without replacement from the union: each
+            // slot comes from a side with the odds of the points it has left,
+            // and takes one of that side's sampled points not yet taken
+            Collector[] sides = {this, other};
+            long[] left = {this.count, other.count};
+            int[][] order = new int[2][];
+            int[] taken = new int[2];
+            for (int s = 0; s < 2; s++) {
+                order[s] = new int[(int)Math.min(sides[s].count, capacity)];
+                for (int i = 0; i < order[s].length; i++) {
+                    order[s][i] = i;
+                }
+            }
+            int merged = (int)Math.min(capacity, this.count + other.count);
+            double[][] sample = new double[LaghosPointBatch.NUM_FIELDS][capacity];
+            for (int slot = 0; slot < merged; slot++) {
+                int s = (this.random.nextLong(left[0] + left[1]) < left[0]) ? 0 : 1;
+                int[] o = order[s];
+                int pick = taken[s] + this.random.nextInt(o.length - taken[s]);
+                int from = o[pick];
+                o[pick] = o[taken[s]];
+                o[taken[s]++] = from;
+                left[s]--;
+                for (int d = 0; d < LaghosPointBatch.NUM_FIELDS; d++) {
+                    sample[d][slot] = sides[s].sample[d][from];
+                }
+            }
+            this.sample = sample;
+            this.count += other.count;
+        }
+
+        /** @return the statistics of the points added */
+        public MeshStatistics finish(long numElements) {
+            int sampled = (int)Math.min(this.count, this.sample[0].length);
+            double[][] bounds = new double[LaghosPointBatch.NUM_FIELDS][this.buckets + 1];
+            for (int d = 0; d < LaghosPointBatch.NUM_FIELDS; d++) {
+                double[] sorted = Arrays.copyOf(this.sample[d], sampled);
+                Arrays.sort(sorted);
+                double lo = (0 == sampled) ? 0.0 : this.min[d];
+                double hi = (0 == sampled) ? 0.0 : this.max[d];
+                bounds[d][0] = lo;
+                bounds[d][this.buckets] = hi;
+                for (int i = 1; i < this.buckets; i++) {
+                    bounds[d][i] = (0 == sampled) ? 0.0 : sorted[(int)((long)i * sampled / this.buckets)];
+                }
+            }
+            double[] min = new double[LaghosPointBatch.NUM_FIELDS];
+            double[] max = new double[LaghosPointBatch.NUM_FIELDS];
+            for (int d = 0; d < LaghosPointBatch.NUM_FIELDS; d++) {
+                min[d] = bounds[d][0];
+                max[d] = bounds[d][this.buckets];
+            }
+            return new MeshStatistics(this.count, numElements, min, max, bounds);
+        }
+
+        // Number of histogram buckets per field
+        final int buckets;
+
+        // Sampled values of each field
+        double[][] sample;
+
+        // Exact extremes of each field
+        final double[] min, max;
+
+        // Chooses the sampled points
+        final SplittableRandom random;
+
+        // Points added
+        long count;
+    }
+
+    // Number of points
+    final long numPoints;
+
+    // Number of elements
+    final long numElements;
+
+    // Smallest and largest value of each field
+    final double[] min, max;
+
+    // Equi-depth bucket boundaries of each field, buckets + 1 per field
+    final double[][] bounds;
+}
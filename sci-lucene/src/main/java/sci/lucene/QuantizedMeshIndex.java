@@ -0,0 +1,318 @@
+package sci.lucene;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.index.PointValues.IntersectVisitor;
+import org.apache.lucene.index.PointValues.Relation;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.bkd.BKDConfig;
+import org.apache.lucene.util.bkd.BKDReader;
+import org.apache.lucene.util.bkd.BKDWriter;
+import sci.mfem.LaghosColumnCache;
+import sci.mfem.LaghosColumnReader;
+import sci.mfem.LaghosPointBatch;
+import sci.mfem.LaghosPointSource;
+
+/**
+ * A BKD tree over the fields of a Laghos mesh at reduced precision.
+ *
+ * The tree holds only the 8 fields, encoded by a QuantizedPointCodec, and
+ * uses the point's index in a LaghosColumnCache as its doc id instead of
+ * packing the element id into every point. FIXED16 points take 16 bytes and
+ * FLOAT points 32, against the 72 of the full precision index written by
+ * IndexedMesh.writeIndex.
+ *
+ * Cells strictly inside the encoded query match outright. Points whose code
+ * equals the code of a query bound are candidates, and are confirmed
+ * against the full precision values in the column cache, so the results are
+ * the same as a scan of the cache.
+ */
+public class QuantizedMeshIndex implements MeshIndex {
+
+    /** Base name of the index files within a cache directory */
+    public static final String INDEX_NAME = "laghos.quantized";
+
+    /** The codec name in the metadata header */
+    public static final String QUANTIZED_CODEC = "TaprootQuantizedBKD";
+
+    /** The current metadata version */
+    public static final int VERSION_CURRENT = 0;
+
+    /** Heap the BKD writer may use before sorting offline */
+    static final double MAX_MB_SORT_IN_HEAP = 256;
+
+    /** Open the quantized index and column cache in dir */
+    public QuantizedMeshIndex(Path dir) throws IOException {
+        this.columns = new LaghosColumnReader(dir);
+        this.dir = new MMapDirectory(dir);
+        this.metaIn = this.dir.openInput(INDEX_NAME + ".tpm", IOContext.READ);
+        this.idxIn = this.dir.openInput(INDEX_NAME + ".tpi", IOContext.READ);
+        this.dataIn = this.dir.openInput(INDEX_NAME + ".tpd", IOContext.READ);
+
+        // The codec and its field ranges precede the tree metadata
+        CodecUtil.checkHeader(this.metaIn, QUANTIZED_CODEC, VERSION_CURRENT, VERSION_CURRENT);
+        QuantizedPointCodec.Precision precision = QuantizedPointCodec.Precision.values()[this.metaIn.readVInt()];
+        long numPoints = this.metaIn.readVLong();
+        if (numPoints != this.columns.getHeader().numPoints) {
+            throw new IOException(INDEX_NAME + " indexes " + numPoints + " points, the cache holds "
+                                  + this.columns.getHeader().numPoints);
+        }
+        double[] min = new double[QuantizedPointCodec.NUM_DIMS];
+        double[] max = new double[QuantizedPointCodec.NUM_DIMS];
+        for (int d = 0; d < QuantizedPointCodec.NUM_DIMS; d++) {
+            min[d] = Double.longBitsToDouble(this.metaIn.readLong());
+            max[d] = Double.longBitsToDouble(this.metaIn.readLong());
+        }
+        this.codec = new QuantizedPointCodec(precision, min, max);
+        this.tree = new BKDReader(this.metaIn, this.idxIn, this.dataIn);
+    }
+
+    /**
+     * Build a quantized index of source in dir, replacing any existing one
+     *
+     * @param nThreads the number of threads writing the column cache if it is missing
+     * @return the open index
+     */
+    public static QuantizedMeshIndex build(LaghosPointSource source, Path dir,
+                                           QuantizedPointCodec.Precision precision, int nThreads)
+        throws IOException {
+        if (!LaghosColumnCache.exists(dir)) {
+            LaghosColumnCache.write(source, dir, nThreads);
+        }
+        LaghosColumnReader columns = new LaghosColumnReader(dir);
+        LaghosColumnCache.Header header = columns.getHeader();
+        if (header.numPoints > Integer.MAX_VALUE) {
+            throw new IOException("Doc ids hold at most " + Integer.MAX_VALUE + " points, the mesh has "
+                                  + header.numPoints);
+        }
+        double[] min = new double[QuantizedPointCodec.NUM_DIMS];
+        double[] max = new double[QuantizedPointCodec.NUM_DIMS];
+        for (int d = 0; d < QuantizedPointCodec.NUM_DIMS; d++) {
+            min[d] = header.getMin(d);
+            max[d] = header.getMax(d);
+        }
+        QuantizedPointCodec codec = new QuantizedPointCodec(precision, min, max);
+
+        BKDConfig config = new BKDConfig(QuantizedPointCodec.NUM_DIMS, QuantizedPointCodec.NUM_DIMS,
+                                         codec.getBytesPerDim(), IndexedMesh.BKD_LEAF_POINTS);
+        try (Directory out = FSDirectory.open(dir);
+             BKDWriter writer = new BKDWriter((int)header.numPoints, out, INDEX_NAME, config,
+                                              MAX_MB_SORT_IN_HEAP, header.numPoints)) {
+            byte[] packed = new byte[codec.getPackedBytes()];
+            for (LaghosPointBatch batch = columns.getNextLaghosPointBatch(); batch != null;
+                 batch = columns.getNextLaghosPointBatch()) {
+                int first = (int)batch.getFirstPointIndex();
+                for (int i = 0; i < batch.size(); i++) {
+                    codec.encode(batch, i, packed);
+                    writer.add(packed, first + i);
+                }
+            }
+
+            // A rebuild at another precision replaces the old files
+            for (String suffix : new String[]{".tpm", ".tpi", ".tpd"}) {
+                Files.deleteIfExists(dir.resolve(INDEX_NAME + suffix));
+            }
+            try (IndexOutput metaOut = out.createOutput(INDEX_NAME + ".tpm", IOContext.DEFAULT);
+                 IndexOutput idxOut = out.createOutput(INDEX_NAME + ".tpi", IOContext.DEFAULT);
+                 IndexOutput dataOut = out.createOutput(INDEX_NAME + ".tpd", IOContext.DEFAULT)) {
+                CodecUtil.writeHeader(metaOut, QUANTIZED_CODEC, VERSION_CURRENT);
+                metaOut.writeVInt(precision.ordinal());
+                metaOut.writeVLong(header.numPoints);
+                for (int d = 0; d < QuantizedPointCodec.NUM_DIMS; d++) {
+                    metaOut.writeLong(Double.doubleToRawLongBits(min[d]));
+                    metaOut.writeLong(Double.doubleToRawLongBits(max[d]));
+                }
+                Runnable writeIndex = writer.finish(metaOut, idxOut, dataOut);
+                if (null != writeIndex) {
+                    writeIndex.run();
+                }
+            }
+        } finally {
+            columns.close();
+        }
+        return new QuantizedMeshIndex(dir);
+    }
+
+    /** @return the total size of the index files in dir */
+    public static long getIndexBytes(Path dir) throws IOException {
+        long total = 0;
+        for (String suffix : new String[]{".tpm", ".tpi", ".tpd"}) {
+            total += Files.size(dir.resolve(INDEX_NAME + suffix));
+        }
+        return total;
+    }
+
+    @Override
+    public long getNumPoints() {
+        return this.tree.size();
+    }
+
+    /** @return the codec the points were encoded with */
+    public QuantizedPointCodec getCodec() {
+        return this.codec;
+    }
+
+    @Override
+    public MeshQueryResult query(MeshQuery q) throws IOException {
+        long begin = System.nanoTime();
+        MeshQueryResult result = new MeshQueryResult(getNumPoints());
+        ConfirmingVisitor visitor = new ConfirmingVisitor(q, result);
+        this.tree.intersect(visitor);
+        result.finish(System.nanoTime() - begin);
+        this.lastCandidates = visitor.candidates;
+        this.lastFalsePositives = visitor.falsePositives;
+        return result;
+    }
+
+    /** @return the points the last query checked against the column cache */
+    public long getLastCandidates() {
+        return this.lastCandidates;
+    }
+
+    /** @return the candidates of the last query that did not match */
+    public long getLastFalsePositives() {
+        return this.lastFalsePositives;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.metaIn.close();
+        this.idxIn.close();
+        this.dataIn.close();
+        this.dir.close();
+        this.columns.close();
+    }
+
+    /**
+     * Collects the points inside a MeshQuery, confirming the points on the
+     * encoded query boundary against the column cache
+     */
+    class ConfirmingVisitor implements IntersectVisitor {
+        ConfirmingVisitor(MeshQuery q, MeshQueryResult result) {
+            this.q = q;
+            this.result = result;
+            this.lower = new byte[codec.getPackedBytes()];
+            this.upper = new byte[codec.getPackedBytes()];
+            this.hasLower = new boolean[QuantizedPointCodec.NUM_DIMS];
+            this.hasUpper = new boolean[QuantizedPointCodec.NUM_DIMS];
+            for (int d = 0; d < QuantizedPointCodec.NUM_DIMS; d++) {
+                this.hasLower[d] = Double.NEGATIVE_INFINITY != q.getMin(d);
+                this.hasUpper[d] = Double.POSITIVE_INFINITY != q.getMax(d);
+                codec.encode(q.getMin(d), d, this.lower);
+                codec.encode(q.getMax(d), d, this.upper);
+            }
+        }
+
+        @Override
+        public void visit(int docID) {
+            this.result.addPoint(columns.getElementId(docID));
+        }
+
+        @Override
+        public void visit(int docID, byte[] packedValue) {
+            boolean exact = true;
+            for (int d = 0; d < QuantizedPointCodec.NUM_DIMS; d++) {
+                if (this.hasLower[d]) {
+                    int c = codec.compare(packedValue, this.lower, d);
+                    if (c < 0) {
+                        return;
+                    }
+                    exact &= c > 0;
+                }
+                if (this.hasUpper[d]) {
+                    int c = codec.compare(packedValue, this.upper, d);
+                    if (c > 0) {
+                        return;
+                    }
+                    exact &= c < 0;
+                }
+            }
+            if (!exact) {
+                this.candidates++;
+                if (!matches(docID)) {
+                    this.falsePositives++;
+                    return;
+                }
+            }
+            this.result.addPoint(columns.getElementId(docID));
+        }
+
+        /** @return true if the full precision values of point p are within q */
+        boolean matches(int p) {
+            for (int d = 0; d < QuantizedPointCodec.NUM_DIMS; d++) {
+                double v = columns.getDouble(p, d);
+                if (v < this.q.getMin(d) || v > this.q.getMax(d)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Relation compare(byte[] minPackedValue, byte[] maxPackedValue) {
+            Relation r = Relation.CELL_INSIDE_QUERY;
+            for (int d = 0; d < QuantizedPointCodec.NUM_DIMS; d++) {
+                if (this.hasLower[d]) {
+                    if (codec.compare(maxPackedValue, this.lower, d) < 0) {
+                        return Relation.CELL_OUTSIDE_QUERY;
+                    }
+                    if (codec.compare(minPackedValue, this.lower, d) <= 0) {
+                        r = Relation.CELL_CROSSES_QUERY;
+                    }
+                }
+                if (this.hasUpper[d]) {
+                    if (codec.compare(minPackedValue, this.upper, d) > 0) {
+                        return Relation.CELL_OUTSIDE_QUERY;
+                    }
+                    if (codec.compare(maxPackedValue, this.upper, d) >= 0) {
+                        r = Relation.CELL_CROSSES_QUERY;
+                    }
+                }
+            }
+            return r;
+        }
+
+        // Query the points must satisfy
+        final MeshQuery q;
+
+        // Result the matching points are added to
+        final MeshQueryResult result;
+
+        // Encoded bounds of the query
+        final byte[] lower, upper;
+
+        // Whether each field has a finite lower and upper bound
+        final boolean[] hasLower, hasUpper;
+
+        // Points checked against the cache
+        long candidates;
+
+        // Checked points that did not match
+        long falsePositives;
+    }
+
+    // Full precision values and element ids
+    final LaghosColumnReader columns;
+
+    // Directory holding the mapped index files
+    final Directory dir;
+
+    // Mapped index files
+    final IndexInput metaIn, idxIn, dataIn;
+
+    // Codec the points were encoded with
+    final QuantizedPointCodec codec;
+
+    // The quantized tree
+    final BKDReader tree;
+
+    // Candidate counts of the last query
+    long lastCandidates, lastFalsePositives;
+}
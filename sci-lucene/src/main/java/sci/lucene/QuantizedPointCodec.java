@@ -0,0 +1,145 @@
+package sci.lucene;
+
+import java.util.Arrays;
+import org.apache.lucene.util.NumericUtils;
+import sci.mfem.LaghosPointBatch;
+
+/**
+ * Encodes the fields of a Laghos point at reduced precision for a BKD tree.
+ *
+ * Every precision maps a double to sortable bytes through a non-decreasing
+ * function, so a point whose value lies in [lo, hi] always encodes between
+ * the encodings of lo and hi. A range over the codes therefore never misses
+ * a match, and only points whose code equals the code of a bound can be
+ * false positives that must be checked against the full precision value.
+ */
+public class QuantizedPointCodec {
+
+    /** The precision of each index dimension */
+    public enum Precision {
+        /** The full 8 byte double, so no point is ever a false positive */
+        DOUBLE(Long.BYTES),
+
+        /** The nearest float */
+        FLOAT(Integer.BYTES),
+
+        /** 65536 equal steps between the smallest and largest value of the field */
+        FIXED16(Short.BYTES);
+
+        Precision(int bytes) {
+            this.bytes = bytes;
+        }
+
+        /** @return the bytes per encoded value */
+        public int bytes() {
+            return this.bytes;
+        }
+
+        // Bytes per encoded value
+        private final int bytes;
+    }
+
+    /** The number of dimensions in a packed point, one per field */
+    public static final int NUM_DIMS = LaghosPointBatch.NUM_FIELDS;
+
+    /** The largest FIXED16 code */
+    static final int MAX_FIXED16 = 0xffff;
+
+    /**
+     * Create a codec
+     *
+     * @param min the smallest value of each field, only used by FIXED16
+     * @param max the largest value of each field, only used by FIXED16
+     */
+    public QuantizedPointCodec(Precision precision, double[] min, double[] max) {
+        this.precision = precision;
+        this.bytesPerDim = precision.bytes();
+        this.min = Arrays.copyOf(min, NUM_DIMS);
+        this.max = Arrays.copyOf(max, NUM_DIMS);
+        this.scale = new double[NUM_DIMS];
+        for (int d = 0; d < NUM_DIMS; d++) {
+            double width = this.max[d] - this.min[d];
+            this.scale[d] = (width > 0.0) ? MAX_FIXED16 / width : 0.0;
+        }
+    }
+
+    /** @return the precision of each dimension */
+    public Precision getPrecision() {
+        return this.precision;
+    }
+
+    /** @return the bytes per dimension */
+    public int getBytesPerDim() {
+        return this.bytesPerDim;
+    }
+
+    /** @return the bytes per packed point */
+    public int getPackedBytes() {
+        return NUM_DIMS * this.bytesPerDim;
+    }
+
+    /** @return the smallest value of field dim the codec was built with */
+    public double getMin(int dim) {
+        return this.min[dim];
+    }
+
+    /** @return the largest value of field dim the codec was built with */
+    public double getMax(int dim) {
+        return this.max[dim];
+    }
+
+    /** Encode point i of batch into packed */
+    public void encode(LaghosPointBatch batch, int i, byte[] packed) {
+        for (int d = 0; d < NUM_DIMS; d++) {
+            encode(batch.getDouble(i, d), d, packed);
+        }
+    }
+
+    /** Encode v as dimension dim of packed */
+    public void encode(double v, int dim, byte[] packed) {
+        int offset = dim * this.bytesPerDim;
+        switch (this.precision) {
+        case DOUBLE:
+            // -0.0 sorts below 0.0 but compares equal to it
+            NumericUtils.longToSortableBytes(NumericUtils.doubleToSortableLong(v + 0.0), packed, offset);
+            break;
+        case FLOAT:
+            NumericUtils.intToSortableBytes(NumericUtils.floatToSortableInt((float)v + 0.0f), packed, offset);
+            break;
+        case FIXED16:
+            int code = fixed16(v, dim);
+            packed[offset] = (byte)(code >>> 8);
+            packed[offset + 1] = (byte)code;
+            break;
+        }
+    }
+
+    /** @return the FIXED16 code of v, clamped to the field range */
+    int fixed16(double v, int dim) {
+        if (!(v > this.min[dim])) {
+            return 0;
+        }
+        if (v >= this.max[dim]) {
+            return MAX_FIXED16;
+        }
+        return Math.min((int)((v - this.min[dim]) * this.scale[dim]), MAX_FIXED16);
+    }
+
+    /** @return the unsigned byte order comparison of the sortable encoding of dimension dim of a and b */
+    public int compare(byte[] a, byte[] b, int dim) {
+        int from = dim * this.bytesPerDim;
+        return Arrays.compareUnsigned(a, from, from + this.bytesPerDim, b, from, from + this.bytesPerDim);
+    }
+
+    // Precision of each dimension
+    final Precision precision;
+
+    // Bytes per dimension
+    final int bytesPerDim;
+
+    // Range of each field
+    final double[] min, max;
+
+    // FIXED16 codes per unit of each field
+    final double[] scale;
+}
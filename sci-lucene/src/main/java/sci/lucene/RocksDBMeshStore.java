@@ -0,0 +1,342 @@
+package sci.lucene;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import org.rocksdb.ColumnFamilyDescriptor;
+import org.rocksdb.ColumnFamilyHandle;
+import org.rocksdb.ColumnFamilyOptions;
+import org.rocksdb.CompressionType;
+import org.rocksdb.DBOptions;
+import org.rocksdb.EnvOptions;
+import org.rocksdb.IngestExternalFileOptions;
+import org.rocksdb.Options;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.RocksIterator;
+import org.rocksdb.SstFileWriter;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
+import sci.mfem.LaghosField;
+import sci.mfem.LaghosPointSource;
+import sci.mfem.LaghosPointBatch;
+import sci.metrics.MeshEvents;
+
+/**
+ * A RocksDB store holding one secondary index per Laghos field.
+ *
+ * Each field is kept in its own column family, keyed by MeshKeyCodec
+ * composite keys with empty values. Points are loaded either through concurrent
+ * WriteBatches, one writer thread per mesh split, or by bulk loading sorted
+ * SST files that are ingested directly into the column families. When a
+ * SpaceFillingCurve is set, every point is also keyed by its curve key in a
+ * separate curve column family, so box queries scan a few key ranges.
+ */
+public class RocksDBMeshStore extends KVMeshIndex {
+
+    /** Name of the column family holding the curve keys */
+    public static final String CURVE_FAMILY = "curve";
+
+    /** The share of the maximum heap the run buffers of a bulk load are sized to fill */
+    public static final double RUN_HEAP_FRACTION = 0.25;
+
+    static {
+        RocksDB.loadLibrary();
+    }
+
+    /**
+     * Open (or create) a store
+     *
+     * @param dbFile the database directory
+     * @param nThreads the number of threads that will write to the store
+     * @param bulkLoad true to disable automatic compactions while loading
+     */
+    public RocksDBMeshStore(File dbFile, int nThreads, boolean bulkLoad) throws IOException {
+        this.dbFile = dbFile;
+        this.dbOptions = new DBOptions()
+            .setCreateIfMissing(true)
+            .setCreateMissingColumnFamilies(true)
+            .setIncreaseParallelism(nThreads)
+            .setMaxBackgroundJobs(Math.max(2, nThreads))
+            .setAllowConcurrentMemtableWrite(true)
+            .setEnableWriteThreadAdaptiveYield(true);
+        this.cfOptions = new ColumnFamilyOptions()
+            .setWriteBufferSize(64*1024*1024)
+            .setMaxWriteBufferNumber(4)
+            .setMinWriteBufferNumberToMerge(2)
+            .setCompressionType(CompressionType.LZ4_COMPRESSION)
+            .setDisableAutoCompactions(bulkLoad);
+        this.writeOptions = new WriteOptions().setDisableWAL(true);
+
+        // One column family per field, plus the required default family
+        List<ColumnFamilyDescriptor> descriptors = new ArrayList<>();
+        descriptors.add(new ColumnFamilyDescriptor(RocksDB.DEFAULT_COLUMN_FAMILY, this.cfOptions));
+        for (LaghosField f : LaghosField.values()) {
+            descriptors.add(new ColumnFamilyDescriptor(f.fieldName().getBytes(), this.cfOptions));
+        }
+        descriptors.add(new ColumnFamilyDescriptor(CURVE_FAMILY.getBytes(), this.cfOptions));
+        this.cfHandles = new ArrayList<>();
+        try {
+            this.db = RocksDB.open(this.dbOptions, dbFile.getPath(), descriptors, this.cfHandles);
+        } catch (RocksDBException e) {
+            throw new IOException("Unable to open RocksDB at " + dbFile, e);
+        }
+    }
+
+    /** @return the column family holding field f */
+    public ColumnFamilyHandle getColumnFamily(LaghosField f) {
+        return this.cfHandles.get(1 + f.dim());
+    }
+
+    /** @return the column family holding dimension dim, a field or MeshKeyCodec.CURVE_DIM */
+    public ColumnFamilyHandle getColumnFamily(int dim) {
+        return this.cfHandles.get(1 + dim);
+    }
+
+    /**
+     * Also key every point loaded from now on by curve, or stop if curve is
+     * null. The curve is recorded in the store with the counts.
+     */
+    public void setCurve(SpaceFillingCurve curve) {
+        this.curve = curve;
+    }
+
+    /**
+     * Write every point of the splits through WriteBatches, one thread per split
+     *
+     * @param batchSize the number of points written per WriteBatch
+     * @return the number of points written
+     */
+    public long ingest(List<? extends LaghosPointSource> splits, int batchSize) throws IOException {
+        long count = IndexedMesh.ingestSplits(splits, split -> {
+            byte[] keyBuf = new byte[MeshKeyCodec.KEY_SIZE];
+            byte[] curveBuf = (null == this.curve) ? null : new byte[MeshKeyCodec.curveKeySize(this.curve)];
+            long points = 0;
+            try (WriteBatch wb = new WriteBatch()) {
+                int pending = 0;
+                LaghosPointBatch batch = split.getNextLaghosPointBatch();
+                while (batch != null) {
+                    for (int i = 0; i < batch.size(); i++) {
+                        for (LaghosField f : LaghosField.values()) {
+                            MeshKeyCodec.encodeKey(batch, i, f.dim(), keyBuf);
+                            wb.put(getColumnFamily(f), keyBuf, MeshKeyCodec.EMPTY_VALUE);
+                        }
+                        if (null != curveBuf) {
+                            MeshKeyCodec.encodeCurveKey(this.curve, batch, i, curveBuf);
+                            wb.put(getColumnFamily(MeshKeyCodec.CURVE_DIM), curveBuf, MeshKeyCodec.EMPTY_VALUE);
+                        }
+                        if (++pending == batchSize) {
+                            MeshEvents.LSMWriteStall write = MeshEvents.LSMWriteStall.start("rocksdb", pending);
+                            this.db.write(this.writeOptions, wb);
+                            write.finish();
+                            wb.clear();
+                            pending = 0;
+                        }
+                    }
+                    points += batch.size();
+                    batch = split.getNextLaghosPointBatch();
+                }
+                if (0 < pending) {
+                    MeshEvents.LSMWriteStall write = MeshEvents.LSMWriteStall.start("rocksdb", pending);
+                    this.db.write(this.writeOptions, wb);
+                    write.finish();
+                }
+            } catch (RocksDBException e) {
+                throw new IOException("WriteBatch failed", e);
+            }
+            return points;
+        });
+        putCounts(splits);
+        return count;
+    }
+
+    /**
+     * Bulk load the splits by writing sorted SST files and ingesting them.
+     *
+     * Each split thread buffers up to runPoints points per field, sorts each
+     * run and writes it as one SST file per column family. Runs overlap in
+     * key range, so the store is compacted once every run is ingested.
+     *
+     * @param runPoints the number of points sorted into each SST file, or 0
+     *                  for runPointsFor(splits.size())
+     * @return the number of points loaded
+     */
+    public long bulkLoad(List<? extends LaghosPointSource> splits, int runPoints) throws IOException {
+        int runSize = (0 < runPoints) ? runPoints : runPointsFor(splits.size());
+        long count = IndexedMesh.ingestSplits(splits, split -> {
+            KVRunBuffer[] runs = new KVRunBuffer[LaghosField.values().length + ((null == this.curve) ? 0 : 1)];
+            for (LaghosField f : LaghosField.values()) {
+                runs[f.dim()] = new KVRunBuffer(runSize, MeshKeyCodec.KEY_SIZE, 0);
+            }
+            byte[] curveBuf = null;
+            if (null != this.curve) {
+                curveBuf = new byte[MeshKeyCodec.curveKeySize(this.curve)];
+                runs[MeshKeyCodec.CURVE_DIM] = new KVRunBuffer(runSize, curveBuf.length, 0);
+            }
+            byte[] keyBuf = new byte[MeshKeyCodec.KEY_SIZE];
+            long points = 0;
+            int runId = 0;
+            LaghosPointBatch batch = split.getNextLaghosPointBatch();
+            while (batch != null) {
+                for (int i = 0; i < batch.size(); i++) {
+                    for (LaghosField f : LaghosField.values()) {
+                        MeshKeyCodec.encodeKey(batch, i, f.dim(), keyBuf);
+                        runs[f.dim()].add(keyBuf, MeshKeyCodec.EMPTY_VALUE);
+                    }
+                    if (null != curveBuf) {
+                        MeshKeyCodec.encodeCurveKey(this.curve, batch, i, curveBuf);
+                        runs[MeshKeyCodec.CURVE_DIM].add(curveBuf, MeshKeyCodec.EMPTY_VALUE);
+                    }
+                    if (runs[0].isFull()) {
+                        ingestRuns(runs, split.getFirstPointIndex() + "-" + runId++);
+                    }
+                }
+                points += batch.size();
+                batch = split.getNextLaghosPointBatch();
+            }
+            if (0 < runs[0].size()) {
+                ingestRuns(runs, split.getFirstPointIndex() + "-" + runId++);
+            }
+            return points;
+        });
+
+        try {
+            for (int dim = 0; dim < this.cfHandles.size() - 1; dim++) {
+                this.db.compactRange(getColumnFamily(dim));
+            }
+        } catch (RocksDBException e) {
+            throw new IOException("Compaction after bulk load failed", e);
+        }
+        putCounts(splits);
+        return count;
+    }
+
+    /**
+     * @return the points per run at which the run buffers of nSplits bulk
+     *         load threads, one per column family, fill RUN_HEAP_FRACTION of
+     *         the maximum heap
+     */
+    public int runPointsFor(int nSplits) {
+        int curveKeySize = (null == this.curve) ? 0 : MeshKeyCodec.curveKeySize(this.curve);
+        long pointBytes = (long)LaghosField.values().length * MeshKeyCodec.KEY_SIZE + curveKeySize;
+        long budget = (long)(Runtime.getRuntime().maxMemory() * RUN_HEAP_FRACTION);
+        // A run buffer is a single array, so its bytes must fit an int
+        long maxPoints = Integer.MAX_VALUE / Math.max(MeshKeyCodec.KEY_SIZE, curveKeySize);
+        return (int)Math.max(1, Math.min(maxPoints, budget / ((long)Math.max(1, nSplits) * pointBytes)));
+    }
+
+    /** Record the number of points and elements loaded from the splits */
+    void putCounts(List<? extends LaghosPointSource> splits) throws IOException {
+        long numPoints = 0;
+        long numElements = 0;
+        for (LaghosPointSource split : splits) {
+            numPoints += split.getNumPoints();
+            numElements += split.getNumElements();
+        }
+        try {
+            this.db.put(MeshKeyCodec.META_COUNTS_KEY, MeshKeyCodec.encodeCounts(numPoints, numElements));
+            if (null != this.curve) {
+                this.db.put(MeshKeyCodec.META_CURVE_KEY, this.curve.toBytes());
+            }
+        } catch (RocksDBException e) {
+            throw new IOException("Unable to record counts", e);
+        }
+    }
+
+    @Override
+    protected void scan(int dim, byte[] lower, byte[] upper, Consumer<byte[]> consumer) {
+        try (RocksIterator it = this.db.newIterator(getColumnFamily(dim))) {
+            for (it.seek(lower); it.isValid(); it.next()) {
+                byte[] key = it.key();
+                if (!MeshKeyCodec.atOrBefore(key, upper)) {
+                    break;
+                }
+                consumer.accept(key);
+            }
+        }
+    }
+
+    @Override
+    protected byte[] get(byte[] key) throws IOException {
+        try {
+            return this.db.get(key);
+        } catch (RocksDBException e) {
+            throw new IOException("RocksDB get failed", e);
+        }
+    }
+
+    /** Sort each dimension's run, write it as an SST file and ingest it */
+    void ingestRuns(KVRunBuffer[] runs, String runName) throws IOException {
+        try (EnvOptions envOptions = new EnvOptions();
+             Options options = new Options(this.dbOptions, this.cfOptions);
+             IngestExternalFileOptions ingestOptions = new IngestExternalFileOptions().setMoveFiles(true)) {
+            for (int dim = 0; dim < runs.length; dim++) {
+                KVRunBuffer run = runs[dim];
+                byte[] keyBuf = new byte[run.keyLength];
+                run.sortUnique();
+                String name = (dim < LaghosPointBatch.NUM_FIELDS) ? LaghosField.values()[dim].fieldName() : CURVE_FAMILY;
+                String sstPath = new File(this.dbFile, "bulk-" + name + "-" + runName + ".sst").getPath();
+                try (SstFileWriter writer = new SstFileWriter(envOptions, options)) {
+                    writer.open(sstPath);
+                    for (int i = 0; i < run.size(); i++) {
+                        run.getKey(i, keyBuf);
+                        writer.put(keyBuf, MeshKeyCodec.EMPTY_VALUE);
+                    }
+                    writer.finish();
+                }
+                this.db.ingestExternalFile(getColumnFamily(dim), List.of(sstPath), ingestOptions);
+                run.clear();
+            }
+        } catch (RocksDBException e) {
+            throw new IOException("SST bulk load failed", e);
+        }
+    }
+
+    /** @return the total size of the SST files in the store */
+    public long getSize() {
+        long size = 0;
+        File[] files = this.dbFile.listFiles();
+        if (null != files) {
+            for (File f : files) {
+                if (f.getName().endsWith(".sst")) {
+                    size += f.length();
+                }
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public void close() {
+        for (ColumnFamilyHandle h : this.cfHandles) {
+            h.close();
+        }
+        this.db.close();
+        this.writeOptions.close();
+        this.cfOptions.close();
+        this.dbOptions.close();
+    }
+
+    // Directory holding the database
+    final File dbFile;
+
+    // Curve every point is also keyed by, or null
+    SpaceFillingCurve curve;
+
+    // Database wide options
+    final DBOptions dbOptions;
+
+    // Options shared by every column family
+    final ColumnFamilyOptions cfOptions;
+
+    // Options used for every write
+    final WriteOptions writeOptions;
+
+    // Column family handles, the default family first
+    final List<ColumnFamilyHandle> cfHandles;
+
+    // The database
+    final RocksDB db;
+}
@@ -0,0 +1,271 @@
+package sci.lucene;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.OutputStreamIndexOutput;
+import org.apache.lucene.util.bkd.BKDConfig;
+import org.apache.lucene.util.bkd.BKDWriter;
+import sci.metrics.MeshEvents;
+import sci.metrics.MeshMetrics;
+
+/**
+ * Builds a single BKD index set from several BKDWriters filled concurrently.
+ *
+ * Each shard is an independent BKDWriter that is finished (sorted and
+ * written) on its own thread into temporary files. The shard trees are then
+ * concatenated into one .tpm/.tpd/.tpi index set. Lucene can only merge
+ * 1-dimensional trees, so the shards remain separate trees: the .tpm file
+ * starts with a shard table recording where each tree's packed index and
+ * leaf blocks live in the .tpi and .tpd files, followed by each shard's BKD
+ * metadata.
+ */
+public class ShardedBKDWriter implements Closeable {
+
+    /** Codec name written at the start of a sharded .tpm file */
+    public static final String SHARDS_CODEC = "TaprootBKDShards";
+
+    /** Current version of the shard table */
+    public static final int VERSION_CURRENT = 0;
+
+    /** Size of the output buffers used when finishing a shard */
+    static final int OUTPUT_BUFFER_SIZE = 4*1024*1024;
+
+    // Finish phase metrics, each shard records its own sort and index write
+    static final MeshMetrics.Histogram BKD_SORT_NANOS = MeshMetrics.histogram("bkd.finish.sort.nanos");
+    static final MeshMetrics.Histogram BKD_INDEX_NANOS = MeshMetrics.histogram("bkd.finish.index.nanos");
+    static final MeshMetrics.Histogram BKD_CONCAT_NANOS = MeshMetrics.histogram("bkd.finish.concat.nanos");
+
+    /**
+     * Create a sharded writer
+     *
+     * @param tempDir directory used for offline sorting
+     * @param tempPrefix prefix of the temporary sort files
+     * @param config the BKD configuration shared by every shard
+     * @param maxDoc one more than the largest docId added to any shard
+     * @param shardPointCounts the number of points each shard will receive
+     * @param maxMBSortInHeap heap each shard may use before sorting offline
+     */
+    public ShardedBKDWriter(Directory tempDir, String tempPrefix, BKDConfig config, int maxDoc,
+                            long[] shardPointCounts, double maxMBSortInHeap) {
+        this.config = config;
+        this.shards = new BKDWriter[shardPointCounts.length];
+        for (int k = 0; k < shardPointCounts.length; k++) {
+            this.shards[k] = new BKDWriter(maxDoc, tempDir, tempPrefix + "-shard" + k, config,
+                                           maxMBSortInHeap, shardPointCounts[k]);
+        }
+    }
+
+    /** @return the number of shards */
+    public int getNumShards() {
+        return this.shards.length;
+    }
+
+    /**
+     * @return the writer for shard k. A shard writer must only be used by
+     *         one thread at a time.
+     */
+    public BKDWriter getShard(int k) {
+        return this.shards[k];
+    }
+
+    /**
+     * Finish every shard concurrently and concatenate them into one index set
+     *
+     * @param filename the index base name, the .tpm/.tpd/.tpi suffixes are appended
+     * @return the size in bytes of the data file
+     */
+    public long finish(String filename) throws IOException {
+        // Sort and write every shard into its own temporary files
+        ExecutorService pool = Executors.newFixedThreadPool(this.shards.length);
+        List<Future<ShardFiles>> results = new ArrayList<>();
+        for (int k = 0; k < this.shards.length; k++) {
+            final int shard = k;
+            results.add(pool.submit(() -> finishShard(shard, filename + ".shard" + shard)));
+        }
+
+        List<ShardFiles> shardFiles = new ArrayList<>();
+        try {
+            for (Future<ShardFiles> result : results) {
+                ShardFiles sf = result.get();
+                if (null != sf) {
+                    shardFiles.add(sf);
+                }
+            }
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted while finishing shards", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Shard finish failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+
+        // Concatenate the shard trees into the final index set
+        MeshEvents.FinishPhase concat = new MeshEvents.FinishPhase();
+        concat.begin();
+        long begin = System.nanoTime();
+        final File metaFile = new File(filename + ".tpm");
+        final File dataFile = new File(filename + ".tpd");
+        final File idxFile = new File(filename + ".tpi");
+        try (OutputStreamIndexOutput metaOut = new OutputStreamIndexOutput("metadata",
+                                                                          metaFile.getName(),
+                                                                          new FileOutputStream(metaFile),
+                                                                          OUTPUT_BUFFER_SIZE);
+             FileChannel dataOut = new FileOutputStream(dataFile).getChannel();
+             FileChannel idxOut = new FileOutputStream(idxFile).getChannel()) {
+            CodecUtil.writeHeader(metaOut, SHARDS_CODEC, VERSION_CURRENT);
+            metaOut.writeVInt(shardFiles.size());
+            long dataOffset = 0;
+            long idxOffset = 0;
+            for (ShardFiles sf : shardFiles) {
+                metaOut.writeLong(idxOffset);
+                metaOut.writeLong(sf.idxFile.length());
+                metaOut.writeLong(dataOffset);
+                metaOut.writeLong(sf.dataFile.length());
+                idxOffset += sf.idxFile.length();
+                dataOffset += sf.dataFile.length();
+            }
+            for (ShardFiles sf : shardFiles) {
+                byte[] shardMeta = Files.readAllBytes(sf.metaFile.toPath());
+                metaOut.writeBytes(shardMeta, 0, shardMeta.length);
+                appendFile(sf.idxFile, idxOut);
+                appendFile(sf.dataFile, dataOut);
+                sf.delete();
+            }
+        }
+        long end = System.nanoTime();
+        this.concatNanos = end - begin;
+        BKD_CONCAT_NANOS.record(this.concatNanos);
+        concat.index = filename;
+        concat.phase = "concat";
+        concat.commit();
+        for (File f : new File[]{metaFile, idxFile, dataFile}) {
+            MeshMetrics.recordFileBytes(filename, f.toPath());
+        }
+        return dataFile.length();
+    }
+
+    /** Print the duration of each build phase */
+    public void reportPhases() {
+        System.out.println("Shard sort time: " + this.sortNanos * IndexedMesh.SECS_PER_NANOSECOND + " secs");
+        System.out.println("Shard index write time: " + this.indexNanos * IndexedMesh.SECS_PER_NANOSECOND + " secs");
+        System.out.println("Shard concatenate time: " + this.concatNanos * IndexedMesh.SECS_PER_NANOSECOND + " secs");
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (BKDWriter w : this.shards) {
+            w.close();
+        }
+    }
+
+    /**
+     * Finish a single shard into its own set of files
+     *
+     * @return the shard's files or null if the shard received no points
+     */
+    ShardFiles finishShard(int k, String shardName) throws IOException {
+        ShardFiles sf = new ShardFiles(shardName);
+        long begin, sorted, end;
+        try (OutputStreamIndexOutput metaOut = new OutputStreamIndexOutput("metadata",
+                                                                          sf.metaFile.getName(),
+                                                                          new FileOutputStream(sf.metaFile),
+                                                                          OUTPUT_BUFFER_SIZE);
+             OutputStreamIndexOutput dataOut = new OutputStreamIndexOutput("data",
+                                                                          sf.dataFile.getName(),
+                                                                          new FileOutputStream(sf.dataFile),
+                                                                          OUTPUT_BUFFER_SIZE);
+             OutputStreamIndexOutput idxOut = new OutputStreamIndexOutput("resource",
+                                                                         sf.idxFile.getName(),
+                                                                         new FileOutputStream(sf.idxFile),
+                                                                         OUTPUT_BUFFER_SIZE)) {
+            // The finish call sorts the points and writes the leaf blocks, the
+            // returned runnable writes the packed index
+            MeshEvents.FinishPhase sort = new MeshEvents.FinishPhase();
+            sort.begin();
+            begin = System.nanoTime();
+            Runnable writeIndex = this.shards[k].finish(metaOut, idxOut, dataOut);
+            sorted = System.nanoTime();
+            sort.index = shardName;
+            sort.phase = "sort";
+            sort.commit();
+            MeshEvents.FinishPhase index = new MeshEvents.FinishPhase();
+            index.begin();
+            if (null != writeIndex) {
+                writeIndex.run();
+            }
+            end = System.nanoTime();
+            index.index = shardName;
+            index.phase = "index";
+            index.commit();
+            if (null == writeIndex) {
+                sf.delete();
+                return null;
+            }
+        }
+        recordShardPhases(sorted - begin, end - sorted);
+        BKD_SORT_NANOS.record(sorted - begin);
+        BKD_INDEX_NANOS.record(end - sorted);
+        return sf;
+    }
+
+    /** Track the slowest shard for each phase, it bounds the phase's wall time */
+    synchronized void recordShardPhases(long sortNanos, long indexNanos) {
+        this.sortNanos = Math.max(this.sortNanos, sortNanos);
+        this.indexNanos = Math.max(this.indexNanos, indexNanos);
+    }
+
+    static void appendFile(File src, FileChannel dst) throws IOException {
+        try (FileChannel in = new FileInputStream(src).getChannel()) {
+            long pos = 0;
+            long size = in.size();
+            while (pos < size) {
+                pos += in.transferTo(pos, size - pos, dst);
+            }
+        }
+    }
+
+    /** The temporary files a single shard is finished into */
+    static class ShardFiles {
+        ShardFiles(String shardName) {
+            this.metaFile = new File(shardName + ".tpm");
+            this.dataFile = new File(shardName + ".tpd");
+            this.idxFile = new File(shardName + ".tpi");
+        }
+
+        void delete() {
+            this.metaFile.delete();
+            this.dataFile.delete();
+            this.idxFile.delete();
+        }
+
+        final File metaFile, dataFile, idxFile;
+    }
+
+    // Configuration shared by all shards
+    final BKDConfig config;
+
+    // Writer for each shard
+    final BKDWriter[] shards;
+
+    // Slowest shard sort and leaf write time
+    long sortNanos;
+
+    // Slowest shard packed index write time
+    long indexNanos;
+
+    // Time to concatenate the shards
+    long concatNanos;
+}
@@ -0,0 +1,390 @@
+package sci.lucene;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import sci.mfem.LaghosColumnCache;
+import sci.mfem.LaghosField;
+import sci.mfem.LaghosPointBatch;
+import sci.mfem.LaghosPointSource;
+
+/**
+ * Maps points to Z-order (Morton) or Hilbert keys so spatially close points
+ * get close keys.
+ *
+ * x, y and z, and optionally one more field, are quantized to bitsPerDim
+ * bits over a fixed bounding box and their bits interleaved into a 64 bit
+ * key that sorts as an unsigned long. Every aligned cell of the quantized
+ * grid is a contiguous run of keys on either curve, so a box is covered by a
+ * short list of key ranges (see ranges). The Hilbert curve never jumps
+ * between distant cells, so it needs fewer ranges than Z-order for the same
+ * box.
+ */
+public class SpaceFillingCurve {
+
+    /** Curve types */
+    public enum Order { MORTON, HILBERT }
+
+    /** Value dimension of a curve over x, y and z alone */
+    public static final int NO_VALUE_DIM = -1;
+
+    /** The default number of ranges a box is decomposed into */
+    public static final int DEFAULT_MAX_RANGES = 64;
+
+    /**
+     * Create a curve
+     *
+     * @param order the curve type
+     * @param valueDim the field interleaved after x, y and z, or NO_VALUE_DIM
+     * @param min the smallest value of x, y, z and the value field
+     * @param max the largest value of x, y, z and the value field
+     * @param bitsPerDim quantization bits per dimension, at most 64 / dimensions
+     */
+    public SpaceFillingCurve(Order order, int valueDim, double[] min, double[] max, int bitsPerDim) {
+        this.order = order;
+        this.valueDim = valueDim;
+        this.numDims = (NO_VALUE_DIM == valueDim) ? 3 : 4;
+        if (bitsPerDim < 1 || this.numDims * bitsPerDim > Long.SIZE) {
+            throw new IllegalArgumentException(bitsPerDim + " bits per dimension do not fit " + this.numDims
+                                               + " dimensions in a 64 bit key");
+        }
+        this.bitsPerDim = bitsPerDim;
+        this.dims = new int[this.numDims];
+        this.min = new double[this.numDims];
+        this.scale = new double[this.numDims];
+        this.maxCell = (1L << bitsPerDim) - 1;
+        for (int d = 0; d < this.numDims; d++) {
+            this.dims[d] = (d < 3) ? d : valueDim;
+            this.min[d] = min[d];
+            double width = max[d] - min[d];
+            this.scale[d] = (width > 0) ? (this.maxCell + 1) / width : 0.0;
+        }
+        this.bounds = new double[2 * this.numDims];
+        for (int d = 0; d < this.numDims; d++) {
+            this.bounds[2*d] = min[d];
+            this.bounds[2*d + 1] = max[d];
+        }
+    }
+
+    /** @return the widest curve over the bounding box recorded in a column cache header */
+    public static SpaceFillingCurve forHeader(Order order, int valueDim, LaghosColumnCache.Header header) {
+        int numDims = (NO_VALUE_DIM == valueDim) ? 3 : 4;
+        double[] min = new double[numDims];
+        double[] max = new double[numDims];
+        for (int d = 0; d < numDims; d++) {
+            int dim = (d < 3) ? d : valueDim;
+            min[d] = header.getMin(dim);
+            max[d] = header.getMax(dim);
+        }
+        return new SpaceFillingCurve(order, valueDim, min, max, Long.SIZE / numDims);
+    }
+
+    /** @return the widest curve over the bounding box of source, found by scanning it once */
+    public static SpaceFillingCurve forSource(Order order, int valueDim, LaghosPointSource source) {
+        int numDims = (NO_VALUE_DIM == valueDim) ? 3 : 4;
+        double[] min = new double[numDims];
+        double[] max = new double[numDims];
+        Arrays.fill(min, Double.POSITIVE_INFINITY);
+        Arrays.fill(max, Double.NEGATIVE_INFINITY);
+        source.resetIterator();
+        for (LaghosPointBatch batch = source.getNextLaghosPointBatch(); batch != null;
+             batch = source.getNextLaghosPointBatch()) {
+            for (int d = 0; d < numDims; d++) {
+                int dim = (d < 3) ? d : valueDim;
+                for (int i = 0; i < batch.size(); i++) {
+                    double v = batch.getDouble(i, dim);
+                    min[d] = Math.min(min[d], v);
+                    max[d] = Math.max(max[d], v);
+                }
+            }
+        }
+        source.resetIterator();
+        return new SpaceFillingCurve(order, valueDim, min, max, Long.SIZE / numDims);
+    }
+
+    /** @return the curve type */
+    public Order getOrder() {
+        return this.order;
+    }
+
+    /** @return the number of interleaved dimensions, 3 or 4 */
+    public int getNumDims() {
+        return this.numDims;
+    }
+
+    /** @return the field of curve dimension d */
+    public int getDim(int d) {
+        return this.dims[d];
+    }
+
+    /** @return the field interleaved after x, y and z, or NO_VALUE_DIM */
+    public int getValueDim() {
+        return this.valueDim;
+    }
+
+    /** @return the quantization bits per dimension */
+    public int getBitsPerDim() {
+        return this.bitsPerDim;
+    }
+
+    /** @return the grid cell of value v along curve dimension d, clamped to the grid */
+    public long quantize(int d, double v) {
+        double cell = Math.floor((v - this.min[d]) * this.scale[d]);
+        if (!(cell > 0)) {
+            return 0;
+        }
+        return (cell >= this.maxCell) ? this.maxCell : (long)cell;
+    }
+
+    /** @return the key of point i of batch */
+    public long encode(LaghosPointBatch batch, int i) {
+        long[] cells = new long[this.numDims];
+        for (int d = 0; d < this.numDims; d++) {
+            cells[d] = quantize(d, batch.getDouble(i, this.dims[d]));
+        }
+        return encodeCells(cells);
+    }
+
+    /** @return the key of a point given the values of its curve dimensions */
+    public long encode(double... values) {
+        long[] cells = new long[this.numDims];
+        for (int d = 0; d < this.numDims; d++) {
+            cells[d] = quantize(d, values[d]);
+        }
+        return encodeCells(cells);
+    }
+
+    /**
+     * @return the key of a grid cell. cells is overwritten by the Hilbert
+     *         transform.
+     */
+    public long encodeCells(long[] cells) {
+        if (Order.HILBERT == this.order) {
+            hilbertTranspose(cells, this.bitsPerDim);
+        }
+        long key = 0;
+        for (int b = this.bitsPerDim - 1; b >= 0; b--) {
+            for (int d = 0; d < this.numDims; d++) {
+                key = (key << 1) | ((cells[d] >>> b) & 1);
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Convert grid coordinates to the transposed Hilbert index in place.
+     *
+     * This is Skilling's algorithm ("Programming the Hilbert curve", 2004):
+     * after the transform, interleaving the bits of the coordinates gives
+     * the Hilbert index. Bits at and above level b of the result depend only
+     * on the input bits at and above level b, so aligned cells stay
+     * contiguous.
+     */
+    static void hilbertTranspose(long[] x, int bits) {
+        int n = x.length;
+        long m = 1L << (bits - 1);
+        for (long q = m; q > 1; q >>>= 1) {
+            long p = q - 1;
+            for (int i = 0; i < n; i++) {
+                if (0 != (x[i] & q)) {
+                    x[0] ^= p;
+                } else {
+                    long t = (x[0] ^ x[i]) & p;
+                    x[0] ^= t;
+                    x[i] ^= t;
+                }
+            }
+        }
+        for (int i = 1; i < n; i++) {
+            x[i] ^= x[i - 1];
+        }
+        long t = 0;
+        for (long q = m; q > 1; q >>>= 1) {
+            if (0 != (x[n - 1] & q)) {
+                t ^= q - 1;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            x[i] ^= t;
+        }
+    }
+
+    /** @return the curve bounds of q, a lower and upper value per curve dimension */
+    public double[][] queryBounds(MeshQuery q) {
+        double[][] b = new double[2][this.numDims];
+        for (int d = 0; d < this.numDims; d++) {
+            b[0][d] = q.getMin(this.dims[d]);
+            b[1][d] = q.getMax(this.dims[d]);
+        }
+        return b;
+    }
+
+    /** @return true if q constrains any dimension of the curve */
+    public boolean constrains(MeshQuery q) {
+        for (int d = 0; d < this.numDims; d++) {
+            if (q.getMin(this.dims[d]) != Double.NEGATIVE_INFINITY || q.getMax(this.dims[d]) != Double.POSITIVE_INFINITY) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Cover a box with key ranges.
+     *
+     * The grid is refined level by level. Cells inside the box become ranges,
+     * cells outside it are dropped and cells crossing it are split, until
+     * splitting again would exceed maxRanges or the cells are single grid
+     * points. Crossing cells left at that point are kept whole, so the
+     * ranges cover every key in the box but may include keys outside it, and
+     * matches must still be checked.
+     *
+     * @param lo the lower bound of each curve dimension
+     * @param hi the upper bound of each curve dimension
+     * @return sorted, disjoint, inclusive [first, last] key pairs in unsigned order
+     */
+    public List<long[]> ranges(double[] lo, double[] hi, int maxRanges) {
+        long[] qlo = new long[this.numDims];
+        long[] qhi = new long[this.numDims];
+        for (int d = 0; d < this.numDims; d++) {
+            if (lo[d] > hi[d]) {
+                return new ArrayList<>();
+            }
+            qlo[d] = quantize(d, lo[d]);
+            qhi[d] = quantize(d, hi[d]);
+        }
+
+        List<long[]> out = new ArrayList<>();
+        List<long[]> crossing = new ArrayList<>();
+        crossing.add(new long[this.numDims]);
+        int children = 1 << this.numDims;
+        for (int level = 1; level <= this.bitsPerDim; level++) {
+            int shift = this.bitsPerDim - level;
+            List<long[]> next = new ArrayList<>();
+            for (long[] cell : crossing) {
+                for (int c = 0; c < children; c++) {
+                    long[] child = new long[this.numDims];
+                    boolean inside = true;
+                    boolean outside = false;
+                    for (int d = 0; d < this.numDims; d++) {
+                        child[d] = (cell[d] << 1) | ((c >>> d) & 1);
+                        long first = child[d] << shift;
+                        long last = first + (1L << shift) - 1;
+                        outside |= last < qlo[d] || first > qhi[d];
+                        inside &= first >= qlo[d] && last <= qhi[d];
+                    }
+                    if (outside) {
+                        continue;
+                    }
+                    if (inside || 0 == shift) {
+                        out.add(cellRange(child, level));
+                    } else {
+                        next.add(child);
+                    }
+                }
+            }
+            crossing = next;
+            if (crossing.isEmpty() || out.size() + crossing.size() * (long)children > maxRanges) {
+                for (long[] cell : crossing) {
+                    out.add(cellRange(cell, level));
+                }
+                break;
+            }
+        }
+        return merge(out);
+    }
+
+    /** @return the inclusive key range of a cell at level, given its coordinates at that level */
+    long[] cellRange(long[] cell, int level) {
+        int shift = this.bitsPerDim - level;
+        long[] corner = new long[this.numDims];
+        for (int d = 0; d < this.numDims; d++) {
+            corner[d] = cell[d] << shift;
+        }
+        int keyShift = this.numDims * shift;
+        long key = encodeCells(corner);
+        if (keyShift >= Long.SIZE) {
+            return new long[]{0, -1L};
+        }
+        long first = (key >>> keyShift) << keyShift;
+        return new long[]{first, first + ((1L << keyShift) - 1)};
+    }
+
+    /** Sort ranges in unsigned order and join those that touch */
+    static List<long[]> merge(List<long[]> ranges) {
+        ranges.sort((a, b) -> Long.compareUnsigned(a[0], b[0]));
+        List<long[]> merged = new ArrayList<>();
+        for (long[] r : ranges) {
+            if (!merged.isEmpty()) {
+                long[] last = merged.get(merged.size() - 1);
+                if (-1L != last[1] && last[1] + 1 == r[0]) {
+                    last[1] = r[1];
+                    continue;
+                }
+            }
+            merged.add(r.clone());
+        }
+        return merged;
+    }
+
+    /** @return the curve parameters, as read by fromBytes */
+    public byte[] toBytes() {
+        ByteBuffer buf = ByteBuffer.allocate(3 + this.bounds.length * Double.BYTES);
+        buf.put((byte)this.order.ordinal());
+        buf.put((byte)this.valueDim);
+        buf.put((byte)this.bitsPerDim);
+        for (double v : this.bounds) {
+            buf.putDouble(v);
+        }
+        return buf.array();
+    }
+
+    /** @return the curve described by toBytes */
+    public static SpaceFillingCurve fromBytes(byte[] bytes) {
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        Order order = Order.values()[buf.get()];
+        int valueDim = buf.get();
+        int bits = buf.get();
+        int numDims = (NO_VALUE_DIM == valueDim) ? 3 : 4;
+        double[] min = new double[numDims];
+        double[] max = new double[numDims];
+        for (int d = 0; d < numDims; d++) {
+            min[d] = buf.getDouble();
+            max[d] = buf.getDouble();
+        }
+        return new SpaceFillingCurve(order, valueDim, min, max, bits);
+    }
+
+    public String toString() {
+        String s = this.order + "(x,y,z";
+        if (NO_VALUE_DIM != this.valueDim) {
+            s += "," + LaghosField.values()[this.valueDim].fieldName();
+        }
+        return s + ") " + this.bitsPerDim + " bits";
+    }
+
+    // Curve type
+    final Order order;
+
+    // Field interleaved after x, y and z, or NO_VALUE_DIM
+    final int valueDim;
+
+    // Number of interleaved dimensions
+    final int numDims;
+
+    // Quantization bits per dimension
+    final int bitsPerDim;
+
+    // Field of each curve dimension
+    final int[] dims;
+
+    // Origin and cells per unit of each curve dimension
+    final double[] min, scale;
+
+    // Largest grid coordinate
+    final long maxCell;
+
+    // Minimum and maximum of each curve dimension, interleaved
+    final double[] bounds;
+}
@@ -0,0 +1,783 @@
+package sci.lucene;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.lucene.index.PointValues.IntersectVisitor;
+import org.apache.lucene.index.PointValues.Relation;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.NumericUtils;
+import org.apache.lucene.util.bkd.BKDConfig;
+import org.apache.lucene.util.bkd.BKDReader;
+import org.apache.lucene.util.bkd.BKDWriter;
+import sci.mfem.LaghosField;
+import sci.mfem.LaghosPointBatch;
+import sci.mfem.LaghosPointSource;
+
+/**
+ * An append-only index over the cycle dumps of a Laghos run.
+ *
+ * Each appended cycle becomes a segment: a BKD tree over the cycle number
+ * and the five value fields, with the element id as a data dimension and
+ * the point's index within the cycle as its docId. Positions live apart in
+ * geometry trees over x, y and z keyed by the same point index. A cycle
+ * whose coordinates hash the same as the previous cycle's shares its
+ * geometry tree, so a run on a fixed mesh pays for one spatial index.
+ *
+ * A query over a cycle range visits the segments overlapping the range,
+ * pruning cells on the cycle dimension and the field ranges. A spatial
+ * constraint is evaluated once per geometry into a bitset of point indexes
+ * and joined with the field hits through the docId. An element matches if
+ * any of its points matches at any cycle in the range.
+ *
+ * Segments are merged in tiers on a background thread: once mergeFactor
+ * segments of the same level exist, they are rewritten as one segment of
+ * the next level. Every tree keys the cycle, so a merged segment answers
+ * range queries exactly as its inputs did. The list of cycles, geometries
+ * and segments is kept in a manifest that is replaced atomically, and a
+ * store reopens from it.
+ */
+public class TimeSeriesMeshStore implements MeshIndex {
+
+    /** Name of the manifest within the store directory */
+    public static final String MANIFEST_FILE = "laghos.cycles";
+
+    /** The default number of segments merged together */
+    public static final int DEFAULT_MERGE_FACTOR = 8;
+
+    /** Magic number at the start of the manifest */
+    static final int MAGIC = 0x4c54534d;
+
+    /** Current manifest version */
+    static final int VERSION_CURRENT = 0;
+
+    /** The value fields keyed by a segment after the cycle, E through V_Z */
+    static final int NUM_VALUE_FIELDS = LaghosPointBatch.NUM_FIELDS - LaghosField.E.dim();
+
+    /** Segment dimensions: the cycle, the value fields and the element id */
+    static final int SEGMENT_DIMS = 1 + NUM_VALUE_FIELDS + 1;
+
+    /** Geometry dimensions: x, y, z and the element id */
+    static final int GEOMETRY_DIMS = 3 + 1;
+
+    /** Heap each BKD writer may use before sorting offline */
+    static final double MAX_MB_SORT_IN_HEAP = 64;
+
+    /** Open or create a store in dir with the default merge factor */
+    public TimeSeriesMeshStore(Path dir) throws IOException {
+        this(dir, DEFAULT_MERGE_FACTOR);
+    }
+
+    /**
+     * Open or create a store
+     *
+     * @param mergeFactor the number of segments of a level merged together, at least 2
+     */
+    public TimeSeriesMeshStore(Path dir, int mergeFactor) throws IOException {
+        if (mergeFactor < 2) {
+            throw new IllegalArgumentException("Merge factor must be at least 2, not " + mergeFactor);
+        }
+        Files.createDirectories(dir);
+        this.path = dir;
+        this.dir = new MMapDirectory(dir);
+        this.mergeFactor = mergeFactor;
+        this.geometries = new HashMap<>();
+        this.cycles = new TreeMap<>();
+        this.segments = new ArrayList<>();
+        this.merger = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "laghos-cycle-merge");
+            t.setDaemon(true);
+            return t;
+        });
+        if (Files.exists(dir.resolve(MANIFEST_FILE))) {
+            readManifest();
+        }
+    }
+
+    /**
+     * Index one cycle of the run. Cycles must be appended in increasing
+     * order. Merges the append makes due are started in the background.
+     */
+    public void append(int cycle, LaghosPointSource source) throws IOException {
+        synchronized (this.appendLock) {
+            synchronized (this) {
+                if (!this.cycles.isEmpty() && cycle <= this.cycles.lastKey()) {
+                    throw new IllegalArgumentException("Cycle " + cycle + " is not after cycle " + this.cycles.lastKey());
+                }
+            }
+            int numPoints = source.getNumPoints();
+            if (0 == numPoints) {
+                throw new IllegalArgumentException("Cycle " + cycle + " has no points");
+            }
+
+            // Key the fields and the geometry in one pass, hashing the coordinates
+            BKDConfig segmentConfig = new BKDConfig(SEGMENT_DIMS, SEGMENT_DIMS - 1, BKDPointCodec.BYTES_PER_DIM,
+                                                    IndexedMesh.BKD_LEAF_POINTS);
+            BKDConfig geometryConfig = new BKDConfig(GEOMETRY_DIMS, GEOMETRY_DIMS - 1, BKDPointCodec.BYTES_PER_DIM,
+                                                     IndexedMesh.BKD_LEAF_POINTS);
+            int segmentId = nextId();
+            int geometryId = nextId();
+            long hash = 0;
+            try (BKDWriter segmentWriter = new BKDWriter(numPoints, this.dir, segmentName(segmentId), segmentConfig,
+                                                         MAX_MB_SORT_IN_HEAP, numPoints);
+                 BKDWriter geometryWriter = new BKDWriter(numPoints, this.dir, geometryName(geometryId), geometryConfig,
+                                                          MAX_MB_SORT_IN_HEAP, numPoints)) {
+                byte[] packed = new byte[SEGMENT_DIMS * BKDPointCodec.BYTES_PER_DIM];
+                byte[] position = new byte[GEOMETRY_DIMS * BKDPointCodec.BYTES_PER_DIM];
+                NumericUtils.longToSortableBytes(cycle, packed, 0);
+                source.resetIterator();
+                for (LaghosPointBatch batch = source.getNextLaghosPointBatch(); batch != null;
+                     batch = source.getNextLaghosPointBatch()) {
+                    int docBase = (int)(batch.getFirstPointIndex() - source.getFirstPointIndex());
+                    for (int i = 0; i < batch.size(); i++) {
+                        for (int f = 0; f < NUM_VALUE_FIELDS; f++) {
+                            BKDPointCodec.encodeDouble(batch.getDouble(i, LaghosField.E.dim() + f), packed, 1 + f);
+                        }
+                        for (int c = 0; c < 3; c++) {
+                            double v = batch.getDouble(i, c);
+                            BKDPointCodec.encodeDouble(v, position, c);
+                            hash = (hash ^ Double.doubleToLongBits(v)) * 0x9E3779B97F4A7C15L;
+                        }
+                        long elementId = batch.getElementId(i);
+                        NumericUtils.longToSortableBytes(elementId, packed, (SEGMENT_DIMS - 1) * BKDPointCodec.BYTES_PER_DIM);
+                        NumericUtils.longToSortableBytes(elementId, position, (GEOMETRY_DIMS - 1) * BKDPointCodec.BYTES_PER_DIM);
+                        segmentWriter.add(packed, docBase + i);
+                        geometryWriter.add(position, docBase + i);
+                    }
+                }
+
+                // Only write the geometry if the coordinates moved since the last cycle
+                Geometry previous = latestGeometry();
+                Geometry geometry;
+                if (null != previous && previous.numPoints == numPoints && previous.hash == hash) {
+                    geometry = previous;
+                } else {
+                    writeTree(geometryWriter, geometryName(geometryId));
+                    geometry = new Geometry(geometryId, hash, numPoints);
+                    geometry.open(this.dir);
+                }
+                writeTree(segmentWriter, segmentName(segmentId));
+                Segment segment = new Segment(segmentId, 0, cycle, cycle, numPoints, numPoints);
+                segment.open(this.dir);
+
+                synchronized (this) {
+                    this.geometries.put(geometry.id, geometry);
+                    this.cycles.put(cycle, geometry.id);
+                    this.segments.add(segment);
+                    writeManifest();
+                }
+            }
+            maybeMerge();
+        }
+    }
+
+    @Override
+    public synchronized long getNumPoints() {
+        long total = 0;
+        for (int geometryId : this.cycles.values()) {
+            total += this.geometries.get(geometryId).numPoints;
+        }
+        return total;
+    }
+
+    /** @return the indexed cycles in increasing order */
+    public synchronized int[] getCycles() {
+        return this.cycles.keySet().stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /** @return the number of segments */
+    public synchronized int getNumSegments() {
+        return this.segments.size();
+    }
+
+    /** @return the number of distinct geometries */
+    public synchronized int getNumGeometries() {
+        return this.geometries.size();
+    }
+
+    /** Evaluate a query over every cycle */
+    @Override
+    public MeshQueryResult query(MeshQuery q) throws IOException {
+        return query(q, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Evaluate a query over the cycles [fromCycle, toCycle]
+     *
+     * @return the elements matching at any cycle in the range. Points are
+     *         counted once per matching cycle.
+     */
+    public MeshQueryResult query(MeshQuery q, int fromCycle, int toCycle) throws IOException {
+        long begin = System.nanoTime();
+        List<Segment> overlapping = new ArrayList<>();
+        Map<Integer, Integer> cycleGeometry;
+        long totalPoints = 0;
+        synchronized (this) {
+            cycleGeometry = new HashMap<>(this.cycles.subMap(fromCycle, true, toCycle, true));
+            for (int geometryId : cycleGeometry.values()) {
+                totalPoints += this.geometries.get(geometryId).numPoints;
+            }
+            for (Segment segment : this.segments) {
+                if (segment.maxCycle >= fromCycle && segment.minCycle <= toCycle) {
+                    segment.incRef();
+                    overlapping.add(segment);
+                }
+            }
+        }
+
+        MeshQueryResult result = new MeshQueryResult(totalPoints);
+        try {
+            // Resolve the spatial constraint once per geometry in the range
+            Map<Integer, FixedBitSet> inside = null;
+            if (q.isConstrained(LaghosField.X) || q.isConstrained(LaghosField.Y) || q.isConstrained(LaghosField.Z)) {
+                inside = new HashMap<>();
+                for (int geometryId : cycleGeometry.values()) {
+                    if (!inside.containsKey(geometryId)) {
+                        Geometry geometry = geometryFor(geometryId);
+                        FixedBitSet bits = new FixedBitSet((int)geometry.numPoints);
+                        geometry.tree.intersect(new GeometryVisitor(q, bits));
+                        inside.put(geometryId, bits);
+                    }
+                }
+            }
+            for (Segment segment : overlapping) {
+                segment.tree.intersect(new SegmentVisitor(q, fromCycle, toCycle, cycleGeometry, inside, result));
+            }
+        } finally {
+            for (Segment segment : overlapping) {
+                segment.decRef(this.dir);
+            }
+        }
+        result.finish(System.nanoTime() - begin);
+        return result;
+    }
+
+    /** Wait for the background merges to finish */
+    public void waitForMerges() throws IOException {
+        while (true) {
+            Future<?> task;
+            synchronized (this) {
+                if (!this.merging) {
+                    break;
+                }
+                task = this.mergeTask;
+            }
+            try {
+                task.get();
+            } catch (InterruptedException e) {
+                throw new IOException("Interrupted while waiting for merges", e);
+            } catch (ExecutionException e) {
+                throw new IOException("Segment merge failed", e.getCause());
+            }
+        }
+    }
+
+    /** Merge every segment into one, after any background merges finish */
+    public void forceMerge() throws IOException {
+        synchronized (this.appendLock) {
+            waitForMerges();
+            List<Segment> all;
+            synchronized (this) {
+                if (this.segments.size() < 2) {
+                    return;
+                }
+                all = new ArrayList<>(this.segments);
+                this.merging = true;
+            }
+            try {
+                merge(all);
+            } finally {
+                synchronized (this) {
+                    this.merging = false;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.merger.shutdown();
+        try {
+            this.merger.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted while waiting for merges", e);
+        }
+        synchronized (this) {
+            for (Segment segment : this.segments) {
+                segment.close();
+            }
+            for (Geometry geometry : this.geometries.values()) {
+                geometry.close();
+            }
+            this.segments.clear();
+        }
+        this.dir.close();
+    }
+
+    /** Start a background merge if one is due and none is running */
+    synchronized void maybeMerge() {
+        if (!this.merging && null != pickMergeRun()) {
+            this.merging = true;
+            this.mergeTask = this.merger.submit(() -> {
+                while (true) {
+                    List<Segment> run;
+                    synchronized (this) {
+                        run = pickMergeRun();
+                        if (null == run) {
+                            this.merging = false;
+                            return null;
+                        }
+                    }
+                    try {
+                        merge(run);
+                    } catch (IOException | RuntimeException e) {
+                        synchronized (this) {
+                            this.merging = false;
+                        }
+                        throw e;
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * @return the oldest mergeFactor consecutive segments of one level, or
+     *         null if no level has that many. Levels never increase from old
+     *         segments to new, so each level is a single run.
+     */
+    synchronized List<Segment> pickMergeRun() {
+        int runStart = 0;
+        for (int i = 1; i <= this.segments.size(); i++) {
+            if (i == this.segments.size() || this.segments.get(i).level != this.segments.get(runStart).level) {
+                if (i - runStart >= this.mergeFactor) {
+                    return new ArrayList<>(this.segments.subList(runStart, runStart + this.mergeFactor));
+                }
+                runStart = i;
+            }
+        }
+        return null;
+    }
+
+    /** Rewrite consecutive segments as one segment of the next level */
+    void merge(List<Segment> run) throws IOException {
+        int id = nextId();
+        int level = 0;
+        int maxDoc = 0;
+        long numPoints = 0;
+        for (Segment segment : run) {
+            level = Math.max(level, segment.level + 1);
+            maxDoc = Math.max(maxDoc, segment.maxDoc);
+            numPoints += segment.numPoints;
+        }
+        BKDConfig config = new BKDConfig(SEGMENT_DIMS, SEGMENT_DIMS - 1, BKDPointCodec.BYTES_PER_DIM,
+                                         IndexedMesh.BKD_LEAF_POINTS);
+        try (BKDWriter writer = new BKDWriter(maxDoc, this.dir, segmentName(id), config,
+                                              MAX_MB_SORT_IN_HEAP, numPoints)) {
+            for (Segment segment : run) {
+                segment.tree.intersect(new CopyVisitor(writer));
+            }
+            writeTree(writer, segmentName(id));
+        }
+        Segment merged = new Segment(id, level, run.get(0).minCycle, run.get(run.size() - 1).maxCycle,
+                                     numPoints, maxDoc);
+        merged.open(this.dir);
+
+        // Swap the merged segment in, queries still holding the inputs finish first
+        synchronized (this) {
+            int at = this.segments.indexOf(run.get(0));
+            this.segments.removeAll(run);
+            this.segments.add(at, merged);
+            writeManifest();
+        }
+        for (Segment segment : run) {
+            segment.decRef(this.dir);
+        }
+    }
+
+    /** Sort and write a finished tree as name.tpm/.tpi/.tpd */
+    void writeTree(BKDWriter writer, String name) throws IOException {
+        try (IndexOutput metaOut = this.dir.createOutput(name + ".tpm", IOContext.DEFAULT);
+             IndexOutput idxOut = this.dir.createOutput(name + ".tpi", IOContext.DEFAULT);
+             IndexOutput dataOut = this.dir.createOutput(name + ".tpd", IOContext.DEFAULT)) {
+            Runnable writeIndex = writer.finish(metaOut, idxOut, dataOut);
+            if (null != writeIndex) {
+                writeIndex.run();
+            }
+        }
+    }
+
+    synchronized int nextId() {
+        return this.nextId++;
+    }
+
+    synchronized Geometry latestGeometry() {
+        return this.cycles.isEmpty() ? null : this.geometries.get(this.cycles.lastEntry().getValue());
+    }
+
+    synchronized Geometry geometryFor(int id) {
+        return this.geometries.get(id);
+    }
+
+    static String segmentName(int id) {
+        return "segment-" + id;
+    }
+
+    static String geometryName(int id) {
+        return "geometry-" + id;
+    }
+
+    /** Replace the manifest with the current cycles, geometries and segments */
+    void writeManifest() throws IOException {
+        Path tmp = this.path.resolve(MANIFEST_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION_CURRENT);
+            out.writeInt(this.nextId);
+            out.writeInt(this.geometries.size());
+            for (Geometry geometry : this.geometries.values()) {
+                out.writeInt(geometry.id);
+                out.writeLong(geometry.hash);
+                out.writeLong(geometry.numPoints);
+            }
+            out.writeInt(this.cycles.size());
+            for (Map.Entry<Integer, Integer> cycle : this.cycles.entrySet()) {
+                out.writeInt(cycle.getKey());
+                out.writeInt(cycle.getValue());
+            }
+            out.writeInt(this.segments.size());
+            for (Segment segment : this.segments) {
+                out.writeInt(segment.id);
+                out.writeInt(segment.level);
+                out.writeInt(segment.minCycle);
+                out.writeInt(segment.maxCycle);
+                out.writeLong(segment.numPoints);
+                out.writeInt(segment.maxDoc);
+            }
+        }
+        Files.move(tmp, this.path.resolve(MANIFEST_FILE), StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    void readManifest() throws IOException {
+        Path file = this.path.resolve(MANIFEST_FILE);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (MAGIC != in.readInt()) {
+                throw new IOException(file + " is not a cycle manifest");
+            }
+            int version = in.readInt();
+            if (VERSION_CURRENT != version) {
+                throw new IOException("Unsupported cycle manifest version " + version + " in " + file);
+            }
+            this.nextId = in.readInt();
+            int numGeometries = in.readInt();
+            for (int i = 0; i < numGeometries; i++) {
+                Geometry geometry = new Geometry(in.readInt(), in.readLong(), in.readLong());
+                geometry.open(this.dir);
+                this.geometries.put(geometry.id, geometry);
+            }
+            int numCycles = in.readInt();
+            for (int i = 0; i < numCycles; i++) {
+                this.cycles.put(in.readInt(), in.readInt());
+            }
+            int numSegments = in.readInt();
+            for (int i = 0; i < numSegments; i++) {
+                Segment segment = new Segment(in.readInt(), in.readInt(), in.readInt(), in.readInt(),
+                                              in.readLong(), in.readInt());
+                segment.open(this.dir);
+                this.segments.add(segment);
+            }
+        }
+    }
+
+    /** A BKD tree written by the store */
+    static class Tree {
+        Tree(String name) {
+            this.name = name;
+        }
+
+        void open(Directory dir) throws IOException {
+            this.metaIn = dir.openInput(this.name + ".tpm", IOContext.READ);
+            this.idxIn = dir.openInput(this.name + ".tpi", IOContext.READ);
+            this.dataIn = dir.openInput(this.name + ".tpd", IOContext.READ);
+            this.tree = new BKDReader(this.metaIn, this.idxIn, this.dataIn);
+        }
+
+        void close() throws IOException {
+            this.metaIn.close();
+            this.idxIn.close();
+            this.dataIn.close();
+        }
+
+        // Base name of the tree's files
+        final String name;
+
+        // Mapped tree files
+        IndexInput metaIn, idxIn, dataIn;
+
+        // The opened tree
+        BKDReader tree;
+    }
+
+    /** The positions of one or more consecutive cycles sharing a mesh geometry */
+    static class Geometry extends Tree {
+        Geometry(int id, long hash, long numPoints) {
+            super(geometryName(id));
+            this.id = id;
+            this.hash = hash;
+            this.numPoints = numPoints;
+        }
+
+        // Id within the store
+        final int id;
+
+        // Hash of the coordinates, in point order
+        final long hash;
+
+        // Points per cycle
+        final long numPoints;
+    }
+
+    /** The field values of a range of cycles */
+    static class Segment extends Tree {
+        Segment(int id, int level, int minCycle, int maxCycle, long numPoints, int maxDoc) {
+            super(segmentName(id));
+            this.id = id;
+            this.level = level;
+            this.minCycle = minCycle;
+            this.maxCycle = maxCycle;
+            this.numPoints = numPoints;
+            this.maxDoc = maxDoc;
+            // The store holds the first reference
+            this.refs = new AtomicInteger(1);
+        }
+
+        void incRef() {
+            this.refs.incrementAndGet();
+        }
+
+        /** Release a reference, closing and deleting the segment after the last one */
+        void decRef(Directory dir) throws IOException {
+            if (0 == this.refs.decrementAndGet()) {
+                close();
+                dir.deleteFile(this.name + ".tpm");
+                dir.deleteFile(this.name + ".tpi");
+                dir.deleteFile(this.name + ".tpd");
+            }
+        }
+
+        // Id within the store
+        final int id;
+
+        // Number of merges that produced this segment
+        final int level;
+
+        // First and last cycles held
+        final int minCycle, maxCycle;
+
+        // Points held across every cycle
+        final long numPoints;
+
+        // One more than the largest point index held
+        final int maxDoc;
+
+        // References held by the store and by running queries
+        final AtomicInteger refs;
+    }
+
+    /** Sets the point index of every position inside the query's box */
+    static class GeometryVisitor implements IntersectVisitor {
+        GeometryVisitor(MeshQuery q, FixedBitSet inside) {
+            this.inside = inside;
+            this.min = new long[3];
+            this.max = new long[3];
+            for (int c = 0; c < 3; c++) {
+                this.min[c] = BKDPointCodec.sortableLong(q.getMin(c));
+                this.max[c] = BKDPointCodec.sortableLong(q.getMax(c));
+            }
+        }
+
+        @Override
+        public void visit(int docID) {
+            this.inside.set(docID);
+        }
+
+        @Override
+        public void visit(int docID, byte[] packedValue) {
+            for (int c = 0; c < 3; c++) {
+                long v = BKDPointCodec.sortableLong(packedValue, c);
+                if (v < this.min[c] || v > this.max[c]) {
+                    return;
+                }
+            }
+            this.inside.set(docID);
+        }
+
+        @Override
+        public Relation compare(byte[] minPackedValue, byte[] maxPackedValue) {
+            boolean crosses = false;
+            for (int c = 0; c < 3; c++) {
+                long cellMin = BKDPointCodec.sortableLong(minPackedValue, c);
+                long cellMax = BKDPointCodec.sortableLong(maxPackedValue, c);
+                if (cellMax < this.min[c] || cellMin > this.max[c]) {
+                    return Relation.CELL_OUTSIDE_QUERY;
+                }
+                crosses |= cellMin < this.min[c] || cellMax > this.max[c];
+            }
+            return crosses ? Relation.CELL_CROSSES_QUERY : Relation.CELL_INSIDE_QUERY;
+        }
+
+        // Point indexes inside the box
+        final FixedBitSet inside;
+
+        // Sortable bounds of x, y and z
+        final long[] min, max;
+    }
+
+    /**
+     * Collects the points of a segment inside the cycle range and field
+     * ranges, and inside the box when one is given. Cells are never reported
+     * inside, the element id is only passed to visit(docID, packedValue).
+     */
+    static class SegmentVisitor implements IntersectVisitor {
+        SegmentVisitor(MeshQuery q, int fromCycle, int toCycle, Map<Integer, Integer> cycleGeometry,
+                       Map<Integer, FixedBitSet> inside, MeshQueryResult result) {
+            this.cycleGeometry = cycleGeometry;
+            this.inside = inside;
+            this.result = result;
+            this.min = new long[SEGMENT_DIMS - 1];
+            this.max = new long[SEGMENT_DIMS - 1];
+            this.min[0] = fromCycle;
+            this.max[0] = toCycle;
+            for (int f = 0; f < NUM_VALUE_FIELDS; f++) {
+                this.min[1 + f] = BKDPointCodec.sortableLong(q.getMin(LaghosField.E.dim() + f));
+                this.max[1 + f] = BKDPointCodec.sortableLong(q.getMax(LaghosField.E.dim() + f));
+            }
+        }
+
+        @Override
+        public void visit(int docID) {
+            throw new IllegalStateException("Cells are never reported inside the query");
+        }
+
+        @Override
+        public void visit(int docID, byte[] packedValue) {
+            for (int d = 0; d < SEGMENT_DIMS - 1; d++) {
+                long v = BKDPointCodec.sortableLong(packedValue, d);
+                if (v < this.min[d] || v > this.max[d]) {
+                    return;
+                }
+            }
+            if (null != this.inside) {
+                int cycle = (int)BKDPointCodec.sortableLong(packedValue, 0);
+                if (!this.inside.get(this.cycleGeometry.get(cycle)).get(docID)) {
+                    return;
+                }
+            }
+            this.result.addPoint(BKDPointCodec.sortableLong(packedValue, SEGMENT_DIMS - 1));
+        }
+
+        @Override
+        public Relation compare(byte[] minPackedValue, byte[] maxPackedValue) {
+            for (int d = 0; d < SEGMENT_DIMS - 1; d++) {
+                long cellMin = BKDPointCodec.sortableLong(minPackedValue, d);
+                long cellMax = BKDPointCodec.sortableLong(maxPackedValue, d);
+                if (cellMax < this.min[d] || cellMin > this.max[d]) {
+                    return Relation.CELL_OUTSIDE_QUERY;
+                }
+            }
+            return Relation.CELL_CROSSES_QUERY;
+        }
+
+        // Geometry of each cycle in the range
+        final Map<Integer, Integer> cycleGeometry;
+
+        // Point indexes inside the box per geometry, or null without a box
+        final Map<Integer, FixedBitSet> inside;
+
+        // Result the matching points are added to
+        final MeshQueryResult result;
+
+        // Sortable bounds of the cycle and each value field
+        final long[] min, max;
+    }
+
+    /** Adds every point of a segment to a writer */
+    static class CopyVisitor implements IntersectVisitor {
+        CopyVisitor(BKDWriter writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void visit(int docID) {
+            throw new IllegalStateException("Cells are never reported inside the query");
+        }
+
+        @Override
+        public void visit(int docID, byte[] packedValue) throws IOException {
+            this.writer.add(packedValue, docID);
+        }
+
+        @Override
+        public Relation compare(byte[] minPackedValue, byte[] maxPackedValue) {
+            return Relation.CELL_CROSSES_QUERY;
+        }
+
+        // Writer of the merged segment
+        final BKDWriter writer;
+    }
+
+    // Directory holding the store
+    final Path path;
+
+    // Mapped view of the store directory
+    final Directory dir;
+
+    // Segments of a level merged together
+    final int mergeFactor;
+
+    // Geometries by id
+    final Map<Integer, Geometry> geometries;
+
+    // Geometry id of each cycle
+    final TreeMap<Integer, Integer> cycles;
+
+    // Segments in cycle order
+    final List<Segment> segments;
+
+    // Serializes appends and forced merges
+    final Object appendLock = new Object();
+
+    // Runs the background merges
+    final ExecutorService merger;
+
+    // The running merge task, valid while merging
+    Future<?> mergeTask;
+
+    // True while a merge task is running
+    boolean merging;
+
+    // Next id for a segment or geometry
+    int nextId;
+}
@@ -0,0 +1,426 @@
+package sci.lucene;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import org.roaringbitmap.RoaringBitmap;
+import org.roaringbitmap.RoaringBitmapWriter;
+import sci.mfem.LaghosColumnBatch;
+import sci.mfem.LaghosPointBatch;
+import sci.mfem.LaghosPointSource;
+
+/**
+ * A brute force scan of every point of a source, the baseline the indexes
+ * are measured against and the fallback for queries that match too much of
+ * the mesh for an index to pay off.
+ *
+ * Each batch is cut into chunks that a fork-join pool scans concurrently.
+ * A chunk compares SPECIES lanes of each constrained field at a time with
+ * the incubating Vector API, stopping as soon as no lane of a vector can
+ * match. Column batches, such as those of LaghosColumnReader or an off-heap
+ * copy made by copyColumns, are loaded straight from their column buffers.
+ * Row batches, such as those of LaghosMeshReader, are first transposed a
+ * tile at a time.
+ *
+ * A scan produces a count and, when asked, a bitmap of the matching element
+ * ids, along with the bytes it compared so throughput can be reported.
+ */
+public class VectorScanEngine implements MeshIndex {
+
+    /** The preferred vector shape of the platform */
+    static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    /** The default number of points each fork-join task scans */
+    public static final int DEFAULT_CHUNK_POINTS = 16*1024;
+
+    /** Points of a row batch transposed at a time */
+    static final int TILE_POINTS = 512;
+
+    /**
+     * Create an engine over source
+     *
+     * @param nThreads the parallelism of the fork-join pool
+     */
+    public VectorScanEngine(LaghosPointSource source, int nThreads) {
+        this(source, nThreads, DEFAULT_CHUNK_POINTS);
+    }
+
+    /**
+     * Create an engine over source
+     *
+     * @param nThreads the parallelism of the fork-join pool
+     * @param chunkPoints the most points a single task scans
+     */
+    public VectorScanEngine(LaghosPointSource source, int nThreads, int chunkPoints) {
+        this.source = source;
+        this.pool = new ForkJoinPool(Math.max(nThreads, 1));
+        // Chunks stay whole vectors so only the end of a batch needs a scalar tail
+        this.chunkPoints = Math.max(chunkPoints / SPECIES.length(), 1) * SPECIES.length();
+    }
+
+    /**
+     * Copy every point of source into one direct buffer per column
+     *
+     * @return a batch over the copy, at most Integer.MAX_VALUE / 8 points
+     */
+    public static LaghosColumnBatch copyColumns(LaghosPointSource source) {
+        long numPoints = source.getNumPoints();
+        if (numPoints * Double.BYTES > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("A column copy holds at most " + Integer.MAX_VALUE / Double.BYTES
+                                               + " points, the source has " + numPoints);
+        }
+        ByteBuffer[] columns = new ByteBuffer[LaghosColumnBatch.NUM_COLUMNS];
+        for (int c = 0; c < columns.length; c++) {
+            columns[c] = ByteBuffer.allocateDirect((int)numPoints * Double.BYTES).order(ByteOrder.nativeOrder());
+        }
+        source.resetIterator();
+        for (LaghosPointBatch batch = source.getNextLaghosPointBatch(); batch != null;
+             batch = source.getNextLaghosPointBatch()) {
+            for (int i = 0; i < batch.size(); i++) {
+                for (int d = 0; d < LaghosPointBatch.NUM_FIELDS; d++) {
+                    columns[d].putDouble(batch.getDouble(i, d));
+                }
+                columns[LaghosColumnBatch.ELEMENT_ID_COLUMN].putLong(batch.getElementId(i));
+            }
+        }
+        LaghosColumnBatch copy = new LaghosColumnBatch();
+        copy.reset(columns, 0, columns[0].position() / Double.BYTES, source.getFirstPointIndex());
+        return copy;
+    }
+
+    @Override
+    public long getNumPoints() {
+        return this.source.getNumPoints();
+    }
+
+    @Override
+    public MeshQueryResult query(MeshQuery q) {
+        ScanResult scan = scan(q, true);
+        MeshQueryResult result = new MeshQueryResult(scan.getPointsScanned());
+        result.addPoints(scan.getCount(), scan.getElementIds().toArray());
+        result.finish(scan.getLatencyNanos());
+        return result;
+    }
+
+    /** @return the number of points matching q */
+    public long count(MeshQuery q) {
+        return scan(q, false).getCount();
+    }
+
+    /**
+     * Scan every batch of the source
+     *
+     * @param collectElements whether to build the bitmap of matching element ids
+     */
+    public ScanResult scan(MeshQuery q, boolean collectElements) {
+        long begin = System.nanoTime();
+        ScanResult result = new ScanResult(collectElements);
+        this.source.resetIterator();
+        for (LaghosPointBatch batch = this.source.getNextLaghosPointBatch(); batch != null;
+             batch = this.source.getNextLaghosPointBatch()) {
+            scanInto(batch, q, result);
+        }
+        result.latencyNanos = System.nanoTime() - begin;
+        return result;
+    }
+
+    /**
+     * Scan a single batch, usually an off-heap copy from copyColumns
+     *
+     * @param collectElements whether to build the bitmap of matching element ids
+     */
+    public ScanResult scan(LaghosPointBatch batch, MeshQuery q, boolean collectElements) {
+        long begin = System.nanoTime();
+        ScanResult result = new ScanResult(collectElements);
+        scanInto(batch, q, result);
+        result.latencyNanos = System.nanoTime() - begin;
+        return result;
+    }
+
+    /** Scan batch in chunks on the pool and add its matches to result */
+    void scanInto(LaghosPointBatch batch, MeshQuery q, ScanResult result) {
+        Bounds bounds = new Bounds(q);
+        ScanResult partial = this.pool.invoke(new ChunkTask(batch, bounds, 0, batch.size(), result.elements != null));
+        result.merge(partial);
+    }
+
+    @Override
+    public void close() {
+        this.pool.shutdown();
+    }
+
+    /**
+     * The fields a query constrains and their bounds, in the order they are compared
+     */
+    static class Bounds {
+        Bounds(MeshQuery q) {
+            int n = 0;
+            int[] dims = new int[LaghosPointBatch.NUM_FIELDS];
+            for (int d = 0; d < LaghosPointBatch.NUM_FIELDS; d++) {
+                if (Double.NEGATIVE_INFINITY != q.getMin(d) || Double.POSITIVE_INFINITY != q.getMax(d)) {
+                    dims[n++] = d;
+                }
+            }
+            this.dims = Arrays.copyOf(dims, n);
+            this.lo = new double[n];
+            this.hi = new double[n];
+            for (int k = 0; k < n; k++) {
+                this.lo[k] = q.getMin(this.dims[k]);
+                this.hi[k] = q.getMax(this.dims[k]);
+            }
+        }
+
+        // Constrained fields
+        final int[] dims;
+
+        // Bounds of each constrained field
+        final double[] lo, hi;
+    }
+
+    /**
+     * Scans a range of a batch, splitting it in half until it is at most
+     * chunkPoints long
+     */
+    class ChunkTask extends RecursiveTask<ScanResult> {
+        ChunkTask(LaghosPointBatch batch, Bounds bounds, int from, int to, boolean collectElements) {
+            this.batch = batch;
+            this.bounds = bounds;
+            this.from = from;
+            this.to = to;
+            this.collectElements = collectElements;
+        }
+
+        @Override
+        protected ScanResult compute() {
+            if (this.to - this.from <= chunkPoints) {
+                ScanResult result = new ScanResult(this.collectElements);
+                RoaringBitmapWriter<RoaringBitmap> writer =
+                    this.collectElements ? RoaringBitmapWriter.writer().get() : null;
+                if (this.batch instanceof LaghosColumnBatch) {
+                    scanColumns((LaghosColumnBatch)this.batch, this.bounds, this.from, this.to, writer, result);
+                } else {
+                    scanRows(this.batch, this.bounds, this.from, this.to, writer, result);
+                }
+                if (null != writer) {
+                    result.elements = writer.get();
+                }
+                return result;
+            }
+            int mid = this.from + ((this.to - this.from) / 2 / chunkPoints) * chunkPoints;
+            mid = Math.max(mid, this.from + chunkPoints);
+            ChunkTask left = new ChunkTask(this.batch, this.bounds, this.from, mid, this.collectElements);
+            ChunkTask right = new ChunkTask(this.batch, this.bounds, mid, this.to, this.collectElements);
+            left.fork();
+            ScanResult result = right.compute();
+            result.merge(left.join());
+            return result;
+        }
+
+        // Batch being scanned, shared by every task
+        final LaghosPointBatch batch;
+
+        // Query bounds
+        final Bounds bounds;
+
+        // Points [from, to) of the batch
+        final int from, to;
+
+        // Whether matching element ids are collected
+        final boolean collectElements;
+    }
+
+    /** Scan points [from, to) of a column batch straight from its column buffers */
+    static void scanColumns(LaghosColumnBatch batch, Bounds b, int from, int to,
+                            RoaringBitmapWriter<RoaringBitmap> writer, ScanResult result) {
+        int n = b.dims.length;
+        ByteBuffer[] columns = new ByteBuffer[n];
+        for (int k = 0; k < n; k++) {
+            columns[k] = batch.getColumn(b.dims[k]);
+        }
+        ByteOrder order = batch.getColumn(0).order();
+        int base = batch.getColumnOffset();
+        int lanes = SPECIES.length();
+        int upper = from + SPECIES.loopBound(to - from);
+        long count = 0;
+        int i = from;
+        for (; i < upper; i += lanes) {
+            VectorMask<Double> m = SPECIES.maskAll(true);
+            for (int k = 0; k < n && m.anyTrue(); k++) {
+                DoubleVector v = DoubleVector.fromByteBuffer(SPECIES, columns[k], base + i * Double.BYTES, order);
+                m = m.and(v.compare(VectorOperators.GE, b.lo[k])).and(v.compare(VectorOperators.LE, b.hi[k]));
+            }
+            if (m.anyTrue()) {
+                count += m.trueCount();
+                if (null != writer) {
+                    addLanes(batch, i, m.toLong(), writer);
+                }
+            }
+        }
+        count += scanTail(batch, b, i, to, writer);
+        result.count += count;
+        result.pointsScanned += to - from;
+        result.bytesScanned += (long)(to - from) * n * Double.BYTES;
+    }
+
+    /** Scan points [from, to) of a row batch, transposing a tile of each constrained field at a time */
+    static void scanRows(LaghosPointBatch batch, Bounds b, int from, int to,
+                         RoaringBitmapWriter<RoaringBitmap> writer, ScanResult result) {
+        int n = b.dims.length;
+        double[][] tile = new double[n][TILE_POINTS];
+        int lanes = SPECIES.length();
+        long count = 0;
+        for (int t = from; t < to; t += TILE_POINTS) {
+            int size = Math.min(TILE_POINTS, to - t);
+            for (int k = 0; k < n; k++) {
+                for (int j = 0; j < size; j++) {
+                    tile[k][j] = batch.getDouble(t + j, b.dims[k]);
+                }
+            }
+            int upper = SPECIES.loopBound(size);
+            int j = 0;
+            for (; j < upper; j += lanes) {
+                VectorMask<Double> m = SPECIES.maskAll(true);
+                for (int k = 0; k < n && m.anyTrue(); k++) {
+                    DoubleVector v = DoubleVector.fromArray(SPECIES, tile[k], j);
+                    m = m.and(v.compare(VectorOperators.GE, b.lo[k])).and(v.compare(VectorOperators.LE, b.hi[k]));
+                }
+                if (m.anyTrue()) {
+                    count += m.trueCount();
+                    if (null != writer) {
+                        addLanes(batch, t + j, m.toLong(), writer);
+                    }
+                }
+            }
+            count += scanTail(batch, b, t + j, t + size, writer);
+        }
+        result.count += count;
+        result.pointsScanned += to - from;
+        result.bytesScanned += (long)(to - from) * LaghosPointBatch.POINT_SIZE;
+    }
+
+    /**
+     * Compare points [from, to) one at a time
+     *
+     * @return the number of matching points
+     */
+    static long scanTail(LaghosPointBatch batch, Bounds b, int from, int to, RoaringBitmapWriter<RoaringBitmap> writer) {
+        long count = 0;
+        for (int i = from; i < to; i++) {
+            boolean match = true;
+            for (int k = 0; k < b.dims.length && match; k++) {
+                double v = batch.getDouble(i, b.dims[k]);
+                match = v >= b.lo[k] && v <= b.hi[k];
+            }
+            if (match) {
+                count++;
+                if (null != writer) {
+                    writer.add(elementId(batch, i));
+                }
+            }
+        }
+        return count;
+    }
+
+    /** Add the element ids of the points set in lanes, a mask starting at point i */
+    static void addLanes(LaghosPointBatch batch, int i, long lanes, RoaringBitmapWriter<RoaringBitmap> writer) {
+        while (0 != lanes) {
+            int lane = Long.numberOfTrailingZeros(lanes);
+            writer.add(elementId(batch, i + lane));
+            lanes &= lanes - 1;
+        }
+    }
+
+    /** @return the element id of point i as a bitmap entry */
+    static int elementId(LaghosPointBatch batch, int i) {
+        long id = batch.getElementId(i);
+        if (id < 0 || id > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Element id " + id + " does not fit in an element bitmap");
+        }
+        return (int)id;
+    }
+
+    /**
+     * The matches of a scan and how much data it compared
+     */
+    public static class ScanResult {
+        ScanResult(boolean collectElements) {
+            this.elements = collectElements ? new RoaringBitmap() : null;
+        }
+
+        /** Add the matches and volume of another part of the scan */
+        void merge(ScanResult other) {
+            this.count += other.count;
+            this.pointsScanned += other.pointsScanned;
+            this.bytesScanned += other.bytesScanned;
+            if (null != this.elements && null != other.elements) {
+                this.elements.or(other.elements);
+            }
+        }
+
+        /** @return the number of matching points */
+        public long getCount() {
+            return this.count;
+        }
+
+        /** @return the ids of the matching elements, or null if they were not collected */
+        public RoaringBitmap getElementIds() {
+            return this.elements;
+        }
+
+        /** @return the number of points compared */
+        public long getPointsScanned() {
+            return this.pointsScanned;
+        }
+
+        /** @return the bytes of field data compared */
+        public long getBytesScanned() {
+            return this.bytesScanned;
+        }
+
+        /** @return the scan latency in nanoseconds */
+        public long getLatencyNanos() {
+            return this.latencyNanos;
+        }
+
+        /** @return the scan throughput in GB/s */
+        public double getGBPerSec() {
+            return (0 == this.latencyNanos) ? 0.0 : (double)this.bytesScanned / this.latencyNanos;
+        }
+
+        /** Print the latency, matches and throughput of the scan */
+        public void report(String desc) {
+            System.out.println(desc + ": " + this.latencyNanos * IndexedMesh.SECS_PER_NANOSECOND + " secs"
+                               + " points: " + this.count + "/" + this.pointsScanned
+                               + ((null == this.elements) ? "" : " elements: " + this.elements.getLongCardinality())
+                               + " scanned: " + this.bytesScanned/(1024*1024) + "MiB"
+                               + " GB/s: " + getGBPerSec());
+        }
+
+        // Matching points
+        long count;
+
+        // Points and bytes compared
+        long pointsScanned, bytesScanned;
+
+        // Matching element ids, or null when not collected
+        RoaringBitmap elements;
+
+        // Scan latency
+        long latencyNanos;
+    }
+
+    // Source scanned by scan(q) and query(q)
+    final LaghosPointSource source;
+
+    // Pool the chunks of a batch are scanned on
+    final ForkJoinPool pool;
+
+    // Most points per task, a whole number of vectors
+    final int chunkPoints;
+}
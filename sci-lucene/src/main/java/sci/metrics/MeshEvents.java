@@ -0,0 +1,139 @@
+package sci.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight recorder events for the ingest and index build paths.
+ *
+ * The events are independent of MeshMetrics: a recording started with
+ * -XX:StartFlightRecording or jcmd JFR.start captures them whether or not
+ * sci.metrics is set, and without a recording begin and commit do nothing.
+ * Stack traces are left off since the same few call sites emit every event.
+ */
+public final class MeshEvents {
+
+    /** Writes to an LSM store slower than this count as stalls */
+    public static final long STALL_NANOS = 1_000_000L;
+
+    private MeshEvents() {
+    }
+
+    /**
+     * One call into a native mesh reader
+     */
+    @Name("taproot.Fetch")
+    @Label("Mesh Fetch")
+    @Category({"Taproot", "Ingest"})
+    @Description("Points fetched from a mesh reader in one native call")
+    @StackTrace(false)
+    public static class Fetch extends Event {
+        @Label("Reader")
+        public String reader;
+
+        @Label("Points")
+        public long points;
+    }
+
+    /**
+     * Points added to an index from one batch
+     */
+    @Name("taproot.IndexAdd")
+    @Label("Index Add")
+    @Category({"Taproot", "Index Build"})
+    @Description("Points of one batch added to an index writer")
+    @StackTrace(false)
+    public static class IndexAdd extends Event {
+        @Label("Index")
+        public String index;
+
+        @Label("Points")
+        public long points;
+    }
+
+    /**
+     * A phase of finishing an index, such as the sort or the index write
+     */
+    @Name("taproot.FinishPhase")
+    @Label("Index Finish Phase")
+    @Category({"Taproot", "Index Build"})
+    @StackTrace(false)
+    public static class FinishPhase extends Event {
+        @Label("Index")
+        public String index;
+
+        @Label("Phase")
+        public String phase;
+    }
+
+    /**
+     * A file written by an index build
+     */
+    @Name("taproot.IndexFile")
+    @Label("Index File")
+    @Category({"Taproot", "Index Build"})
+    @StackTrace(false)
+    public static class IndexFile extends Event {
+        @Label("Index")
+        public String index;
+
+        @Label("File")
+        public String file;
+
+        @Label("Size")
+        @DataAmount
+        public long bytes;
+    }
+
+    /**
+     * A write to an LSM store that blocked for at least STALL_NANOS, while
+     * the store flushed or compacted
+     */
+    @Name("taproot.LSMWriteStall")
+    @Label("LSM Write Stall")
+    @Category({"Taproot", "Ingest"})
+    @Threshold("1 ms")
+    @StackTrace(false)
+    public static class LSMWriteStall extends Event {
+        /** Start timing a write of points to store */
+        public static LSMWriteStall start(String store, long points) {
+            LSMWriteStall event = new LSMWriteStall();
+            event.store = store;
+            event.points = points;
+            event.startNanos = MeshMetrics.start();
+            event.begin();
+            return event;
+        }
+
+        /** Record the write in the lsm.<store> metrics, and commit it if it stalled */
+        public void finish() {
+            end();
+            if (MeshMetrics.ENABLED) {
+                long nanos = System.nanoTime() - this.startNanos;
+                MeshMetrics.histogram("lsm." + this.store + ".write.nanos").record(nanos);
+                if (nanos >= STALL_NANOS) {
+                    MeshMetrics.counter("lsm." + this.store + ".write.stalls").add(1);
+                    MeshMetrics.counter("lsm." + this.store + ".write.stall.nanos").add(nanos);
+                }
+            }
+            if (shouldCommit()) {
+                commit();
+            }
+        }
+
+        @Label("Store")
+        public String store;
+
+        @Label("Points")
+        public long points;
+
+        // Start of the write for MeshMetrics, not recorded
+        transient long startNanos;
+    }
+}
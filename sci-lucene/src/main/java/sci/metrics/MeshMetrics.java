@@ -0,0 +1,255 @@
+package sci.metrics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process wide counters and histograms for the ingest and index build paths.
+ *
+ * Metrics are off unless the sci.metrics system property is "true". The
+ * switch is read once into ENABLED, a constant the JIT folds, so a disabled
+ * record is a branch that is compiled away and hot loops pay nothing for
+ * it. Call sites look their metrics up once, into static finals, and time
+ * a section with start and recordSince.
+ *
+ * Histograms bucket values by powers of two, which bounds their memory and
+ * keeps recording lock free, so percentiles are accurate to within a factor
+ * of two. toJson writes every metric in name order, so the output of two
+ * backends can be compared side by side.
+ */
+public final class MeshMetrics {
+
+    /** Whether metrics are recorded, fixed by the sci.metrics property at startup */
+    public static final boolean ENABLED = Boolean.getBoolean("sci.metrics");
+
+    /** Histogram buckets, one per power of two of a non-negative long */
+    static final int NUM_BUCKETS = Long.SIZE;
+
+    private MeshMetrics() {
+    }
+
+    /** @return the counter called name, created on first use */
+    public static Counter counter(String name) {
+        return COUNTERS.computeIfAbsent(name, n -> new Counter());
+    }
+
+    /** @return the histogram called name, created on first use */
+    public static Histogram histogram(String name) {
+        return HISTOGRAMS.computeIfAbsent(name, n -> new Histogram());
+    }
+
+    /** @return the start of a timed section, or 0 when metrics are disabled */
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Record the size of a file written by an index, under the index.bytes
+     * counter of its suffix and as an IndexFile event
+     */
+    public static void recordFileBytes(String index, Path file) {
+        MeshEvents.IndexFile event = new MeshEvents.IndexFile();
+        if (!ENABLED && !event.isEnabled()) {
+            return;
+        }
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String suffix = (dot < 0) ? name : name.substring(dot + 1);
+        try {
+            long bytes = Files.size(file);
+            counter("index.bytes." + suffix).add(bytes);
+            event.index = index;
+            event.file = name;
+            event.bytes = bytes;
+            event.commit();
+        } catch (IOException e) {
+            System.err.println("Could not size " + file);
+        }
+    }
+
+    /** Zero every metric, between the trials of one run */
+    public static void reset() {
+        COUNTERS.values().forEach(Counter::reset);
+        HISTOGRAMS.values().forEach(Histogram::reset);
+    }
+
+    /** @return every metric as a JSON object, counters and histograms in name order */
+    public static String toJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\n  \"counters\": {");
+        String sep = "\n";
+        for (Map.Entry<String, Counter> e : new TreeMap<>(COUNTERS).entrySet()) {
+            sb.append(sep).append("    \"").append(e.getKey()).append("\": ").append(e.getValue().get());
+            sep = ",\n";
+        }
+        sb.append("\n  },\n  \"histograms\": {");
+        sep = "\n";
+        for (Map.Entry<String, Histogram> e : new TreeMap<>(HISTOGRAMS).entrySet()) {
+            Histogram h = e.getValue();
+            sb.append(sep).append("    \"").append(e.getKey()).append("\": {")
+                .append("\"count\": ").append(h.getCount())
+                .append(", \"sum\": ").append(h.getSum())
+                .append(", \"min\": ").append(h.getMin())
+                .append(", \"max\": ").append(h.getMax())
+                .append(", \"mean\": ").append(h.getMean())
+                .append(", \"p50\": ").append(h.getPercentile(50.0))
+                .append(", \"p99\": ").append(h.getPercentile(99.0))
+                .append("}");
+            sep = ",\n";
+        }
+        sb.append("\n  }\n}\n");
+        return sb.toString();
+    }
+
+    /** Write toJson to file */
+    public static void writeJson(Path file) throws IOException {
+        Files.write(file, toJson().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * A sum that many threads add to
+     */
+    public static final class Counter {
+        Counter() {
+            this.value = new LongAdder();
+        }
+
+        /** Add n when metrics are enabled */
+        public void add(long n) {
+            if (ENABLED) {
+                this.value.add(n);
+            }
+        }
+
+        /** @return the current sum */
+        public long get() {
+            return this.value.sum();
+        }
+
+        void reset() {
+            this.value.reset();
+        }
+
+        // Running sum
+        final LongAdder value;
+    }
+
+    /**
+     * The distribution of a non-negative value, such as a latency in
+     * nanoseconds or a count per call
+     */
+    public static final class Histogram {
+        Histogram() {
+            this.buckets = new AtomicLongArray(NUM_BUCKETS);
+            this.count = new LongAdder();
+            this.sum = new LongAdder();
+            this.min = new LongAccumulator(Math::min, Long.MAX_VALUE);
+            this.max = new LongAccumulator(Math::max, Long.MIN_VALUE);
+        }
+
+        /** Record v when metrics are enabled, negative values count as 0 */
+        public void record(long v) {
+            if (!ENABLED) {
+                return;
+            }
+            v = Math.max(v, 0L);
+            this.buckets.incrementAndGet(bucket(v));
+            this.count.increment();
+            this.sum.add(v);
+            this.min.accumulate(v);
+            this.max.accumulate(v);
+        }
+
+        /** Record the nanoseconds since begin, a value returned by MeshMetrics.start */
+        public void recordSince(long begin) {
+            if (ENABLED) {
+                record(System.nanoTime() - begin);
+            }
+        }
+
+        /** @return the bucket holding v, the number of bits needed to represent it */
+        static int bucket(long v) {
+            return Math.min(Long.SIZE - Long.numberOfLeadingZeros(v), NUM_BUCKETS - 1);
+        }
+
+        /** @return the number of values recorded */
+        public long getCount() {
+            return this.count.sum();
+        }
+
+        /** @return the sum of the values recorded */
+        public long getSum() {
+            return this.sum.sum();
+        }
+
+        /** @return the smallest value recorded, or 0 if there are none */
+        public long getMin() {
+            return (0 == getCount()) ? 0L : this.min.get();
+        }
+
+        /** @return the largest value recorded, or 0 if there are none */
+        public long getMax() {
+            return (0 == getCount()) ? 0L : this.max.get();
+        }
+
+        /** @return the mean of the values recorded */
+        public double getMean() {
+            long n = getCount();
+            return (0 == n) ? 0.0 : (double)getSum() / n;
+        }
+
+        /**
+         * @return an upper bound within a factor of two of the p'th
+         *         percentile, clamped to the largest value recorded
+         */
+        public long getPercentile(double p) {
+            long n = getCount();
+            if (0 == n) {
+                return 0L;
+            }
+            long rank = Math.max((long)Math.ceil(n * p / 100.0), 1L);
+            long seen = 0;
+            for (int b = 0; b < NUM_BUCKETS; b++) {
+                seen += this.buckets.get(b);
+                if (seen >= rank) {
+                    long upper = (0 == b) ? 0L : (b >= Long.SIZE - 1) ? Long.MAX_VALUE : (1L << b) - 1;
+                    return Math.min(upper, getMax());
+                }
+            }
+            return getMax();
+        }
+
+        void reset() {
+            for (int b = 0; b < NUM_BUCKETS; b++) {
+                this.buckets.set(b, 0L);
+            }
+            this.count.reset();
+            this.sum.reset();
+            this.min.reset();
+            this.max.reset();
+        }
+
+        // Values recorded per power of two
+        final AtomicLongArray buckets;
+
+        // Values recorded and their sum
+        final LongAdder count, sum;
+
+        // Extremes of the values recorded
+        final LongAccumulator min, max;
+    }
+
+    // Counters by name
+    static final Map<String, Counter> COUNTERS = new ConcurrentHashMap<>();
+
+    // Histograms by name
+    static final Map<String, Histogram> HISTOGRAMS = new ConcurrentHashMap<>();
+}
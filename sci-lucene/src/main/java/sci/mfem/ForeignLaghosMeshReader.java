@@ -0,0 +1,241 @@
+package sci.mfem;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import jdk.incubator.foreign.MemorySegment;
+import jdk.incubator.foreign.ResourceScope;
+import sci.metrics.MeshEvents;
+import sci.metrics.MeshMetrics;
+
+/**
+ * Reads a Laghos mesh through the foreign function bindings in MFEMForeign,
+ * one native column per field.
+ *
+ * Each fetch is a single mfem_laghos_mesh_read_columns call that fills the
+ * x, y, z, e, rho, v_x, v_y, v_z and element id columns directly, so the
+ * batches are LaghosColumnBatches over native memory and consumers that
+ * work field by field never transpose packed rows. readColumns fills
+ * columns the caller allocated instead.
+ *
+ * Like LaghosMeshReader, a reader covers a range of whole elements and
+ * splits open their own native mesh handle.
+ */
+public class ForeignLaghosMeshReader implements LaghosPointSource {
+
+    /** The default number of points to fetch, the same as LaghosMeshReader */
+    public static final int DEFAULT_FETCH_COUNT = 64*1024;
+
+    /**
+     * Create a reader over the whole mesh
+     */
+    public ForeignLaghosMeshReader(String meshFile, String eFile, String rhoFile, String vFile) {
+        this(meshFile, eFile, rhoFile, vFile, 0, -1, DEFAULT_FETCH_COUNT);
+    }
+
+    /**
+     * Create a reader over the elements [elementBegin, elementEnd)
+     *
+     * @param elementEnd the element to stop reading at, or -1 for the end of the mesh
+     * @param fetchCount the maximum number of points per fetch
+     */
+    public ForeignLaghosMeshReader(String meshFile, String eFile, String rhoFile, String vFile,
+                                   long elementBegin, long elementEnd, int fetchCount) {
+        this.meshHandle = MFEMForeign.laghosMeshOpen(meshFile, eFile, rhoFile, vFile);
+        this.meshFile = meshFile;
+        this.eFile = eFile;
+        this.rhoFile = rhoFile;
+        this.vFile = vFile;
+
+        long meshElements = MFEMForeign.laghosMeshGetNumElements(this.meshHandle);
+        this.pointsPerElement = (0 == meshElements)
+            ? 1 : MFEMForeign.laghosMeshGetNumPoints(this.meshHandle) / meshElements;
+        this.elementBegin = Math.min(elementBegin, meshElements);
+        this.elementEnd = (elementEnd < 0) ? meshElements : Math.min(elementEnd, meshElements);
+
+        // Splits are handed to other threads, so the native memory may not be confined
+        this.scope = ResourceScope.newSharedScope();
+        this.iterator = MemorySegment.allocateNative(MFEMForeign.MFEM_MESH_ITERATOR, this.scope);
+        this.columnsStruct = MemorySegment.allocateNative(MFEMForeign.LAGHOS_MESH_COLUMNS, this.scope);
+        this.columns = new MemorySegment[LaghosColumnBatch.NUM_COLUMNS];
+        this.buffers = new ByteBuffer[LaghosColumnBatch.NUM_COLUMNS];
+        this.batch = new LaghosColumnBatch();
+        setFetchCount(fetchCount);
+    }
+
+    /**
+     * Set the maximum number of points per fetch, rounded down to whole
+     * elements, and restart the iterator. The columns are reallocated and
+     * the previous ones freed, so batches already handed out are invalid.
+     */
+    public void setFetchCount(int fetchCount) {
+        this.fetchCount = (int)(Math.max(fetchCount / this.pointsPerElement, 1) * this.pointsPerElement);
+        if (null != this.columnScope) {
+            this.columnScope.close();
+        }
+        this.columnScope = ResourceScope.newSharedScope();
+        for (int c = 0; c < LaghosColumnBatch.NUM_COLUMNS; c++) {
+            this.columns[c] = MemorySegment.allocateNative((long)this.fetchCount * Double.BYTES, this.columnScope);
+            this.buffers[c] = this.columns[c].asByteBuffer().order(ByteOrder.nativeOrder());
+        }
+        MFEMForeign.setColumns(this.columnsStruct, this.columns, null);
+        resetIterator();
+    }
+
+    @Override
+    public void resetIterator() {
+        this.meshIter = this.elementBegin;
+    }
+
+    @Override
+    public long getNumElements() {
+        return this.elementEnd - this.elementBegin;
+    }
+
+    @Override
+    public int getNumPoints() {
+        return (int)(getNumElements() * this.pointsPerElement);
+    }
+
+    @Override
+    public long getFirstPointIndex() {
+        return this.elementBegin * this.pointsPerElement;
+    }
+
+    /**
+     * Read the next whole elements into caller-provided columns
+     *
+     * @param columns the 8 field columns in LaghosField order followed by the
+     *                element id column, each with room for maxPoints values
+     * @param vertexIds the vertex id column, or null to skip the vertex ids
+     * @return the number of points read into each column, 0 once the range is exhausted
+     */
+    public int readColumns(MemorySegment[] columns, MemorySegment vertexIds, int maxPoints) {
+        if (columns.length != LaghosColumnBatch.NUM_COLUMNS) {
+            throw new IllegalArgumentException("Expected " + LaghosColumnBatch.NUM_COLUMNS + " columns, got "
+                                               + columns.length);
+        }
+        long bytes = (long)maxPoints * Double.BYTES;
+        for (MemorySegment column : columns) {
+            if (column.byteSize() < bytes) {
+                throw new IllegalArgumentException("Column of " + column.byteSize() + " bytes cannot hold "
+                                                   + maxPoints + " points");
+            }
+        }
+        if (null != vertexIds && vertexIds.byteSize() < bytes) {
+            throw new IllegalArgumentException("Vertex id column cannot hold " + maxPoints + " points");
+        }
+        try (ResourceScope callScope = ResourceScope.newConfinedScope()) {
+            MemorySegment struct = MemorySegment.allocateNative(MFEMForeign.LAGHOS_MESH_COLUMNS, callScope);
+            MFEMForeign.setColumns(struct, columns, vertexIds);
+            return read(struct, maxPoints);
+        }
+    }
+
+    @Override
+    public LaghosPointBatch getNextLaghosPointBatch() {
+        long firstPoint = this.meshIter * this.pointsPerElement;
+        int count = read(this.columnsStruct, this.fetchCount);
+        if (0 == count) {
+            return null;
+        }
+        this.batch.reset(this.buffers, 0, count, firstPoint);
+        return this.batch;
+    }
+
+    /**
+     * Read up to maxPoints points of the remaining elements into struct
+     *
+     * @return the number of points read
+     */
+    int read(MemorySegment struct, long maxPoints) {
+        // The native reader only returns whole elements, so capping the
+        // point count at the remaining elements stops it on the range boundary
+        long remainingPoints = (this.elementEnd - this.meshIter) * this.pointsPerElement;
+        long npoints = Math.min(maxPoints, remainingPoints);
+        if (npoints <= 0) {
+            return 0;
+        }
+        MFEMForeign.setCurIdx(this.iterator, this.meshIter);
+        MeshEvents.Fetch event = new MeshEvents.Fetch();
+        event.begin();
+        long begin = MeshMetrics.start();
+        int count = MFEMForeign.laghosMeshReadColumns(this.meshHandle, this.iterator, struct, npoints);
+        FETCH_NANOS.recordSince(begin);
+        FETCH_POINTS.record(count);
+        event.reader = "foreign";
+        event.points = count;
+        event.commit();
+        this.meshIter = MFEMForeign.getCurIdx(this.iterator);
+        return count;
+    }
+
+    /**
+     * Split this reader's element range into n disjoint readers, each with
+     * its own native mesh handle and columns
+     */
+    @Override
+    public List<ForeignLaghosMeshReader> split(int n) {
+        List<ForeignLaghosMeshReader> splits = new ArrayList<>();
+        for (long[] range : LaghosPointSource.splitRanges(this.elementBegin, this.elementEnd, n)) {
+            splits.add(new ForeignLaghosMeshReader(meshFile, eFile, rhoFile, vFile, range[0], range[1],
+                                                   this.fetchCount));
+        }
+        return splits;
+    }
+
+    /** Release the native mesh and columns held by this reader */
+    @Override
+    public void close() {
+        MFEMForeign.laghosMeshClose(this.meshHandle);
+        this.columnScope.close();
+        this.scope.close();
+    }
+
+    // Latency and size of each native fetch
+    static final MeshMetrics.Histogram FETCH_NANOS = MeshMetrics.histogram("fetch.foreign.nanos");
+    static final MeshMetrics.Histogram FETCH_POINTS = MeshMetrics.histogram("fetch.foreign.points");
+
+    // Native mesh handle
+    final int meshHandle;
+
+    // Files the mesh was opened from, used to open splits
+    final String meshFile, eFile, rhoFile, vFile;
+
+    // First element covered by this reader
+    final long elementBegin;
+
+    // Element after the last element covered by this reader
+    final long elementEnd;
+
+    // Points produced by each whole element
+    final long pointsPerElement;
+
+    // Scope owning the native iterator and columns struct
+    final ResourceScope scope;
+
+    // Scope owning the current columns, replaced when they are reallocated
+    ResourceScope columnScope;
+
+    // Native mfem_mesh_iterator_t, only its cur_idx is used
+    final MemorySegment iterator;
+
+    // Native laghos_mesh_columns_t pointing at columns
+    final MemorySegment columnsStruct;
+
+    // Native columns filled by getNextLaghosPointBatch
+    final MemorySegment[] columns;
+
+    // Native order buffer views of the columns
+    final ByteBuffer[] buffers;
+
+    // Flyweight handed out by getNextLaghosPointBatch
+    final LaghosColumnBatch batch;
+
+    // Points per fetch, whole elements only
+    int fetchCount;
+
+    // Next element to read
+    long meshIter;
+}
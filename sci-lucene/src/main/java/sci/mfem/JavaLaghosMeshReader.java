@@ -0,0 +1,230 @@
+package sci.mfem;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a Laghos mesh and its e, rho and v grid functions directly in Java.
+ *
+ * This produces the same point stream as LaghosMeshReader, one point per
+ * element vertex in element order, without the native mfem-utils library.
+ * The files may be plain or gzipped ASCII; their values are parsed in
+ * parallel blocks. The parsed mesh and grid functions are immutable, so
+ * splits share them rather than reopening the files. The mesh can also be
+ * read normalized, with vertex ids taken from the mesh connectivity.
+ */
+public class JavaLaghosMeshReader extends MFEMMeshReader implements LaghosVertexSource {
+
+    /** The default number of points per batch, the same as LaghosMeshReader */
+    public static final int DEFAULT_FETCH_COUNT = 64*1024;
+
+    /**
+     * Read a Laghos mesh, parsing with one thread per processor
+     */
+    public JavaLaghosMeshReader(String meshFile, String eFile, String rhoFile, String vFile) throws IOException {
+        this(meshFile, eFile, rhoFile, vFile, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Read a Laghos mesh
+     *
+     * @param nThreads the number of threads used to parse each file
+     */
+    public JavaLaghosMeshReader(String meshFile, String eFile, String rhoFile, String vFile,
+                                int nThreads) throws IOException {
+        this(new LaghosFields(MFEMMesh.read(Path.of(meshFile), nThreads),
+                              MFEMGridFunction.read(Path.of(eFile), nThreads),
+                              MFEMGridFunction.read(Path.of(rhoFile), nThreads),
+                              MFEMGridFunction.read(Path.of(vFile), nThreads)),
+             0, -1, DEFAULT_FETCH_COUNT);
+    }
+
+    JavaLaghosMeshReader(LaghosFields fields, long elementBegin, long elementEnd, int fetchCount) {
+        long meshElements = fields.mesh.getNumElements();
+        this.fields = fields;
+        this.pointsPerElement = fields.mesh.getVerticesPerElement();
+        this.elementBegin = Math.min(elementBegin, meshElements);
+        this.elementEnd = (elementEnd < 0) ? meshElements : Math.min(elementEnd, meshElements);
+        this.batch = new LaghosPointBatch();
+        setFetchCount(fetchCount);
+    }
+
+    /**
+     * Set the number of points produced per batch and restart the iterator
+     */
+    public void setFetchCount(int fetchCount) {
+        this.fetchCount = Math.max(fetchCount, this.pointsPerElement);
+        this.buffer = ByteBuffer.allocateDirect(this.fetchCount * LaghosPointBatch.POINT_SIZE)
+                                .order(ByteOrder.nativeOrder());
+        // The block builder is sized on the next block read
+        this.blockBuilder = null;
+        resetIterator();
+    }
+
+    /** @return the parsed mesh */
+    public MFEMMesh getMesh() {
+        return this.fields.mesh;
+    }
+
+    @Override
+    public long getNumElements() {
+        return this.elementEnd - this.elementBegin;
+    }
+
+    @Override
+    public int getNumPoints() {
+        return (int)(getNumElements() * this.pointsPerElement);
+    }
+
+    @Override
+    public long getFirstPointIndex() {
+        return this.elementBegin * this.pointsPerElement;
+    }
+
+    @Override
+    public void resetIterator() {
+        this.nextElement = this.elementBegin;
+        if (null != this.blockBuilder) {
+            this.blockBuilder.restart();
+        }
+    }
+
+    @Override
+    public LaghosPointBatch getNextLaghosPointBatch() {
+        if (this.nextElement >= this.elementEnd) {
+            return null;
+        }
+        long firstPoint = this.nextElement * this.pointsPerElement;
+        int elements = (int)Math.min(this.fetchCount / this.pointsPerElement, this.elementEnd - this.nextElement);
+        this.buffer.clear();
+        for (int i = 0; i < elements; i++) {
+            writeElement((int)this.nextElement++);
+        }
+        this.batch.reset(this.buffer, 0, elements * this.pointsPerElement, firstPoint);
+        return this.batch;
+    }
+
+    @Override
+    public LaghosMeshBlock getNextLaghosMeshBlock() {
+        if (this.nextElement >= this.elementEnd) {
+            return null;
+        }
+        if (null == this.blockBuilder) {
+            this.blockBuilder = new MeshBlockBuilder(this.fetchCount / this.pointsPerElement, this.pointsPerElement);
+        }
+        long firstPoint = this.nextElement * this.pointsPerElement;
+        int elements = (int)Math.min(this.fetchCount / this.pointsPerElement, this.elementEnd - this.nextElement);
+        this.blockBuilder.clear();
+        for (int i = 0; i < elements; i++) {
+            addElement((int)this.nextElement++);
+        }
+        return this.blockBuilder.build(firstPoint);
+    }
+
+    /**
+     * Split this reader's element range into n disjoint readers that share
+     * the parsed mesh and can be read concurrently
+     */
+    @Override
+    public List<JavaLaghosMeshReader> split(int n) {
+        List<JavaLaghosMeshReader> splits = new ArrayList<>();
+        for (long[] range : LaghosPointSource.splitRanges(this.elementBegin, this.elementEnd, n)) {
+            splits.add(new JavaLaghosMeshReader(this.fields, range[0], range[1], this.fetchCount));
+        }
+        return splits;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /** Append the points of element i to the buffer */
+    void writeElement(int i) {
+        MFEMMesh mesh = this.fields.mesh;
+        MFEMGridFunction e = this.fields.e;
+        MFEMGridFunction rho = this.fields.rho;
+        MFEMGridFunction v = this.fields.v;
+        int vdim = v.getVDim();
+        for (int j = 0; j < this.pointsPerElement; j++) {
+            int vertex = mesh.getElementVertex(i, j);
+            this.buffer.putDouble(mesh.getCoordinate(i, j, 0));
+            this.buffer.putDouble(mesh.getCoordinate(i, j, 1));
+            this.buffer.putDouble(mesh.getCoordinate(i, j, 2));
+            this.buffer.putDouble(e.vertexValue(i, j, vertex, 0));
+            this.buffer.putDouble(rho.vertexValue(i, j, vertex, 0));
+            this.buffer.putDouble(v.vertexValue(i, j, vertex, 0));
+            this.buffer.putDouble((vdim > 1) ? v.vertexValue(i, j, vertex, 1) : 0.0);
+            this.buffer.putDouble((vdim > 2) ? v.vertexValue(i, j, vertex, 2) : 0.0);
+            this.buffer.putLong(i);
+        }
+    }
+
+    /** Add the vertices and attrs of element i to the block builder */
+    void addElement(int i) {
+        MFEMMesh mesh = this.fields.mesh;
+        MFEMGridFunction e = this.fields.e;
+        MFEMGridFunction rho = this.fields.rho;
+        MFEMGridFunction v = this.fields.v;
+        int vdim = v.getVDim();
+        for (int j = 0; j < this.pointsPerElement; j++) {
+            int vertex = mesh.getElementVertex(i, j);
+            this.blockBuilder.add(i, j, vertex,
+                                  mesh.getCoordinate(i, j, 0),
+                                  mesh.getCoordinate(i, j, 1),
+                                  mesh.getCoordinate(i, j, 2),
+                                  e.vertexValue(i, j, vertex, 0),
+                                  rho.vertexValue(i, j, vertex, 0),
+                                  v.vertexValue(i, j, vertex, 0),
+                                  (vdim > 1) ? v.vertexValue(i, j, vertex, 1) : 0.0,
+                                  (vdim > 2) ? v.vertexValue(i, j, vertex, 2) : 0.0);
+        }
+    }
+
+    /** The parsed mesh and the grid functions evaluated at its vertices */
+    static class LaghosFields {
+        LaghosFields(MFEMMesh mesh, MFEMGridFunction e, MFEMGridFunction rho, MFEMGridFunction v)
+            throws IOException {
+            e.validate(mesh, "e");
+            rho.validate(mesh, "rho");
+            v.validate(mesh, "v");
+            this.mesh = mesh;
+            this.e = e;
+            this.rho = rho;
+            this.v = v;
+        }
+
+        final MFEMMesh mesh;
+        final MFEMGridFunction e, rho, v;
+    }
+
+    // Parsed mesh and grid functions shared with every split
+    final LaghosFields fields;
+
+    // Points produced by each element
+    final int pointsPerElement;
+
+    // First element covered by this reader
+    final long elementBegin;
+
+    // Element after the last element covered by this reader
+    final long elementEnd;
+
+    // Flyweight handed out by getNextLaghosPointBatch
+    final LaghosPointBatch batch;
+
+    // Maximum points per batch
+    int fetchCount;
+
+    // Buffer the points are written into
+    ByteBuffer buffer;
+
+    // Next element to read
+    long nextElement;
+
+    // Builds normalized blocks, created by the first getNextLaghosMeshBlock
+    MeshBlockBuilder blockBuilder;
+}
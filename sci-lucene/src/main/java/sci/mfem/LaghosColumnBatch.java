@@ -0,0 +1,145 @@
+package sci.mfem;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A batch over points stored column by column, one buffer per field.
+ *
+ * The field getters read straight from the column buffers, which are
+ * usually memory mapped cache files, so serving a batch copies nothing.
+ * Only the packed row accessors (getBuffer, copyPoint and copyBytes) have to
+ * gather a point from its columns.
+ */
+public class LaghosColumnBatch extends LaghosPointBatch {
+
+    /** The number of columns, the 8 fields followed by the element id */
+    public static final int NUM_COLUMNS = NUM_FIELDS + 1;
+
+    /** Column holding the element id */
+    public static final int ELEMENT_ID_COLUMN = NUM_FIELDS;
+
+    /** Create an empty batch */
+    public LaghosColumnBatch() {
+        this.columns = new ByteBuffer[NUM_COLUMNS];
+        this.packed = ByteBuffer.allocate(POINT_SIZE).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Point the batch at a new block of columns
+     *
+     * @param columns the 8 field columns and the element id column
+     * @param firstPoint the index of the first point of the batch within the columns
+     * @param count the number of points in the batch
+     * @param firstPointIndex the index of the first point of the batch within the mesh
+     */
+    public void reset(ByteBuffer[] columns, int firstPoint, int count, long firstPointIndex) {
+        System.arraycopy(columns, 0, this.columns, 0, NUM_COLUMNS);
+        this.buffer = null;
+        this.base = firstPoint * Double.BYTES;
+        this.count = count;
+        this.firstPointIndex = firstPointIndex;
+    }
+
+    /**
+     * @return a packed copy of the points in this batch. Unlike a row batch
+     *         this gathers every point, so prefer the field getters.
+     */
+    @Override
+    public ByteBuffer getBuffer() {
+        ByteBuffer rows = ByteBuffer.allocate(this.count * POINT_SIZE).order(ByteOrder.nativeOrder());
+        byte[] point = new byte[POINT_SIZE];
+        for (int i = 0; i < this.count; i++) {
+            copyPoint(i, point);
+            rows.put(point);
+        }
+        rows.flip();
+        return rows.asReadOnlyBuffer().order(ByteOrder.nativeOrder());
+    }
+
+    @Override
+    public double getX(int i) {
+        return this.columns[0].getDouble(this.base + i * Double.BYTES);
+    }
+
+    @Override
+    public double getY(int i) {
+        return this.columns[1].getDouble(this.base + i * Double.BYTES);
+    }
+
+    @Override
+    public double getZ(int i) {
+        return this.columns[2].getDouble(this.base + i * Double.BYTES);
+    }
+
+    @Override
+    public double getE(int i) {
+        return this.columns[3].getDouble(this.base + i * Double.BYTES);
+    }
+
+    @Override
+    public double getRho(int i) {
+        return this.columns[4].getDouble(this.base + i * Double.BYTES);
+    }
+
+    @Override
+    public double getVx(int i) {
+        return this.columns[5].getDouble(this.base + i * Double.BYTES);
+    }
+
+    @Override
+    public double getVy(int i) {
+        return this.columns[6].getDouble(this.base + i * Double.BYTES);
+    }
+
+    @Override
+    public double getVz(int i) {
+        return this.columns[7].getDouble(this.base + i * Double.BYTES);
+    }
+
+    @Override
+    public long getElementId(int i) {
+        return this.columns[ELEMENT_ID_COLUMN].getLong(this.base + i * Long.BYTES);
+    }
+
+    @Override
+    public double getDouble(int i, int dim) {
+        return this.columns[dim].getDouble(this.base + i * Double.BYTES);
+    }
+
+    /** @return the column buffer of field dim, ELEMENT_ID_COLUMN for the element ids */
+    public ByteBuffer getColumn(int dim) {
+        return this.columns[dim];
+    }
+
+    /** @return the byte offset of the batch's first point within each column */
+    public int getColumnOffset() {
+        return this.base;
+    }
+
+    @Override
+    public void copyPoint(int i, byte[] dst) {
+        pack(i);
+        this.packed.get(0, dst, 0, POINT_SIZE);
+    }
+
+    @Override
+    public void copyBytes(int i, int off, byte[] dst, int dstOff, int len) {
+        pack(i);
+        this.packed.get(off, dst, dstOff, len);
+    }
+
+    /** Gather point i into the packed row layout */
+    void pack(int i) {
+        for (int d = 0; d < NUM_FIELDS; d++) {
+            this.packed.putDouble(d * Double.BYTES, getDouble(i, d));
+        }
+        this.packed.putLong(ELEMENT_ID_OFFSET, getElementId(i));
+    }
+
+    // Field columns followed by the element id column
+    final ByteBuffer[] columns;
+
+    // Scratch row used to gather a point
+    final ByteBuffer packed;
+}
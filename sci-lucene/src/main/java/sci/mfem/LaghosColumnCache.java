@@ -0,0 +1,257 @@
+package sci.mfem;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A binary columnar cache of a Laghos mesh.
+ *
+ * A cache is a directory holding one file per column (x, y, z, e, rho, v_x,
+ * v_y, v_z and elementId), each a flat array of 8 byte values, plus a small
+ * header recording the byte order, the point and element counts and the
+ * range of every field. Converting a mesh once lets later runs map the
+ * columns with LaghosColumnReader instead of reparsing the ASCII files.
+ */
+public class LaghosColumnCache {
+
+    /** Name of the header file within a cache directory */
+    public static final String HEADER_FILE = "laghos.header";
+
+    /** Magic number at the start of the header */
+    static final int MAGIC = 0x4c434348;
+
+    /** Current header version */
+    static final int VERSION_CURRENT = 0;
+
+    /** Column names, in LaghosField order followed by the element id */
+    static final String[] COLUMN_NAMES = {"x", "y", "z", "e", "rho", "v_x", "v_y", "v_z", "elementId"};
+
+    /** Points buffered per column before each write */
+    static final int WRITE_POINTS = 128*1024;
+
+    /** @return the file holding column c */
+    public static Path columnFile(Path dir, int c) {
+        return dir.resolve(COLUMN_NAMES[c] + ".col");
+    }
+
+    /** @return true if dir holds a cache */
+    public static boolean exists(Path dir) {
+        return Files.exists(dir.resolve(HEADER_FILE));
+    }
+
+    /**
+     * Convert every point of source into a cache in dir.
+     *
+     * The source is split and each split writes its own region of every
+     * column file concurrently, since the position of a point in the columns
+     * is known from its index in the mesh.
+     *
+     * @param nThreads the number of splits written concurrently
+     * @return the header of the new cache
+     */
+    public static Header write(LaghosPointSource source, Path dir, int nThreads) throws IOException {
+        Files.createDirectories(dir);
+        List<? extends LaghosPointSource> splits = (nThreads > 1) ? source.split(nThreads) : List.of(source);
+        long firstPoint = source.getFirstPointIndex();
+        Header header = new Header(ByteOrder.nativeOrder(), source.getNumPoints(), source.getNumElements(),
+                                   (0 == source.getNumElements()) ? 0 : (int)(source.getNumPoints() / source.getNumElements()));
+
+        FileChannel[] channels = new FileChannel[LaghosColumnBatch.NUM_COLUMNS];
+        ExecutorService pool = Executors.newFixedThreadPool(splits.size());
+        try {
+            for (int c = 0; c < channels.length; c++) {
+                channels[c] = FileChannel.open(columnFile(dir, c), StandardOpenOption.CREATE,
+                                               StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            }
+            List<Future<double[]>> results = new ArrayList<>();
+            for (LaghosPointSource split : splits) {
+                results.add(pool.submit(() -> writeSplit(split, firstPoint, channels)));
+            }
+            for (Future<double[]> result : results) {
+                header.merge(result.get());
+            }
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted while writing the cache", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Writing the cache failed", e.getCause());
+        } finally {
+            pool.shutdown();
+            for (FileChannel ch : channels) {
+                if (null != ch) {
+                    ch.close();
+                }
+            }
+            // Splits of a native reader each hold their own mesh, the source is the caller's
+            if (nThreads > 1) {
+                for (LaghosPointSource split : splits) {
+                    split.close();
+                }
+            }
+        }
+
+        // The header goes last, so an interrupted conversion is never mistaken for a cache
+        header.write(dir.resolve(HEADER_FILE));
+        return header;
+    }
+
+    /**
+     * Write the points of one split into its region of the columns
+     *
+     * @return the minimum and maximum of each field within the split
+     */
+    static double[] writeSplit(LaghosPointSource split, long firstPoint, FileChannel[] channels) throws IOException {
+        ByteBuffer[] bufs = new ByteBuffer[LaghosColumnBatch.NUM_COLUMNS];
+        for (int c = 0; c < bufs.length; c++) {
+            bufs[c] = ByteBuffer.allocateDirect(WRITE_POINTS * Double.BYTES).order(ByteOrder.nativeOrder());
+        }
+        double[] range = Header.emptyRange();
+        long position = (split.getFirstPointIndex() - firstPoint) * Double.BYTES;
+        for (LaghosPointBatch batch = split.getNextLaghosPointBatch(); batch != null;
+             batch = split.getNextLaghosPointBatch()) {
+            for (int i = 0; i < batch.size(); i++) {
+                for (int d = 0; d < LaghosPointBatch.NUM_FIELDS; d++) {
+                    double v = batch.getDouble(i, d);
+                    bufs[d].putDouble(v);
+                    range[2*d] = Math.min(range[2*d], v);
+                    range[2*d + 1] = Math.max(range[2*d + 1], v);
+                }
+                bufs[LaghosColumnBatch.ELEMENT_ID_COLUMN].putLong(batch.getElementId(i));
+                if (!bufs[0].hasRemaining()) {
+                    position = flush(bufs, channels, position);
+                }
+            }
+        }
+        flush(bufs, channels, position);
+        return range;
+    }
+
+    /** Write the buffered values of every column at position */
+    static long flush(ByteBuffer[] bufs, FileChannel[] channels, long position) throws IOException {
+        long written = bufs[0].position();
+        for (int c = 0; c < bufs.length; c++) {
+            bufs[c].flip();
+            long pos = position;
+            while (bufs[c].hasRemaining()) {
+                pos += channels[c].write(bufs[c], pos);
+            }
+            bufs[c].clear();
+        }
+        return position + written;
+    }
+
+    /**
+     * Convert a Laghos mesh into a cache with the pure Java reader
+     *
+     * Usage: LaghosColumnCache meshFile eFile rhoFile vFile cacheDir
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 5) {
+            System.err.println("Usage: LaghosColumnCache meshFile eFile rhoFile vFile cacheDir");
+            System.exit(1);
+        }
+        int nThreads = Runtime.getRuntime().availableProcessors();
+        long begin = System.nanoTime();
+        JavaLaghosMeshReader reader = new JavaLaghosMeshReader(args[0], args[1], args[2], args[3], nThreads);
+        long parsed = System.nanoTime();
+        Header header = write(reader, Path.of(args[4]), nThreads);
+        long end = System.nanoTime();
+        System.out.println("Parse time: " + (parsed - begin) * 1e-9 + " secs");
+        System.out.println("Cache write time: " + (end - parsed) * 1e-9 + " secs");
+        System.out.println("Cached " + header.numPoints + " points of " + header.numElements + " elements");
+    }
+
+    /** The contents of a cache header */
+    public static class Header {
+        Header(ByteOrder order, long numPoints, long numElements, int pointsPerElement) {
+            this.order = order;
+            this.numPoints = numPoints;
+            this.numElements = numElements;
+            this.pointsPerElement = pointsPerElement;
+            this.range = emptyRange();
+        }
+
+        /** Read a header file */
+        public static Header read(Path file) throws IOException {
+            try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+                if (MAGIC != in.readInt()) {
+                    throw new IOException(file + " is not a Laghos column cache header");
+                }
+                int version = in.readInt();
+                if (VERSION_CURRENT != version) {
+                    throw new IOException("Unsupported cache version " + version);
+                }
+                ByteOrder order = (0 == in.readByte()) ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+                Header header = new Header(order, in.readLong(), in.readLong(), in.readInt());
+                for (int i = 0; i < header.range.length; i++) {
+                    header.range[i] = in.readDouble();
+                }
+                return header;
+            }
+        }
+
+        void write(Path file) throws IOException {
+            try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION_CURRENT);
+                out.writeByte(ByteOrder.LITTLE_ENDIAN.equals(this.order) ? 0 : 1);
+                out.writeLong(this.numPoints);
+                out.writeLong(this.numElements);
+                out.writeInt(this.pointsPerElement);
+                for (double v : this.range) {
+                    out.writeDouble(v);
+                }
+            }
+        }
+
+        /** @return the smallest value of field dim */
+        public double getMin(int dim) {
+            return this.range[2*dim];
+        }
+
+        /** @return the largest value of field dim */
+        public double getMax(int dim) {
+            return this.range[2*dim + 1];
+        }
+
+        void merge(double[] other) {
+            for (int d = 0; d < LaghosPointBatch.NUM_FIELDS; d++) {
+                this.range[2*d] = Math.min(this.range[2*d], other[2*d]);
+                this.range[2*d + 1] = Math.max(this.range[2*d + 1], other[2*d + 1]);
+            }
+        }
+
+        static double[] emptyRange() {
+            double[] range = new double[2 * LaghosPointBatch.NUM_FIELDS];
+            for (int d = 0; d < LaghosPointBatch.NUM_FIELDS; d++) {
+                range[2*d] = Double.POSITIVE_INFINITY;
+                range[2*d + 1] = Double.NEGATIVE_INFINITY;
+            }
+            return range;
+        }
+
+        // Byte order of the column values
+        public final ByteOrder order;
+
+        // Number of points and elements
+        public final long numPoints, numElements;
+
+        // Points per element
+        public final int pointsPerElement;
+
+        // Minimum and maximum of each field, interleaved
+        final double[] range;
+    }
+}
@@ -0,0 +1,182 @@
+package sci.mfem;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Serves the points of a LaghosColumnCache from memory mapped column files.
+ *
+ * Opening a cache reads only the header and maps the columns, so it takes
+ * milliseconds regardless of the mesh size. Batches are LaghosColumnBatch
+ * views over the mappings and copy nothing. A mapping is limited to 2GB, so
+ * each column is mapped as a series of segments and a batch never crosses a
+ * segment boundary. Splits share the mappings.
+ */
+public class LaghosColumnReader implements LaghosPointSource {
+
+    /** The default number of points per batch, the same as LaghosMeshReader */
+    public static final int DEFAULT_FETCH_COUNT = 64*1024;
+
+    /** The most points mapped by one segment of a column (1GB of values) */
+    static final int MAX_SEGMENT_POINTS = 1 << 27;
+
+    /** Open the cache in dir */
+    public LaghosColumnReader(Path dir) throws IOException {
+        this(dir, MAX_SEGMENT_POINTS);
+    }
+
+    LaghosColumnReader(Path dir, int maxSegmentPoints) throws IOException {
+        this.header = LaghosColumnCache.Header.read(dir.resolve(LaghosColumnCache.HEADER_FILE));
+        int ppe = Math.max(this.header.pointsPerElement, 1);
+
+        // Segments hold whole elements so batches never tear an element
+        this.segmentPoints = Math.max(maxSegmentPoints / ppe, 1) * ppe;
+        int numSegments = (int)((this.header.numPoints + this.segmentPoints - 1) / this.segmentPoints);
+        this.segments = new ByteBuffer[numSegments][LaghosColumnBatch.NUM_COLUMNS];
+        for (int c = 0; c < LaghosColumnBatch.NUM_COLUMNS; c++) {
+            try (FileChannel ch = FileChannel.open(LaghosColumnCache.columnFile(dir, c), StandardOpenOption.READ)) {
+                if (ch.size() != this.header.numPoints * Double.BYTES) {
+                    throw new IOException(LaghosColumnCache.columnFile(dir, c) + " has " + ch.size()
+                                          + " bytes, expected " + this.header.numPoints * Double.BYTES);
+                }
+                for (int s = 0; s < numSegments; s++) {
+                    long first = (long)s * this.segmentPoints;
+                    long points = Math.min(this.segmentPoints, this.header.numPoints - first);
+                    this.segments[s][c] = ch.map(FileChannel.MapMode.READ_ONLY, first * Double.BYTES,
+                                                 points * Double.BYTES).order(this.header.order);
+                }
+            }
+        }
+        this.pointBegin = 0;
+        this.pointEnd = this.header.numPoints;
+        this.pointsPerElement = ppe;
+        this.batch = new LaghosColumnBatch();
+        setFetchCount(DEFAULT_FETCH_COUNT);
+    }
+
+    LaghosColumnReader(LaghosColumnReader parent, long pointBegin, long pointEnd) {
+        this.header = parent.header;
+        this.segmentPoints = parent.segmentPoints;
+        this.segments = parent.segments;
+        this.pointsPerElement = parent.pointsPerElement;
+        this.pointBegin = pointBegin;
+        this.pointEnd = pointEnd;
+        this.batch = new LaghosColumnBatch();
+        setFetchCount(parent.fetchCount);
+    }
+
+    /** @return the cache header */
+    public LaghosColumnCache.Header getHeader() {
+        return this.header;
+    }
+
+    /**
+     * @return field dim of a point, read directly from the mappings
+     * @param point the index of the point within the cache, not within this split
+     */
+    public double getDouble(long point, int dim) {
+        int s = (int)(point / this.segmentPoints);
+        return this.segments[s][dim].getDouble((int)(point - (long)s * this.segmentPoints) * Double.BYTES);
+    }
+
+    /**
+     * @return the element id of a point, read directly from the mappings
+     * @param point the index of the point within the cache, not within this split
+     */
+    public long getElementId(long point) {
+        int s = (int)(point / this.segmentPoints);
+        return this.segments[s][LaghosColumnBatch.ELEMENT_ID_COLUMN]
+            .getLong((int)(point - (long)s * this.segmentPoints) * Long.BYTES);
+    }
+
+    /** Set the maximum number of points per batch and restart the iterator */
+    public void setFetchCount(int fetchCount) {
+        this.fetchCount = Math.max(fetchCount / this.pointsPerElement, 1) * this.pointsPerElement;
+        resetIterator();
+    }
+
+    @Override
+    public long getNumElements() {
+        return (this.pointEnd - this.pointBegin) / this.pointsPerElement;
+    }
+
+    @Override
+    public int getNumPoints() {
+        return (int)(this.pointEnd - this.pointBegin);
+    }
+
+    @Override
+    public long getFirstPointIndex() {
+        return this.pointBegin;
+    }
+
+    @Override
+    public void resetIterator() {
+        this.pointCurrent = this.pointBegin;
+    }
+
+    @Override
+    public LaghosPointBatch getNextLaghosPointBatch() {
+        if (this.pointCurrent >= this.pointEnd) {
+            return null;
+        }
+        int s = (int)(this.pointCurrent / this.segmentPoints);
+        int first = (int)(this.pointCurrent - (long)s * this.segmentPoints);
+        long segmentEnd = Math.min((long)(s + 1) * this.segmentPoints, this.pointEnd);
+        int count = (int)Math.min(this.fetchCount, segmentEnd - this.pointCurrent);
+        this.batch.reset(this.segments[s], first, count, this.pointCurrent);
+        this.pointCurrent += count;
+        return this.batch;
+    }
+
+    /**
+     * Split this reader's points into n readers over disjoint element ranges
+     */
+    @Override
+    public List<LaghosColumnReader> split(int n) {
+        List<LaghosColumnReader> splits = new ArrayList<>();
+        for (long[] range : LaghosPointSource.splitRanges(0, getNumElements(), n)) {
+            long begin = this.pointBegin + range[0] * this.pointsPerElement;
+            long end = Math.min(this.pointBegin + range[1] * this.pointsPerElement, this.pointEnd);
+            splits.add(new LaghosColumnReader(this, begin, end));
+        }
+        return splits;
+    }
+
+    /** The mappings are released when the reader is garbage collected */
+    @Override
+    public void close() {
+    }
+
+    // Cache header
+    final LaghosColumnCache.Header header;
+
+    // Points in every segment but the last
+    final int segmentPoints;
+
+    // Column mappings of each segment
+    final ByteBuffer[][] segments;
+
+    // Points produced by each element
+    final int pointsPerElement;
+
+    // First point covered by this reader
+    final long pointBegin;
+
+    // Point after the last point covered by this reader
+    final long pointEnd;
+
+    // Flyweight handed out by getNextLaghosPointBatch
+    final LaghosColumnBatch batch;
+
+    // Maximum points per batch
+    int fetchCount;
+
+    // Next point to serve
+    long pointCurrent;
+}
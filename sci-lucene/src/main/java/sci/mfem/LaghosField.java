@@ -0,0 +1,40 @@
+package sci.mfem;
+
+/**
+ * The double valued fields of a Laghos point in packed order
+ */
+public enum LaghosField {
+    X("x"), Y("y"), Z("z"), E("e"), RHO("rho"), V_X("v_x"), V_Y("v_y"), V_Z("v_z");
+
+    LaghosField(String name) {
+        this.name = name;
+    }
+
+    /** @return the field's position within a packed point */
+    public int dim() {
+        return ordinal();
+    }
+
+    /** @return the byte offset of the field within a packed point */
+    public int offset() {
+        return ordinal() * Double.BYTES;
+    }
+
+    /** @return the field name used in the Parquet and SQL schemas */
+    public String fieldName() {
+        return this.name;
+    }
+
+    /** @return the field with the given schema name */
+    public static LaghosField forName(String name) {
+        for (LaghosField f : values()) {
+            if (f.name.equals(name)) {
+                return f;
+            }
+        }
+        throw new IllegalArgumentException("Unknown Laghos field: " + name);
+    }
+
+    // Schema name of the field
+    private final String name;
+}
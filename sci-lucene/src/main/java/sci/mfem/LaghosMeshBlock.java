@@ -0,0 +1,164 @@
+package sci.mfem;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A reusable flyweight over a block of a Laghos mesh in normalized form.
+ *
+ * Hex elements share their vertices, so the flat point stream repeats a
+ * vertex's coordinates once for every element touching it, up to 8 times.
+ * A block instead holds three tables laid out like the structs of
+ * mfem-mesh-reader.h:
+ *
+ *   vertices   laghos_mesh_vertex_t        [vertex id] [x] [y] [z]
+ *   attrs      laghos_mesh_element_attr_t  [e] [rho] [v_x] [v_y] [v_z] [vertex id] [element id]
+ *   geometry   laghos_mesh_element_geom_t  [vertex ids (8)] [element id]
+ *
+ * The vertex table only holds vertices not already returned by an earlier
+ * block of the same reader, so over a full pass each vertex appears once.
+ * The fields belong to a vertex-element pair and keep one attr per point,
+ * in element order, with element k's attrs at [k * n, k * n + n) for n
+ * vertices per element. Each element's geometry names its vertices by id,
+ * and those vertices may have been returned by an earlier block.
+ *
+ * Like LaghosPointBatch a block is only valid until the next block is
+ * fetched by its reader.
+ */
+public class LaghosMeshBlock {
+
+    /** The number of vertex slots in an element geometry, enough for a hex */
+    public static final int MAX_VERTICES_PER_ELEMENT = 8;
+
+    /** The size of a laghos_mesh_vertex_t in bytes */
+    public static final int VERTEX_SIZE = Long.BYTES + 3 * Double.BYTES;
+
+    /** Field offsets within a vertex */
+    public static final int VERTEX_ID_OFFSET = 0;
+    public static final int VERTEX_X_OFFSET = Long.BYTES;
+
+    /** The number of double fields in an attr (e, rho, v_x, v_y, v_z) */
+    public static final int NUM_ATTR_FIELDS = LaghosPointBatch.NUM_FIELDS - 3;
+
+    /** The size of a laghos_mesh_element_attr_t in bytes */
+    public static final int ATTR_SIZE = NUM_ATTR_FIELDS * Double.BYTES + 2 * Long.BYTES;
+
+    /** Field offsets within an attr */
+    public static final int ATTR_VERTEX_ID_OFFSET = NUM_ATTR_FIELDS * Double.BYTES;
+    public static final int ATTR_ELEMENT_ID_OFFSET = ATTR_VERTEX_ID_OFFSET + Long.BYTES;
+
+    /** The size of a laghos_mesh_element_geom_t in bytes */
+    public static final int GEOM_SIZE = MAX_VERTICES_PER_ELEMENT * Long.BYTES + Long.BYTES;
+
+    /** Offset of the element id within a geometry */
+    public static final int GEOM_ELEMENT_ID_OFFSET = MAX_VERTICES_PER_ELEMENT * Long.BYTES;
+
+    /** Create an empty block */
+    public LaghosMeshBlock() {
+    }
+
+    /**
+     * Point the block at new tables, each starting at position 0 of its buffer
+     *
+     * @param numVertices the number of vertices in the vertex table
+     * @param numElements the number of elements, each with one geometry
+     * @param verticesPerElement the number of vertices, and so attrs, of each element
+     * @param firstPointIndex the index within the mesh of the first attr
+     */
+    public void reset(ByteBuffer vertices, int numVertices, ByteBuffer attrs, ByteBuffer geoms,
+                      int numElements, int verticesPerElement, long firstPointIndex) {
+        this.vertices = vertices;
+        this.numVertices = numVertices;
+        this.attrs = attrs;
+        this.geoms = geoms;
+        this.numElements = numElements;
+        this.verticesPerElement = verticesPerElement;
+        this.firstPointIndex = firstPointIndex;
+    }
+
+    /** @return the number of vertices first seen in this block */
+    public int getNumVertices() {
+        return this.numVertices;
+    }
+
+    /** @return the number of elements in this block */
+    public int getNumElements() {
+        return this.numElements;
+    }
+
+    /** @return the number of vertex-element attrs, one per point of the flat stream */
+    public int getNumAttrs() {
+        return this.numElements * this.verticesPerElement;
+    }
+
+    /** @return the number of vertices of each element */
+    public int getVerticesPerElement() {
+        return this.verticesPerElement;
+    }
+
+    /** @return the index within the mesh of the first attr, the same as the flat point index */
+    public long getFirstPointIndex() {
+        return this.firstPointIndex;
+    }
+
+    /** @return the mesh-wide id of vertex v of the vertex table */
+    public long getVertexId(int v) {
+        return this.vertices.getLong(v * VERTEX_SIZE + VERTEX_ID_OFFSET);
+    }
+
+    /** @return coordinate c (0 for x, 1 for y, 2 for z) of vertex v of the vertex table */
+    public double getVertexCoordinate(int v, int c) {
+        return this.vertices.getDouble(v * VERTEX_SIZE + VERTEX_X_OFFSET + c * Double.BYTES);
+    }
+
+    /** @return the mesh-wide id of element k */
+    public long getElementId(int k) {
+        return this.geoms.getLong(k * GEOM_SIZE + GEOM_ELEMENT_ID_OFFSET);
+    }
+
+    /** @return the id of vertex j of element k */
+    public long getElementVertex(int k, int j) {
+        return this.geoms.getLong(k * GEOM_SIZE + j * Long.BYTES);
+    }
+
+    /**
+     * @return the value of field dim of attr a, where dim is one of the
+     *         value fields E through V_Z of LaghosField
+     */
+    public double getAttr(int a, int dim) {
+        if (dim < LaghosField.E.dim()) {
+            throw new IllegalArgumentException("Field " + dim + " is a coordinate, read it from the vertex table");
+        }
+        return this.attrs.getDouble(a * ATTR_SIZE + (dim - LaghosField.E.dim()) * Double.BYTES);
+    }
+
+    /** @return the vertex id of attr a */
+    public long getAttrVertexId(int a) {
+        return this.attrs.getLong(a * ATTR_SIZE + ATTR_VERTEX_ID_OFFSET);
+    }
+
+    /** @return the element id of attr a */
+    public long getAttrElementId(int a) {
+        return this.attrs.getLong(a * ATTR_SIZE + ATTR_ELEMENT_ID_OFFSET);
+    }
+
+    // Unique vertex table
+    ByteBuffer vertices;
+
+    // Vertices in the vertex table
+    int numVertices;
+
+    // Per vertex-element attrs
+    ByteBuffer attrs;
+
+    // Per element connectivity
+    ByteBuffer geoms;
+
+    // Elements in the attr and geometry tables
+    int numElements;
+
+    // Vertices, and attrs, of each element
+    int verticesPerElement;
+
+    // Mesh index of the first attr
+    long firstPointIndex;
+}
@@ -2,6 +2,8 @@ package sci.mfem;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
 
 import com.sun.jna.Memory;
 import com.sun.jna.Native;
@@ -13,8 +15,10 @@ import com.sun.jna.ptr.LongByReference;
 import com.sun.jna.Platform;
 import com.sun.jna.Structure;
 import com.sun.jna.Structure.FieldOrder;
+import sci.metrics.MeshEvents;
+import sci.metrics.MeshMetrics;
 
-public class LaghosMeshReader extends MFEMMeshReader {
+public class LaghosMeshReader extends MFEMMeshReader implements LaghosVertexSource {
 
     /** The path to the mfem shared object */
     static final String SHARED_OBJ_DIR = "/home/bsettlemyer/workspace/taproot/mfem-utils/build/lib/main/debug";
@@ -63,40 +67,110 @@ public class LaghosMeshReader extends MFEMMeshReader {
      * Create a LaghosMeshReader
      */
     public LaghosMeshReader(String meshFile, String eFile, String rhoFile, String vFile) {
+        this(meshFile, eFile, rhoFile, vFile, 0, -1, DEFAULT_FETCH_COUNT);
+    }
+
+    /**
+     * Create a LaghosMeshReader over the elements [elementBegin, elementEnd)
+     *
+     * @param elementEnd the element to stop reading at, or -1 for the end of the mesh
+     * @param fetchCount the number of points read from the native mesh per fetch
+     */
+    public LaghosMeshReader(String meshFile, String eFile, String rhoFile, String vFile,
+                            long elementBegin, long elementEnd, int fetchCount) {
         // Set the load path for the native code
         NativeLibrary.addSearchPath("mfem-utils", SHARED_OBJ_DIR);
         MFEMUtils lib = MFEMUtils.INSTANCE;
         this.meshHandle = lib.mfem_laghos_mesh_open(meshFile, eFile, rhoFile, vFile);
-        this.meshIter = 0;
+        this.meshFile = meshFile;
+        this.eFile = eFile;
+        this.rhoFile = rhoFile;
+        this.vFile = vFile;
 
-        // Create a buffer to hold 64k Laghos points (about 4MB worth)
-        this.pointsBufferAllocSize = DEFAULT_FETCH_COUNT * LAGHOS_POINT_SIZE;
-        this.pointsBuffer = new Memory(this.pointsBufferAllocSize);
+        // Determine the element range and the points each whole element yields
+        long meshElements = lib.mfem_laghos_mesh_get_num_elements(meshHandle);
+        this.pointsPerElement = (0 == meshElements) ? 0 : lib.mfem_laghos_mesh_get_num_points(meshHandle) / meshElements;
+        this.elementBegin = Math.min(elementBegin, meshElements);
+        this.elementEnd = (elementEnd < 0) ? meshElements : Math.min(elementEnd, meshElements);
 
-        // Describe the current point
-        this.pointBegin = 0;
-        this.pointCurrent = 0;
-        this.pointsBuffered = 0;
+        // Create a buffer to hold fetchCount Laghos points (about 4MB worth by default)
+        this.batch = new LaghosPointBatch();
+        this.block = new LaghosMeshBlock();
+        setFetchCount(fetchCount);
     };
 
+    /**
+     * Set the number of points read from the native mesh per fetch and
+     * restart the iterator. Larger fetches amortize the native call overhead
+     * at the cost of a larger points buffer.
+     */
+    public void setFetchCount(int fetchCount) {
+        this.fetchCount = fetchCount;
+        this.pointsBufferAllocSize = (long)fetchCount * LAGHOS_POINT_SIZE;
+        this.pointsBuffer = new Memory(this.pointsBufferAllocSize);
+        this.pointsByteBuffer = this.pointsBuffer.getByteBuffer(0, this.pointsBufferAllocSize).order(ByteOrder.nativeOrder());
+        // The normalized buffers are sized on the next block read
+        this.vertsBuffer = null;
+        resetIterator();
+    }
+
     /** Reset the mesh iterator to the first element */
     public void resetIterator() {
-        this.meshIter = 0;
-        this.pointBegin = 0;
-        this.pointCurrent = 0;
+        this.meshIter = this.elementBegin;
+        this.pointBegin = this.elementBegin * this.pointsPerElement;
+        this.pointCurrent = this.pointBegin;
         this.pointsBuffered = 0;
+
+        // Forget the vertices already returned by getNextLaghosMeshBlock
+        if (null != this.veIter) {
+            MFEMUtils.INSTANCE.mfem_mesh_iterator_destroy(this.veIter);
+            this.veIter = null;
+        }
+    }
+
+    /**
+     * Split this reader's element range into n disjoint readers.
+     *
+     * Each split opens its own native mesh handle and points buffer, because
+     * the MFEM nodal evaluation keeps per-mesh scratch state and is not safe
+     * to share between threads. Splits are on element boundaries so a
+     * vertex/element pair is never torn across partitions. The points of a
+     * split keep their mesh-wide indices, so docIds stay unique when the
+     * splits are ingested concurrently.
+     *
+     * @return up to n readers that together cover this reader's elements
+     */
+    public List<LaghosMeshReader> split(int n) {
+        List<LaghosMeshReader> splits = new ArrayList<>();
+        for (long[] range : LaghosPointSource.splitRanges(this.elementBegin, this.elementEnd, n)) {
+            splits.add(new LaghosMeshReader(meshFile, eFile, rhoFile, vFile, range[0], range[1], this.fetchCount));
+        }
+        return splits;
+    }
+
+    /** Release the native mesh held by this reader */
+    public void close() {
+        MFEMUtils lib = MFEMUtils.INSTANCE;
+        if (null != this.veIter) {
+            lib.mfem_mesh_iterator_destroy(this.veIter);
+            this.veIter = null;
+        }
+        lib.mfem_laghos_mesh_close(this.meshHandle);
     }
 
     /** @return the number of mesh cells */
     public long getNumElements() {
-        MFEMUtils lib = MFEMUtils.INSTANCE;
-        return lib.mfem_laghos_mesh_get_num_elements(meshHandle);
+        return this.elementEnd - this.elementBegin;
     }
     
     /** @return the number of points */
     public int getNumPoints() {
-        MFEMUtils lib = MFEMUtils.INSTANCE;
-        return lib.mfem_laghos_mesh_get_num_points(meshHandle);
+        return (int)(getNumElements() * this.pointsPerElement);
+    }
+
+    /** @return the index of the first point this reader returns */
+    public long getFirstPointIndex() {
+        return this.elementBegin * this.pointsPerElement;
     }
     
     /**
@@ -117,7 +191,7 @@ public class LaghosMeshReader extends MFEMMeshReader {
         // If the next point isn't buffered, fetch a new buffer of points
         //System.err.println("Get Next Point Cur: " +  pointCurrent + " Begin: " + pointBegin + " Buffered: " + pointsBuffered);
         if (this.pointCurrent >= (pointBegin + pointsBuffered)) {
-            this.pointsBuffered = fetchLaghosPoints(this.pointsBuffer, DEFAULT_FETCH_COUNT);
+            this.pointsBuffered = fetchLaghosPoints(this.pointsBuffer, this.fetchCount);
             this.pointBegin = this.pointCurrent;
             //System.err.println("Points fetched Current: " + this.pointCurrent + " Begin: " + this.pointBegin + " Count: " + this.pointsBuffered);
         }
@@ -133,6 +207,89 @@ public class LaghosMeshReader extends MFEMMeshReader {
 
     }
 
+    /**
+     * Return the next block of buffered points without copying them.
+     *
+     * The returned batch is a flyweight over the native points buffer and is
+     * reused by every call, so it is only valid until the next call to this
+     * reader. Points left over from getNextLaghosPointAsBytes are returned
+     * before a new block is fetched.
+     *
+     * @return the next batch of points or null once the mesh is exhausted
+     */
+    public LaghosPointBatch getNextLaghosPointBatch() {
+        if (this.pointCurrent >= (pointBegin + pointsBuffered)) {
+            this.pointsBuffered = fetchLaghosPoints(this.pointsBuffer, this.fetchCount);
+            this.pointBegin = this.pointCurrent;
+        }
+
+        if (0 == this.pointsBuffered) {
+            return null;
+        }
+        int first = (int)(this.pointCurrent - this.pointBegin);
+        int count = (int)(this.pointBegin + this.pointsBuffered - this.pointCurrent);
+        this.batch.reset(this.pointsByteBuffer, first, count, this.pointCurrent);
+        this.pointCurrent += count;
+        return this.batch;
+    }
+
+    /**
+     * Return the next block of the mesh in normalized form, up to the fetch
+     * count's worth of whole elements.
+     *
+     * The native reader keeps a visited flag per vertex in its iterator, so
+     * each vertex's coordinates are returned once per pass rather than once
+     * per element touching it. The block is a flyweight over native buffers
+     * and is only valid until the next call to this reader.
+     *
+     * @return the next block or null once the mesh is exhausted
+     */
+    public LaghosMeshBlock getNextLaghosMeshBlock() {
+        MFEMUtils lib = MFEMUtils.INSTANCE;
+        int maxElements = (int)Math.min(this.fetchCount / this.pointsPerElement, this.elementEnd - this.meshIter);
+        if (maxElements <= 0) {
+            return null;
+        }
+        if (null == this.veIter) {
+            this.veIter = new MFEMUtils.MFEMMeshIterator();
+            lib.mfem_mesh_iterator_init(this.veIter);
+        }
+        if (null == this.vertsBuffer) {
+            // A block never holds more vertices than points
+            long maxPoints = (this.fetchCount / this.pointsPerElement) * this.pointsPerElement;
+            this.vertsBuffer = new Memory(maxPoints * LaghosMeshBlock.VERTEX_SIZE);
+            this.attrsBuffer = new Memory(maxPoints * LaghosMeshBlock.ATTR_SIZE);
+            this.geomsBuffer = new Memory((this.fetchCount / this.pointsPerElement) * LaghosMeshBlock.GEOM_SIZE);
+        }
+
+        long firstPoint = this.meshIter * this.pointsPerElement;
+        LongByReference nverts = new LongByReference(maxElements * this.pointsPerElement);
+        LongByReference neles = new LongByReference(maxElements);
+        this.veIter.cur_idx = this.meshIter;
+        MeshEvents.Fetch event = new MeshEvents.Fetch();
+        event.begin();
+        long begin = MeshMetrics.start();
+        lib.mfem_laghos_mesh_read_ve(this.meshHandle, this.veIter, this.vertsBuffer, nverts,
+                                     this.attrsBuffer, this.geomsBuffer, neles);
+        // Points as in the flat read, one attribute row per element vertex
+        long points = neles.getValue() * this.pointsPerElement;
+        FETCH_NANOS.recordSince(begin);
+        FETCH_POINTS.record(points);
+        event.reader = "jna";
+        event.points = points;
+        event.commit();
+        if (0 == neles.getValue()) {
+            return null;
+        }
+        this.meshIter = this.veIter.cur_idx;
+        this.block.reset(this.vertsBuffer.getByteBuffer(0, this.vertsBuffer.size()).order(ByteOrder.nativeOrder()),
+                         (int)nverts.getValue(),
+                         this.attrsBuffer.getByteBuffer(0, this.attrsBuffer.size()).order(ByteOrder.nativeOrder()),
+                         this.geomsBuffer.getByteBuffer(0, this.geomsBuffer.size()).order(ByteOrder.nativeOrder()),
+                         (int)neles.getValue(), (int)this.pointsPerElement, firstPoint);
+        return this.block;
+    }
+
     /**
      * This function reads a buffer full of LaghosPoints.
      * 
@@ -142,8 +299,22 @@ public class LaghosMeshReader extends MFEMMeshReader {
         MFEMUtils lib = MFEMUtils.INSTANCE;
         long count = 0;
         LongByReference iter = new LongByReference(this.meshIter);
-        if (0 == lib.mfem_laghos_mesh_at_end(this.meshHandle, iter)) {
+
+        // Never read past the end of this reader's element range. The native
+        // reader only returns whole elements, so capping the point count at
+        // the remaining elements stops it on the range boundary.
+        long remainingPoints = (this.elementEnd - this.meshIter) * this.pointsPerElement;
+        bufferSize = Math.min(bufferSize, remainingPoints);
+        if (0 < bufferSize && 0 == lib.mfem_laghos_mesh_at_end(this.meshHandle, iter)) {
+            MeshEvents.Fetch event = new MeshEvents.Fetch();
+            event.begin();
+            long begin = MeshMetrics.start();
             count = lib.mfem_laghos_mesh_read(this.meshHandle, iter, pointsBuffer, bufferSize);
+            FETCH_NANOS.recordSince(begin);
+            FETCH_POINTS.record(count);
+            event.reader = "jna";
+            event.points = count;
+            event.commit();
             pointsBuffered = count;
             meshIter = iter.getValue();
         }
@@ -159,18 +330,52 @@ public class LaghosMeshReader extends MFEMMeshReader {
         return count; 
     }
 
+    // Latency and size of each native fetch
+    static final MeshMetrics.Histogram FETCH_NANOS = MeshMetrics.histogram("fetch.jna.nanos");
+    static final MeshMetrics.Histogram FETCH_POINTS = MeshMetrics.histogram("fetch.jna.points");
+
     // Mesh handle
     public int meshHandle;
 
+    // Files the mesh was opened from, used to open splits
+    String meshFile, eFile, rhoFile, vFile;
+
+    // First element covered by this reader
+    long elementBegin;
+
+    // Element after the last element covered by this reader
+    long elementEnd;
+
+    // Points produced by each whole element
+    long pointsPerElement;
+
     // MeshIterator
     long meshIter;
 
     // Memory containing a native array of points
-    Pointer pointsBuffer;
+    Memory pointsBuffer;
+
+    // Direct buffer view of the native points array
+    ByteBuffer pointsByteBuffer;
+
+    // Flyweight handed out by getNextLaghosPointBatch
+    LaghosPointBatch batch;
+
+    // Native iterator of the normalized reads, holding the visited vertices
+    MFEMUtils.MFEMMeshIterator veIter;
+
+    // Native vertex, attr and geometry tables of the normalized reads
+    Memory vertsBuffer, attrsBuffer, geomsBuffer;
+
+    // Flyweight handed out by getNextLaghosMeshBlock
+    LaghosMeshBlock block;
 
     // Total size of the buffer
     long pointsBufferAllocSize;
 
+    // Number of points requested per native read
+    int fetchCount;
+
     // Number of points in the points buffer
     long pointsBuffered;
 
@@ -0,0 +1,295 @@
+package sci.mfem;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.apache.arrow.dataset.file.FileFormat;
+import org.apache.arrow.dataset.file.FileSystemDatasetFactory;
+import org.apache.arrow.dataset.jni.NativeMemoryPool;
+import org.apache.arrow.dataset.scanner.ScanOptions;
+import org.apache.arrow.dataset.scanner.Scanner;
+import org.apache.arrow.dataset.source.Dataset;
+import org.apache.arrow.dataset.source.DatasetFactory;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowReader;
+
+/**
+ * Reads Laghos points from flat schema Parquet files through Arrow.
+ *
+ * Files written by LaghosParquetWriter and by the mfem2parquet tool are
+ * both accepted. Each Arrow record batch is served as a LaghosColumnBatch
+ * over the vectors' data buffers, so fields are read in place without
+ * copying rows. A reader covers one file or every .parquet file of a
+ * directory; it splits by file, so a dataset only splits as finely as it
+ * was written.
+ */
+public class LaghosParquetReader implements LaghosPointSource {
+
+    /** The default number of points per batch, the same as LaghosMeshReader */
+    public static final int DEFAULT_FETCH_COUNT = 64*1024;
+
+    /** Column names in LaghosColumnBatch column order */
+    static final String[] COLUMNS = {"x", "y", "z", "e", "rho", "v_x", "v_y", "v_z", "elementId"};
+
+    /**
+     * Open a Parquet file, or every Parquet file in a directory in name order
+     */
+    public LaghosParquetReader(Path path) throws IOException {
+        List<Path> files;
+        if (Files.isDirectory(path)) {
+            try (Stream<Path> list = Files.list(path)) {
+                files = list.filter(p -> p.getFileName().toString().endsWith(".parquet"))
+                            .sorted()
+                            .collect(Collectors.toList());
+            }
+        } else {
+            files = List.of(path);
+        }
+        if (files.isEmpty()) {
+            throw new IOException("No Parquet files in " + path);
+        }
+
+        // Count the points and elements of each file from the element id column alone
+        this.files = new ArrayList<>();
+        long firstPoint = 0;
+        long lastElement = -1;
+        for (Path file : files) {
+            FileInfo info = countFile(file.toUri().toString(), firstPoint, lastElement);
+            this.files.add(info);
+            firstPoint += info.numPoints;
+            lastElement = info.lastElement;
+        }
+        this.allocator = new RootAllocator();
+        this.batch = new LaghosColumnBatch();
+        this.columns = new ByteBuffer[LaghosColumnBatch.NUM_COLUMNS];
+        this.fetchCount = DEFAULT_FETCH_COUNT;
+        resetIterator();
+    }
+
+    LaghosParquetReader(List<FileInfo> files, int fetchCount) {
+        this.files = files;
+        this.allocator = new RootAllocator();
+        this.batch = new LaghosColumnBatch();
+        this.columns = new ByteBuffer[LaghosColumnBatch.NUM_COLUMNS];
+        this.fetchCount = fetchCount;
+        resetIterator();
+    }
+
+    /**
+     * Set the number of points per Arrow record batch and restart the
+     * iterator. The count is rounded down to whole elements, although a
+     * batch still ends early at a row group boundary.
+     */
+    public void setFetchCount(int fetchCount) {
+        long elements = getNumElements();
+        int ppe = (0 == elements) ? 1 : (int)Math.max(getNumPoints() / elements, 1);
+        this.fetchCount = Math.max(fetchCount / ppe, 1) * ppe;
+        resetIterator();
+    }
+
+    @Override
+    public long getNumElements() {
+        long total = 0;
+        for (FileInfo f : this.files) {
+            total += f.numElements;
+        }
+        return total;
+    }
+
+    @Override
+    public int getNumPoints() {
+        long total = 0;
+        for (FileInfo f : this.files) {
+            total += f.numPoints;
+        }
+        return (int)total;
+    }
+
+    @Override
+    public long getFirstPointIndex() {
+        return this.files.get(0).firstPoint;
+    }
+
+    @Override
+    public void resetIterator() {
+        closeScan();
+        this.fileIndex = 0;
+        this.pointCurrent = getFirstPointIndex();
+    }
+
+    @Override
+    public LaghosPointBatch getNextLaghosPointBatch() {
+        try {
+            while (this.fileIndex < this.files.size()) {
+                if (null == this.reader) {
+                    openScan(this.files.get(this.fileIndex).uri, Optional.empty());
+                }
+                if (this.reader.loadNextBatch()) {
+                    VectorSchemaRoot root = this.reader.getVectorSchemaRoot();
+                    int n = root.getRowCount();
+                    if (0 == n) {
+                        continue;
+                    }
+                    for (int c = 0; c < COLUMNS.length; c++) {
+                        FieldVector v = root.getVector(COLUMNS[c]);
+                        this.columns[c] = v.getDataBuffer().nioBuffer(0, n * Double.BYTES)
+                                           .order(ByteOrder.LITTLE_ENDIAN);
+                    }
+                    this.batch.reset(this.columns, 0, n, this.pointCurrent);
+                    this.pointCurrent += n;
+                    return this.batch;
+                }
+                closeScan();
+                this.fileIndex++;
+            }
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Parquet scan failed", e);
+        }
+    }
+
+    /**
+     * Split into up to n readers over disjoint groups of whole files
+     */
+    @Override
+    public List<LaghosParquetReader> split(int n) {
+        List<LaghosParquetReader> splits = new ArrayList<>();
+        for (long[] range : LaghosPointSource.splitRanges(0, this.files.size(), n)) {
+            List<FileInfo> files = this.files.subList((int)range[0], (int)range[1]);
+            splits.add(new LaghosParquetReader(new ArrayList<>(files), this.fetchCount));
+        }
+        return splits;
+    }
+
+    @Override
+    public void close() {
+        closeScan();
+        this.allocator.close();
+    }
+
+    /**
+     * Count the points and elements of a file. An element whose points run
+     * on from the previous file, whose last element was previousElement, is
+     * counted there rather than here, so an element split across files is
+     * only counted once.
+     */
+    static FileInfo countFile(String uri, long firstPoint, long previousElement) throws IOException {
+        LaghosParquetReader counter = new LaghosParquetReader(List.of(new FileInfo(uri, firstPoint, 0, 0, -1)),
+                                                              DEFAULT_FETCH_COUNT);
+        try {
+            counter.openScan(uri, Optional.of(new String[]{"elementId"}));
+            long points = 0;
+            long elements = 0;
+            long lastElement = previousElement;
+            while (counter.reader.loadNextBatch()) {
+                VectorSchemaRoot root = counter.reader.getVectorSchemaRoot();
+                ByteBuffer ids = root.getVector(0).getDataBuffer().nioBuffer(0, root.getRowCount() * Long.BYTES)
+                                     .order(ByteOrder.LITTLE_ENDIAN);
+                for (int i = 0; i < root.getRowCount(); i++) {
+                    long id = ids.getLong(i * Long.BYTES);
+                    if (id != lastElement) {
+                        elements++;
+                        lastElement = id;
+                    }
+                }
+                points += root.getRowCount();
+            }
+            return new FileInfo(uri, firstPoint, points, elements, lastElement);
+        } finally {
+            counter.close();
+        }
+    }
+
+    void openScan(String uri, Optional<String[]> columns) throws IOException {
+        try {
+            this.factory = new FileSystemDatasetFactory(this.allocator, NativeMemoryPool.getDefault(),
+                                                        FileFormat.PARQUET, uri);
+            this.dataset = this.factory.finish();
+            this.scanner = this.dataset.newScan(new ScanOptions(this.fetchCount, columns));
+            this.reader = this.scanner.scanBatches();
+        } catch (RuntimeException e) {
+            closeScan();
+            throw new IOException("Unable to scan " + uri, e);
+        }
+    }
+
+    void closeScan() {
+        try {
+            if (null != this.reader) {
+                this.reader.close();
+            }
+            if (null != this.scanner) {
+                this.scanner.close();
+            }
+            if (null != this.dataset) {
+                this.dataset.close();
+            }
+            if (null != this.factory) {
+                this.factory.close();
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to close Parquet scan", e);
+        }
+        this.reader = null;
+        this.scanner = null;
+        this.dataset = null;
+        this.factory = null;
+    }
+
+    /** A Parquet file and the points it holds */
+    static class FileInfo {
+        FileInfo(String uri, long firstPoint, long numPoints, long numElements, long lastElement) {
+            this.uri = uri;
+            this.firstPoint = firstPoint;
+            this.numPoints = numPoints;
+            this.numElements = numElements;
+            this.lastElement = lastElement;
+        }
+
+        final String uri;
+
+        // Points of the file, and the elements that begin in it
+        final long firstPoint, numPoints, numElements;
+
+        // Element id of the file's last point, or of the previous file's when it has none
+        final long lastElement;
+    }
+
+    // Files read by this reader, in point order
+    final List<FileInfo> files;
+
+    // Allocator for the scanned vectors
+    final BufferAllocator allocator;
+
+    // Flyweight handed out by getNextLaghosPointBatch
+    final LaghosColumnBatch batch;
+
+    // Column views of the current record batch
+    final ByteBuffer[] columns;
+
+    // Points per record batch
+    int fetchCount;
+
+    // File being scanned
+    int fileIndex;
+
+    // Mesh index of the next point
+    long pointCurrent;
+
+    // Open scan of the current file
+    DatasetFactory factory;
+    Dataset dataset;
+    Scanner scanner;
+    ArrowReader reader;
+}
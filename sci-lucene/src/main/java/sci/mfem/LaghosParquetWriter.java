@@ -0,0 +1,139 @@
+package sci.mfem;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.LongUnaryOperator;
+import org.apache.arrow.dataset.file.DatasetFileWriter;
+import org.apache.arrow.dataset.file.FileFormat;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.UInt8Vector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowReader;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+/**
+ * Writes Laghos points to Parquet through Arrow.
+ *
+ * Points use the flat schema of the mfem2parquet tool: elementId and
+ * vertexId as unsigned 64 bit integers followed by x, y, z, e, rho, v_x, v_y
+ * and v_z as doubles. Each batch from the point source becomes one Arrow
+ * record batch, which the Arrow dataset writer streams into Parquet row
+ * groups, so the mesh is never held in memory.
+ */
+public class LaghosParquetWriter {
+
+    /** Column names of the flat schema, in file order */
+    public static final String[] FLAT_COLUMNS = {"elementId", "vertexId", "x", "y", "z", "e", "rho", "v_x", "v_y", "v_z"};
+
+    /** Vertex id written when the source does not know a point's vertex */
+    public static final long UNKNOWN_VERTEX_ID = -1L;
+
+    /**
+     * Allocator shared by every write. The native writer releases the last
+     * exported batches from its own threads after write returns, so a
+     * per-write allocator could not be closed safely.
+     */
+    static final BufferAllocator ALLOCATOR = new RootAllocator();
+
+    /** @return the flat Arrow schema */
+    public static Schema flatSchema() {
+        FieldType uint64 = FieldType.notNullable(new ArrowType.Int(64, false));
+        FieldType float64 = FieldType.notNullable(new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE));
+        Field[] fields = new Field[FLAT_COLUMNS.length];
+        for (int c = 0; c < FLAT_COLUMNS.length; c++) {
+            fields[c] = new Field(FLAT_COLUMNS[c], (c < 2) ? uint64 : float64, null);
+        }
+        return new Schema(List.of(fields));
+    }
+
+    /**
+     * Write every point of source into a Parquet dataset in dir
+     */
+    public static void write(LaghosPointSource source, Path dir) throws IOException {
+        write(source, dir, p -> UNKNOWN_VERTEX_ID);
+    }
+
+    /**
+     * Write every point of source into a Parquet dataset in dir
+     *
+     * @param vertexIds maps the mesh index of a point to its vertex id
+     */
+    public static void write(LaghosPointSource source, Path dir, LongUnaryOperator vertexIds) throws IOException {
+        Files.createDirectories(dir);
+        // The exported stream takes ownership of the reader and closes it
+        PointSourceArrowReader reader = new PointSourceArrowReader(ALLOCATOR, source, vertexIds);
+        DatasetFileWriter.write(ALLOCATOR, reader, FileFormat.PARQUET, dir.toUri().toString(),
+                                new String[0], 1, "part-{i}.parquet");
+    }
+
+    /**
+     * Presents a point source as a stream of Arrow record batches
+     */
+    static class PointSourceArrowReader extends ArrowReader {
+        PointSourceArrowReader(BufferAllocator allocator, LaghosPointSource source, LongUnaryOperator vertexIds) {
+            super(allocator);
+            this.source = source;
+            this.vertexIds = vertexIds;
+        }
+
+        @Override
+        public boolean loadNextBatch() throws IOException {
+            LaghosPointBatch batch = this.source.getNextLaghosPointBatch();
+            if (null == batch) {
+                return false;
+            }
+            VectorSchemaRoot root = getVectorSchemaRoot();
+            int n = batch.size();
+            UInt8Vector elementIds = (UInt8Vector)root.getVector(0);
+            UInt8Vector vertices = (UInt8Vector)root.getVector(1);
+            elementIds.allocateNew(n);
+            vertices.allocateNew(n);
+            long first = batch.getFirstPointIndex();
+            for (int i = 0; i < n; i++) {
+                elementIds.set(i, batch.getElementId(i));
+                vertices.set(i, this.vertexIds.applyAsLong(first + i));
+            }
+            for (int d = 0; d < LaghosPointBatch.NUM_FIELDS; d++) {
+                Float8Vector field = (Float8Vector)root.getVector(2 + d);
+                field.allocateNew(n);
+                for (int i = 0; i < n; i++) {
+                    field.set(i, batch.getDouble(i, d));
+                }
+            }
+            root.setRowCount(n);
+            this.bytesRead += (long)n * LaghosPointBatch.POINT_SIZE;
+            return true;
+        }
+
+        @Override
+        public long bytesRead() {
+            return this.bytesRead;
+        }
+
+        @Override
+        protected void closeReadSource() {
+        }
+
+        @Override
+        protected Schema readSchema() {
+            return flatSchema();
+        }
+
+        // Points being written
+        final LaghosPointSource source;
+
+        // Vertex id of each point
+        final LongUnaryOperator vertexIds;
+
+        // Bytes of points converted so far
+        long bytesRead;
+    }
+}
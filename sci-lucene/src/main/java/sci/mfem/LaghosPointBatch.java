@@ -0,0 +1,146 @@
+package sci.mfem;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A reusable flyweight cursor over a block of packed Laghos points.
+ *
+ * The batch does not copy point data. It wraps the buffer the points were
+ * fetched into and decodes fields on demand, so a single batch instance can be
+ * reused for every block read from a mesh without allocating per point.
+ * A batch is only valid until the next block is fetched by its reader.
+ */
+public class LaghosPointBatch {
+
+    /** The number of double fields in a packed point (x, y, z, e, rho, v_x, v_y, v_z) */
+    public static final int NUM_FIELDS = 8;
+
+    /** The size of a packed Laghos point in bytes (8 doubles and the element id) */
+    public static final int POINT_SIZE = (NUM_FIELDS * Double.BYTES) + Long.BYTES;
+
+    /** Field offsets within a packed point */
+    public static final int X_OFFSET = 0 * Double.BYTES;
+    public static final int Y_OFFSET = 1 * Double.BYTES;
+    public static final int Z_OFFSET = 2 * Double.BYTES;
+    public static final int E_OFFSET = 3 * Double.BYTES;
+    public static final int RHO_OFFSET = 4 * Double.BYTES;
+    public static final int V_X_OFFSET = 5 * Double.BYTES;
+    public static final int V_Y_OFFSET = 6 * Double.BYTES;
+    public static final int V_Z_OFFSET = 7 * Double.BYTES;
+    public static final int ELEMENT_ID_OFFSET = NUM_FIELDS * Double.BYTES;
+
+    /** Create an empty batch */
+    public LaghosPointBatch() {
+        this.buffer = null;
+        this.base = 0;
+        this.count = 0;
+        this.firstPointIndex = 0;
+    }
+
+    /**
+     * Point the batch at a new block of packed points
+     *
+     * @param buffer the buffer holding the points, in native byte order
+     * @param firstPoint the index of the first point of the batch within buffer
+     * @param count the number of points in the batch
+     * @param firstPointIndex the index of the first point of the batch within the mesh
+     */
+    public void reset(ByteBuffer buffer, int firstPoint, int count, long firstPointIndex) {
+        this.buffer = buffer;
+        this.base = firstPoint * POINT_SIZE;
+        this.count = count;
+        this.firstPointIndex = firstPointIndex;
+    }
+
+    /** @return the number of points in the batch */
+    public int size() {
+        return this.count;
+    }
+
+    /** @return the index within the mesh of the first point in this batch */
+    public long getFirstPointIndex() {
+        return this.firstPointIndex;
+    }
+
+    /**
+     * @return a read-only view of the packed points in this batch. The view
+     *         begins at the first point and is limited to the batch size.
+     */
+    public ByteBuffer getBuffer() {
+        ByteBuffer view = this.buffer.duplicate();
+        view.position(this.base);
+        view.limit(this.base + this.count * POINT_SIZE);
+        return view.slice().asReadOnlyBuffer().order(ByteOrder.nativeOrder());
+    }
+
+    public double getX(int i) {
+        return this.buffer.getDouble(this.base + i * POINT_SIZE + X_OFFSET);
+    }
+
+    public double getY(int i) {
+        return this.buffer.getDouble(this.base + i * POINT_SIZE + Y_OFFSET);
+    }
+
+    public double getZ(int i) {
+        return this.buffer.getDouble(this.base + i * POINT_SIZE + Z_OFFSET);
+    }
+
+    public double getE(int i) {
+        return this.buffer.getDouble(this.base + i * POINT_SIZE + E_OFFSET);
+    }
+
+    public double getRho(int i) {
+        return this.buffer.getDouble(this.base + i * POINT_SIZE + RHO_OFFSET);
+    }
+
+    public double getVx(int i) {
+        return this.buffer.getDouble(this.base + i * POINT_SIZE + V_X_OFFSET);
+    }
+
+    public double getVy(int i) {
+        return this.buffer.getDouble(this.base + i * POINT_SIZE + V_Y_OFFSET);
+    }
+
+    public double getVz(int i) {
+        return this.buffer.getDouble(this.base + i * POINT_SIZE + V_Z_OFFSET);
+    }
+
+    public long getElementId(int i) {
+        return this.buffer.getLong(this.base + i * POINT_SIZE + ELEMENT_ID_OFFSET);
+    }
+
+    /**
+     * @return field dim (0 = x ... 7 = v_z) of point i
+     */
+    public double getDouble(int i, int dim) {
+        return this.buffer.getDouble(this.base + i * POINT_SIZE + dim * Double.BYTES);
+    }
+
+    /**
+     * Copy the packed bytes of point i into dst. The copy is in the same
+     * layout getNextLaghosPointAsBytes returns.
+     */
+    public void copyPoint(int i, byte[] dst) {
+        this.buffer.get(this.base + i * POINT_SIZE, dst, 0, POINT_SIZE);
+    }
+
+    /**
+     * Copy len bytes starting at byte offset off of point i into dst at dstOff
+     */
+    public void copyBytes(int i, int off, byte[] dst, int dstOff, int len) {
+        this.buffer.get(this.base + i * POINT_SIZE + off, dst, dstOff, len);
+    }
+
+    // Buffer holding the packed points
+    ByteBuffer buffer;
+
+    // Byte offset of the first point in the buffer
+    int base;
+
+    // Number of points in the batch
+    int count;
+
+    // Index of the first point within the mesh
+    long firstPointIndex;
+}
@@ -0,0 +1,58 @@
+package sci.mfem;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A source of Laghos points delivered in batches of whole elements
+ */
+public interface LaghosPointSource {
+
+    /** @return the number of elements this source covers */
+    long getNumElements();
+
+    /** @return the number of points this source covers */
+    int getNumPoints();
+
+    /** @return the index within the mesh of the first point this source returns */
+    long getFirstPointIndex();
+
+    /**
+     * @return the next batch of points or null once the source is exhausted.
+     *         The batch is only valid until the next call.
+     */
+    LaghosPointBatch getNextLaghosPointBatch();
+
+    /** Restart the source at its first point */
+    void resetIterator();
+
+    /**
+     * Split this source into up to n independent sources over disjoint
+     * element ranges that can be read concurrently
+     *
+     * @throws IllegalArgumentException if n is less than 1
+     */
+    List<? extends LaghosPointSource> split(int n);
+
+    /** Release any resources held by the source */
+    void close();
+
+    /**
+     * Divide [begin, end) into up to n contiguous ranges of nearly equal
+     * length, the element ranges of split
+     *
+     * @return the {begin, end} of each range, in order
+     * @throws IllegalArgumentException if n is less than 1
+     */
+    static List<long[]> splitRanges(long begin, long end, int n) {
+        if (n < 1) {
+            throw new IllegalArgumentException("A source splits into at least 1 part, not " + n);
+        }
+        List<long[]> ranges = new ArrayList<>();
+        long perSplit = Math.max((end - begin + n - 1) / n, 1);
+        for (long b = begin; b < end; b += perSplit) {
+            ranges.add(new long[]{b, Math.min(b + perSplit, end)});
+        }
+        return ranges;
+    }
+}
@@ -0,0 +1,19 @@
+package sci.mfem;
+
+/**
+ * A source of Laghos points that can also be read in normalized form, as
+ * unique vertices plus per element attrs and connectivity.
+ *
+ * The point and block reads share the source's iterator, so call
+ * resetIterator before switching between them. Each split tracks the
+ * vertices it has returned on its own, so a vertex shared by elements of
+ * two splits is returned by both.
+ */
+public interface LaghosVertexSource extends LaghosPointSource {
+
+    /**
+     * @return the next block of whole elements, or null once the source is
+     *         exhausted. The block is only valid until the next call.
+     */
+    LaghosMeshBlock getNextLaghosMeshBlock();
+}
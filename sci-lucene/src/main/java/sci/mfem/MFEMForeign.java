@@ -0,0 +1,232 @@
+package sci.mfem;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import jdk.incubator.foreign.CLinker;
+import jdk.incubator.foreign.FunctionDescriptor;
+import jdk.incubator.foreign.GroupLayout;
+import jdk.incubator.foreign.MemoryAccess;
+import jdk.incubator.foreign.MemoryAddress;
+import jdk.incubator.foreign.MemoryLayout;
+import jdk.incubator.foreign.MemoryLayout.PathElement;
+import jdk.incubator.foreign.MemorySegment;
+import jdk.incubator.foreign.ResourceScope;
+import jdk.incubator.foreign.SymbolLookup;
+import static jdk.incubator.foreign.CLinker.C_DOUBLE;
+import static jdk.incubator.foreign.CLinker.C_INT;
+import static jdk.incubator.foreign.CLinker.C_LONG;
+import static jdk.incubator.foreign.CLinker.C_POINTER;
+
+/**
+ * Foreign function bindings for the mfem-utils library.
+ *
+ * The layouts mirror the structs of mfem-mesh-reader.h field for field,
+ * with size_t as the 64 bit C long of the Linux x86_64 target, so native
+ * records are read at the offsets the C compiler used. Unlike the JNA
+ * LaghosPoint, laghos_mesh_point_t carries both the vertex and element id
+ * and is 80 bytes.
+ *
+ * JDK 17 only ships the incubating jdk.incubator.foreign API, which the
+ * build adds with --add-modules. The function handles are bound when first
+ * called, so the layouts can be used without the native library.
+ */
+public final class MFEMForeign {
+
+    /** laghos_mesh_point_t */
+    public static final GroupLayout LAGHOS_MESH_POINT = MemoryLayout.structLayout(
+        C_DOUBLE.withName("x"), C_DOUBLE.withName("y"), C_DOUBLE.withName("z"),
+        C_DOUBLE.withName("e"), C_DOUBLE.withName("rho"),
+        C_DOUBLE.withName("v_x"), C_DOUBLE.withName("v_y"), C_DOUBLE.withName("v_z"),
+        C_LONG.withName("vertex_id"), C_LONG.withName("element_id")).withName("laghos_mesh_point");
+
+    /** laghos_mesh_vertex_t */
+    public static final GroupLayout LAGHOS_MESH_VERTEX = MemoryLayout.structLayout(
+        C_LONG.withName("vertex_id"),
+        C_DOUBLE.withName("x"), C_DOUBLE.withName("y"), C_DOUBLE.withName("z")).withName("laghos_mesh_vertex");
+
+    /** laghos_mesh_element_attr_t */
+    public static final GroupLayout LAGHOS_MESH_ELEMENT_ATTR = MemoryLayout.structLayout(
+        C_DOUBLE.withName("e"), C_DOUBLE.withName("rho"),
+        C_DOUBLE.withName("v_x"), C_DOUBLE.withName("v_y"), C_DOUBLE.withName("v_z"),
+        C_LONG.withName("vertex_id"), C_LONG.withName("element_id")).withName("laghos_mesh_element_attr");
+
+    /** laghos_mesh_element_geom_t */
+    public static final GroupLayout LAGHOS_MESH_ELEMENT_GEOM = MemoryLayout.structLayout(
+        MemoryLayout.sequenceLayout(LaghosMeshBlock.MAX_VERTICES_PER_ELEMENT, C_LONG).withName("vertexes"),
+        C_LONG.withName("element_id")).withName("laghos_mesh_element_geom");
+
+    /** laghos_mesh_columns_t, one pointer per column */
+    public static final GroupLayout LAGHOS_MESH_COLUMNS = MemoryLayout.structLayout(
+        C_POINTER.withName("x"), C_POINTER.withName("y"), C_POINTER.withName("z"),
+        C_POINTER.withName("e"), C_POINTER.withName("rho"),
+        C_POINTER.withName("v_x"), C_POINTER.withName("v_y"), C_POINTER.withName("v_z"),
+        C_POINTER.withName("vertex_id"), C_POINTER.withName("element_id")).withName("laghos_mesh_columns");
+
+    /** mfem_mesh_iterator_t */
+    public static final GroupLayout MFEM_MESH_ITERATOR = MemoryLayout.structLayout(
+        C_LONG.withName("cur_idx"), C_POINTER.withName("visited_verts"),
+        C_LONG.withName("nvv")).withName("mfem_mesh_iterator");
+
+    /** The byte offset of cur_idx within an iterator */
+    static final long CUR_IDX_OFFSET = MFEM_MESH_ITERATOR.byteOffset(PathElement.groupElement("cur_idx"));
+
+    private MFEMForeign() {
+    }
+
+    /** @return a handle to the Laghos mesh in the given files */
+    public static int laghosMeshOpen(String meshFile, String eFile, String rhoFile, String vFile) {
+        try (ResourceScope scope = ResourceScope.newConfinedScope()) {
+            return (int)Functions.LAGHOS_MESH_OPEN.invokeExact(CLinker.toCString(meshFile, scope).address(),
+                                                               CLinker.toCString(eFile, scope).address(),
+                                                               CLinker.toCString(rhoFile, scope).address(),
+                                                               CLinker.toCString(vFile, scope).address());
+        } catch (Throwable t) {
+            throw new IllegalStateException("mfem_laghos_mesh_open failed", t);
+        }
+    }
+
+    /** Close a mesh opened by laghosMeshOpen */
+    public static int laghosMeshClose(int handle) {
+        try {
+            return (int)Functions.LAGHOS_MESH_CLOSE.invokeExact(handle);
+        } catch (Throwable t) {
+            throw new IllegalStateException("mfem_laghos_mesh_close failed", t);
+        }
+    }
+
+    /** @return the number of elements in a mesh */
+    public static long laghosMeshGetNumElements(int handle) {
+        try {
+            return (long)Functions.LAGHOS_MESH_GET_NUM_ELEMENTS.invokeExact(handle);
+        } catch (Throwable t) {
+            throw new IllegalStateException("mfem_laghos_mesh_get_num_elements failed", t);
+        }
+    }
+
+    /** @return the number of points in a mesh */
+    public static long laghosMeshGetNumPoints(int handle) {
+        try {
+            return (long)Functions.LAGHOS_MESH_GET_NUM_POINTS.invokeExact(handle);
+        } catch (Throwable t) {
+            throw new IllegalStateException("mfem_laghos_mesh_get_num_points failed", t);
+        }
+    }
+
+    /** @return true if iterator, an MFEM_MESH_ITERATOR, is past the last element */
+    public static boolean laghosMeshAtEnd(int handle, MemorySegment iterator) {
+        try {
+            return 0 != (int)Functions.LAGHOS_MESH_AT_END.invokeExact(handle, iterator.address());
+        } catch (Throwable t) {
+            throw new IllegalStateException("mfem_laghos_mesh_at_end failed", t);
+        }
+    }
+
+    /**
+     * Read whole elements into an array of LAGHOS_MESH_POINT records
+     *
+     * @return the number of points read
+     */
+    public static int laghosMeshReadPoints(int handle, MemorySegment iterator, MemorySegment points, long npoints) {
+        try {
+            return (int)Functions.LAGHOS_MESH_READ_POINTS.invokeExact(handle, iterator.address(),
+                                                                      points.address(), npoints);
+        } catch (Throwable t) {
+            throw new IllegalStateException("mfem_laghos_mesh_read_points failed", t);
+        }
+    }
+
+    /**
+     * Read whole elements into the columns of a LAGHOS_MESH_COLUMNS struct
+     *
+     * @return the number of points read into each column
+     */
+    public static int laghosMeshReadColumns(int handle, MemorySegment iterator, MemorySegment columns, long npoints) {
+        try {
+            return (int)Functions.LAGHOS_MESH_READ_COLUMNS.invokeExact(handle, iterator.address(),
+                                                                       columns.address(), npoints);
+        } catch (Throwable t) {
+            throw new IllegalStateException("mfem_laghos_mesh_read_columns failed", t);
+        }
+    }
+
+    /**
+     * Fill a LAGHOS_MESH_COLUMNS struct
+     *
+     * @param columns the 8 field columns in LaghosField order followed by the element id column
+     * @param vertexIds the vertex id column, or null to skip the vertex ids
+     */
+    public static void setColumns(MemorySegment struct, MemorySegment[] columns, MemorySegment vertexIds) {
+        for (LaghosField f : LaghosField.values()) {
+            setColumn(struct, f.fieldName(), columns[f.dim()].address());
+        }
+        setColumn(struct, "vertex_id", (null == vertexIds) ? MemoryAddress.NULL : vertexIds.address());
+        setColumn(struct, "element_id", columns[LaghosColumnBatch.ELEMENT_ID_COLUMN].address());
+    }
+
+    static void setColumn(MemorySegment struct, String name, MemoryAddress column) {
+        MemoryAccess.setAddressAtOffset(struct, LAGHOS_MESH_COLUMNS.byteOffset(PathElement.groupElement(name)),
+                                        column);
+    }
+
+    /** @return the element the iterator points at */
+    public static long getCurIdx(MemorySegment iterator) {
+        return MemoryAccess.getLongAtOffset(iterator, CUR_IDX_OFFSET);
+    }
+
+    /** Point the iterator at an element */
+    public static void setCurIdx(MemorySegment iterator, long element) {
+        MemoryAccess.setLongAtOffset(iterator, CUR_IDX_OFFSET, element);
+    }
+
+    /**
+     * The downcall handles, bound along with the library on first use
+     */
+    static final class Functions {
+        static final SymbolLookup LOOKUP = load();
+
+        static final MethodHandle LAGHOS_MESH_OPEN = bind("mfem_laghos_mesh_open",
+            MethodType.methodType(int.class, MemoryAddress.class, MemoryAddress.class,
+                                  MemoryAddress.class, MemoryAddress.class),
+            FunctionDescriptor.of(C_INT, C_POINTER, C_POINTER, C_POINTER, C_POINTER));
+
+        static final MethodHandle LAGHOS_MESH_CLOSE = bind("mfem_laghos_mesh_close",
+            MethodType.methodType(int.class, int.class),
+            FunctionDescriptor.of(C_INT, C_INT));
+
+        static final MethodHandle LAGHOS_MESH_GET_NUM_ELEMENTS = bind("mfem_laghos_mesh_get_num_elements",
+            MethodType.methodType(long.class, int.class),
+            FunctionDescriptor.of(C_LONG, C_INT));
+
+        static final MethodHandle LAGHOS_MESH_GET_NUM_POINTS = bind("mfem_laghos_mesh_get_num_points",
+            MethodType.methodType(long.class, int.class),
+            FunctionDescriptor.of(C_LONG, C_INT));
+
+        static final MethodHandle LAGHOS_MESH_AT_END = bind("mfem_laghos_mesh_at_end",
+            MethodType.methodType(int.class, int.class, MemoryAddress.class),
+            FunctionDescriptor.of(C_INT, C_INT, C_POINTER));
+
+        static final MethodHandle LAGHOS_MESH_READ_POINTS = bind("mfem_laghos_mesh_read_points",
+            MethodType.methodType(int.class, int.class, MemoryAddress.class, MemoryAddress.class, long.class),
+            FunctionDescriptor.of(C_INT, C_INT, C_POINTER, C_POINTER, C_LONG));
+
+        static final MethodHandle LAGHOS_MESH_READ_COLUMNS = bind("mfem_laghos_mesh_read_columns",
+            MethodType.methodType(int.class, int.class, MemoryAddress.class, MemoryAddress.class, long.class),
+            FunctionDescriptor.of(C_INT, C_INT, C_POINTER, C_POINTER, C_LONG));
+
+        /** Load mfem-utils from java.library.path, falling back to the build directory */
+        static SymbolLookup load() {
+            try {
+                System.loadLibrary("mfem-utils");
+            } catch (UnsatisfiedLinkError e) {
+                System.load(LaghosMeshReader.SHARED_OBJ_DIR + "/" + System.mapLibraryName("mfem-utils"));
+            }
+            return SymbolLookup.loaderLookup();
+        }
+
+        static MethodHandle bind(String name, MethodType type, FunctionDescriptor descriptor) {
+            MemoryAddress symbol = LOOKUP.lookup(name)
+                .orElseThrow(() -> new UnsatisfiedLinkError("mfem-utils has no symbol " + name));
+            return CLinker.getInstance().downcallHandle(symbol, type, descriptor);
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package sci.mfem;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An MFEM grid function read from its ASCII form, evaluated at element
+ * vertices the way GridFunction::GetNodalValues does.
+ *
+ * H1 spaces number the vertex degrees of freedom first, so the value at a
+ * vertex is read directly from the vertex's dof. L2 spaces store the dofs of
+ * each element contiguously in lexicographic tensor order; the value at a
+ * vertex is the element's basis evaluated at the reference corner. Only
+ * tensor product elements (segments, quadrilaterals and hexahedra) are
+ * supported.
+ */
+public class MFEMGridFunction {
+
+    /** Values of the same component are stored together */
+    public static final int ORDERING_BY_NODES = 0;
+
+    /** The components of each dof are stored together */
+    public static final int ORDERING_BY_VDIM = 1;
+
+    /** MFEM basis types used by the L2 collections */
+    static final int GAUSS_LEGENDRE = 0;
+    static final int GAUSS_LOBATTO = 1;
+    static final int POSITIVE = 2;
+    static final int OPEN_UNIFORM = 3;
+    static final int CLOSED_UNIFORM = 4;
+    static final int OPEN_HALF_UNIFORM = 5;
+
+    /** Collection names such as H1_3D_P2, L2_3D_P1 and L2_T2_3D_P2 */
+    static final Pattern FEC_NAME = Pattern.compile("(H1[A-Za-z@]*|L2)(?:_T(\\d+))?_(\\d)D_P(\\d+)");
+
+    /**
+     * Create a grid function
+     *
+     * @param fecName the FiniteElementCollection name
+     * @param vdim the number of components
+     * @param ordering ORDERING_BY_NODES or ORDERING_BY_VDIM
+     * @param values the dof values
+     */
+    public MFEMGridFunction(String fecName, int vdim, int ordering, double[] values) throws IOException {
+        Matcher m = FEC_NAME.matcher(fecName);
+        if (!m.matches()) {
+            throw new IOException("Unsupported FiniteElementCollection " + fecName);
+        }
+        this.fecName = fecName;
+        this.continuous = m.group(1).startsWith("H1");
+        this.basisType = (null == m.group(2)) ? GAUSS_LEGENDRE : Integer.parseInt(m.group(2));
+        this.dim = Integer.parseInt(m.group(3));
+        this.order = Integer.parseInt(m.group(4));
+        if (this.dim < 1 || this.dim > 3) {
+            throw new IOException("Unsupported dimension in " + fecName);
+        }
+        if (ORDERING_BY_NODES != ordering && ORDERING_BY_VDIM != ordering) {
+            throw new IOException("Unknown ordering " + ordering);
+        }
+        this.vdim = vdim;
+        this.ordering = ordering;
+        this.values = values;
+        this.ndofs = values.length / vdim;
+
+        int n = this.order + 1;
+        this.dofsPerElement = (int)Math.pow(n, this.dim);
+        if (!this.continuous) {
+            buildCornerWeights(n);
+        }
+    }
+
+    /** Read a grid function file, parsing its values on nThreads threads */
+    public static MFEMGridFunction read(Path path, int nThreads) throws IOException {
+        try (MFEMTextReader r = new MFEMTextReader(path)) {
+            return read(r, nThreads);
+        }
+    }
+
+    /** Read a grid function that starts at the reader's next token */
+    static MFEMGridFunction read(MFEMTextReader r, int nThreads) throws IOException {
+        r.expect("FiniteElementSpace");
+        r.expect("FiniteElementCollection:");
+        String fecName = r.nextToken();
+        r.expect("VDim:");
+        int vdim = (int)r.nextLong();
+        r.expect("Ordering:");
+        int ordering = (int)r.nextLong();
+        return new MFEMGridFunction(fecName, vdim, ordering, r.readRemainingDoubles(nThreads));
+    }
+
+    /** @return the FiniteElementCollection name */
+    public String getCollectionName() {
+        return this.fecName;
+    }
+
+    /** @return the number of components */
+    public int getVDim() {
+        return this.vdim;
+    }
+
+    /** @return true for H1 (continuous) spaces, false for L2 spaces */
+    public boolean isContinuous() {
+        return this.continuous;
+    }
+
+    /** @return the dimension of the elements the space is defined on */
+    public int getDimension() {
+        return this.dim;
+    }
+
+    /** @return the number of dofs per component */
+    public int getNumDofs() {
+        return this.ndofs;
+    }
+
+    /**
+     * Check that this function can be evaluated over a mesh
+     */
+    public void validate(MFEMMesh mesh, String name) throws IOException {
+        if (mesh.getDimension() != this.dim) {
+            throw new IOException(name + " is " + this.dim + "D but the mesh is " + mesh.getDimension() + "D");
+        }
+        if (0 != this.values.length % this.vdim) {
+            throw new IOException(name + " has " + this.values.length + " values for " + this.vdim + " components");
+        }
+        long required = this.continuous ? mesh.getNumVertices() : mesh.getNumElements() * this.dofsPerElement;
+        if (this.continuous ? this.ndofs < required : this.ndofs != required) {
+            throw new IOException(name + " has " + this.ndofs + " dofs but the mesh requires " + required);
+        }
+    }
+
+    /**
+     * @param element the element index
+     * @param corner the element local vertex
+     * @param vertex the mesh vertex at that corner
+     * @param component the zero based component
+     * @return the value of the component at the vertex of the element
+     */
+    public double vertexValue(int element, int corner, int vertex, int component) {
+        if (this.continuous) {
+            return this.values[index(vertex, component)];
+        }
+        long base = (long)element * this.dofsPerElement;
+        int[] dofs = this.cornerDofs[corner];
+        double[] weights = this.cornerWeights[corner];
+        double value = 0.0;
+        for (int k = 0; k < dofs.length; k++) {
+            value += weights[k] * this.values[index(base + dofs[k], component)];
+        }
+        return value;
+    }
+
+    int index(long dof, int component) {
+        return (int)((ORDERING_BY_NODES == this.ordering) ? component * (long)this.ndofs + dof
+                                                          : dof * this.vdim + component);
+    }
+
+    /**
+     * Tabulate, for each reference corner, the element dofs whose basis
+     * functions are nonzero there and their values
+     */
+    void buildCornerWeights(int n) throws IOException {
+        double[][] ends = endpointValues(n);
+        int[][] corners = MFEMMesh.TENSOR_CORNERS[this.dim];
+        this.cornerDofs = new int[corners.length][];
+        this.cornerWeights = new double[corners.length][];
+        for (int c = 0; c < corners.length; c++) {
+            int[] dofs = new int[this.dofsPerElement];
+            double[] weights = new double[this.dofsPerElement];
+            int nonzero = 0;
+            for (int dof = 0; dof < this.dofsPerElement; dof++) {
+                double w = 1.0;
+                int rest = dof;
+                for (int d = 0; d < this.dim; d++) {
+                    w *= ends[corners[c][d]][rest % n];
+                    rest /= n;
+                }
+                if (0.0 != w) {
+                    dofs[nonzero] = dof;
+                    weights[nonzero++] = w;
+                }
+            }
+            this.cornerDofs[c] = Arrays.copyOf(dofs, nonzero);
+            this.cornerWeights[c] = Arrays.copyOf(weights, nonzero);
+        }
+    }
+
+    /**
+     * @return the n 1D basis functions evaluated at 0 (row 0) and 1 (row 1)
+     */
+    double[][] endpointValues(int n) throws IOException {
+        double[][] ends = new double[2][n];
+        switch (this.basisType) {
+            case GAUSS_LOBATTO:
+            case POSITIVE:
+            case CLOSED_UNIFORM:
+                // Closed bases interpolate at the endpoints
+                ends[0][0] = 1.0;
+                ends[1][n - 1] = 1.0;
+                return ends;
+            case GAUSS_LEGENDRE:
+                return lagrangeAtEndpoints(gaussLegendrePoints(n));
+            case OPEN_UNIFORM: {
+                double[] x = new double[n];
+                for (int i = 0; i < n; i++) {
+                    x[i] = (i + 1.0) / (n + 1.0);
+                }
+                return lagrangeAtEndpoints(x);
+            }
+            case OPEN_HALF_UNIFORM: {
+                double[] x = new double[n];
+                for (int i = 0; i < n; i++) {
+                    x[i] = (i + 0.5) / n;
+                }
+                return lagrangeAtEndpoints(x);
+            }
+            default:
+                throw new IOException("Unsupported basis type " + this.basisType + " in " + this.fecName);
+        }
+    }
+
+    /** @return the Lagrange basis through nodes x evaluated at 0 and 1 */
+    static double[][] lagrangeAtEndpoints(double[] x) {
+        int n = x.length;
+        double[][] ends = new double[2][n];
+        for (int e = 0; e < 2; e++) {
+            for (int i = 0; i < n; i++) {
+                double l = 1.0;
+                for (int j = 0; j < n; j++) {
+                    if (j != i) {
+                        l *= (e - x[j]) / (x[i] - x[j]);
+                    }
+                }
+                ends[e][i] = l;
+            }
+        }
+        return ends;
+    }
+
+    /** @return the n Gauss-Legendre points on [0, 1] in increasing order */
+    static double[] gaussLegendrePoints(int n) {
+        double[] x = new double[n];
+        for (int i = 0; i < n; i++) {
+            // Newton iteration on the Legendre polynomial from the
+            // Chebyshev-like initial guess, roots come out decreasing on [-1, 1]
+            double t = Math.cos(Math.PI * (i + 0.75) / (n + 0.5));
+            for (int iter = 0; iter < 100; iter++) {
+                double p0 = 1.0;
+                double p1 = t;
+                for (int k = 2; k <= n; k++) {
+                    double p2 = ((2 * k - 1) * t * p1 - (k - 1) * p0) / k;
+                    p0 = p1;
+                    p1 = p2;
+                }
+                double dp = n * (t * p1 - p0) / (t * t - 1.0);
+                double dt = p1 / dp;
+                t -= dt;
+                if (Math.abs(dt) < 1e-16) {
+                    break;
+                }
+            }
+            x[i] = (1.0 - t) / 2.0;
+        }
+        return x;
+    }
+
+    // FiniteElementCollection name
+    final String fecName;
+
+    // True for H1 spaces
+    final boolean continuous;
+
+    // Basis type, only used by L2 spaces
+    final int basisType;
+
+    // Element dimension and polynomial order
+    final int dim, order;
+
+    // Number of components and their ordering
+    final int vdim, ordering;
+
+    // Dof values
+    final double[] values;
+
+    // Number of dofs per component
+    final int ndofs;
+
+    // Dofs of each L2 element
+    final int dofsPerElement;
+
+    // For each reference corner, the L2 dofs and weights that evaluate it
+    int[][] cornerDofs;
+    double[][] cornerWeights;
+}
@@ -0,0 +1,192 @@
+package sci.mfem;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * An MFEM mesh read from the ASCII "MFEM mesh v1.x" format.
+ *
+ * Only conforming meshes made of a single tensor product geometry are
+ * supported, which covers the segment, quadrilateral and hexahedral meshes
+ * Laghos writes. Vertex coordinates come either from the vertices section or,
+ * for high order meshes, from the vertex values of the nodes grid function.
+ */
+public class MFEMMesh {
+
+    /** MFEM Geometry::Type codes */
+    static final int GEOMETRY_SEGMENT = 1;
+    static final int GEOMETRY_SQUARE = 3;
+    static final int GEOMETRY_CUBE = 5;
+
+    /** Number of vertices of each MFEM geometry type */
+    static final int[] GEOMETRY_VERTICES = {1, 2, 3, 4, 4, 8, 6, 5};
+
+    /** Tensor product geometry of each dimension */
+    static final int[] TENSOR_GEOMETRY = {-1, GEOMETRY_SEGMENT, GEOMETRY_SQUARE, GEOMETRY_CUBE};
+
+    /** Reference coordinates of the corners of the tensor geometries, in MFEM vertex order */
+    static final int[][][] TENSOR_CORNERS = {
+        {},
+        {{0}, {1}},
+        {{0, 0}, {1, 0}, {1, 1}, {0, 1}},
+        {{0, 0, 0}, {1, 0, 0}, {1, 1, 0}, {0, 1, 0},
+         {0, 0, 1}, {1, 0, 1}, {1, 1, 1}, {0, 1, 1}}
+    };
+
+    /** Read a mesh file, parsing any nodes on nThreads threads */
+    public static MFEMMesh read(Path path, int nThreads) throws IOException {
+        try (MFEMTextReader r = new MFEMTextReader(path)) {
+            return new MFEMMesh(r, nThreads);
+        }
+    }
+
+    MFEMMesh(MFEMTextReader r, int nThreads) throws IOException {
+        r.expect("MFEM");
+        String kind = r.nextToken();
+        String version = r.nextToken();
+        if (!"mesh".equals(kind) || null == version || !version.startsWith("v1.")) {
+            throw new IOException("Unsupported mesh format MFEM " + kind + " " + version);
+        }
+
+        int dimension = -1;
+        int[] elementVertices = null;
+        int numElements = 0;
+        int numVertices = 0;
+        int spaceDim = 0;
+        double[] coordinates = null;
+        MFEMGridFunction nodes = null;
+        for (String section = r.nextToken(); null != section; section = r.nextToken()) {
+            if (section.equals("dimension")) {
+                dimension = (int)r.nextLong();
+                if (dimension < 1 || dimension > 3) {
+                    throw new IOException("Unsupported mesh dimension " + dimension);
+                }
+            } else if (section.equals("elements")) {
+                if (dimension < 0) {
+                    throw new IOException("Mesh elements precede the dimension");
+                }
+                numElements = (int)r.nextLong();
+                int nv = GEOMETRY_VERTICES[TENSOR_GEOMETRY[dimension]];
+                elementVertices = new int[Math.multiplyExact(numElements, nv)];
+                for (int i = 0; i < numElements; i++) {
+                    r.nextLong(); // attribute
+                    long geometry = r.nextLong();
+                    if (TENSOR_GEOMETRY[dimension] != geometry) {
+                        throw new IOException("Element " + i + " has unsupported geometry " + geometry);
+                    }
+                    for (int j = 0; j < nv; j++) {
+                        elementVertices[i * nv + j] = (int)r.nextLong();
+                    }
+                }
+            } else if (section.equals("boundary")) {
+                long numBoundary = r.nextLong();
+                for (long i = 0; i < numBoundary; i++) {
+                    r.nextLong(); // attribute
+                    int geometry = (int)r.nextLong();
+                    if (geometry < 0 || geometry >= GEOMETRY_VERTICES.length) {
+                        throw new IOException("Boundary element " + i + " has unknown geometry " + geometry);
+                    }
+                    for (int j = 0; j < GEOMETRY_VERTICES[geometry]; j++) {
+                        r.nextLong();
+                    }
+                }
+            } else if (section.equals("vertices")) {
+                numVertices = (int)r.nextLong();
+                String next = r.nextToken();
+                if ("nodes".equals(next)) {
+                    // A high order mesh, the nodes run to the end of the mesh
+                    nodes = MFEMGridFunction.read(r, nThreads);
+                    spaceDim = nodes.getVDim();
+                    break;
+                }
+                spaceDim = Integer.parseInt(next);
+                coordinates = new double[Math.multiplyExact(numVertices, spaceDim)];
+                for (int i = 0; i < coordinates.length; i++) {
+                    coordinates[i] = r.nextDouble();
+                }
+            } else if (section.equals("mfem_serial_mesh_end") || section.equals("mfem_mesh_end")) {
+                break;
+            } else {
+                throw new IOException("Unsupported mesh section " + section);
+            }
+        }
+        if (null == elementVertices || (null == coordinates && null == nodes)) {
+            throw new IOException("Mesh has no elements or no vertices");
+        }
+
+        this.dim = dimension;
+        this.spaceDim = spaceDim;
+        this.numElements = numElements;
+        this.numVertices = numVertices;
+        this.verticesPerElement = GEOMETRY_VERTICES[TENSOR_GEOMETRY[dimension]];
+        this.elementVertices = elementVertices;
+        this.coordinates = coordinates;
+        this.nodes = nodes;
+        if (null != nodes) {
+            nodes.validate(this, "Mesh nodes");
+        }
+    }
+
+    /** @return the dimension of the elements */
+    public int getDimension() {
+        return this.dim;
+    }
+
+    /** @return the number of coordinates of each vertex */
+    public int getSpaceDimension() {
+        return this.spaceDim;
+    }
+
+    /** @return the number of elements */
+    public int getNumElements() {
+        return this.numElements;
+    }
+
+    /** @return the number of vertices */
+    public int getNumVertices() {
+        return this.numVertices;
+    }
+
+    /** @return the number of vertices of every element */
+    public int getVerticesPerElement() {
+        return this.verticesPerElement;
+    }
+
+    /** @return the mesh vertex at corner j of element i */
+    public int getElementVertex(int i, int j) {
+        return this.elementVertices[i * this.verticesPerElement + j];
+    }
+
+    /**
+     * @return coordinate c of the vertex at corner j of element i, or 0 if
+     *         the mesh has fewer than c + 1 space dimensions
+     */
+    public double getCoordinate(int i, int j, int c) {
+        if (c >= this.spaceDim) {
+            return 0.0;
+        }
+        int vertex = getElementVertex(i, j);
+        if (null != this.nodes) {
+            return this.nodes.vertexValue(i, j, vertex, c);
+        }
+        return this.coordinates[vertex * this.spaceDim + c];
+    }
+
+    // Element dimension and vertex coordinate dimension
+    final int dim, spaceDim;
+
+    // Number of elements and vertices
+    final int numElements, numVertices;
+
+    // Vertices of each element
+    final int verticesPerElement;
+
+    // Mesh vertex at each element corner, element major
+    final int[] elementVertices;
+
+    // Vertex coordinates, vertex major, or null when the mesh has nodes
+    final double[] coordinates;
+
+    // High order node positions, or null
+    final MFEMGridFunction nodes;
+}
@@ -0,0 +1,437 @@
+package sci.mfem;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Tokenizes the ASCII MFEM mesh and grid function formats.
+ *
+ * Files are read through a FileChannel and transparently gunzipped when they
+ * start with the gzip magic bytes. Headers are read a token at a time, while
+ * the long runs of values that make up most of a file are cut into blocks on
+ * whitespace boundaries and parsed on a pool of threads. Numbers are parsed
+ * straight from the bytes without creating Strings.
+ */
+public class MFEMTextReader implements Closeable {
+
+    /** Size of the read buffer and of each block parsed in parallel */
+    static final int DEFAULT_BLOCK_SIZE = 4*1024*1024;
+
+    /** Exactly representable powers of ten */
+    static final double[] POW10 = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /** Open a plain or gzipped MFEM file */
+    public MFEMTextReader(Path path) throws IOException {
+        this(path, DEFAULT_BLOCK_SIZE);
+    }
+
+    MFEMTextReader(Path path, int blockSize) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        ByteBuffer magic = ByteBuffer.allocate(2);
+        this.channel.read(magic, 0);
+        InputStream stream = Channels.newInputStream(this.channel);
+        if (2 == magic.position() && 0x1f == (magic.get(0) & 0xff) && 0x8b == (magic.get(1) & 0xff)) {
+            stream = new GZIPInputStream(stream, 64*1024);
+        }
+        this.in = stream;
+        this.buf = new byte[blockSize];
+        this.pos = 0;
+        this.limit = 0;
+    }
+
+    /** @return the next whitespace delimited token or null at the end of the file */
+    public String nextToken() throws IOException {
+        if (!advance()) {
+            return null;
+        }
+        return new String(this.buf, this.tokStart, this.tokEnd - this.tokStart, StandardCharsets.US_ASCII);
+    }
+
+    /** Read the next token and fail unless it is expected */
+    public void expect(String expected) throws IOException {
+        String token = nextToken();
+        if (!expected.equals(token)) {
+            throw new IOException("Expected '" + expected + "' but found '" + token + "'");
+        }
+    }
+
+    /** @return the next token parsed as an integer */
+    public long nextLong() throws IOException {
+        if (!advance()) {
+            throw new IOException("Expected an integer at the end of the file");
+        }
+        int i = this.tokStart;
+        boolean negative = ('-' == this.buf[i]);
+        if (negative || '+' == this.buf[i]) {
+            i++;
+        }
+        if (i == this.tokEnd) {
+            throw new IOException("Invalid integer '" + tokenString() + "'");
+        }
+        long value = 0;
+        for (; i < this.tokEnd; i++) {
+            int d = this.buf[i] - '0';
+            if (d < 0 || d > 9) {
+                throw new IOException("Invalid integer '" + tokenString() + "'");
+            }
+            value = value * 10 + d;
+        }
+        return negative ? -value : value;
+    }
+
+    /** @return the next token parsed as a double */
+    public double nextDouble() throws IOException {
+        if (!advance()) {
+            throw new IOException("Expected a number at the end of the file");
+        }
+        if (!isNumberStart(this.buf[this.tokStart])) {
+            throw new IOException("Invalid number '" + tokenString() + "'");
+        }
+        return parseDouble(this.buf, this.tokStart, this.tokEnd);
+    }
+
+    /**
+     * Parse every number up to the end of the file, or up to the first token
+     * that is not a number, using nThreads threads.
+     *
+     * The unread input is cut into blocks that end on whitespace. A fixed set
+     * of block buffers is recycled between the reading thread and the parsers,
+     * so reading stalls rather than buffering the file when parsing falls
+     * behind. The reader is at the end of the file afterwards.
+     */
+    public double[] readRemainingDoubles(int nThreads) throws IOException {
+        int nBuffers = 2 * Math.max(nThreads, 1) + 1;
+        BlockingQueue<byte[]> free = new ArrayBlockingQueue<>(nBuffers);
+        for (int i = 0; i < nBuffers; i++) {
+            free.add(new byte[this.buf.length]);
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(nThreads, 1));
+        List<Future<Block>> blocks = new ArrayList<>();
+        try {
+            // Start with whatever the tokenizer has already buffered
+            int carry = this.limit - this.pos;
+            byte[] pending = this.buf;
+            int pendingStart = this.pos;
+            boolean eof = false;
+            while (!eof) {
+                byte[] block = free.take();
+                System.arraycopy(pending, pendingStart, block, 0, carry);
+                int filled = carry;
+                while (filled < block.length) {
+                    int n = this.in.read(block, filled, block.length - filled);
+                    if (n < 0) {
+                        eof = true;
+                        break;
+                    }
+                    filled += n;
+                }
+
+                // Cut the block after its last whitespace, the partial token
+                // that follows is carried into the next block
+                int end = filled;
+                if (!eof) {
+                    while (end > 0 && !isSpace(block[end - 1])) {
+                        end--;
+                    }
+                    if (0 == end) {
+                        throw new IOException("Token longer than " + block.length + " bytes");
+                    }
+                }
+                carry = filled - end;
+                pending = block;
+                pendingStart = end;
+
+                // The carried bytes must be copied out before the block is
+                // recycled, so parse a copy of them with the next block
+                if (0 < carry) {
+                    byte[] tail = new byte[carry];
+                    System.arraycopy(block, end, tail, 0, carry);
+                    pending = tail;
+                    pendingStart = 0;
+                }
+                final int blockEnd = end;
+                blocks.add(pool.submit(() -> {
+                    try {
+                        return parseBlock(block, 0, blockEnd);
+                    } finally {
+                        free.add(block);
+                    }
+                }));
+            }
+
+            // Concatenate the blocks up to the first non-numeric token
+            List<double[]> parsed = new ArrayList<>(blocks.size());
+            long total = 0;
+            for (Future<Block> f : blocks) {
+                Block block = f.get();
+                parsed.add(block.values);
+                total += block.values.length;
+                if (block.terminated) {
+                    break;
+                }
+            }
+            if (total > Integer.MAX_VALUE - 8) {
+                throw new IOException("Too many values for one array: " + total);
+            }
+            double[] values = new double[(int)total];
+            int off = 0;
+            for (double[] block : parsed) {
+                System.arraycopy(block, 0, values, off, block.length);
+                off += block.length;
+            }
+            this.pos = 0;
+            this.limit = 0;
+            return values;
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted while parsing", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Parsing failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.in.close();
+        this.channel.close();
+    }
+
+    /** The numbers parsed from one block */
+    static class Block {
+        Block(double[] values, boolean terminated) {
+            this.values = values;
+            this.terminated = terminated;
+        }
+
+        // Parsed values in file order
+        final double[] values;
+
+        // True if the block ended at a token that is not a number
+        final boolean terminated;
+    }
+
+    /**
+     * Parse the numbers in b[begin, end), stopping at the first token that
+     * is not a number
+     */
+    static Block parseBlock(byte[] b, int begin, int end) {
+        // Count the tokens first so the values are allocated exactly once
+        int tokens = 0;
+        boolean inToken = false;
+        for (int i = begin; i < end; i++) {
+            boolean space = isSpace(b[i]);
+            if (!space && !inToken) {
+                tokens++;
+            }
+            inToken = !space;
+        }
+
+        double[] values = new double[tokens];
+        int n = 0;
+        int i = begin;
+        while (n < tokens) {
+            while (isSpace(b[i])) {
+                i++;
+            }
+            int start = i;
+            while (i < end && !isSpace(b[i])) {
+                i++;
+            }
+            if (!isNumberStart(b[start])) {
+                return new Block(Arrays.copyOf(values, n), true);
+            }
+            values[n++] = parseDouble(b, start, i);
+        }
+        return new Block(values, false);
+    }
+
+    /**
+     * Parse the decimal number in b[start, end) without allocating.
+     *
+     * Numbers whose significant digits fit in 53 bits and whose decimal
+     * exponent is within +/-22 are converted with a single correctly rounded
+     * multiply or divide. Anything else, including malformed input, falls back to
+     * Double.parseDouble so the result always matches it.
+     */
+    public static double parseDouble(byte[] b, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && ('-' == b[i] || '+' == b[i])) {
+            negative = ('-' == b[i]);
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean any = false;
+        for (; i < end && isDigit(b[i]); i++) {
+            any = true;
+            if (digits < 18) {
+                mantissa = mantissa * 10 + (b[i] - '0');
+                if (0 != mantissa) {
+                    digits++;
+                }
+            } else {
+                exponent++;
+                digits++;
+            }
+        }
+        if (i < end && '.' == b[i]) {
+            for (i++; i < end && isDigit(b[i]); i++) {
+                any = true;
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (b[i] - '0');
+                    if (0 != mantissa) {
+                        digits++;
+                    }
+                    exponent--;
+                } else {
+                    digits++;
+                }
+            }
+        }
+        if (any && i < end && ('e' == b[i] || 'E' == b[i])) {
+            i++;
+            boolean negativeExp = false;
+            if (i < end && ('-' == b[i] || '+' == b[i])) {
+                negativeExp = ('-' == b[i]);
+                i++;
+            }
+            int e = 0;
+            boolean expDigits = false;
+            for (; i < end && isDigit(b[i]); i++) {
+                expDigits = true;
+                e = Math.min(e * 10 + (b[i] - '0'), 100000);
+            }
+            if (!expDigits) {
+                any = false;
+            }
+            exponent += negativeExp ? -e : e;
+        }
+
+        if (any && i == end) {
+            if (0 == mantissa) {
+                return negative ? -0.0 : 0.0;
+            }
+            if (digits <= 18 && mantissa <= (1L << 53) && exponent >= -22 && exponent <= 22) {
+                double value = (exponent >= 0) ? mantissa * POW10[exponent] : mantissa / POW10[-exponent];
+                return negative ? -value : value;
+            }
+        }
+        return Double.parseDouble(new String(b, start, end - start, StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Move to the next token, refilling the buffer as needed. '#' starts a
+     * comment that runs to the end of the line.
+     *
+     * @return false at the end of the file
+     */
+    boolean advance() throws IOException {
+        while (true) {
+            if (this.pos == this.limit && !refill(0)) {
+                return false;
+            }
+            byte c = this.buf[this.pos];
+            if ('#' == c) {
+                while ('\n' != this.buf[this.pos]) {
+                    if (++this.pos == this.limit && !refill(0)) {
+                        return false;
+                    }
+                }
+            } else if (isSpace(c)) {
+                this.pos++;
+            } else {
+                break;
+            }
+        }
+
+        int start = this.pos;
+        while (true) {
+            if (this.pos == this.limit) {
+                // Move the partial token to the front and read more
+                int len = this.pos - start;
+                System.arraycopy(this.buf, start, this.buf, 0, len);
+                start = 0;
+                if (!refill(len)) {
+                    break;
+                }
+            }
+            if (isSpace(this.buf[this.pos])) {
+                break;
+            }
+            this.pos++;
+        }
+        this.tokStart = start;
+        this.tokEnd = this.pos;
+        return true;
+    }
+
+    /**
+     * Read more input after the first keep bytes of the buffer
+     *
+     * @return false at the end of the file
+     */
+    boolean refill(int keep) throws IOException {
+        if (keep == this.buf.length) {
+            throw new IOException("Token longer than " + this.buf.length + " bytes");
+        }
+        int n = this.in.read(this.buf, keep, this.buf.length - keep);
+        this.pos = keep;
+        this.limit = keep + Math.max(n, 0);
+        return n > 0;
+    }
+
+    String tokenString() {
+        return new String(this.buf, this.tokStart, this.tokEnd - this.tokStart, StandardCharsets.US_ASCII);
+    }
+
+    static boolean isSpace(byte c) {
+        return ' ' == c || '\n' == c || '\r' == c || '\t' == c || '\f' == c;
+    }
+
+    static boolean isDigit(byte c) {
+        return c >= '0' && c <= '9';
+    }
+
+    static boolean isNumberStart(byte c) {
+        return isDigit(c) || '-' == c || '+' == c || '.' == c;
+    }
+
+    // Channel the file is read through
+    final FileChannel channel;
+
+    // Decompressed (if necessary) file contents
+    final InputStream in;
+
+    // Read buffer
+    final byte[] buf;
+
+    // Next unread byte and end of the buffered bytes
+    int pos, limit;
+
+    // Bounds of the current token in buf
+    int tokStart, tokEnd;
+}
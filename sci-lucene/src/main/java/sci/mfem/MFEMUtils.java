@@ -4,6 +4,8 @@ import com.sun.jna.Library;
 import com.sun.jna.Native;
 import com.sun.jna.ptr.LongByReference;
 import com.sun.jna.Pointer;
+import com.sun.jna.Structure;
+import com.sun.jna.Structure.FieldOrder;
 
 /** JNA Class that provides access to the MFEM library */
 public interface MFEMUtils extends Library {
@@ -18,6 +20,8 @@ public interface MFEMUtils extends Library {
     int mfem_laghos_mesh_open(String mesh_filename, String e_gf_filename, String rho_gf_filename, String v_gf_filename);
     
     int mfem_lagos_mesh_close(int mesh_handle);
+
+    int mfem_laghos_mesh_close(int mesh_handle);
     
     int mfem_laghos_mesh_read(int mesh_handle, LongByReference cur, Pointer pointArray, long npoints);
 
@@ -27,4 +31,20 @@ public interface MFEMUtils extends Library {
 
     int mfem_laghos_mesh_get_num_points(int mesh_handle);
 
+    /** The mfem_mesh_iterator_t struct, which tracks the vertices already read */
+    @FieldOrder({"cur_idx", "visited_verts", "nvv"})
+    class MFEMMeshIterator extends Structure {
+        public long cur_idx;
+        public Pointer visited_verts;
+        public long nvv;
+    }
+
+    int mfem_mesh_iterator_init(MFEMMeshIterator cur);
+
+    void mfem_mesh_iterator_destroy(MFEMMeshIterator cur);
+
+    int mfem_laghos_mesh_read_ve(int mesh_handle, MFEMMeshIterator cur,
+                                 Pointer verts, LongByReference nverts,
+                                 Pointer eattrs, Pointer egeoms, LongByReference neles);
+
 }
@@ -0,0 +1,94 @@
+package sci.mfem;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.BitSet;
+
+/**
+ * Fills the tables of a LaghosMeshBlock one element vertex at a time for the
+ * Java mesh sources, skipping vertices returned since the last restart.
+ */
+class MeshBlockBuilder {
+
+    /**
+     * @param maxElements the most elements a block holds
+     * @param verticesPerElement the vertices of each element
+     */
+    MeshBlockBuilder(int maxElements, int verticesPerElement) {
+        int maxPoints = maxElements * verticesPerElement;
+        this.verticesPerElement = verticesPerElement;
+        this.vertices = ByteBuffer.allocateDirect(maxPoints * LaghosMeshBlock.VERTEX_SIZE).order(ByteOrder.nativeOrder());
+        this.attrs = ByteBuffer.allocateDirect(maxPoints * LaghosMeshBlock.ATTR_SIZE).order(ByteOrder.nativeOrder());
+        this.geoms = ByteBuffer.allocateDirect(maxElements * LaghosMeshBlock.GEOM_SIZE).order(ByteOrder.nativeOrder());
+        this.visited = new BitSet();
+        this.block = new LaghosMeshBlock();
+    }
+
+    /** Forget the vertices returned so far */
+    void restart() {
+        this.visited.clear();
+    }
+
+    /** Start a new block */
+    void clear() {
+        this.vertices.clear();
+        this.attrs.clear();
+        this.geoms.clear();
+        this.numVertices = 0;
+        this.numElements = 0;
+    }
+
+    /**
+     * Add vertex j of the current element, starting a new element at j = 0.
+     * The vertex's coordinates are only stored the first time it is added.
+     */
+    void add(long elementId, int j, long vertexId, double x, double y, double z,
+             double e, double rho, double vX, double vY, double vZ) {
+        if (0 == j) {
+            this.geoms.putLong(this.numElements * LaghosMeshBlock.GEOM_SIZE + LaghosMeshBlock.GEOM_ELEMENT_ID_OFFSET,
+                               elementId);
+            this.numElements++;
+        }
+        int k = this.numElements - 1;
+        this.geoms.putLong(k * LaghosMeshBlock.GEOM_SIZE + j * Long.BYTES, vertexId);
+
+        if (!this.visited.get((int)vertexId)) {
+            this.visited.set((int)vertexId);
+            this.vertices.putLong(vertexId);
+            this.vertices.putDouble(x);
+            this.vertices.putDouble(y);
+            this.vertices.putDouble(z);
+            this.numVertices++;
+        }
+
+        this.attrs.putDouble(e);
+        this.attrs.putDouble(rho);
+        this.attrs.putDouble(vX);
+        this.attrs.putDouble(vY);
+        this.attrs.putDouble(vZ);
+        this.attrs.putLong(vertexId);
+        this.attrs.putLong(elementId);
+    }
+
+    /** @return the block holding everything added since clear */
+    LaghosMeshBlock build(long firstPointIndex) {
+        this.block.reset(this.vertices, this.numVertices, this.attrs, this.geoms,
+                         this.numElements, this.verticesPerElement, firstPointIndex);
+        return this.block;
+    }
+
+    // Vertices of each element
+    final int verticesPerElement;
+
+    // Tables of the block being built
+    final ByteBuffer vertices, attrs, geoms;
+
+    // Ids of the vertices returned since the last restart
+    final BitSet visited;
+
+    // Flyweight handed out by build
+    final LaghosMeshBlock block;
+
+    // Vertices and elements in the block being built
+    int numVertices, numElements;
+}
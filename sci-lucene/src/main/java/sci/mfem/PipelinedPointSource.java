@@ -0,0 +1,375 @@
+package sci.mfem;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Overlaps fetching points from a source with consuming them.
+ *
+ * A fetcher thread pulls batches from the wrapped source, copies each into
+ * one of a fixed set of direct buffers and queues it. Consumers take filled
+ * buffers off the queue and hand them back once done, so with two buffers
+ * the next batch is fetched while the current one is indexed (double
+ * buffering), and with three a slow batch on either side is absorbed. When
+ * every buffer is queued the fetcher blocks until a consumer returns one,
+ * which bounds memory and throttles the fetcher to the consumers' pace.
+ *
+ * Time spent blocked is recorded on both sides: fetch stall is the fetcher
+ * waiting for a free buffer (the consumers are the bottleneck), consume
+ * stall is a consumer waiting for a filled one (the fetch is). Ideally
+ * total time approaches max(fetch, consume) instead of their sum.
+ *
+ * The pipeline serves one consumer through getNextLaghosPointBatch, where
+ * a batch stays valid until the next call, or several at once through
+ * consume. When one of several consumers fails the others are stopped
+ * before consume throws, and the pipeline yields no more batches until it
+ * is reset.
+ */
+public class PipelinedPointSource implements LaghosPointSource {
+
+    /** The default number of buffers, enough to triple buffer */
+    public static final int DEFAULT_DEPTH = 3;
+
+    /** Receives the batches of a pipeline on a consumer thread */
+    public interface BatchConsumer {
+        void accept(LaghosPointBatch batch) throws IOException;
+    }
+
+    /**
+     * Wrap a source
+     *
+     * @param depth the number of buffers, at least 2
+     */
+    public PipelinedPointSource(LaghosPointSource source, int depth) {
+        if (depth < 2) {
+            throw new IllegalArgumentException("A pipeline needs at least 2 buffers, not " + depth);
+        }
+        this.source = source;
+        this.depth = depth;
+        this.free = new ArrayBlockingQueue<>(depth);
+        this.ready = new ArrayBlockingQueue<>(depth + 1);
+        for (int i = 0; i < depth; i++) {
+            this.free.add(new Block());
+        }
+        this.batch = new LaghosPointBatch();
+        this.fetchNanos = new AtomicLong();
+        this.fetchStallNanos = new AtomicLong();
+        this.consumeStallNanos = new AtomicLong();
+        this.batches = new AtomicLong();
+    }
+
+    /** @return the number of buffers */
+    public int getDepth() {
+        return this.depth;
+    }
+
+    @Override
+    public long getNumElements() {
+        return this.source.getNumElements();
+    }
+
+    @Override
+    public int getNumPoints() {
+        return this.source.getNumPoints();
+    }
+
+    @Override
+    public long getFirstPointIndex() {
+        return this.source.getFirstPointIndex();
+    }
+
+    @Override
+    public LaghosPointBatch getNextLaghosPointBatch() {
+        if (null != this.current) {
+            this.free.add(this.current);
+            this.current = null;
+        }
+        Block block = take();
+        if (null == block) {
+            return null;
+        }
+        this.current = block;
+        this.batch.reset(block.buffer, 0, block.count, block.firstPointIndex);
+        return this.batch;
+    }
+
+    /**
+     * Drain the pipeline with nConsumers threads, each passing its batches
+     * to consumer. A batch is only valid during the call that receives it.
+     * Every consumer thread has finished by the time this returns or throws.
+     *
+     * @return the number of points consumed
+     */
+    public long consume(int nConsumers, BatchConsumer consumer) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(nConsumers);
+        boolean consumed = false;
+        try {
+            List<Future<Long>> results = new ArrayList<>();
+            for (int t = 0; t < nConsumers; t++) {
+                results.add(pool.submit(() -> {
+                    LaghosPointBatch view = new LaghosPointBatch();
+                    long points = 0;
+                    for (Block block = take(); block != null; block = take()) {
+                        view.reset(block.buffer, 0, block.count, block.firstPointIndex);
+                        // Once returned, the fetcher may refill the block with another count
+                        points += block.count;
+                        try {
+                            consumer.accept(view);
+                        } catch (Throwable e) {
+                            // Stop the other consumers at their next take
+                            this.stopped = true;
+                            throw e;
+                        } finally {
+                            this.free.add(block);
+                        }
+                    }
+                    return points;
+                }));
+            }
+            long points = 0;
+            for (Future<Long> result : results) {
+                points += result.get();
+            }
+            consumed = true;
+            return points;
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted while consuming the pipeline", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Pipeline consumer failed", e.getCause());
+        } finally {
+            if (!consumed) {
+                // Keep the remaining consumers from taking more batches, or restarting the fetcher
+                this.stopped = true;
+                pool.shutdownNow();
+            } else {
+                pool.shutdown();
+            }
+            try {
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (!consumed) {
+                stopFetcher();
+            }
+        }
+    }
+
+    /** @return the next filled block, or null at the end of the source or once stopped */
+    Block take() {
+        if (this.stopped) {
+            return null;
+        }
+        startFetcher();
+        long begin = System.nanoTime();
+        Block block;
+        try {
+            block = this.ready.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for points", e);
+        }
+        this.consumeStallNanos.addAndGet(System.nanoTime() - begin);
+        if (this.stopped && END != block) {
+            this.free.add(block);
+            return null;
+        }
+        if (END == block) {
+            // Leave the marker for the other consumers
+            this.ready.add(END);
+            if (null != this.failure) {
+                throw new IllegalStateException("Fetching points failed", this.failure);
+            }
+            return null;
+        }
+        return block;
+    }
+
+    /** Fill free buffers from the source until it is exhausted */
+    void fetch() {
+        Block block = null;
+        try {
+            while (true) {
+                long begin = System.nanoTime();
+                block = this.free.take();
+                long fetched = System.nanoTime();
+                LaghosPointBatch next = this.source.getNextLaghosPointBatch();
+                if (null == next) {
+                    break;
+                }
+                block.fill(next);
+                long end = System.nanoTime();
+                this.fetchStallNanos.addAndGet(fetched - begin);
+                this.fetchNanos.addAndGet(end - fetched);
+                this.batches.incrementAndGet();
+                this.ready.add(block);
+                block = null;
+            }
+        } catch (InterruptedException e) {
+            // Stopped by resetIterator or close
+            return;
+        } catch (RuntimeException e) {
+            this.failure = e;
+        }
+        // Return the buffer of the missing batch, keeping the full depth for the next pass
+        if (null != block) {
+            this.free.add(block);
+        }
+        this.ready.add(END);
+    }
+
+    synchronized void startFetcher() {
+        if (null == this.fetcher) {
+            this.fetcher = new Thread(this::fetch, "laghos-fetch");
+            this.fetcher.setDaemon(true);
+            this.fetcher.start();
+        }
+    }
+
+    /** Stop the fetcher and return every buffer to the free list */
+    synchronized void stopFetcher() {
+        if (null != this.fetcher) {
+            this.fetcher.interrupt();
+            try {
+                this.fetcher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            this.fetcher = null;
+        }
+        if (null != this.current) {
+            this.free.add(this.current);
+            this.current = null;
+        }
+        for (Block block = this.ready.poll(); block != null; block = this.ready.poll()) {
+            if (END != block) {
+                this.free.add(block);
+            }
+        }
+        this.failure = null;
+    }
+
+    @Override
+    public synchronized void resetIterator() {
+        stopFetcher();
+        this.stopped = false;
+        this.source.resetIterator();
+    }
+
+    /**
+     * Split the wrapped source and pipeline each split
+     */
+    @Override
+    public List<PipelinedPointSource> split(int n) {
+        List<PipelinedPointSource> splits = new ArrayList<>();
+        for (LaghosPointSource split : this.source.split(n)) {
+            splits.add(new PipelinedPointSource(split, this.depth));
+        }
+        return splits;
+    }
+
+    @Override
+    public void close() {
+        stopFetcher();
+        this.source.close();
+    }
+
+    /** @return nanoseconds the fetcher spent in the wrapped source, copies included */
+    public long getFetchNanos() {
+        return this.fetchNanos.get();
+    }
+
+    /** @return nanoseconds the fetcher waited for a free buffer */
+    public long getFetchStallNanos() {
+        return this.fetchStallNanos.get();
+    }
+
+    /** @return nanoseconds consumers waited for a filled buffer, summed over consumers */
+    public long getConsumeStallNanos() {
+        return this.consumeStallNanos.get();
+    }
+
+    /** @return the number of batches fetched */
+    public long getNumBatches() {
+        return this.batches.get();
+    }
+
+    /** Print the time spent fetching and stalled on each side */
+    public void report(String desc) {
+        System.out.println(desc + ": batches: " + getNumBatches()
+                           + " fetch: " + getFetchNanos() * 1e-9 + " secs"
+                           + " fetch stall: " + getFetchStallNanos() * 1e-9 + " secs"
+                           + " consume stall: " + getConsumeStallNanos() * 1e-9 + " secs");
+    }
+
+    /** A recycled buffer of packed points */
+    static class Block {
+        /** Copy the points of batch into this block, growing the buffer if needed */
+        void fill(LaghosPointBatch batch) {
+            int bytes = batch.size() * LaghosPointBatch.POINT_SIZE;
+            if (null == this.buffer || this.buffer.capacity() < bytes) {
+                this.buffer = ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+            }
+            this.buffer.clear();
+            this.buffer.put(batch.getBuffer());
+            this.count = batch.size();
+            this.firstPointIndex = batch.getFirstPointIndex();
+        }
+
+        // Packed points in native order
+        ByteBuffer buffer;
+
+        // Number of points held
+        int count;
+
+        // Mesh index of the first point held
+        long firstPointIndex;
+    }
+
+    // Marks the end of the source in the ready queue
+    static final Block END = new Block();
+
+    // Source being fetched from
+    final LaghosPointSource source;
+
+    // Number of buffers
+    final int depth;
+
+    // Buffers waiting to be filled
+    final BlockingQueue<Block> free;
+
+    // Filled buffers waiting for a consumer, and the end marker
+    final BlockingQueue<Block> ready;
+
+    // Flyweight handed out by getNextLaghosPointBatch
+    final LaghosPointBatch batch;
+
+    // Block behind the batch last handed out by getNextLaghosPointBatch
+    Block current;
+
+    // Thread filling buffers, started by the first take
+    Thread fetcher;
+
+    // Exception that stopped the fetcher
+    volatile RuntimeException failure;
+
+    // Set when a consumer of consume fails, until the next reset
+    volatile boolean stopped;
+
+    // Time spent fetching, and blocked on either side
+    final AtomicLong fetchNanos, fetchStallNanos, consumeStallNanos;
+
+    // Batches fetched
+    final AtomicLong batches;
+}
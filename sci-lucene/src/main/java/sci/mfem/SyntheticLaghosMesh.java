@@ -0,0 +1,234 @@
+package sci.mfem;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A generated Laghos-like hexahedral mesh that needs no MFEM install or mesh files.
+ *
+ * The mesh is an nx by ny by nz grid of unit-h hexes over [0, nx*h] x
+ * [0, ny*h] x [0, nz*h], ordered x fastest. Like a Laghos Sedov blast, e and
+ * rho are constant within an element and fall off with distance from the
+ * origin, while the velocity is radial and evaluated at each vertex. Every
+ * value is a pure function of the element and vertex, so splits and resets
+ * reproduce exactly the same points. atTime gives the same mesh later in
+ * the run, with the shock further out and the blast energy spread wider. Vertices are numbered x fastest over
+ * the (nx + 1) * (ny + 1) * (nz + 1) grid corners.
+ */
+public class SyntheticLaghosMesh implements LaghosVertexSource {
+
+    /** The number of points in each hex element */
+    public static final int POINTS_PER_ELEMENT = 8;
+
+    /** Corner offsets of a hex in MFEM vertex order */
+    static final int[][] HEX_CORNERS = {
+        {0, 0, 0}, {1, 0, 0}, {1, 1, 0}, {0, 1, 0},
+        {0, 0, 1}, {1, 0, 1}, {1, 1, 1}, {0, 1, 1}
+    };
+
+    /** The default number of points per batch, the same as LaghosMeshReader */
+    public static final int DEFAULT_FETCH_COUNT = 64*1024;
+
+    /**
+     * Create a synthetic mesh of nx * ny * nz elements
+     */
+    public SyntheticLaghosMesh(int nx, int ny, int nz) {
+        this(nx, ny, nz, 0, (long)nx * ny * nz, DEFAULT_FETCH_COUNT);
+    }
+
+    /**
+     * Create a synthetic mesh covering the elements [elementBegin, elementEnd)
+     *
+     * @param fetchCount the maximum number of points per batch
+     */
+    public SyntheticLaghosMesh(int nx, int ny, int nz, long elementBegin, long elementEnd, int fetchCount) {
+        this(nx, ny, nz, elementBegin, elementEnd, fetchCount, 1.0);
+    }
+
+    SyntheticLaghosMesh(int nx, int ny, int nz, long elementBegin, long elementEnd, int fetchCount, double time) {
+        this.nx = nx;
+        this.time = time;
+        this.ny = ny;
+        this.nz = nz;
+        this.h = 1.0 / Math.max(nx, Math.max(ny, nz));
+        this.elementBegin = elementBegin;
+        this.elementEnd = elementEnd;
+        this.fetchCount = Math.max(fetchCount, POINTS_PER_ELEMENT);
+        this.buffer = ByteBuffer.allocateDirect(this.fetchCount * LaghosPointBatch.POINT_SIZE)
+                                .order(ByteOrder.nativeOrder());
+        this.batch = new LaghosPointBatch();
+        resetIterator();
+    }
+
+    /**
+     * @return a synthetic cube mesh with approximately numPoints points
+     */
+    public static SyntheticLaghosMesh withPoints(long numPoints, int fetchCount) {
+        int n = Math.max(1, (int)Math.round(Math.cbrt((double)numPoints / POINTS_PER_ELEMENT)));
+        return new SyntheticLaghosMesh(n, n, n, 0, (long)n * n * n, fetchCount);
+    }
+
+    /**
+     * @return the same mesh at time t, where the default mesh is at time 1.
+     *         The geometry does not change, only the fields.
+     */
+    public SyntheticLaghosMesh atTime(double t) {
+        return new SyntheticLaghosMesh(this.nx, this.ny, this.nz, this.elementBegin, this.elementEnd,
+                                       this.fetchCount, t);
+    }
+
+    @Override
+    public long getNumElements() {
+        return this.elementEnd - this.elementBegin;
+    }
+
+    @Override
+    public int getNumPoints() {
+        return (int)(getNumElements() * POINTS_PER_ELEMENT);
+    }
+
+    @Override
+    public long getFirstPointIndex() {
+        return this.elementBegin * POINTS_PER_ELEMENT;
+    }
+
+    @Override
+    public void resetIterator() {
+        this.nextElement = this.elementBegin;
+        if (null != this.blockBuilder) {
+            this.blockBuilder.restart();
+        }
+    }
+
+    @Override
+    public LaghosPointBatch getNextLaghosPointBatch() {
+        if (this.nextElement >= this.elementEnd) {
+            return null;
+        }
+        long firstPoint = this.nextElement * POINTS_PER_ELEMENT;
+        int elements = (int)Math.min(this.fetchCount / POINTS_PER_ELEMENT, this.elementEnd - this.nextElement);
+        this.buffer.clear();
+        for (int i = 0; i < elements; i++) {
+            writeElement(this.nextElement++, null);
+        }
+        this.batch.reset(this.buffer, 0, elements * POINTS_PER_ELEMENT, firstPoint);
+        return this.batch;
+    }
+
+    @Override
+    public LaghosMeshBlock getNextLaghosMeshBlock() {
+        if (this.nextElement >= this.elementEnd) {
+            return null;
+        }
+        if (null == this.blockBuilder) {
+            this.blockBuilder = new MeshBlockBuilder(this.fetchCount / POINTS_PER_ELEMENT, POINTS_PER_ELEMENT);
+        }
+        long firstPoint = this.nextElement * POINTS_PER_ELEMENT;
+        int elements = (int)Math.min(this.fetchCount / POINTS_PER_ELEMENT, this.elementEnd - this.nextElement);
+        this.blockBuilder.clear();
+        for (int i = 0; i < elements; i++) {
+            writeElement(this.nextElement++, this.blockBuilder);
+        }
+        return this.blockBuilder.build(firstPoint);
+    }
+
+    /** @return the number of distinct vertices of the whole mesh */
+    public long getNumMeshVertices() {
+        return (long)(this.nx + 1) * (this.ny + 1) * (this.nz + 1);
+    }
+
+    @Override
+    public List<SyntheticLaghosMesh> split(int n) {
+        List<SyntheticLaghosMesh> splits = new ArrayList<>();
+        for (long[] range : LaghosPointSource.splitRanges(this.elementBegin, this.elementEnd, n)) {
+            splits.add(new SyntheticLaghosMesh(this.nx, this.ny, this.nz, range[0], range[1],
+                                               this.fetchCount, this.time));
+        }
+        return splits;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /** Append the points of element id to the buffer, or to builder when one is given */
+    void writeElement(long id, MeshBlockBuilder builder) {
+        int i = (int)(id % this.nx);
+        int j = (int)((id / this.nx) % this.ny);
+        int k = (int)(id / ((long)this.nx * this.ny));
+
+        // Energy and density are piecewise constant, a blast centered on the origin
+        double cx = (i + 0.5) * this.h;
+        double cy = (j + 0.5) * this.h;
+        double cz = (k + 0.5) * this.h;
+        double r2 = cx * cx + cy * cy + cz * cz;
+        double t2 = this.time * this.time;
+        double shock = Math.sqrt(r2) - 0.5 * this.time;
+        double e = 0.25 + 2.0 / this.time * Math.exp(-8.0 * r2 / t2) + 0.01 * noise(id);
+        double rho = 1.0 + 3.0 * Math.exp(-64.0 * shock * shock);
+
+        for (int n = 0; n < POINTS_PER_ELEMENT; n++) {
+            int[] c = HEX_CORNERS[n];
+            double x = (i + c[0]) * this.h;
+            double y = (j + c[1]) * this.h;
+            double z = (k + c[2]) * this.h;
+            double r = Math.sqrt(x * x + y * y + z * z);
+            double speed = (r == 0.0) ? 0.0 : Math.exp(-8.0 * r * r / t2) / r;
+            if (null != builder) {
+                long vertex = (i + c[0]) + (this.nx + 1L) * ((j + c[1]) + (this.ny + 1L) * (k + c[2]));
+                builder.add(id, n, vertex, x, y, z, e, rho, speed * x, speed * y, speed * z);
+            } else {
+                this.buffer.putDouble(x);
+                this.buffer.putDouble(y);
+                this.buffer.putDouble(z);
+                this.buffer.putDouble(e);
+                this.buffer.putDouble(rho);
+                this.buffer.putDouble(speed * x);
+                this.buffer.putDouble(speed * y);
+                this.buffer.putDouble(speed * z);
+                this.buffer.putLong(id);
+            }
+        }
+    }
+
+    /** @return a deterministic value in [-1, 1) derived from id */
+    static double noise(long id) {
+        long z = id * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z = z ^ (z >>> 31);
+        return (z >>> 11) * 0x1.0p-52 - 1.0;
+    }
+
+    // Elements along each axis
+    final int nx, ny, nz;
+
+    // Element edge length
+    final double h;
+
+    // Simulation time the fields are evaluated at
+    final double time;
+
+    // First element covered by this source
+    final long elementBegin;
+
+    // Element after the last element covered by this source
+    final long elementEnd;
+
+    // Maximum points per batch
+    final int fetchCount;
+
+    // Buffer the points are generated into
+    final ByteBuffer buffer;
+
+    // Flyweight handed out by getNextLaghosPointBatch
+    final LaghosPointBatch batch;
+
+    // Next element to generate
+    long nextElement;
+
+    // Builds normalized blocks, created by the first getNextLaghosMeshBlock
+    MeshBlockBuilder blockBuilder;
+}
@@ -0,0 +1,171 @@
+package sci.lucene;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.bkd.BKDConfig;
+import org.apache.lucene.util.bkd.BKDWriter;
+import sci.mfem.LaghosField;
+import sci.mfem.LaghosPointBatch;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class BKDIndexReaderTest {
+    final static int NUM_POINTS = 20000;
+
+    /** @return a batch of random points, 8 per element, with negative and positive values */
+    static LaghosPointBatch randomBatch(int numPoints, long seed) {
+        Random r = new Random(seed);
+        ByteBuffer buf = ByteBuffer.allocate(numPoints * LaghosPointBatch.POINT_SIZE).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < numPoints; i++) {
+            for (int d = 0; d < LaghosPointBatch.NUM_FIELDS; d++) {
+                buf.putDouble(r.nextDouble() * 20.0 - 10.0);
+            }
+            buf.putLong(i / 8);
+        }
+        LaghosPointBatch batch = new LaghosPointBatch();
+        batch.reset(buf, 0, numPoints, 0);
+        return batch;
+    }
+
+    /** @return the base name of a single tree BKD index of batch written in dir */
+    static String writeIndex(LaghosPointBatch batch, Path dir) throws IOException {
+        BKDConfig cfg = new BKDConfig(BKDPointCodec.NUM_DIMS, 8, BKDPointCodec.BYTES_PER_DIM, 128);
+        String name = dir.resolve("single").toString();
+        try (Directory tmp = FSDirectory.open(dir)) {
+            BKDWriter w = new BKDWriter(batch.size(), tmp, "test", cfg, 1, batch.size());
+            byte[] packed = new byte[LaghosPointBatch.POINT_SIZE];
+            for (int i = 0; i < batch.size(); i++) {
+                BKDPointCodec.encode(batch, i, packed);
+                w.add(packed, i);
+            }
+            IndexedMesh.writeIndex(w, name);
+            w.close();
+        }
+        return name;
+    }
+
+    /** @return the base name of a BKD index of batch written in dir as two shards */
+    static String writeShardedIndex(LaghosPointBatch batch, Path dir) throws IOException {
+        BKDConfig cfg = new BKDConfig(BKDPointCodec.NUM_DIMS, 8, BKDPointCodec.BYTES_PER_DIM, 128);
+        String name = dir.resolve("sharded").toString();
+        int half = batch.size() / 2;
+        try (Directory tmp = FSDirectory.open(dir)) {
+            long[] shardPoints = {half, batch.size() - half};
+            ShardedBKDWriter sWriter = new ShardedBKDWriter(tmp, "test", cfg, batch.size(), shardPoints, 1);
+            byte[] packed = new byte[LaghosPointBatch.POINT_SIZE];
+            for (int i = 0; i < batch.size(); i++) {
+                BKDPointCodec.encode(batch, i, packed);
+                sWriter.getShard(i < half ? 0 : 1).add(packed, i);
+            }
+            sWriter.finish(name);
+            sWriter.close();
+        }
+        return name;
+    }
+
+    static MeshQueryResult scan(LaghosPointBatch batch, MeshQuery q) {
+        MeshQueryResult expected = new MeshQueryResult(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            if (q.matches(batch, i)) {
+                expected.addPoint(batch.getElementId(i));
+            }
+        }
+        expected.finish(0);
+        return expected;
+    }
+
+    @Test void TestSingleTreeQuery() throws IOException {
+        LaghosPointBatch batch = randomBatch(NUM_POINTS, 42);
+        String name = writeIndex(batch, Files.createTempDirectory("bkd-query"));
+
+        MeshQuery q = new MeshQuery().range(LaghosField.E, -5.0, 5.0)
+                                     .greaterThan(LaghosField.RHO, -2.5)
+                                     .box(-8.0, 0.0, -3.0, 9.0, -10.0, 10.0);
+        try (BKDIndexReader reader = new BKDIndexReader(name)) {
+            assertEquals(1, reader.getNumTrees());
+            assertEquals(NUM_POINTS, reader.getNumPoints());
+            MeshQueryResult result = reader.query(q);
+            MeshQueryResult expected = scan(batch, q);
+            assertTrue(expected.getMatchingPoints() > 0);
+            assertEquals(expected.getMatchingPoints(), result.getMatchingPoints());
+            assertArrayEquals(expected.getElementIds(), result.getElementIds());
+        }
+    }
+
+    @Test void TestShardedQuery() throws IOException {
+        LaghosPointBatch batch = randomBatch(NUM_POINTS, 7);
+        String name = writeShardedIndex(batch, Files.createTempDirectory("bkd-query"));
+
+        MeshQuery q = new MeshQuery().lessThan(LaghosField.V_X, 0.0).range(LaghosField.Z, 1.0, 6.0);
+        try (BKDIndexReader reader = new BKDIndexReader(name)) {
+            assertEquals(2, reader.getNumTrees());
+            MeshQueryResult result = reader.query(q);
+            MeshQueryResult expected = scan(batch, q);
+            assertEquals(expected.getMatchingPoints(), result.getMatchingPoints());
+            assertArrayEquals(expected.getElementIds(), result.getElementIds());
+            assertEquals((double)expected.getMatchingPoints() / NUM_POINTS, result.getSelectivity(), 1e-12);
+        }
+    }
+
+    static void checkAggregate(LaghosPointBatch batch, MeshAggregate actual, MeshQuery q) {
+        MeshQueryResult expected = scan(batch, q);
+        assertEquals(expected.getMatchingPoints(), actual.getCount(), q.toString());
+        for (LaghosField f : LaghosField.values()) {
+            double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY, sum = 0.0;
+            for (int i = 0; i < batch.size(); i++) {
+                if (q.matches(batch, i)) {
+                    double v = batch.getDouble(i, f.dim());
+                    min = Math.min(min, v);
+                    max = Math.max(max, v);
+                    sum += v;
+                }
+            }
+            assertEquals(min, actual.getMin(f), q + " " + f.fieldName());
+            assertEquals(max, actual.getMax(f), q + " " + f.fieldName());
+            assertEquals(sum, actual.getSum(f), 1e-9 * NUM_POINTS, q + " " + f.fieldName());
+        }
+    }
+
+    @Test void TestAggregate() throws IOException {
+        LaghosPointBatch batch = randomBatch(NUM_POINTS, 11);
+        String name = writeShardedIndex(batch, Files.createTempDirectory("bkd-aggregate"));
+
+        MeshQuery[] queries = {new MeshQuery(),
+                               new MeshQuery().greaterThan(LaghosField.E, -8.0).lessThan(LaghosField.X, 9.0),
+                               new MeshQuery().range(LaghosField.E, -5.0, 5.0).lessThan(LaghosField.V_Z, 2.0),
+                               new MeshQuery().range(LaghosField.RHO, 20.0, 30.0)};
+        try (BKDIndexReader reader = new BKDIndexReader(name)) {
+            assertFalse(reader.hasSummaries());
+            for (MeshQuery q : queries) {
+                MeshAggregate scanned = reader.aggregate(q);
+                checkAggregate(batch, scanned, q);
+                assertEquals(scanned.getCount(), scanned.getDecodedPoints());
+            }
+        }
+
+        assertTrue(IndexedMesh.writeSummaries(name) > 0);
+        try (BKDIndexReader reader = new BKDIndexReader(name)) {
+            assertTrue(reader.hasSummaries());
+            for (MeshQuery q : queries) {
+                checkAggregate(batch, reader.aggregate(q), q);
+            }
+
+            // Only the root of each tree is needed for every point
+            MeshAggregate all = reader.aggregate(queries[0]);
+            assertEquals(2, all.getSummarizedNodes());
+            assertEquals(0, all.getDecodedPoints());
+
+            // Cells away from the query boundary are summarized, the rest decoded
+            MeshAggregate wide = reader.aggregate(queries[1]);
+            assertTrue(wide.getSummarizedNodes() > 0);
+            assertTrue(wide.getDecodedPoints() < wide.getCount());
+            assertEquals(0, reader.aggregate(queries[3]).getCount());
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package sci.lucene;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import sci.mfem.LaghosField;
+import sci.mfem.LaghosPointBatch;
+import sci.mfem.SyntheticLaghosMesh;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+class BitmapMeshIndexTest {
+
+    static void checkQuery(BitmapMeshIndex index, LaghosPointBatch all, MeshQuery q) {
+        MeshQueryResult expected = BKDIndexReaderTest.scan(all, q);
+        MeshQueryResult actual = index.query(q);
+        assertEquals(expected.getMatchingPoints(), actual.getMatchingPoints(), q.toString());
+        assertArrayEquals(expected.getElementIds(), actual.getElementIds(), q.toString());
+        assertEquals(expected.getMatchingPoints(), index.count(q));
+    }
+
+    @Test void TestQueries(@TempDir Path dir) throws IOException {
+        SyntheticLaghosMesh mesh = new SyntheticLaghosMesh(12, 10, 8, 0, 960, 8192);
+        BitmapMeshIndex index = BitmapMeshIndex.build(mesh, dir, 16, 3);
+        assertEquals(7680, index.getNumPoints());
+        for (int d = 0; d < LaghosPointBatch.NUM_FIELDS; d++) {
+            assertTrue(index.getNumBins(d) > 1 && index.getNumBins(d) <= 16);
+        }
+        mesh.resetIterator();
+        LaghosPointBatch all = mesh.getNextLaghosPointBatch();
+
+        checkQuery(index, all, new MeshQuery());
+        checkQuery(index, all, new MeshQuery().range(LaghosField.E, 0.5, 1.5));
+        checkQuery(index, all, new MeshQuery().greaterThan(LaghosField.RHO, 1.5)
+                                              .box(0.1, 0.6, 0.2, 0.7, 0.0, 0.4));
+        checkQuery(index, all, new MeshQuery().range(LaghosField.V_X, -0.1, 0.1)
+                                              .lessThan(LaghosField.E, 1.0)
+                                              .range(LaghosField.Z, 0.25, 0.25));
+        checkQuery(index, all, new MeshQuery().range(LaghosField.E, 100.0, 200.0));
+        index.close();
+
+        // Reopening reads the same bitmaps
+        BitmapMeshIndex reopened = new BitmapMeshIndex(dir);
+        checkQuery(reopened, all, new MeshQuery().range(LaghosField.RHO, 1.0, 2.0).range(LaghosField.X, 0.3, 0.9));
+        reopened.close();
+    }
+
+    @Test void TestBin() {
+        double[] cuts = {0.5, 1.0, 2.0};
+        assertEquals(0, BitmapMeshIndex.bin(cuts, 0.1));
+        assertEquals(1, BitmapMeshIndex.bin(cuts, 0.5));
+        assertEquals(2, BitmapMeshIndex.bin(cuts, 1.5));
+        assertEquals(3, BitmapMeshIndex.bin(cuts, 2.0));
+        assertEquals(0, BitmapMeshIndex.bin(new double[0], 7.0));
+    }
+}
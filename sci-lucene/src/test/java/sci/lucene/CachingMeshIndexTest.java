@@ -0,0 +1,189 @@
+package sci.lucene;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.util.Random;
+import sci.mfem.LaghosField;
+import sci.mfem.LaghosPointBatch;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachingMeshIndexTest {
+    final static int NUM_POINTS = 20000;
+
+    static void assertSameResult(MeshQueryResult expected, MeshQueryResult actual, MeshQuery q) {
+        assertEquals(expected.getMatchingPoints(), actual.getMatchingPoints(), q.toString());
+        assertArrayEquals(expected.getElementIds(), actual.getElementIds(), q.toString());
+    }
+
+    @Test void TestQueryKeys() {
+        MeshQuery a = new MeshQuery().range(LaghosField.E, -1.0, 1.0).box(0.0, 1.0, 0.0, 1.0, -0.0, 1.0);
+        MeshQuery b = new MeshQuery().box(0.0, 1.0, 0.0, 1.0, 0.0, 1.0).range(LaghosField.E, -1.0, 1.0);
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+        assertNotEquals(a, new MeshQuery(a).lessThan(LaghosField.RHO, 3.0));
+
+        MeshQuery narrowed = new MeshQuery(a).range(LaghosField.E, 0.0, 0.5);
+        assertTrue(a.contains(narrowed));
+        assertFalse(narrowed.contains(a));
+        assertTrue(new MeshQuery().contains(a));
+        assertTrue(a.contains(a));
+        assertEquals(-1.0, a.getMin(LaghosField.E));
+    }
+
+    @Test void TestLeafCache(@TempDir Path dir) throws IOException {
+        LaghosPointBatch batch = BKDIndexReaderTest.randomBatch(NUM_POINTS, 31);
+        String name = BKDIndexReaderTest.writeIndex(batch, dir);
+        try (BKDIndexReader reader = new BKDIndexReader(name)) {
+            MeshCache<Long, MeshPoints> leaves = new MeshCache<>("leaves", 64L * 1024 * 1024,
+                                                                 MeshPoints::ramBytesUsed);
+            reader.setLeafCache(leaves);
+            for (MeshQuery q : QuantizedMeshIndexTest.QUERIES) {
+                assertSameResult(BKDIndexReaderTest.scan(batch, q), reader.query(q), q);
+            }
+            long misses = leaves.getMisses();
+            assertTrue(misses > 0);
+            for (MeshQuery q : QuantizedMeshIndexTest.QUERIES) {
+                assertSameResult(BKDIndexReaderTest.scan(batch, q), reader.query(q), q);
+            }
+            // Every leaf the second pass reaches was decoded by the first
+            assertEquals(misses, leaves.getMisses());
+            assertTrue(leaves.getHits() > 0);
+            assertEquals(0, leaves.getEvictions());
+
+            // A budget of a few leaves keeps evicting but stays correct
+            MeshCache<Long, MeshPoints> small = new MeshCache<>("leaves", 4 * 128 * LaghosPointBatch.POINT_SIZE,
+                                                                MeshPoints::ramBytesUsed);
+            reader.setLeafCache(small);
+            MeshQuery all = new MeshQuery();
+            assertSameResult(BKDIndexReaderTest.scan(batch, all), reader.query(all), all);
+            assertTrue(small.getEvictions() > 0);
+            assertTrue(small.getBytes() <= small.getMaxBytes());
+            assertTrue(small.size() <= 4);
+        }
+    }
+
+    @Test void TestResultCache(@TempDir Path dir) throws IOException {
+        LaghosPointBatch batch = BKDIndexReaderTest.randomBatch(NUM_POINTS, 37);
+        String name = BKDIndexReaderTest.writeIndex(batch, dir);
+        BKDIndexReader reader = new BKDIndexReader(name);
+        try (CachingMeshIndex index = new CachingMeshIndex(reader)) {
+            MeshCache<MeshQuery, CachingMeshIndex.Entry> results = index.getResultCache();
+            MeshQuery q = new MeshQuery().range(LaghosField.E, -5.0, 5.0).box(-8.0, 0.0, -3.0, 9.0, -10.0, 10.0);
+            assertSameResult(BKDIndexReaderTest.scan(batch, q), index.query(q), q);
+            assertEquals(1, results.getMisses());
+
+            // The same predicate built in another order is an exact hit
+            MeshQuery repeat = new MeshQuery().box(-8.0, 0.0, -3.0, 9.0, -10.0, 10.0).range(LaghosField.E, -5.0, 5.0);
+            assertSameResult(BKDIndexReaderTest.scan(batch, q), index.query(repeat), repeat);
+            assertEquals(1, results.getHits());
+            assertEquals(0, index.getRefinements());
+
+            // Sliding the energy threshold up filters the cached superset
+            for (double lo = -4.0; lo <= 0.0; lo += 1.0) {
+                MeshQuery narrowed = new MeshQuery(q).range(LaghosField.E, lo, 5.0).greaterThan(LaghosField.RHO, -1.0);
+                assertSameResult(BKDIndexReaderTest.scan(batch, narrowed), index.query(narrowed), narrowed);
+            }
+            assertEquals(5, index.getRefinements());
+            assertEquals(1, results.getMisses());
+            assertEquals(6, results.size());
+
+            // Widening cannot be answered from the cache
+            MeshQuery widened = new MeshQuery().range(LaghosField.E, -6.0, 6.0).box(-8.0, 0.0, -3.0, 9.0, -10.0, 10.0);
+            assertSameResult(BKDIndexReaderTest.scan(batch, widened), index.query(widened), widened);
+            assertEquals(2, results.getMisses());
+        }
+    }
+
+    @Test void TestLargeResults(@TempDir Path dir) throws IOException {
+        LaghosPointBatch batch = BKDIndexReaderTest.randomBatch(NUM_POINTS, 43);
+        String name = BKDIndexReaderTest.writeIndex(batch, dir);
+        long maxBytes = 256 * 1024;
+        try (CachingMeshIndex index = new CachingMeshIndex(new BKDIndexReader(name), maxBytes)) {
+            MeshCache<MeshQuery, CachingMeshIndex.Entry> results = index.getResultCache();
+            // Every point weighs more than the cache, so only the result is kept
+            MeshQuery all = new MeshQuery().range(LaghosField.E, -10.0, 10.0);
+            assertSameResult(BKDIndexReaderTest.scan(batch, all), index.query(all), all);
+            assertEquals(1, results.size());
+            assertTrue(results.getBytes() < maxBytes);
+            assertSameResult(BKDIndexReaderTest.scan(batch, all), index.query(all), all);
+            assertEquals(1, results.getHits());
+
+            // Without its points a narrower query goes back to the index
+            MeshQuery narrowed = new MeshQuery().range(LaghosField.E, -1.0, 1.0);
+            assertSameResult(BKDIndexReaderTest.scan(batch, narrowed), index.query(narrowed), narrowed);
+            assertEquals(0, index.getRefinements());
+            assertEquals(2, results.getMisses());
+        }
+
+        MeshPoints points = new MeshPoints(0, 4 * LaghosPointBatch.POINT_SIZE + MeshPoints.OBJECT_BYTES);
+        for (int i = 0; i < 5; i++) {
+            points.add(batch, i);
+        }
+        assertTrue(points.isTruncated());
+        assertEquals(0, points.size());
+    }
+
+    @Test void TestSignedZeros(@TempDir Path dir) throws IOException {
+        // Velocities are often exactly zero of either sign at symmetry planes
+        double[] values = {-1.0, -0.0, 0.0, 1.0};
+        Random r = new Random(41);
+        ByteBuffer buf = ByteBuffer.allocate(NUM_POINTS * LaghosPointBatch.POINT_SIZE).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < NUM_POINTS; i++) {
+            for (int d = 0; d < LaghosPointBatch.NUM_FIELDS; d++) {
+                buf.putDouble(values[r.nextInt(values.length)]);
+            }
+            buf.putLong(i / 8);
+        }
+        LaghosPointBatch batch = new LaghosPointBatch();
+        batch.reset(buf, 0, NUM_POINTS, 0);
+        String name = BKDIndexReaderTest.writeIndex(batch, dir);
+
+        MeshQuery[] queries = {new MeshQuery().range(LaghosField.V_X, 0.0, 1.0),
+                               new MeshQuery().range(LaghosField.V_X, -0.0, 1.0),
+                               new MeshQuery().range(LaghosField.V_X, -0.0, 1.0).lessThan(LaghosField.V_Y, -0.0),
+                               new MeshQuery().range(LaghosField.V_X, 0.0, 1.0).lessThan(LaghosField.V_Y, 0.0),
+                               new MeshQuery().range(LaghosField.V_X, -1.0, -0.0).range(LaghosField.V_Y, 0.0, 0.0)};
+        try (BKDIndexReader uncached = new BKDIndexReader(name);
+             CachingMeshIndex index = new CachingMeshIndex(new BKDIndexReader(name))) {
+            for (MeshQuery q : queries) {
+                MeshQueryResult expected = BKDIndexReaderTest.scan(batch, q);
+                assertTrue(expected.getMatchingPoints() > 0, q.toString());
+                assertSameResult(expected, uncached.query(q), q);
+                assertSameResult(expected, index.query(q), q);
+            }
+            // Either sign of a zero bound is the same cached query, only the first and last go to the index
+            assertEquals(2, index.getResultCache().getMisses());
+        }
+    }
+
+    @Test void TestEviction() {
+        MeshCache<Integer, long[]> cache = new MeshCache<>("test", 100, v -> v.length * Long.BYTES);
+        cache.put(1, new long[5]);
+        cache.put(2, new long[5]);
+        assertNotNull(cache.get(1));
+        // 2 is now the least recently used
+        cache.put(3, new long[5]);
+        assertEquals(1, cache.getEvictions());
+        assertNull(cache.get(2));
+        assertNotNull(cache.get(1));
+        assertNotNull(cache.get(3));
+        assertEquals(80, cache.getBytes());
+
+        // Too large to cache at all
+        cache.put(4, new long[13]);
+        assertNull(cache.get(4));
+        assertEquals(2, cache.size());
+
+        // find takes the lightest match
+        cache.put(5, new long[2]);
+        assertEquals(2, cache.find((k, v) -> k >= 3).length);
+        assertNull(cache.find((k, v) -> k > 10));
+        assertEquals(4, cache.getHits());
+        assertEquals(3, cache.getMisses());
+        assertEquals(0.5, cache.getHitRate(), 0.1);
+    }
+}
@@ -0,0 +1,33 @@
+package sci.lucene;
+
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class KVRunBufferTest {
+
+    @Test void TestSortUnique() {
+        KVRunBuffer run = new KVRunBuffer(6, 2, 1);
+        byte[][] keys = {{5, 1}, {0, 9}, {(byte)0xff, 0}, {5, 1}, {0, 2}, {(byte)0x80, 0}};
+        for (int i = 0; i < keys.length; i++) {
+            run.add(keys[i], new byte[]{(byte)i});
+        }
+        assertTrue(run.isFull());
+        run.sortUnique();
+
+        // Keys are unsigned byte ordered and the repeated key appears once
+        byte[][] expected = {{0, 2}, {0, 9}, {5, 1}, {(byte)0x80, 0}, {(byte)0xff, 0}};
+        assertEquals(expected.length, run.size());
+        byte[] key = new byte[2];
+        for (int i = 0; i < expected.length; i++) {
+            run.getKey(i, key);
+            assertTrue(Arrays.equals(expected[i], key));
+        }
+        byte[] value = new byte[1];
+        run.getValue(1, value);
+        assertEquals(1, value[0]);
+
+        run.clear();
+        assertEquals(0, run.size());
+    }
+}
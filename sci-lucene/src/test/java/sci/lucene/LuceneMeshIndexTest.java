@@ -0,0 +1,46 @@
+package sci.lucene;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import org.apache.lucene.index.LogDocMergePolicy;
+import org.apache.lucene.index.NoMergePolicy;
+import sci.mfem.LaghosPointBatch;
+import sci.mfem.SyntheticLaghosMesh;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+class LuceneMeshIndexTest {
+
+    @Test void TestQueries(@TempDir Path dir) throws IOException {
+        SyntheticLaghosMesh mesh = new SyntheticLaghosMesh(12, 10, 8, 0, 960, 8192);
+        mesh.resetIterator();
+        LaghosPointBatch all = mesh.getNextLaghosPointBatch();
+
+        // A tiny RAM buffer without merging leaves several segments to search
+        try (LuceneMeshIndex index = LuceneMeshIndex.build(mesh, dir.resolve("segments"), 3, 0.5,
+                                                           NoMergePolicy.INSTANCE)) {
+            assertEquals(7680, index.getNumPoints());
+            assertTrue(index.getNumSegments() > 1, index.getNumSegments() + " segments");
+            for (MeshQuery q : QuantizedMeshIndexTest.QUERIES) {
+                MeshQueryResult expected = BKDIndexReaderTest.scan(all, q);
+                MeshQueryResult actual = index.query(q);
+                assertEquals(expected.getMatchingPoints(), actual.getMatchingPoints(), q.toString());
+                assertArrayEquals(expected.getElementIds(), actual.getElementIds(), q.toString());
+                assertEquals(expected.getMatchingPoints(), index.count(q), q.toString());
+            }
+        }
+
+        try (LuceneMeshIndex index = LuceneMeshIndex.build(mesh, dir.resolve("merged"), 2, 16.0,
+                                                           new LogDocMergePolicy())) {
+            MeshQuery q = QuantizedMeshIndexTest.QUERIES[2];
+            assertArrayEquals(BKDIndexReaderTest.scan(all, q).getElementIds(), index.query(q).getElementIds());
+        }
+
+        // Reopening finds the committed documents
+        try (LuceneMeshIndex reopened = new LuceneMeshIndex(dir.resolve("merged"))) {
+            assertEquals(7680, reopened.getNumPoints());
+            assertTrue(LuceneMeshIndex.getIndexBytes(dir.resolve("merged")) > 0);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package sci.lucene;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import org.fusesource.leveldbjni.JniDBFactory;
+import org.iq80.leveldb.DB;
+import org.iq80.leveldb.Options;
+import sci.mfem.LaghosField;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MeshKeyCodecTest {
+
+    @Test void TestKeyOrder() {
+        double[] values = {-1e300, -2.5, -1e-300, 0.0, 1e-300, 0.125, 2.0, Double.POSITIVE_INFINITY};
+        byte[] prev = null;
+        for (double v : values) {
+            byte[] key = new byte[MeshKeyCodec.KEY_SIZE];
+            MeshKeyCodec.encodeKey(LaghosField.E.dim(), v, 7, key);
+            assertEquals(v, MeshKeyCodec.getValue(key));
+            assertEquals(7, MeshKeyCodec.getElementId(key));
+            assertEquals(LaghosField.E.dim(), MeshKeyCodec.getDim(key));
+            if (null != prev) {
+                assertTrue(Arrays.compareUnsigned(prev, key) < 0);
+            }
+            prev = key;
+        }
+
+        // Zeros of either sign compare equal, so they are one key as in a range query
+        byte[] a = new byte[MeshKeyCodec.KEY_SIZE];
+        byte[] b = new byte[MeshKeyCodec.KEY_SIZE];
+        MeshKeyCodec.encodeKey(LaghosField.E.dim(), -0.0, 1, a);
+        MeshKeyCodec.encodeKey(LaghosField.E.dim(), 0.0, 1, b);
+        assertArrayEquals(a, b);
+
+        // Equal values of different elements are distinct keys, ordered by element
+        MeshKeyCodec.encodeKey(LaghosField.E.dim(), 2.0, 1, a);
+        MeshKeyCodec.encodeKey(LaghosField.E.dim(), 2.0, 2, b);
+        assertTrue(Arrays.compareUnsigned(a, b) < 0);
+
+        // Every key of a lower dimension sorts before any key of a higher one
+        MeshKeyCodec.encodeKey(LaghosField.E.dim(), Double.POSITIVE_INFINITY, Long.MAX_VALUE, a);
+        MeshKeyCodec.encodeKey(LaghosField.RHO.dim(), Double.NEGATIVE_INFINITY, 0, b);
+        assertTrue(Arrays.compareUnsigned(a, b) < 0);
+    }
+
+    @Test void TestLevelDBRangeScan() throws IOException {
+        File dbFile = Files.createTempDirectory("leveldb-codec").toFile();
+        Options options = new Options();
+        options.createIfMissing(true);
+        DB db = JniDBFactory.factory.open(dbFile, options);
+        byte[] key = new byte[MeshKeyCodec.KEY_SIZE];
+        for (long element = 0; element < 100; element++) {
+            // e runs from -50 to 49, rho is the element id squared
+            MeshKeyCodec.encodeKey(LaghosField.E.dim(), element - 50.0, element, key);
+            db.put(key, MeshKeyCodec.EMPTY_VALUE);
+            MeshKeyCodec.encodeKey(LaghosField.RHO.dim(), element * element, element, key);
+            db.put(key, MeshKeyCodec.EMPTY_VALUE);
+        }
+        db.put(MeshKeyCodec.META_COUNTS_KEY, MeshKeyCodec.encodeCounts(800, 100));
+        db.close();
+
+        try (LevelDBMeshIndex index = new LevelDBMeshIndex(dbFile)) {
+            assertEquals(800, index.getNumPoints());
+            MeshQuery q = new MeshQuery().range(LaghosField.E, -10.5, 10.0).greaterThan(LaghosField.RHO, 2000.0);
+            MeshQueryResult result = index.query(q);
+            assertArrayEquals(new long[]{45, 46, 47, 48, 49, 50, 51, 52, 53, 54, 55, 56, 57, 58, 59, 60},
+                              result.getElementIds());
+            assertEquals(0.16, result.getSelectivity(), 1e-12);
+        }
+    }
+}
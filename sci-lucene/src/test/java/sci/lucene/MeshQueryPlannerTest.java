@@ -0,0 +1,190 @@
+package sci.lucene;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import org.fusesource.leveldbjni.JniDBFactory;
+import org.iq80.leveldb.DB;
+import org.iq80.leveldb.Options;
+import sci.mfem.LaghosField;
+import sci.mfem.LaghosPointBatch;
+import sci.mfem.LaghosPointSource;
+import sci.mfem.SyntheticLaghosMesh;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MeshQueryPlannerTest {
+
+    /** @return the fraction of the points of batch matching q */
+    static double selectivity(LaghosPointBatch batch, MeshQuery q) {
+        return (double)BKDIndexReaderTest.scan(batch, q).getMatchingPoints() / batch.size();
+    }
+
+    @Test void TestStatistics(@TempDir Path dir) throws IOException {
+        SyntheticLaghosMesh mesh = new SyntheticLaghosMesh(12, 10, 8, 0, 960, 8192);
+        mesh.resetIterator();
+        LaghosPointBatch all = mesh.getNextLaghosPointBatch();
+
+        // A sample smaller than the mesh still places the buckets
+        MeshStatistics.Collector collector = new MeshStatistics.Collector(32, 2048);
+        collector.add(all);
+        MeshStatistics stats = collector.finish(mesh.getNumElements());
+        assertEquals(7680, stats.getNumPoints());
+        assertEquals(960, stats.getNumElements());
+        assertEquals(8.0, stats.getPointsPerElement());
+        assertEquals(1.0, stats.getMax(LaghosField.X));
+        assertEquals(0.0, stats.getMin(LaghosField.X));
+
+        // The energy falls off from the origin, so a uniform estimate would be far off
+        double[] e = stats.getBounds(LaghosField.E);
+        double median = e[16];
+        MeshQuery low = new MeshQuery().range(LaghosField.E, stats.getMin(LaghosField.E), median);
+        assertEquals(selectivity(all, low), stats.estimateSelectivity(low), 0.05);
+        MeshQuery high = new MeshQuery().greaterThan(LaghosField.E, e[24]);
+        assertEquals(selectivity(all, high), stats.estimateSelectivity(high), 0.05);
+        MeshQuery slab = new MeshQuery().range(LaghosField.X, 0.25, 0.5);
+        assertEquals(selectivity(all, slab), stats.estimateSelectivity(slab), 0.05);
+        assertEquals(1.0, stats.estimateSelectivity(new MeshQuery()));
+        assertEquals(0.0, stats.estimateSelectivity(new MeshQuery().range(LaghosField.E, 100.0, 200.0)));
+        assertTrue(stats.estimateElements(slab) >= stats.estimatePoints(slab) / 8);
+
+        Path file = dir.resolve(MeshStatistics.FILE_NAME);
+        stats.write(file);
+        MeshStatistics read = MeshStatistics.read(file);
+        assertEquals(stats.getNumPoints(), read.getNumPoints());
+        assertEquals(stats.getNumElements(), read.getNumElements());
+        for (LaghosField f : LaghosField.values()) {
+            assertArrayEquals(stats.getBounds(f), read.getBounds(f));
+        }
+        assertNull(MeshStatistics.readIfExists(dir.resolve("missing" + MeshStatistics.SUFFIX)));
+
+        // A full pass gathers the same counts
+        MeshStatistics collected = MeshStatistics.collect(mesh);
+        assertEquals(7680, collected.getNumPoints());
+        assertEquals(stats.getMin(LaghosField.E), collected.getMin(LaghosField.E));
+
+        // Collectors of the splits merge into the statistics of the whole mesh
+        MeshStatistics.Collector merged = new MeshStatistics.Collector(32, 2048);
+        for (LaghosPointSource split : mesh.split(3)) {
+            MeshStatistics.Collector splitCollector = new MeshStatistics.Collector(32, 2048);
+            for (LaghosPointBatch batch = split.getNextLaghosPointBatch(); batch != null;
+                 batch = split.getNextLaghosPointBatch()) {
+                splitCollector.add(batch);
+            }
+            split.close();
+            merged.merge(splitCollector);
+        }
+        MeshStatistics mergedStats = merged.finish(mesh.getNumElements());
+        assertEquals(7680, mergedStats.getNumPoints());
+        for (LaghosField f : LaghosField.values()) {
+            assertEquals(stats.getMin(f), mergedStats.getMin(f));
+            assertEquals(stats.getMax(f), mergedStats.getMax(f));
+        }
+        assertEquals(selectivity(all, low), mergedStats.estimateSelectivity(low), 0.05);
+        assertEquals(selectivity(all, high), mergedStats.estimateSelectivity(high), 0.05);
+        assertEquals(selectivity(all, slab), mergedStats.estimateSelectivity(slab), 0.05);
+        assertThrows(IllegalArgumentException.class, () -> merged.merge(new MeshStatistics.Collector(32, 1024)));
+    }
+
+    @Test void TestPlans(@TempDir Path dir) throws IOException {
+        SyntheticLaghosMesh mesh = new SyntheticLaghosMesh(12, 10, 8, 0, 960, 8192);
+        mesh.resetIterator();
+        LaghosPointBatch all = mesh.getNextLaghosPointBatch();
+        String bkdName = BKDIndexReaderTest.writeIndex(all, dir);
+        File dbFile = dir.resolve("leveldb").toFile();
+        Options options = new Options();
+        options.createIfMissing(true);
+        DB db = JniDBFactory.factory.open(dbFile, options);
+        byte[] key = new byte[MeshKeyCodec.KEY_SIZE];
+        for (int i = 0; i < all.size(); i++) {
+            for (int d = 0; d < LaghosPointBatch.NUM_FIELDS; d++) {
+                MeshKeyCodec.encodeKey(all, i, d, key);
+                db.put(key, MeshKeyCodec.EMPTY_VALUE);
+            }
+        }
+        db.put(MeshKeyCodec.META_COUNTS_KEY, MeshKeyCodec.encodeCounts(mesh.getNumPoints(), mesh.getNumElements()));
+        db.close();
+
+        MeshStatistics stats = MeshStatistics.collect(mesh);
+        try (BKDIndexReader bkd = new BKDIndexReader(bkdName);
+             LevelDBMeshIndex lsm = new LevelDBMeshIndex(dbFile);
+             VectorScanEngine scan = new VectorScanEngine(mesh, 2)) {
+            MeshQueryPlanner planner = new MeshQueryPlanner(stats);
+            planner.addBackend(MeshQueryPlanner.Backend.BKD, bkd)
+                   .addBackend(MeshQueryPlanner.Backend.LSM, lsm)
+                   .addBackend(MeshQueryPlanner.Backend.SCAN, scan);
+
+            // Every point matches, reading them in order is cheapest
+            assertEquals(List.of(MeshQueryPlanner.Backend.SCAN), planner.plan(new MeshQuery()).getBackends());
+
+            // A narrow range of one field reads few keys or leaves
+            MeshQuery narrow = new MeshQuery().range(LaghosField.X, 0.5, 0.55);
+            MeshQueryPlanner.Plan plan = planner.plan(narrow);
+            assertNotEquals(List.of(MeshQueryPlanner.Backend.SCAN), plan.getBackends());
+            assertFalse(plan.isElementLevel());
+            assertTrue(plan.getCost() < planner.plan(new MeshQuery()).getCost());
+
+            // An LSM plan of one field is point level, but its rows are elements like its estimate
+            MeshQueryPlanner.Plan lsmPlan = new MeshQueryPlanner.Plan(false, stats.estimateElements(narrow), 0.0,
+                                                                      MeshQueryPlanner.Backend.LSM, narrow);
+            assertTrue(lsmPlan.countsElements());
+            MeshQueryResult lsmResult = planner.execute(lsmPlan);
+            assertEquals(lsmResult.getNumElements(), lsmResult.getMatchingPoints());
+            assertFalse(new MeshQueryPlanner.Plan(false, 0.0, 0.0, MeshQueryPlanner.Backend.BKD, narrow).countsElements());
+
+            // Point level plans find the elements a scan does
+            for (MeshQuery q : QuantizedMeshIndexTest.QUERIES) {
+                plan = planner.plan(q);
+                assertFalse(plan.isElementLevel(), plan.toString());
+                assertArrayEquals(BKDIndexReaderTest.scan(all, q).getElementIds(),
+                                  planner.execute(q).getElementIds(), plan + " " + q);
+            }
+            // At this size the leaves crossing a box are most of the tree, but
+            // the same distribution at the scale of a full dump sends a small box to it
+            MeshQuery box = new MeshQuery().box(0.4, 0.45, 0.4, 0.45, 0.2, 0.25);
+            assertEquals(List.of(MeshQueryPlanner.Backend.SCAN), planner.plan(box).getBackends());
+            double[] min = new double[LaghosPointBatch.NUM_FIELDS];
+            double[] max = new double[LaghosPointBatch.NUM_FIELDS];
+            double[][] bounds = new double[LaghosPointBatch.NUM_FIELDS][];
+            for (LaghosField f : LaghosField.values()) {
+                min[f.dim()] = stats.getMin(f);
+                max[f.dim()] = stats.getMax(f);
+                bounds[f.dim()] = stats.getBounds(f);
+            }
+            MeshQueryPlanner large = new MeshQueryPlanner(new MeshStatistics(30_000_000L, 3_750_000L, min, max, bounds))
+                .addBackend(MeshQueryPlanner.Backend.BKD, bkd)
+                .addBackend(MeshQueryPlanner.Backend.LSM, lsm)
+                .addBackend(MeshQueryPlanner.Backend.SCAN, scan);
+            assertEquals(List.of(MeshQueryPlanner.Backend.BKD), large.plan(box).getBackends());
+            assertEquals(List.of(MeshQueryPlanner.Backend.SCAN), large.plan(new MeshQuery()).getBackends());
+            large.setElementLevel(true);
+            MeshQuery boxed = new MeshQuery(box).range(LaghosField.RHO, 100.0, 101.0);
+            assertTrue(large.plan(boxed).isElementLevel());
+
+            // Element level answers may only grow, and say when they are element level
+            planner.setElementLevel(true);
+            for (MeshQuery q : QuantizedMeshIndexTest.QUERIES) {
+                long[] exact = BKDIndexReaderTest.scan(all, q).getElementIds();
+                MeshQueryResult planned = planner.execute(q);
+                assertEquals(exact.length, KVMeshIndex.intersect(exact, planned.getElementIds()).length, q.toString());
+                assertEquals(planner.plan(q).isElementLevel(), planned.isElementLevel(), q.toString());
+            }
+
+            // An intersection matches the elements with a vertex in the box and some vertex for each other field
+            MeshQuery spatial = new MeshQuery().box(0.1, 0.6, 0.2, 0.7, 0.0, 0.4);
+            MeshQuery scalar = new MeshQuery().greaterThan(LaghosField.RHO, 1.5);
+            MeshQueryPlanner.Plan intersect = new MeshQueryPlanner.Plan(true, 0.0, 0.0,
+                List.of(MeshQueryPlanner.Backend.BKD, MeshQueryPlanner.Backend.LSM), List.of(spatial, scalar));
+            assertTrue(intersect.isIntersection());
+            assertEquals("intersect", intersect.getName());
+            MeshQueryResult result = planner.execute(intersect);
+            assertTrue(result.isElementLevel());
+            long[] expected = KVMeshIndex.intersect(bkd.query(spatial).getElementIds(), lsm.query(scalar).getElementIds());
+            assertArrayEquals(expected, result.getElementIds());
+            assertEquals(expected.length, result.getMatchingPoints());
+            assertEquals(960, result.getTotalPoints());
+        }
+    }
+}
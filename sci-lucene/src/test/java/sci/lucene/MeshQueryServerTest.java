@@ -0,0 +1,93 @@
+package sci.lucene;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import sci.mfem.LaghosField;
+import sci.mfem.LaghosPointBatch;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MeshQueryServerTest {
+    final static int NUM_POINTS = 20000;
+
+    /** @return the status and body of a GET of path */
+    static HttpResponse<String> get(HttpClient http, URI base, String path) throws IOException, InterruptedException {
+        return http.send(HttpRequest.newBuilder(base.resolve(path)).GET().build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    /** @return the number following "key": in a JSON body */
+    static long jsonLong(String body, String key) {
+        Matcher m = Pattern.compile("\"" + key + "\": (-?\\d+)").matcher(body);
+        assertTrue(m.find(), key + " in " + body);
+        return Long.parseLong(m.group(1));
+    }
+
+    @Test void TestServer(@TempDir Path dir) throws Exception {
+        LaghosPointBatch batch = BKDIndexReaderTest.randomBatch(NUM_POINTS, 23);
+        String name = BKDIndexReaderTest.writeIndex(batch, dir);
+
+        try (MeshQueryServer server = new MeshQueryServer(0)) {
+            server.addIndex("bkd", new BKDIndexReader(name));
+            server.start();
+            URI base = URI.create("http://localhost:" + server.getPort() + "/");
+            HttpClient http = HttpClient.newHttpClient();
+
+            String indexes = get(http, base, "indexes").body();
+            assertTrue(indexes.contains("\"name\": \"bkd\""), indexes);
+            assertEquals(NUM_POINTS, jsonLong(indexes, "points"));
+
+            MeshQuery q = new MeshQuery().range(LaghosField.E, -5.0, 5.0)
+                                         .greaterThan(LaghosField.RHO, -2.5)
+                                         .box(-8.0, 0.0, -3.0, 9.0, -10.0, 10.0);
+            MeshQueryResult expected = BKDIndexReaderTest.scan(batch, q);
+            assertTrue(expected.getMatchingPoints() > 0);
+            String path = "query?index=bkd&e=-5,5&rho=" + Math.nextUp(-2.5) + ",&box=-8,0,-3,9,-10,10&ids=true";
+            HttpResponse<String> response = get(http, base, path);
+            assertEquals(200, response.statusCode(), response.body());
+            assertEquals(expected.getMatchingPoints(), jsonLong(response.body(), "points"));
+            assertEquals(expected.getNumElements(), jsonLong(response.body(), "elements"));
+            assertTrue(response.body().contains("\"elementIds\": [" + expected.getElementIds()[0] + ","));
+
+            HttpResponse<String> aggregate = get(http, base, "aggregate?index=bkd&e=-5,5&rho=" + Math.nextUp(-2.5)
+                                                 + ",&box=-8,0,-3,9,-10,10");
+            assertEquals(200, aggregate.statusCode(), aggregate.body());
+            assertEquals(expected.getMatchingPoints(), jsonLong(aggregate.body(), "count"));
+
+            assertEquals(404, get(http, base, "query?index=missing").statusCode());
+            assertEquals(404, get(http, base, "query").statusCode());
+            assertEquals(400, get(http, base, "query?index=bkd&e=1").statusCode());
+            assertEquals(400, get(http, base, "query?index=bkd&box=0,1,0,1,0,a").statusCode());
+
+            // Every client shares the mapped index
+            List<String> paths = Arrays.asList(path, "query?index=bkd&x=,0", "aggregate?index=bkd&v_x=1,2");
+            MeshQueryLoadGenerator.Report report = new MeshQueryLoadGenerator(base, 4).run(paths, 25);
+            assertEquals(100, report.getNumRequests());
+            assertEquals(0, report.getErrors());
+            assertTrue(report.getPercentileNanos(50.0) <= report.getPercentileNanos(99.0));
+            assertTrue(report.getPercentileNanos(99.0) <= report.getMaxNanos());
+            assertTrue(report.getQueriesPerSec() > 0.0);
+        }
+    }
+
+    @Test void TestParseQuery() {
+        MeshQuery q = MeshQueryServer.parseQuery(MeshQueryServer.parseParams(
+            URI.create("/query?index=a&rho=0.5,&v_z=,2&box=0,1,2,3,4,5")));
+        assertEquals(0.5, q.getMin(LaghosField.RHO));
+        assertEquals(Double.POSITIVE_INFINITY, q.getMax(LaghosField.RHO));
+        assertEquals(Double.NEGATIVE_INFINITY, q.getMin(LaghosField.V_Z));
+        assertEquals(2.0, q.getMax(LaghosField.V_Z));
+        assertEquals(3.0, q.getMax(LaghosField.Y));
+        assertEquals(4.0, q.getMin(LaghosField.Z));
+        assertFalse(q.isConstrained(LaghosField.E));
+        assertThrows(IllegalArgumentException.class, () -> MeshQueryServer.parseBounds("e", "1,2,3", 2));
+    }
+}
@@ -0,0 +1,79 @@
+package sci.lucene;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import sci.mfem.LaghosField;
+import sci.mfem.LaghosPointBatch;
+import sci.mfem.SyntheticLaghosMesh;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+class QuantizedMeshIndexTest {
+
+    static final MeshQuery[] QUERIES = {
+        new MeshQuery(),
+        new MeshQuery().range(LaghosField.E, 0.5, 1.5),
+        new MeshQuery().greaterThan(LaghosField.RHO, 1.5).box(0.1, 0.6, 0.2, 0.7, 0.0, 0.4),
+        new MeshQuery().range(LaghosField.V_X, -0.1, 0.1).lessThan(LaghosField.E, 1.0).range(LaghosField.Z, 0.25, 0.25),
+        new MeshQuery().range(LaghosField.E, 100.0, 200.0),
+    };
+
+    @Test void TestQueries(@TempDir Path dir) throws IOException {
+        SyntheticLaghosMesh mesh = new SyntheticLaghosMesh(12, 10, 8, 0, 960, 8192);
+        mesh.resetIterator();
+        LaghosPointBatch all = mesh.getNextLaghosPointBatch();
+
+        long previousBytes = Long.MAX_VALUE;
+        for (QuantizedPointCodec.Precision precision : QuantizedPointCodec.Precision.values()) {
+            try (QuantizedMeshIndex index = QuantizedMeshIndex.build(mesh, dir, precision, 2)) {
+                assertEquals(7680, index.getNumPoints());
+                for (MeshQuery q : QUERIES) {
+                    MeshQueryResult expected = BKDIndexReaderTest.scan(all, q);
+                    MeshQueryResult actual = index.query(q);
+                    String desc = precision + " " + q;
+                    assertEquals(expected.getMatchingPoints(), actual.getMatchingPoints(), desc);
+                    assertArrayEquals(expected.getElementIds(), actual.getElementIds(), desc);
+                    assertTrue(index.getLastFalsePositives() <= index.getLastCandidates());
+                }
+            }
+            // Each precision is smaller than the one before it
+            long bytes = QuantizedMeshIndex.getIndexBytes(dir);
+            assertTrue(bytes < previousBytes, precision + " takes " + bytes + " bytes");
+            previousBytes = bytes;
+        }
+
+        // Reopening reads the codec from the metadata
+        try (QuantizedMeshIndex reopened = new QuantizedMeshIndex(dir)) {
+            assertEquals(QuantizedPointCodec.Precision.FIXED16, reopened.getCodec().getPrecision());
+            MeshQuery q = new MeshQuery().range(LaghosField.RHO, 1.0, 2.0).range(LaghosField.X, 0.3, 0.9);
+            assertArrayEquals(BKDIndexReaderTest.scan(all, q).getElementIds(), reopened.query(q).getElementIds());
+        }
+    }
+
+    @Test void TestCodecOrder() {
+        double[] min = new double[LaghosPointBatch.NUM_FIELDS];
+        double[] max = new double[LaghosPointBatch.NUM_FIELDS];
+        Arrays.fill(min, -1.0);
+        Arrays.fill(max, 1.0);
+        Random r = new Random(3);
+        for (QuantizedPointCodec.Precision precision : QuantizedPointCodec.Precision.values()) {
+            QuantizedPointCodec codec = new QuantizedPointCodec(precision, min, max);
+            byte[] a = new byte[codec.getPackedBytes()];
+            byte[] b = new byte[codec.getPackedBytes()];
+            // Encoding never reverses the order of two values, including past the field range
+            for (int i = 0; i < 10000; i++) {
+                double x = r.nextDouble() * 4.0 - 2.0;
+                double y = (i % 10 == 0) ? Math.nextUp(x) : r.nextDouble() * 4.0 - 2.0;
+                codec.encode(Math.min(x, y), 0, a);
+                codec.encode(Math.max(x, y), 0, b);
+                assertTrue(codec.compare(a, b, 0) <= 0, precision + " " + x + " " + y);
+            }
+            codec.encode(-0.0, 1, a);
+            codec.encode(0.0, 1, b);
+            assertEquals(0, codec.compare(a, b, 1), precision.toString());
+        }
+    }
+}
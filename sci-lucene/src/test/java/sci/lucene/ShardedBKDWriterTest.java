@@ -0,0 +1,65 @@
+package sci.lucene;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.util.NumericUtils;
+import org.apache.lucene.util.bkd.BKDConfig;
+import org.apache.lucene.util.bkd.BKDReader;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardedBKDWriterTest {
+
+    @Test void TestShardsConcatenate() throws IOException {
+        Path dir = Files.createTempDirectory("sharded-bkd");
+        Directory tmp = FSDirectory.open(dir);
+        BKDConfig cfg = new BKDConfig(2, 2, 8, 16);
+        long[] shardPoints = {1000, 1500};
+        ShardedBKDWriter sWriter = new ShardedBKDWriter(tmp, "test", cfg, 2500, shardPoints, 1);
+
+        // Fill each shard with a disjoint docId range
+        byte[] packed = new byte[16];
+        int docId = 0;
+        for (int k = 0; k < shardPoints.length; k++) {
+            for (int i = 0; i < shardPoints[k]; i++) {
+                NumericUtils.longToSortableBytes(docId, packed, 0);
+                NumericUtils.longToSortableBytes(-docId, packed, 8);
+                sWriter.getShard(k).add(packed, docId++);
+            }
+        }
+        String name = dir.resolve("index").toString();
+        long dataBytes = sWriter.finish(name);
+        sWriter.close();
+        assertTrue(dataBytes > 0);
+
+        // Every shard tree should be readable from the concatenated files
+        try (IndexInput metaIn = tmp.openInput("index.tpm", IOContext.READONCE);
+             IndexInput idxIn = tmp.openInput("index.tpi", IOContext.READONCE);
+             IndexInput dataIn = tmp.openInput("index.tpd", IOContext.READONCE)) {
+            CodecUtil.checkHeader(metaIn, ShardedBKDWriter.SHARDS_CODEC,
+                                  ShardedBKDWriter.VERSION_CURRENT, ShardedBKDWriter.VERSION_CURRENT);
+            int numShards = metaIn.readVInt();
+            assertEquals(2, numShards);
+            long[] table = new long[4 * numShards];
+            for (int i = 0; i < table.length; i++) {
+                table[i] = metaIn.readLong();
+            }
+            long totalPoints = 0;
+            for (int k = 0; k < numShards; k++) {
+                BKDReader reader = new BKDReader(metaIn,
+                                                 idxIn.slice("index", table[4*k], table[4*k + 1]),
+                                                 dataIn.slice("data", table[4*k + 2], table[4*k + 3]));
+                assertEquals(shardPoints[k], reader.size());
+                totalPoints += reader.size();
+            }
+            assertEquals(2500, totalPoints);
+        }
+        assertFalse(Files.exists(dir.resolve("index.shard0.tpd")));
+    }
+}
@@ -0,0 +1,217 @@
+package sci.lucene;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.fusesource.leveldbjni.JniDBFactory;
+import org.iq80.leveldb.DB;
+import org.iq80.leveldb.Options;
+import sci.mfem.LaghosColumnCache;
+import sci.mfem.LaghosColumnReader;
+import sci.mfem.LaghosField;
+import sci.mfem.LaghosPointBatch;
+import sci.mfem.SyntheticLaghosMesh;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpaceFillingCurveTest {
+
+    static SpaceFillingCurve unitCurve(SpaceFillingCurve.Order order, int bits) {
+        return new SpaceFillingCurve(order, SpaceFillingCurve.NO_VALUE_DIM,
+                                     new double[]{0, 0, 0}, new double[]{1, 1, 1}, bits);
+    }
+
+    @Test void TestMortonInterleave() {
+        SpaceFillingCurve curve = unitCurve(SpaceFillingCurve.Order.MORTON, 2);
+        assertEquals(0b000100, curve.encodeCells(new long[]{1, 0, 0}));
+        assertEquals(0b010001, curve.encodeCells(new long[]{0, 2, 1}));
+        assertEquals(63, curve.encodeCells(new long[]{3, 3, 3}));
+        assertEquals(0, curve.quantize(0, -5.0));
+        assertEquals(3, curve.quantize(0, 1.0));
+        assertEquals(1, curve.quantize(0, 0.25));
+    }
+
+    @Test void TestHilbertAdjacency() {
+        int bits = 3;
+        SpaceFillingCurve curve = unitCurve(SpaceFillingCurve.Order.HILBERT, bits);
+        int side = 1 << bits;
+        long[][] cellOf = new long[side * side * side][];
+        for (int x = 0; x < side; x++) {
+            for (int y = 0; y < side; y++) {
+                for (int z = 0; z < side; z++) {
+                    long key = curve.encodeCells(new long[]{x, y, z});
+                    assertNull(cellOf[(int)key]);
+                    cellOf[(int)key] = new long[]{x, y, z};
+                }
+            }
+        }
+        // Consecutive keys are neighboring cells
+        for (int k = 1; k < cellOf.length; k++) {
+            long dist = 0;
+            for (int d = 0; d < 3; d++) {
+                dist += Math.abs(cellOf[k][d] - cellOf[k - 1][d]);
+            }
+            assertEquals(1, dist);
+        }
+    }
+
+    static boolean covered(List<long[]> ranges, long key) {
+        for (long[] r : ranges) {
+            if (Long.compareUnsigned(key, r[0]) >= 0 && Long.compareUnsigned(key, r[1]) <= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test void TestRanges() {
+        Random r = new Random(7);
+        for (SpaceFillingCurve.Order order : SpaceFillingCurve.Order.values()) {
+            SpaceFillingCurve curve = unitCurve(order, 4);
+            for (int trial = 0; trial < 20; trial++) {
+                double[] lo = new double[3];
+                double[] hi = new double[3];
+                for (int d = 0; d < 3; d++) {
+                    double a = r.nextDouble();
+                    double b = r.nextDouble();
+                    lo[d] = Math.min(a, b);
+                    hi[d] = Math.max(a, b);
+                }
+                List<long[]> exact = curve.ranges(lo, hi, Integer.MAX_VALUE);
+                List<long[]> coarse = curve.ranges(lo, hi, 16);
+                long exactKeys = 0;
+                for (long[] range : exact) {
+                    exactKeys += range[1] - range[0] + 1;
+                }
+                long boxCells = 1;
+                for (int d = 0; d < 3; d++) {
+                    boxCells *= curve.quantize(d, hi[d]) - curve.quantize(d, lo[d]) + 1;
+                }
+                assertEquals(boxCells, exactKeys);
+                for (int k = 1; k < exact.size(); k++) {
+                    assertTrue(Long.compareUnsigned(exact.get(k - 1)[1] + 1, exact.get(k)[0]) < 0);
+                }
+                for (int i = 0; i < 200; i++) {
+                    double x = lo[0] + r.nextDouble() * (hi[0] - lo[0]);
+                    double y = lo[1] + r.nextDouble() * (hi[1] - lo[1]);
+                    double z = lo[2] + r.nextDouble() * (hi[2] - lo[2]);
+                    long key = curve.encode(x, y, z);
+                    assertTrue(covered(exact, key));
+                    assertTrue(covered(coarse, key));
+                }
+            }
+        }
+    }
+
+    @Test void TestParameters() {
+        SpaceFillingCurve curve = new SpaceFillingCurve(SpaceFillingCurve.Order.HILBERT, LaghosField.E.dim(),
+                                                        new double[]{-1, 0, 0, 0.25}, new double[]{1, 2, 3, 4.0}, 16);
+        SpaceFillingCurve copy = SpaceFillingCurve.fromBytes(curve.toBytes());
+        assertEquals(curve.toString(), copy.toString());
+        assertEquals(4, copy.getNumDims());
+        assertEquals(LaghosField.E.dim(), copy.getDim(3));
+        assertEquals(curve.encode(0.5, 1.5, 2.5, 3.0), copy.encode(0.5, 1.5, 2.5, 3.0));
+        assertThrows(IllegalArgumentException.class, () -> unitCurve(SpaceFillingCurve.Order.MORTON, 22));
+    }
+
+    @Test void TestLevelDBBoxQuery() throws IOException {
+        SyntheticLaghosMesh mesh = new SyntheticLaghosMesh(10, 10, 10, 0, 1000, 8000);
+        SpaceFillingCurve curve = SpaceFillingCurve.forSource(SpaceFillingCurve.Order.HILBERT,
+                                                              SpaceFillingCurve.NO_VALUE_DIM, mesh);
+        File dbFile = Files.createTempDirectory("leveldb-curve").toFile();
+        Options options = new Options();
+        options.createIfMissing(true);
+        DB db = JniDBFactory.factory.open(dbFile, options);
+        LaghosPointBatch all = mesh.getNextLaghosPointBatch();
+        byte[] key = new byte[MeshKeyCodec.KEY_SIZE];
+        byte[] curveKey = new byte[MeshKeyCodec.curveKeySize(curve)];
+        for (int i = 0; i < all.size(); i++) {
+            MeshKeyCodec.encodeKey(all, i, LaghosField.E.dim(), key);
+            db.put(key, MeshKeyCodec.EMPTY_VALUE);
+            MeshKeyCodec.encodeCurveKey(curve, all, i, curveKey);
+            assertEquals(all.getY(i), MeshKeyCodec.getCurveValue(curveKey, 1));
+            db.put(curveKey, MeshKeyCodec.EMPTY_VALUE);
+        }
+        db.put(MeshKeyCodec.META_COUNTS_KEY, MeshKeyCodec.encodeCounts(all.size(), 1000));
+        db.put(MeshKeyCodec.META_CURVE_KEY, curve.toBytes());
+        db.close();
+
+        try (LevelDBMeshIndex index = new LevelDBMeshIndex(dbFile)) {
+            assertNotNull(index.getCurve());
+            MeshQuery q = new MeshQuery().box(0.15, 0.45, 0.3, 0.6, 0.05, 0.35).range(LaghosField.E, 0.5, 3.0);
+            // An element matches when one vertex is in the box and some vertex has e in range
+            Set<Long> inBox = new HashSet<>();
+            Set<Long> inRange = new HashSet<>();
+            for (int i = 0; i < all.size(); i++) {
+                if (all.getX(i) >= 0.15 && all.getX(i) <= 0.45 && all.getY(i) >= 0.3 && all.getY(i) <= 0.6
+                    && all.getZ(i) >= 0.05 && all.getZ(i) <= 0.35) {
+                    inBox.add(all.getElementId(i));
+                }
+                if (all.getE(i) >= 0.5 && all.getE(i) <= 3.0) {
+                    inRange.add(all.getElementId(i));
+                }
+            }
+            inBox.retainAll(inRange);
+            long[] expected = inBox.stream().mapToLong(Long::longValue).sorted().toArray();
+            assertTrue(expected.length > 0);
+            MeshQueryResult result = index.query(q);
+            assertArrayEquals(expected, result.getElementIds());
+            // The box and the energy range are matched separately
+            assertTrue(result.isElementLevel());
+            assertTrue(index.isElementLevel(q));
+
+            // The box alone is answered at point level from the curve, as one field is without it
+            MeshQuery box = new MeshQuery().box(0.15, 0.45, 0.3, 0.6, 0.05, 0.35);
+            assertFalse(index.isElementLevel(box));
+            assertFalse(index.query(box).isElementLevel());
+            assertFalse(index.query(new MeshQuery().range(LaghosField.E, 0.5, 3.0)).isElementLevel());
+        }
+    }
+
+    @Test void TestCurveSortedSource(@TempDir Path dir) throws IOException {
+        SyntheticLaghosMesh mesh = new SyntheticLaghosMesh(8, 6, 4, 0, 192, 4096);
+        LaghosColumnCache.write(mesh, dir, 2);
+        LaghosColumnReader columns = new LaghosColumnReader(dir);
+        SpaceFillingCurve curve = SpaceFillingCurve.forHeader(SpaceFillingCurve.Order.MORTON,
+                                                              SpaceFillingCurve.NO_VALUE_DIM, columns.getHeader());
+        CurveSortedSource sorted = new CurveSortedSource(columns, curve);
+        sorted.setFetchCount(100);
+        assertEquals(mesh.getNumPoints(), sorted.getNumPoints());
+        assertEquals(192, sorted.getNumElements());
+
+        Set<Long> elements = new HashSet<>();
+        long prevKey = 0;
+        long points = 0;
+        List<CurveSortedSource> splits = sorted.split(3);
+        assertEquals(3, splits.size());
+        for (CurveSortedSource split : splits) {
+            assertEquals(points, split.getFirstPointIndex());
+            for (LaghosPointBatch batch = split.getNextLaghosPointBatch(); batch != null;
+                 batch = split.getNextLaghosPointBatch()) {
+                assertEquals(0, batch.size() % SyntheticLaghosMesh.POINTS_PER_ELEMENT);
+                assertEquals(points, batch.getFirstPointIndex());
+                for (int i = 0; i < batch.size(); i += SyntheticLaghosMesh.POINTS_PER_ELEMENT) {
+                    double[] centroid = new double[3];
+                    for (int j = 0; j < SyntheticLaghosMesh.POINTS_PER_ELEMENT; j++) {
+                        assertEquals(batch.getElementId(i), batch.getElementId(i + j));
+                        for (int d = 0; d < 3; d++) {
+                            centroid[d] += batch.getDouble(i + j, d) / SyntheticLaghosMesh.POINTS_PER_ELEMENT;
+                        }
+                    }
+                    long curveKey = curve.encode(centroid);
+                    assertTrue(Long.compareUnsigned(prevKey, curveKey) <= 0);
+                    prevKey = curveKey;
+                    assertTrue(elements.add(batch.getElementId(i)));
+                }
+                points += batch.size();
+            }
+        }
+        assertEquals(192, elements.size());
+    }
+}
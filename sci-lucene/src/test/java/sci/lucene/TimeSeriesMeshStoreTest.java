@@ -0,0 +1,121 @@
+package sci.lucene;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import sci.mfem.LaghosField;
+import sci.mfem.LaghosPointBatch;
+import sci.mfem.SyntheticLaghosMesh;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimeSeriesMeshStoreTest {
+
+    // The mesh at cycles 10, 20, ... 80, the blast spreading as the run goes on
+    static final SyntheticLaghosMesh MESH = new SyntheticLaghosMesh(8, 6, 5, 0, 240, 4096);
+
+    static SyntheticLaghosMesh atCycle(int cycle) {
+        return MESH.atTime(cycle / 40.0);
+    }
+
+    /** @return the points of cycles [from, to] matching q, found by brute force */
+    static MeshQueryResult scan(List<SyntheticLaghosMesh> meshes, int[] cycles, int from, int to, MeshQuery q) {
+        MeshQueryResult result = new MeshQueryResult(0);
+        for (int k = 0; k < cycles.length; k++) {
+            if (cycles[k] < from || cycles[k] > to) {
+                continue;
+            }
+            SyntheticLaghosMesh mesh = meshes.get(k);
+            mesh.resetIterator();
+            LaghosPointBatch all = mesh.getNextLaghosPointBatch();
+            for (int i = 0; i < all.size(); i++) {
+                if (q.matches(all, i)) {
+                    result.addPoint(all.getElementId(i));
+                }
+            }
+        }
+        result.finish(0);
+        return result;
+    }
+
+    static void checkQuery(TimeSeriesMeshStore store, List<SyntheticLaghosMesh> meshes, int[] cycles,
+                           int from, int to, MeshQuery q) throws IOException {
+        MeshQueryResult expected = scan(meshes, cycles, from, to, q);
+        MeshQueryResult actual = store.query(q, from, to);
+        String desc = q + " in [" + from + "," + to + "]";
+        assertEquals(expected.getMatchingPoints(), actual.getMatchingPoints(), desc);
+        assertArrayEquals(expected.getElementIds(), actual.getElementIds(), desc);
+    }
+
+    static void checkQueries(TimeSeriesMeshStore store, List<SyntheticLaghosMesh> meshes, int[] cycles)
+        throws IOException {
+        MeshQuery hot = new MeshQuery().greaterThan(LaghosField.E, 1.5);
+        assertTrue(store.query(hot, 10, 30).getNumElements() > 0);
+        checkQuery(store, meshes, cycles, 40, 80, hot);
+        checkQuery(store, meshes, cycles, 10, 30, hot);
+        checkQuery(store, meshes, cycles, 20, 20, hot);
+        checkQuery(store, meshes, cycles, 85, 90, hot);
+        checkQuery(store, meshes, cycles, 0, 100, new MeshQuery().range(LaghosField.RHO, 2.0, 4.0)
+                                                                  .box(0.2, 0.7, 0.0, 0.5, 0.1, 0.6));
+        checkQuery(store, meshes, cycles, 30, 60, new MeshQuery().box(0.0, 0.3, 0.0, 0.3, 0.0, 0.3));
+        checkQuery(store, meshes, cycles, 30, 60, new MeshQuery().range(LaghosField.V_X, 0.1, 0.5)
+                                                                  .lessThan(LaghosField.E, 1.0));
+    }
+
+    @Test void TestAppendAndMerge(@TempDir Path dir) throws IOException {
+        int[] cycles = {10, 20, 30, 40, 50, 60, 70, 80};
+        List<SyntheticLaghosMesh> meshes = new ArrayList<>();
+        TimeSeriesMeshStore store = new TimeSeriesMeshStore(dir, 2);
+        for (int cycle : cycles) {
+            SyntheticLaghosMesh mesh = atCycle(cycle);
+            meshes.add(mesh);
+            store.append(cycle, mesh);
+        }
+        store.waitForMerges();
+
+        // The geometry never moves, and 8 segments merge down to one by twos
+        assertEquals(1, store.getNumGeometries());
+        assertEquals(1, store.getNumSegments());
+        assertArrayEquals(cycles, store.getCycles());
+        assertEquals(8 * 1920, store.getNumPoints());
+        checkQueries(store, meshes, cycles);
+        assertEquals(8 * 1920, store.query(new MeshQuery()).getMatchingPoints());
+
+        // Later cycles append to the merged segment
+        assertThrows(IllegalArgumentException.class, () -> store.append(80, atCycle(80)));
+        store.append(90, atCycle(90));
+        assertEquals(2, store.getNumSegments());
+        store.close();
+
+        // Reopening reads the manifest
+        int[] allCycles = {10, 20, 30, 40, 50, 60, 70, 80, 90};
+        meshes.add(atCycle(90));
+        TimeSeriesMeshStore reopened = new TimeSeriesMeshStore(dir, 2);
+        assertArrayEquals(allCycles, reopened.getCycles());
+        checkQueries(reopened, meshes, allCycles);
+        reopened.forceMerge();
+        assertEquals(1, reopened.getNumSegments());
+        checkQueries(reopened, meshes, allCycles);
+        reopened.close();
+    }
+
+    @Test void TestGeometryChange(@TempDir Path dir) throws IOException {
+        // Two geometries with the same number of points at different positions, the first shared
+        int[] cycles = {40, 50, 60};
+        List<SyntheticLaghosMesh> meshes = List.of(new SyntheticLaghosMesh(8, 6, 5, 0, 240, 4096),
+                                                   new SyntheticLaghosMesh(8, 6, 5, 0, 240, 4096).atTime(1.25),
+                                                   new SyntheticLaghosMesh(6, 8, 5, 0, 240, 4096));
+        TimeSeriesMeshStore store = new TimeSeriesMeshStore(dir);
+        for (int k = 0; k < cycles.length; k++) {
+            store.append(cycles[k], meshes.get(k));
+        }
+        assertEquals(2, store.getNumGeometries());
+        assertEquals(3, store.getNumSegments());
+        checkQuery(store, meshes, cycles, 40, 60, new MeshQuery().box(0.5, 1.0, 0.0, 0.25, 0.0, 1.0));
+        checkQuery(store, meshes, cycles, 50, 60, new MeshQuery().greaterThan(LaghosField.E, 1.0)
+                                                                  .box(0.0, 0.5, 0.5, 1.0, 0.0, 1.0));
+        store.close();
+    }
+}
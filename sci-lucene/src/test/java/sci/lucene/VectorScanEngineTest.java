@@ -0,0 +1,79 @@
+package sci.lucene;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import sci.mfem.LaghosColumnBatch;
+import sci.mfem.LaghosColumnCache;
+import sci.mfem.LaghosColumnReader;
+import sci.mfem.LaghosField;
+import sci.mfem.LaghosPointBatch;
+import sci.mfem.SyntheticLaghosMesh;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+class VectorScanEngineTest {
+
+    /** Check every query against a scalar scan of all */
+    static void checkQueries(VectorScanEngine engine, LaghosPointBatch all, String desc) throws IOException {
+        for (MeshQuery q : QuantizedMeshIndexTest.QUERIES) {
+            MeshQueryResult expected = BKDIndexReaderTest.scan(all, q);
+            MeshQueryResult actual = engine.query(q);
+            assertEquals(expected.getMatchingPoints(), actual.getMatchingPoints(), desc + " " + q);
+            assertArrayEquals(expected.getElementIds(), actual.getElementIds(), desc + " " + q);
+            assertEquals(expected.getMatchingPoints(), engine.count(q), desc + " " + q);
+        }
+    }
+
+    @Test void TestRowBatches() throws IOException {
+        SyntheticLaghosMesh mesh = new SyntheticLaghosMesh(12, 10, 8, 0, 960, 1000);
+        SyntheticLaghosMesh whole = new SyntheticLaghosMesh(12, 10, 8, 0, 960, 8192);
+        whole.resetIterator();
+        LaghosPointBatch all = whole.getNextLaghosPointBatch();
+        try (VectorScanEngine engine = new VectorScanEngine(mesh, 3, 100)) {
+            assertEquals(7680, engine.getNumPoints());
+            checkQueries(engine, all, "rows");
+
+            VectorScanEngine.ScanResult scan = engine.scan(new MeshQuery(), false);
+            assertEquals(7680, scan.getCount());
+            assertNull(scan.getElementIds());
+            assertEquals(7680L * LaghosPointBatch.POINT_SIZE, scan.getBytesScanned());
+
+            // A batch that is not a whole number of vectors exercises the scalar tail
+            LaghosPointBatch odd = BKDIndexReaderTest.randomBatch(9999, 7);
+            MeshQuery q = new MeshQuery().range(LaghosField.E, -5.0, 5.0).greaterThan(LaghosField.X, 0.0);
+            VectorScanEngine.ScanResult oddScan = engine.scan(odd, q, true);
+            MeshQueryResult expected = BKDIndexReaderTest.scan(odd, q);
+            assertEquals(expected.getMatchingPoints(), oddScan.getCount());
+            assertEquals(expected.getNumElements(), oddScan.getElementIds().getCardinality());
+        }
+    }
+
+    @Test void TestColumnBatches(@TempDir Path dir) throws IOException {
+        SyntheticLaghosMesh mesh = new SyntheticLaghosMesh(12, 10, 8, 0, 960, 8192);
+        mesh.resetIterator();
+        LaghosPointBatch all = mesh.getNextLaghosPointBatch();
+        LaghosColumnCache.write(mesh, dir, 2);
+        LaghosColumnReader columns = new LaghosColumnReader(dir);
+        try (VectorScanEngine engine = new VectorScanEngine(columns, 2, 256)) {
+            checkQueries(engine, all, "columns");
+        } finally {
+            columns.close();
+        }
+
+        // The off-heap copy holds the whole mesh in one batch
+        LaghosColumnBatch copy = VectorScanEngine.copyColumns(mesh);
+        assertEquals(7680, copy.size());
+        try (VectorScanEngine engine = new VectorScanEngine(mesh, 4)) {
+            for (MeshQuery q : QuantizedMeshIndexTest.QUERIES) {
+                MeshQueryResult expected = BKDIndexReaderTest.scan(all, q);
+                VectorScanEngine.ScanResult scan = engine.scan(copy, q, true);
+                assertEquals(expected.getMatchingPoints(), scan.getCount(), "copy " + q);
+                assertEquals(expected.getNumElements(), scan.getElementIds().getCardinality(), "copy " + q);
+                for (long id : expected.getElementIds()) {
+                    assertTrue(scan.getElementIds().contains((int)id), "copy " + q + " " + id);
+                }
+            }
+        }
+    }
+}
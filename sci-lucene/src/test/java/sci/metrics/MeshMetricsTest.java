@@ -0,0 +1,72 @@
+package sci.metrics;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MeshMetricsTest {
+
+    @Test void TestHistogram() {
+        // The test task runs with sci.metrics=true
+        assertTrue(MeshMetrics.ENABLED);
+        MeshMetrics.Histogram h = MeshMetrics.histogram("test.histogram");
+        for (long v = 1; v <= 1000; v++) {
+            h.record(v);
+        }
+        assertEquals(1000, h.getCount());
+        assertEquals(500500, h.getSum());
+        assertEquals(1, h.getMin());
+        assertEquals(1000, h.getMax());
+
+        // Percentiles are within a factor of two above the exact value
+        long p50 = h.getPercentile(50.0);
+        assertTrue(p50 >= 500 && p50 < 1000, "p50 " + p50);
+        long p99 = h.getPercentile(99.0);
+        assertTrue(p99 >= 990 && p99 <= 1000, "p99 " + p99);
+
+        MeshMetrics.Counter c = MeshMetrics.counter("test.counter");
+        c.add(7);
+        c.add(5);
+        assertSame(c, MeshMetrics.counter("test.counter"));
+        String json = MeshMetrics.toJson();
+        assertTrue(json.contains("\"test.counter\": 12"), json);
+        assertTrue(json.contains("\"test.histogram\": {\"count\": 1000, \"sum\": 500500, \"min\": 1, \"max\": 1000"),
+                   json);
+
+        MeshMetrics.reset();
+        assertEquals(0, c.get());
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.getPercentile(50.0));
+    }
+
+    @Test void TestStallEvents(@TempDir Path dir) throws IOException, InterruptedException {
+        Path file = dir.resolve("stalls.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(MeshEvents.LSMWriteStall.class).withThreshold(Duration.ofMillis(1));
+            recording.start();
+            MeshEvents.LSMWriteStall.start("test", 10).finish();
+            MeshEvents.LSMWriteStall slow = MeshEvents.LSMWriteStall.start("test", 20);
+            Thread.sleep(5);
+            slow.finish();
+            recording.stop();
+            recording.dump(file);
+        }
+
+        // The slow write is a stall, and the metrics saw both. A pause can
+        // make the other one a stall too, so only the slow one is required.
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        RecordedEvent stall = events.stream().filter(e -> 20 == e.getLong("points")).findFirst().orElse(null);
+        assertNotNull(stall);
+        assertEquals("test", stall.getString("store"));
+        assertFalse(stall.hasField("startNanos"));
+        assertEquals(2, MeshMetrics.histogram("lsm.test.write.nanos").getCount());
+        assertTrue(MeshMetrics.counter("lsm.test.write.stalls").get() >= 1);
+    }
+}
@@ -0,0 +1,150 @@
+package sci.mfem;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+class JavaLaghosMeshReaderTest {
+
+    // Two unit hexes side by side along x, vertex (ix, iy, iz) is ix + 3 * (iy + 2 * iz)
+    static final int[][] ELEMENT_ORIGINS = {{0, 0, 0}, {1, 0, 0}};
+
+    static int vertexId(int ix, int iy, int iz) {
+        return ix + 3 * (iy + 2 * iz);
+    }
+
+    static String elements() {
+        StringBuilder sb = new StringBuilder("elements\n2\n");
+        for (int[] o : ELEMENT_ORIGINS) {
+            sb.append("1 5");
+            for (int[] c : MFEMMesh.TENSOR_CORNERS[3]) {
+                sb.append(' ').append(vertexId(o[0] + c[0], o[1] + c[1], o[2] + c[2]));
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    static void writeFiles(Path dir, boolean withNodes) throws IOException {
+        StringBuilder mesh = new StringBuilder("MFEM mesh v1.0\n\n#\n# Two hexes\n#\n\ndimension\n3\n\n");
+        mesh.append(elements());
+        mesh.append("\nboundary\n2\n1 3 0 1 4 3\n2 3 2 5 11 8\n\n");
+        if (withNodes) {
+            // First order nodes ordered by nodes: every x, then every y, then every z
+            mesh.append("vertices\n12\n\nnodes\nFiniteElementSpace\nFiniteElementCollection: H1_3D_P1\nVDim: 3\nOrdering: 0\n\n");
+            for (int c = 0; c < 3; c++) {
+                for (int v = 0; v < 12; v++) {
+                    int[] xyz = {v % 3, (v / 3) % 2, v / 6};
+                    mesh.append(xyz[c]).append('\n');
+                }
+            }
+            mesh.append("\nmfem_mesh_end\n");
+        } else {
+            mesh.append("vertices\n12\n3\n");
+            for (int v = 0; v < 12; v++) {
+                mesh.append(v % 3).append(' ').append((v / 3) % 2).append(' ').append(v / 6).append('\n');
+            }
+        }
+        Files.writeString(dir.resolve("mesh"), mesh.toString());
+
+        // e is first order Bernstein, each dof is 100 * element + dof
+        StringBuilder e = new StringBuilder("FiniteElementSpace\nFiniteElementCollection: L2_T2_3D_P1\nVDim: 1\nOrdering: 0\n\n");
+        for (int el = 0; el < 2; el++) {
+            for (int dof = 0; dof < 8; dof++) {
+                e.append(100 * el + dof).append('\n');
+            }
+        }
+        Files.writeString(dir.resolve("e"), e.toString());
+
+        // rho is first order Gauss-Legendre interpolating the x coordinate
+        double[] g = MFEMGridFunction.gaussLegendrePoints(2);
+        StringBuilder rho = new StringBuilder("FiniteElementSpace\nFiniteElementCollection: L2_3D_P1\nVDim: 1\nOrdering: 0\n\n");
+        for (int el = 0; el < 2; el++) {
+            for (int dof = 0; dof < 8; dof++) {
+                rho.append(Double.toString(el + g[dof % 2])).append('\n');
+            }
+        }
+        Files.writeString(dir.resolve("rho"), rho.toString());
+
+        // v is second order H1 ordered by vdim, vertex dofs first; gzipped
+        StringBuilder v = new StringBuilder("FiniteElementSpace\nFiniteElementCollection: H1_3D_P2\nVDim: 3\nOrdering: 1\n\n");
+        for (int dof = 0; dof < 12 + 20 + 11 + 2; dof++) {
+            v.append(10 * dof).append(' ').append(10 * dof + 1).append(' ').append(10 * dof + 2).append('\n');
+        }
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(dir.resolve("v.gz")))) {
+            out.write(v.toString().getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+    static JavaLaghosMeshReader open(Path dir, int nThreads) throws IOException {
+        return new JavaLaghosMeshReader(dir.resolve("mesh").toString(), dir.resolve("e").toString(),
+                                        dir.resolve("rho").toString(), dir.resolve("v.gz").toString(), nThreads);
+    }
+
+    static void checkPoints(JavaLaghosMeshReader reader) {
+        assertEquals(2, reader.getNumElements());
+        assertEquals(16, reader.getNumPoints());
+        LaghosPointBatch batch = reader.getNextLaghosPointBatch();
+        assertEquals(16, batch.size());
+        for (int el = 0; el < 2; el++) {
+            for (int j = 0; j < 8; j++) {
+                int[] c = MFEMMesh.TENSOR_CORNERS[3][j];
+                int p = 8 * el + j;
+                int vertex = vertexId(el + c[0], c[1], c[2]);
+                assertEquals(el + c[0], batch.getX(p));
+                assertEquals(c[1], batch.getY(p));
+                assertEquals(c[2], batch.getZ(p));
+                assertEquals(100 * el + c[0] + 2 * c[1] + 4 * c[2], batch.getE(p));
+                assertEquals(el + c[0], batch.getRho(p), 1e-12);
+                assertEquals(10 * vertex, batch.getVx(p));
+                assertEquals(10 * vertex + 1, batch.getVy(p));
+                assertEquals(10 * vertex + 2, batch.getVz(p));
+                assertEquals(el, batch.getElementId(p));
+            }
+        }
+        assertNull(reader.getNextLaghosPointBatch());
+    }
+
+    @Test void TestReadPoints(@TempDir Path dir) throws IOException {
+        writeFiles(dir, false);
+        checkPoints(open(dir, 1));
+        checkPoints(open(dir, 3));
+    }
+
+    @Test void TestReadNodes(@TempDir Path dir) throws IOException {
+        writeFiles(dir, true);
+        JavaLaghosMeshReader reader = open(dir, 2);
+        assertEquals(12, reader.getMesh().getNumVertices());
+        checkPoints(reader);
+    }
+
+    @Test void TestSplit(@TempDir Path dir) throws IOException {
+        writeFiles(dir, false);
+        JavaLaghosMeshReader reader = open(dir, 1);
+        reader.setFetchCount(8);
+        List<JavaLaghosMeshReader> splits = reader.split(2);
+        assertEquals(2, splits.size());
+        for (int k = 0; k < 2; k++) {
+            JavaLaghosMeshReader split = splits.get(k);
+            assertEquals(8 * k, split.getFirstPointIndex());
+            LaghosPointBatch batch = split.getNextLaghosPointBatch();
+            assertEquals(8, batch.size());
+            assertEquals(8 * k, batch.getFirstPointIndex());
+            assertEquals(k, batch.getElementId(0));
+            assertNull(split.getNextLaghosPointBatch());
+        }
+    }
+
+    @Test void TestMismatchedField(@TempDir Path dir) throws IOException {
+        writeFiles(dir, false);
+        Files.writeString(dir.resolve("e"), "FiniteElementSpace\nFiniteElementCollection: L2_T2_3D_P1\nVDim: 1\nOrdering: 0\n\n1 2 3\n");
+        assertThrows(IOException.class, () -> open(dir, 1));
+    }
+}
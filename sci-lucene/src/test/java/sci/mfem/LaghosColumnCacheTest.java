@@ -0,0 +1,102 @@
+package sci.mfem;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+class LaghosColumnCacheTest {
+
+    /** Check that reader serves exactly the points of mesh, in order */
+    static void checkPoints(LaghosPointSource mesh, LaghosPointSource reader) {
+        byte[] expected = new byte[LaghosPointBatch.POINT_SIZE];
+        byte[] actual = new byte[LaghosPointBatch.POINT_SIZE];
+        mesh.resetIterator();
+        LaghosPointBatch all = mesh.getNextLaghosPointBatch();
+        long points = 0;
+        for (LaghosPointBatch batch = reader.getNextLaghosPointBatch(); batch != null;
+             batch = reader.getNextLaghosPointBatch()) {
+            assertEquals(0, batch.size() % SyntheticLaghosMesh.POINTS_PER_ELEMENT);
+            for (int i = 0; i < batch.size(); i++) {
+                int p = (int)(batch.getFirstPointIndex() + i);
+                all.copyPoint(p, expected);
+                batch.copyPoint(i, actual);
+                assertArrayEquals(expected, actual);
+                assertEquals(all.getRho(p), batch.getRho(i));
+                assertEquals(all.getElementId(p), batch.getElementId(i));
+            }
+            points += batch.size();
+        }
+        assertEquals(reader.getNumPoints(), points);
+    }
+
+    @Test void TestRoundTrip(@TempDir Path dir) throws IOException {
+        SyntheticLaghosMesh mesh = new SyntheticLaghosMesh(6, 5, 4, 0, 120, 1024);
+        LaghosColumnCache.Header written = LaghosColumnCache.write(mesh, dir, 3);
+        assertTrue(LaghosColumnCache.exists(dir));
+        assertEquals(960, written.numPoints);
+
+        // Small segments and batches exercise the segment boundaries
+        LaghosColumnReader reader = new LaghosColumnReader(dir, 100);
+        reader.setFetchCount(50);
+        assertEquals(120, reader.getNumElements());
+        assertEquals(960, reader.getNumPoints());
+        assertEquals(0.0, reader.getHeader().getMin(LaghosField.X.dim()));
+        assertEquals(1.0, reader.getHeader().getMax(LaghosField.X.dim()));
+        checkPoints(mesh, reader);
+
+        // Packed rows gathered from the columns match the row layout
+        reader.resetIterator();
+        LaghosPointBatch batch = reader.getNextLaghosPointBatch();
+        assertEquals(48, batch.size());
+        assertEquals(batch.getVz(3), batch.getBuffer().getDouble(3 * LaghosPointBatch.POINT_SIZE
+                                                                 + LaghosPointBatch.V_Z_OFFSET));
+    }
+
+    @Test void TestCloseSplits(@TempDir Path dir) throws IOException {
+        AtomicInteger closed = new AtomicInteger();
+        SyntheticLaghosMesh mesh = new SyntheticLaghosMesh(6, 5, 4, 0, 120, 1024) {
+            @Override
+            public List<SyntheticLaghosMesh> split(int n) {
+                List<SyntheticLaghosMesh> splits = new ArrayList<>();
+                for (SyntheticLaghosMesh split : super.split(n)) {
+                    splits.add(new SyntheticLaghosMesh(6, 5, 4, split.getFirstPointIndex() / 8,
+                                                       split.getFirstPointIndex() / 8 + split.getNumElements(), 1024) {
+                        @Override
+                        public void close() {
+                            closed.incrementAndGet();
+                        }
+                    });
+                }
+                return splits;
+            }
+
+            @Override
+            public void close() {
+                fail("The caller's source was closed");
+            }
+        };
+        LaghosColumnCache.write(mesh, dir, 3);
+        assertEquals(3, closed.get());
+        LaghosColumnCache.write(mesh, dir, 1);
+        assertEquals(3, closed.get());
+    }
+
+    @Test void TestSplit(@TempDir Path dir) throws IOException {
+        SyntheticLaghosMesh mesh = new SyntheticLaghosMesh(5, 5, 5, 0, 125, 2000);
+        LaghosColumnCache.write(mesh, dir, 1);
+        List<LaghosColumnReader> splits = new LaghosColumnReader(dir).split(4);
+        assertEquals(4, splits.size());
+        long points = 0;
+        for (LaghosColumnReader split : splits) {
+            assertEquals(points, split.getFirstPointIndex());
+            checkPoints(mesh, split);
+            points += split.getNumPoints();
+        }
+        assertEquals(1000, points);
+    }
+}
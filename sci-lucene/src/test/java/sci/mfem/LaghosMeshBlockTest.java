@@ -0,0 +1,87 @@
+package sci.mfem;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+class LaghosMeshBlockTest {
+
+    /**
+     * Check that the blocks of source rebuild exactly the flat points of
+     * mesh, which must be served in one batch
+     *
+     * @return the number of vertices source returned
+     */
+    static int checkBlocks(LaghosVertexSource source, LaghosPointSource mesh) {
+        mesh.resetIterator();
+        LaghosPointBatch all = mesh.getNextLaghosPointBatch();
+        Map<Long, double[]> vertices = new HashMap<>();
+        long points = 0;
+        for (LaghosMeshBlock block = source.getNextLaghosMeshBlock(); block != null;
+             block = source.getNextLaghosMeshBlock()) {
+            for (int v = 0; v < block.getNumVertices(); v++) {
+                double[] xyz = {block.getVertexCoordinate(v, 0), block.getVertexCoordinate(v, 1),
+                                block.getVertexCoordinate(v, 2)};
+                assertNull(vertices.put(block.getVertexId(v), xyz), "vertex returned twice");
+            }
+            int n = block.getVerticesPerElement();
+            for (int k = 0; k < block.getNumElements(); k++) {
+                for (int j = 0; j < n; j++) {
+                    int a = k * n + j;
+                    int p = (int)(block.getFirstPointIndex() + a);
+                    assertEquals(block.getElementVertex(k, j), block.getAttrVertexId(a));
+                    assertEquals(all.getElementId(p), block.getElementId(k));
+                    assertEquals(all.getElementId(p), block.getAttrElementId(a));
+                    double[] xyz = vertices.get(block.getAttrVertexId(a));
+                    assertNotNull(xyz, "element refers to an unseen vertex");
+                    assertEquals(all.getX(p), xyz[0]);
+                    assertEquals(all.getY(p), xyz[1]);
+                    assertEquals(all.getZ(p), xyz[2]);
+                    for (int dim = LaghosField.E.dim(); dim < LaghosPointBatch.NUM_FIELDS; dim++) {
+                        assertEquals(all.getDouble(p, dim), block.getAttr(a, dim));
+                    }
+                }
+            }
+            points += block.getNumAttrs();
+        }
+        assertEquals(source.getNumPoints(), points);
+        return vertices.size();
+    }
+
+    @Test void TestSynthetic() {
+        SyntheticLaghosMesh mesh = new SyntheticLaghosMesh(4, 3, 2, 0, 24, 1024);
+        SyntheticLaghosMesh source = new SyntheticLaghosMesh(4, 3, 2, 0, 24, 40);
+        assertEquals(60, checkBlocks(source, mesh));
+        assertEquals(source.getNumMeshVertices(), 60);
+
+        // A reset returns every vertex again
+        source.resetIterator();
+        assertEquals(60, checkBlocks(source, mesh));
+        assertThrows(IllegalArgumentException.class, () -> {
+            source.resetIterator();
+            source.getNextLaghosMeshBlock().getAttr(0, LaghosField.Z.dim());
+        });
+    }
+
+    @Test void TestJavaReader(@TempDir Path dir) throws IOException {
+        JavaLaghosMeshReaderTest.writeFiles(dir, false);
+        JavaLaghosMeshReader mesh = JavaLaghosMeshReaderTest.open(dir, 1);
+        JavaLaghosMeshReader source = JavaLaghosMeshReaderTest.open(dir, 1);
+        source.setFetchCount(8);
+        assertEquals(12, checkBlocks(source, mesh));
+
+        // The second hex only adds the 4 vertices it does not share
+        source.resetIterator();
+        assertEquals(8, source.getNextLaghosMeshBlock().getNumVertices());
+        assertEquals(4, source.getNextLaghosMeshBlock().getNumVertices());
+        assertNull(source.getNextLaghosMeshBlock());
+
+        // A larger fetch after the first block resizes the builder
+        source.setFetchCount(16);
+        assertEquals(12, checkBlocks(source, mesh));
+    }
+}
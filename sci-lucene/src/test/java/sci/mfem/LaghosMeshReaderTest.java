@@ -5,7 +5,10 @@ package sci.mfem;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
 import com.sun.jna.NativeLibrary;
+import jdk.incubator.foreign.MemorySegment;
+import jdk.incubator.foreign.ResourceScope;
 import sci.mfem.LaghosMeshReader;
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
@@ -97,4 +100,105 @@ class LaghosMeshReaderTest {
         lmr.close();
         assertEquals(0, 0);
     }
+
+    @Test void TestGetNextPointBatch() {
+        String meshFile = PROJECT_DATA_DIR + "/1m_mesh/1m_60_mesh";
+        String eFile = PROJECT_DATA_DIR + "/1m_mesh/1m_60_e";
+        String rhoFile = PROJECT_DATA_DIR + "/1m_mesh/1m_60_rho";
+        String vFile = PROJECT_DATA_DIR + "/1m_mesh/1m_60_v";
+        LaghosMeshReader lmr = new LaghosMeshReader(meshFile, eFile, rhoFile, vFile);
+
+        // The batches should cover all 524288 points in order
+        long count = 0;
+        long begin = System.nanoTime();
+        LaghosPointBatch batch = lmr.getNextLaghosPointBatch();
+        while (null != batch) {
+            assertEquals(count, batch.getFirstPointIndex());
+            assertEquals(batch.size() * LaghosPointBatch.POINT_SIZE, batch.getBuffer().remaining());
+            count += batch.size();
+            batch = lmr.getNextLaghosPointBatch();
+        }
+        assertEquals(524288, count);
+
+        long end = System.nanoTime();
+        double secs = ((double)(end - begin))/(1000*1000*1000);
+        System.out.println("Time to iterate over point batches: " + secs);
+
+        lmr.close();
+    }
+
+    @Test void TestSplit() {
+        String meshFile = PROJECT_DATA_DIR + "/1m_mesh/1m_60_mesh";
+        String eFile = PROJECT_DATA_DIR + "/1m_mesh/1m_60_e";
+        String rhoFile = PROJECT_DATA_DIR + "/1m_mesh/1m_60_rho";
+        String vFile = PROJECT_DATA_DIR + "/1m_mesh/1m_60_v";
+        LaghosMeshReader lmr = new LaghosMeshReader(meshFile, eFile, rhoFile, vFile);
+
+        // The splits should be contiguous and together yield all 524288 points
+        List<LaghosMeshReader> splits = lmr.split(3);
+        assertEquals(3, splits.size());
+        long count = 0;
+        for (LaghosMeshReader split : splits) {
+            assertEquals(count, split.getFirstPointIndex());
+            LaghosPointBatch batch = split.getNextLaghosPointBatch();
+            while (null != batch) {
+                assertEquals(count, batch.getFirstPointIndex());
+                count += batch.size();
+                batch = split.getNextLaghosPointBatch();
+            }
+            split.close();
+        }
+        assertEquals(524288, count);
+        lmr.close();
+    }
+
+    @Test void TestForeignReader() {
+        String meshFile = PROJECT_DATA_DIR + "/1m_mesh/1m_60_mesh";
+        String eFile = PROJECT_DATA_DIR + "/1m_mesh/1m_60_e";
+        String rhoFile = PROJECT_DATA_DIR + "/1m_mesh/1m_60_rho";
+        String vFile = PROJECT_DATA_DIR + "/1m_mesh/1m_60_v";
+        ForeignLaghosMeshReader flr = new ForeignLaghosMeshReader(meshFile, eFile, rhoFile, vFile);
+        assertEquals(65536, flr.getNumElements());
+
+        // The column batches cover all 524288 points in element order
+        long count = 0;
+        for (LaghosPointBatch batch = flr.getNextLaghosPointBatch(); null != batch;
+             batch = flr.getNextLaghosPointBatch()) {
+            assertEquals(count, batch.getFirstPointIndex());
+            assertEquals(count / 8, batch.getElementId(0));
+            count += batch.size();
+        }
+        assertEquals(524288, count);
+
+        // Caller-provided columns hold the same points as the first batch
+        flr.resetIterator();
+        LaghosPointBatch first = flr.getNextLaghosPointBatch();
+        double[] x = new double[first.size()];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = first.getX(i);
+        }
+        try (ResourceScope scope = ResourceScope.newConfinedScope()) {
+            MemorySegment[] columns = new MemorySegment[LaghosColumnBatch.NUM_COLUMNS];
+            for (int c = 0; c < columns.length; c++) {
+                columns[c] = MemorySegment.allocateNative((long)x.length * Double.BYTES, scope);
+            }
+            MemorySegment vertexIds = MemorySegment.allocateNative((long)x.length * Long.BYTES, scope);
+            flr.resetIterator();
+            assertEquals(x.length, flr.readColumns(columns, vertexIds, x.length));
+            assertArrayEquals(x, columns[LaghosField.X.dim()].toDoubleArray());
+        }
+
+        // Splits cover the mesh with their own handles
+        long splitCount = 0;
+        for (ForeignLaghosMeshReader split : flr.split(3)) {
+            assertEquals(splitCount, split.getFirstPointIndex());
+            for (LaghosPointBatch batch = split.getNextLaghosPointBatch(); null != batch;
+                 batch = split.getNextLaghosPointBatch()) {
+                splitCount += batch.size();
+            }
+            split.close();
+        }
+        assertEquals(524288, splitCount);
+        flr.close();
+    }
 }
@@ -0,0 +1,108 @@
+package sci.mfem;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+class LaghosParquetTest {
+
+    @Test void TestRoundTrip(@TempDir Path dir) throws IOException {
+        SyntheticLaghosMesh mesh = new SyntheticLaghosMesh(8, 8, 8, 0, 512, 4096);
+        LaghosParquetWriter.write(mesh, dir, p -> p / 8 * 100 + p % 8);
+        mesh.resetIterator();
+
+        LaghosParquetReader reader = new LaghosParquetReader(dir);
+        assertEquals(512, reader.getNumElements());
+        assertEquals(4096, reader.getNumPoints());
+        reader.setFetchCount(700);
+        LaghosColumnCacheTest.checkPoints(mesh, reader);
+
+        // The iterator restarts after a reset
+        reader.resetIterator();
+        LaghosPointBatch batch = reader.getNextLaghosPointBatch();
+        assertNotNull(batch);
+        assertEquals(0, batch.getFirstPointIndex());
+        assertEquals(mesh.getNumPoints(), reader.getNumPoints());
+        reader.close();
+    }
+
+    @Test void TestSplitFiles(@TempDir Path dir) throws IOException {
+        // Two datasets written into one directory read as consecutive files
+        SyntheticLaghosMesh mesh = new SyntheticLaghosMesh(4, 4, 4);
+        List<SyntheticLaghosMesh> halves = mesh.split(2);
+        LaghosParquetWriter.write(halves.get(0), dir.resolve("a"));
+        LaghosParquetWriter.write(halves.get(1), dir.resolve("b"));
+        Files.move(dir.resolve("a").resolve("part-0.parquet"), dir.resolve("a.parquet"));
+        Files.move(dir.resolve("b").resolve("part-0.parquet"), dir.resolve("b.parquet"));
+
+        LaghosParquetReader reader = new LaghosParquetReader(dir);
+        assertEquals(512, reader.getNumPoints());
+        List<LaghosParquetReader> splits = reader.split(2);
+        assertEquals(2, splits.size());
+        assertEquals(0, splits.get(0).getFirstPointIndex());
+        assertEquals(256, splits.get(1).getFirstPointIndex());
+        for (LaghosParquetReader split : splits) {
+            LaghosColumnCacheTest.checkPoints(mesh, split);
+            split.close();
+        }
+        reader.close();
+    }
+
+    @Test void TestElementAcrossFiles(@TempDir Path dir) throws IOException {
+        // Element 32 has its first 4 points in one file and its last 4 in the next
+        SyntheticLaghosMesh mesh = new SyntheticLaghosMesh(4, 4, 4);
+        SyntheticLaghosMesh head = new SyntheticLaghosMesh(4, 4, 4, 0, 33, 4096) {
+            @Override
+            public LaghosPointBatch getNextLaghosPointBatch() {
+                LaghosPointBatch batch = super.getNextLaghosPointBatch();
+                if (null != batch) {
+                    batch.reset(batch.getBuffer(), 0, batch.size() - 4, batch.getFirstPointIndex());
+                }
+                return batch;
+            }
+        };
+        SyntheticLaghosMesh tail = new SyntheticLaghosMesh(4, 4, 4, 32, 64, 4096) {
+            @Override
+            public LaghosPointBatch getNextLaghosPointBatch() {
+                LaghosPointBatch batch = super.getNextLaghosPointBatch();
+                if (null != batch) {
+                    batch.reset(batch.getBuffer(), 4, batch.size() - 4, batch.getFirstPointIndex() + 4);
+                }
+                return batch;
+            }
+        };
+        LaghosParquetWriter.write(head, dir.resolve("a"));
+        LaghosParquetWriter.write(tail, dir.resolve("b"));
+        Files.move(dir.resolve("a").resolve("part-0.parquet"), dir.resolve("a.parquet"));
+        Files.move(dir.resolve("b").resolve("part-0.parquet"), dir.resolve("b.parquet"));
+
+        LaghosParquetReader reader = new LaghosParquetReader(dir);
+        assertEquals(512, reader.getNumPoints());
+        assertEquals(64, reader.getNumElements());
+        List<LaghosParquetReader> splits = reader.split(2);
+        assertEquals(33, splits.get(0).getNumElements());
+        assertEquals(31, splits.get(1).getNumElements());
+        for (LaghosParquetReader split : splits) {
+            split.close();
+        }
+
+        // The points still read back in mesh order, torn element included
+        LaghosPointBatch all = mesh.getNextLaghosPointBatch();
+        long points = 0;
+        for (LaghosPointBatch batch = reader.getNextLaghosPointBatch(); batch != null;
+             batch = reader.getNextLaghosPointBatch()) {
+            for (int i = 0; i < batch.size(); i++) {
+                int p = (int)(batch.getFirstPointIndex() + i);
+                assertEquals(all.getElementId(p), batch.getElementId(i));
+                assertEquals(all.getE(p), batch.getE(i));
+            }
+            points += batch.size();
+        }
+        assertEquals(512, points);
+        reader.close();
+    }
+}
@@ -0,0 +1,55 @@
+package sci.mfem;
+
+import jdk.incubator.foreign.GroupLayout;
+import jdk.incubator.foreign.MemoryLayout.PathElement;
+import jdk.incubator.foreign.MemorySegment;
+import jdk.incubator.foreign.ResourceScope;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MFEMForeignTest {
+
+    static long offset(GroupLayout layout, String name) {
+        return layout.byteOffset(PathElement.groupElement(name));
+    }
+
+    @Test void TestLayouts() {
+        // laghos_mesh_point_t carries the vertex id ahead of the element id
+        assertEquals(80, MFEMForeign.LAGHOS_MESH_POINT.byteSize());
+        for (LaghosField f : LaghosField.values()) {
+            assertEquals(f.offset(), offset(MFEMForeign.LAGHOS_MESH_POINT, f.fieldName()));
+        }
+        assertEquals(64, offset(MFEMForeign.LAGHOS_MESH_POINT, "vertex_id"));
+        assertEquals(72, offset(MFEMForeign.LAGHOS_MESH_POINT, "element_id"));
+
+        // The normalized records match the sizes LaghosMeshBlock reads
+        assertEquals(LaghosMeshBlock.VERTEX_SIZE, MFEMForeign.LAGHOS_MESH_VERTEX.byteSize());
+        assertEquals(LaghosMeshBlock.ATTR_SIZE, MFEMForeign.LAGHOS_MESH_ELEMENT_ATTR.byteSize());
+        assertEquals(LaghosMeshBlock.GEOM_SIZE, MFEMForeign.LAGHOS_MESH_ELEMENT_GEOM.byteSize());
+        assertEquals(64, offset(MFEMForeign.LAGHOS_MESH_ELEMENT_GEOM, "element_id"));
+        assertEquals(24, MFEMForeign.MFEM_MESH_ITERATOR.byteSize());
+        assertEquals(80, MFEMForeign.LAGHOS_MESH_COLUMNS.byteSize());
+    }
+
+    @Test void TestSetColumns() {
+        try (ResourceScope scope = ResourceScope.newConfinedScope()) {
+            MemorySegment[] columns = new MemorySegment[LaghosColumnBatch.NUM_COLUMNS];
+            for (int c = 0; c < columns.length; c++) {
+                columns[c] = MemorySegment.allocateNative(64, scope);
+            }
+            MemorySegment struct = MemorySegment.allocateNative(MFEMForeign.LAGHOS_MESH_COLUMNS, scope);
+            MFEMForeign.setColumns(struct, columns, null);
+            long[] pointers = struct.toLongArray();
+            for (LaghosField f : LaghosField.values()) {
+                assertEquals(columns[f.dim()].address().toRawLongValue(), pointers[f.dim()]);
+            }
+            assertEquals(0, pointers[8], "vertex ids are skipped");
+            assertEquals(columns[LaghosColumnBatch.ELEMENT_ID_COLUMN].address().toRawLongValue(), pointers[9]);
+
+            MemorySegment iterator = MemorySegment.allocateNative(MFEMForeign.MFEM_MESH_ITERATOR, scope);
+            MFEMForeign.setCurIdx(iterator, 12345);
+            assertEquals(12345, MFEMForeign.getCurIdx(iterator));
+            assertEquals(12345, iterator.toLongArray()[0]);
+        }
+    }
+}
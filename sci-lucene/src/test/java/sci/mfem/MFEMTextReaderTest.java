@@ -0,0 +1,86 @@
+package sci.mfem;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.*;
+
+class MFEMTextReaderTest {
+
+    static double parse(String s) {
+        byte[] b = s.getBytes(StandardCharsets.US_ASCII);
+        return MFEMTextReader.parseDouble(b, 0, b.length);
+    }
+
+    @Test void TestParseDouble() {
+        String[] cases = {"0", "-0", "0.125", "2", "-3.5", "+7", "1e3", "1.5E-3", "0.0001234",
+                          "12345678.9", "-1.2345678e-05", ".5", "5.", "9007199254740993",
+                          "1.7976931348623157e308", "4.9e-324", "0.1234567890123456789",
+                          "123456789012345678901234", "1e-400", "Infinity"};
+        for (String s : cases) {
+            assertEquals(Double.parseDouble(s), parse(s), s);
+        }
+        assertEquals(Double.doubleToRawLongBits(-0.0), Double.doubleToRawLongBits(parse("-0.0")));
+
+        // Round trip random values, as printed by Java and with 8 digits as MFEM does
+        Random rand = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            double v = (rand.nextDouble() - 0.5) * Math.pow(10, rand.nextInt(40) - 20);
+            String full = Double.toString(v);
+            String short8 = String.format("%.8g", v);
+            assertEquals(v, parse(full), full);
+            assertEquals(Double.parseDouble(short8), parse(short8), short8);
+        }
+        assertThrows(NumberFormatException.class, () -> parse("1.2.3"));
+    }
+
+    @Test void TestTokens(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("tokens");
+        Files.writeString(file, "# a comment\nVDim: 3\n  -42\t1.5\n# another\nend");
+        try (MFEMTextReader r = new MFEMTextReader(file, 8)) {
+            r.expect("VDim:");
+            assertEquals(3, r.nextLong());
+            assertEquals(-42, r.nextLong());
+            assertEquals(1.5, r.nextDouble());
+            assertEquals("end", r.nextToken());
+            assertNull(r.nextToken());
+        }
+    }
+
+    @Test void TestReadRemainingDoubles(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("values");
+        StringBuilder sb = new StringBuilder("header\n");
+        Random rand = new Random(7);
+        double[] expected = new double[20000];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = rand.nextGaussian();
+            sb.append(expected[i]).append(0 == i % 3 ? "\n" : " ");
+        }
+        sb.append("trailer 1 2 3\n");
+        Files.writeString(file, sb.toString());
+
+        // Small blocks force many block boundaries inside tokens
+        for (int threads : new int[]{1, 4}) {
+            try (MFEMTextReader r = new MFEMTextReader(file, 64)) {
+                r.expect("header");
+                assertArrayEquals(expected, r.readRemainingDoubles(threads));
+            }
+        }
+    }
+
+    @Test void TestGzipGridFunction() throws IOException {
+        Path rho = Paths.get(LaghosMeshReaderTest.PROJECT_DATA_DIR, "1m_points", "1m_points_rho.gz");
+        assumeTrue(Files.exists(rho));
+        MFEMGridFunction gf = MFEMGridFunction.read(rho, 4);
+        assertEquals("L2_T2_3D_P2", gf.getCollectionName());
+        assertEquals(1, gf.getVDim());
+        assertEquals(1769472, gf.getNumDofs());
+        assertFalse(gf.isContinuous());
+    }
+}
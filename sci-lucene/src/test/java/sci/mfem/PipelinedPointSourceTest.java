@@ -0,0 +1,138 @@
+package sci.mfem;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class PipelinedPointSourceTest {
+
+    @Test void TestPoints() {
+        SyntheticLaghosMesh mesh = new SyntheticLaghosMesh(6, 5, 4, 0, 120, 1024);
+        PipelinedPointSource pipeline = new PipelinedPointSource(new SyntheticLaghosMesh(6, 5, 4, 0, 120, 40), 2);
+        assertEquals(960, pipeline.getNumPoints());
+        assertEquals(120, pipeline.getNumElements());
+        LaghosColumnCacheTest.checkPoints(mesh, pipeline);
+        assertEquals(24, pipeline.getNumBatches());
+
+        // A reset part way through restarts from the first point
+        pipeline.resetIterator();
+        assertNotNull(pipeline.getNextLaghosPointBatch());
+        pipeline.resetIterator();
+        LaghosColumnCacheTest.checkPoints(mesh, pipeline);
+        pipeline.close();
+    }
+
+    @Test void TestSplit() {
+        SyntheticLaghosMesh mesh = new SyntheticLaghosMesh(5, 5, 5, 0, 125, 2000);
+        PipelinedPointSource pipeline = new PipelinedPointSource(new SyntheticLaghosMesh(5, 5, 5, 0, 125, 64), 3);
+        List<PipelinedPointSource> splits = pipeline.split(4);
+        assertEquals(4, splits.size());
+        long points = 0;
+        for (PipelinedPointSource split : splits) {
+            assertEquals(3, split.getDepth());
+            assertEquals(points, split.getFirstPointIndex());
+            LaghosColumnCacheTest.checkPoints(mesh, split);
+            points += split.getNumPoints();
+            split.close();
+        }
+        assertEquals(1000, points);
+    }
+
+    @Test void TestConsumers() throws IOException {
+        SyntheticLaghosMesh mesh = new SyntheticLaghosMesh(8, 8, 8, 0, 512, 4096);
+        LaghosPointBatch all = mesh.getNextLaghosPointBatch();
+        PipelinedPointSource pipeline = new PipelinedPointSource(new SyntheticLaghosMesh(8, 8, 8, 0, 512, 80), 3);
+
+        // Every point reaches exactly one consumer, intact
+        AtomicLong idSum = new AtomicLong();
+        long points = pipeline.consume(4, batch -> {
+            for (int i = 0; i < batch.size(); i++) {
+                int p = (int)(batch.getFirstPointIndex() + i);
+                assertEquals(all.getElementId(p), batch.getElementId(i));
+                assertEquals(all.getE(p), batch.getE(i));
+                idSum.addAndGet(p);
+            }
+        });
+        assertEquals(4096, points);
+        assertEquals(4096L * 4095 / 2, idSum.get());
+        assertTrue(pipeline.getFetchNanos() > 0);
+
+        // A failing consumer surfaces as an IOException
+        pipeline.resetIterator();
+        assertThrows(IOException.class, () -> pipeline.consume(2, batch -> {
+            throw new IOException("full");
+        }));
+        pipeline.close();
+    }
+
+    @Test void TestConsumerFailure() {
+        PipelinedPointSource pipeline = new PipelinedPointSource(new SyntheticLaghosMesh(8, 8, 8, 0, 512, 80), 3);
+
+        // One consumer fails part way, the others stop soon after and must not outlive consume
+        AtomicBoolean returned = new AtomicBoolean();
+        AtomicLong running = new AtomicLong();
+        AtomicLong late = new AtomicLong();
+        AtomicLong accepted = new AtomicLong();
+        assertThrows(IOException.class, () -> pipeline.consume(4, batch -> {
+            running.incrementAndGet();
+            accepted.incrementAndGet();
+            try {
+                if (returned.get()) {
+                    late.incrementAndGet();
+                }
+                if (400 == batch.getFirstPointIndex()) {
+                    throw new IOException("full");
+                }
+                LockSupport.parkNanos(2000000);
+            } finally {
+                running.decrementAndGet();
+            }
+        }));
+        returned.set(true);
+        assertEquals(0, running.get());
+        LockSupport.parkNanos(50000000);
+        assertEquals(0, late.get());
+        assertTrue(accepted.get() < 26, "consumed " + accepted.get() + " of 52 batches");
+        assertNull(pipeline.getNextLaghosPointBatch());
+
+        // A reset brings back every buffer and point
+        pipeline.resetIterator();
+        assertEquals(3, pipeline.free.size());
+        LaghosColumnCacheTest.checkPoints(new SyntheticLaghosMesh(8, 8, 8, 0, 512, 4096), pipeline);
+        pipeline.close();
+    }
+
+    @Test void TestFailure() {
+        SyntheticLaghosMesh mesh = new SyntheticLaghosMesh(6, 5, 4, 0, 120, 1024);
+        AtomicLong reads = new AtomicLong();
+        SyntheticLaghosMesh failing = new SyntheticLaghosMesh(6, 5, 4, 0, 120, 40) {
+            @Override
+            public LaghosPointBatch getNextLaghosPointBatch() {
+                if (3 == reads.incrementAndGet()) {
+                    throw new IllegalStateException("read failed");
+                }
+                return super.getNextLaghosPointBatch();
+            }
+        };
+        PipelinedPointSource pipeline = new PipelinedPointSource(failing, 2);
+        assertThrows(IllegalStateException.class, () -> {
+            while (null != pipeline.getNextLaghosPointBatch()) {
+            }
+        });
+
+        // The buffer taken for the failed read is not lost
+        pipeline.resetIterator();
+        assertEquals(2, pipeline.free.size());
+        LaghosColumnCacheTest.checkPoints(mesh, pipeline);
+        pipeline.close();
+    }
+
+    @Test void TestDepth() {
+        assertThrows(IllegalArgumentException.class,
+                     () -> new PipelinedPointSource(new SyntheticLaghosMesh(2, 2, 2, 0, 8, 64), 1));
+    }
+}
@@ -0,0 +1,71 @@
+package sci.mfem;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class SyntheticLaghosMeshTest {
+
+    @Test void TestBatches() {
+        SyntheticLaghosMesh mesh = new SyntheticLaghosMesh(4, 3, 2, 0, 24, 40);
+        assertEquals(24, mesh.getNumElements());
+        assertEquals(24 * 8, mesh.getNumPoints());
+
+        // Batches hold whole elements and points keep their mesh-wide index
+        long expected = 0;
+        LaghosPointBatch batch = mesh.getNextLaghosPointBatch();
+        while (batch != null) {
+            assertTrue(batch.size() <= 40);
+            assertEquals(0, batch.size() % SyntheticLaghosMesh.POINTS_PER_ELEMENT);
+            assertEquals(expected, batch.getFirstPointIndex());
+            for (int i = 0; i < batch.size(); i++) {
+                assertEquals((expected + i) / 8, batch.getElementId(i));
+                assertTrue(batch.getX(i) >= 0.0 && batch.getX(i) <= 1.0);
+            }
+            expected += batch.size();
+            batch = mesh.getNextLaghosPointBatch();
+        }
+        assertEquals(mesh.getNumPoints(), expected);
+
+        // Element 3 is i=3, j=0, k=0, its last corner is (3, 1, 1) * h
+        mesh.resetIterator();
+        batch = mesh.getNextLaghosPointBatch();
+        assertEquals(0.75, batch.getX(3 * 8 + 7));
+        assertEquals(0.25, batch.getY(3 * 8 + 7));
+        assertEquals(0.25, batch.getZ(3 * 8 + 7));
+        assertEquals(batch.getE(3 * 8), batch.getE(3 * 8 + 7));
+    }
+
+    @Test void TestSplit() {
+        SyntheticLaghosMesh mesh = new SyntheticLaghosMesh(5, 5, 5);
+        byte[] whole = new byte[LaghosPointBatch.POINT_SIZE];
+        byte[] part = new byte[LaghosPointBatch.POINT_SIZE];
+
+        List<SyntheticLaghosMesh> splits = mesh.split(3);
+        assertEquals(3, splits.size());
+        long points = 0;
+        for (SyntheticLaghosMesh split : splits) {
+            assertEquals(points, split.getFirstPointIndex());
+            LaghosPointBatch batch = split.getNextLaghosPointBatch();
+            while (batch != null) {
+                // The split reproduces the whole mesh's points exactly
+                SyntheticLaghosMesh single = new SyntheticLaghosMesh(5, 5, 5, 0, 125, 1000);
+                LaghosPointBatch all = single.getNextLaghosPointBatch();
+                for (int i = 0; i < batch.size(); i++) {
+                    batch.copyPoint(i, part);
+                    all.copyPoint((int)(batch.getFirstPointIndex() + i), whole);
+                    assertArrayEquals(whole, part);
+                }
+                points += batch.size();
+                batch = split.getNextLaghosPointBatch();
+            }
+        }
+        assertEquals(mesh.getNumPoints(), points);
+
+        // More splits than elements gives one per element, and none is an error
+        SyntheticLaghosMesh one = new SyntheticLaghosMesh(5, 5, 5, 7, 8, 1000);
+        assertEquals(1, one.split(4).size());
+        assertThrows(IllegalArgumentException.class, () -> one.split(0));
+        assertEquals(List.of(3L, 5L, 7L), LaghosPointSource.splitRanges(1, 7, 3).stream().map(r -> r[1]).toList());
+    }
+}